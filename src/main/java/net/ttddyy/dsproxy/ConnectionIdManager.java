@@ -22,6 +22,9 @@ public interface ConnectionIdManager {
     /**
      * Return set of connection ids that have not yet addClosedId.
      *
+     * Implementations may return a read-only live view instead of a copy. In that case, the returned set reflects
+     * connections opened or closed after this method is called.
+     *
      * @return set of open connection ids
      * @since 1.4.5
      */
@@ -13,6 +13,7 @@ public class ConnectionInfo {
     private boolean isClosed;
     private int commitCount;
     private int rollbackCount;
+    private long connectionAcquisitionTime;
 
     public String getDataSourceName() {
         return dataSourceName;
@@ -98,4 +99,25 @@ public class ConnectionInfo {
         isClosed = closed;
     }
 
+    /**
+     * Returns time took to retrieve the connection from the actual datasource.
+     *
+     * The unit of the value is based on {@link net.ttddyy.dsproxy.proxy.Stopwatch} in use.
+     * The time is measured only when method listeners are registered; otherwise, {@code 0}.
+     *
+     * @return connection acquisition time
+     * @since 1.8
+     */
+    public long getConnectionAcquisitionTime() {
+        return connectionAcquisitionTime;
+    }
+
+    /**
+     * @param connectionAcquisitionTime connection acquisition time
+     * @since 1.8
+     */
+    public void setConnectionAcquisitionTime(long connectionAcquisitionTime) {
+        this.connectionAcquisitionTime = connectionAcquisitionTime;
+    }
+
 }
@@ -0,0 +1,142 @@
+package net.ttddyy.dsproxy;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Query count context of a thread, which is propagated to other threads.
+ *
+ * <p>The context consists of the query counts in {@link QueryCountHolder} and the bound {@link QueryCountScope}.
+ * While a context is attached to a worker thread, queries executed on the worker are counted in the same
+ * {@link QueryCount} instances as the thread that captured the context. Therefore, counts of the worker are
+ * aggregated into the parent (e.g. request) without extra merging.
+ *
+ * <p>Counts are only aggregated while the parent keeps its counts. When the parent clears {@link QueryCountHolder}
+ * before workers complete, the rest of the counts of the workers go to the detached counts, and are neither visible
+ * to the parent nor added to its next counts.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.support.concurrent.QueryCountContextExecutor
+ * @see net.ttddyy.dsproxy.support.concurrent.QueryCountContextExecutorService
+ * @since 1.8
+ */
+public class QueryCountContext {
+
+    /**
+     * Attachment of a context to a thread.
+     *
+     * Closing the attachment restores the context that the thread had before. It needs to be closed by the same
+     * thread.
+     */
+    public static class Attachment implements Closeable {
+
+        private final ConcurrentMap<String, QueryCount> previousQueryCountMap;
+        private final QueryCountScope.Binding scopeBinding;
+        private boolean closed;
+
+        private Attachment(ConcurrentMap<String, QueryCount> previousQueryCountMap, QueryCountScope.Binding scopeBinding) {
+            this.previousQueryCountMap = previousQueryCountMap;
+            this.scopeBinding = scopeBinding;
+        }
+
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            QueryCountHolder.setQueryCountMap(this.previousQueryCountMap);
+            if (this.scopeBinding != null) {
+                this.scopeBinding.close();
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, QueryCount> queryCountMap;
+    private final QueryCountScope scope;
+
+    private QueryCountContext(ConcurrentMap<String, QueryCount> queryCountMap, QueryCountScope scope) {
+        this.queryCountMap = queryCountMap;
+        this.scope = scope;
+    }
+
+    /**
+     * @return context of the current thread
+     */
+    public static QueryCountContext capture() {
+        // the map is shared with workers; therefore, it needs to exist even if the current thread has no query yet
+        return new QueryCountContext(QueryCountHolder.getQueryCountMap(), QueryCountScope.current());
+    }
+
+    /**
+     * Wrap the task to run with the context of the current thread.
+     *
+     * @param task task
+     * @return wrapped task
+     */
+    public static Runnable wrap(Runnable task) {
+        return capture().bind(task);
+    }
+
+    /**
+     * Wrap the task to run with the context of the current thread.
+     *
+     * @param task task
+     * @param <T>  result type
+     * @return wrapped task
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        return capture().bind(task);
+    }
+
+    /**
+     * Attach this context to the current thread.
+     *
+     * @return attachment to restore the previous context
+     */
+    public Attachment attach() {
+        ConcurrentMap<String, QueryCount> previousQueryCountMap = QueryCountHolder.peekQueryCountMap();
+        QueryCountHolder.setQueryCountMap(this.queryCountMap);
+        QueryCountScope.Binding scopeBinding = this.scope != null ? this.scope.bind() : null;
+        return new Attachment(previousQueryCountMap, scopeBinding);
+    }
+
+    /**
+     * @param task task
+     * @return task to run with this context
+     */
+    public Runnable bind(final Runnable task) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                Attachment attachment = attach();
+                try {
+                    task.run();
+                } finally {
+                    attachment.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param task task
+     * @param <T>  result type
+     * @return task to run with this context
+     */
+    public <T> Callable<T> bind(final Callable<T> task) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                Attachment attachment = attach();
+                try {
+                    return task.call();
+                } finally {
+                    attachment.close();
+                }
+            }
+        };
+    }
+
+}
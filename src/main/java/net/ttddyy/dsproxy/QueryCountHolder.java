@@ -1,6 +1,7 @@
 package net.ttddyy.dsproxy;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -15,21 +16,31 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class QueryCountHolder {
 
-    private static ThreadLocal<ConcurrentMap<String, QueryCount>> queryCountMapHolder = new ThreadLocal<ConcurrentMap<String, QueryCount>>() {
-        @Override
-        protected ConcurrentMap<String, QueryCount> initialValue() {
-            return new ConcurrentHashMap<String, QueryCount>();
+    // map is created on first put, so that threads without queries do not allocate one
+    private static ThreadLocal<ConcurrentMap<String, QueryCount>> queryCountMapHolder = new ThreadLocal<ConcurrentMap<String, QueryCount>>();
+
+    private static ConcurrentMap<String, QueryCount> getOrCreateQueryCountMap() {
+        ConcurrentMap<String, QueryCount> map = queryCountMapHolder.get();
+        if (map == null) {
+            map = new ConcurrentHashMap<String, QueryCount>();
+            queryCountMapHolder.set(map);
         }
-    };
+        return map;
+    }
+
+    private static Map<String, QueryCount> getQueryCountMapOrEmpty() {
+        Map<String, QueryCount> map = queryCountMapHolder.get();
+        return map == null ? Collections.<String, QueryCount>emptyMap() : map;
+    }
 
     public static QueryCount get(String dataSourceName) {
-        final Map<String, QueryCount> map = queryCountMapHolder.get();
+        final Map<String, QueryCount> map = getQueryCountMapOrEmpty();
         return map.get(dataSourceName);
     }
 
     public static QueryCount getGrandTotal() {
         final QueryCount totalCount = new QueryCount();
-        final Map<String, QueryCount> map = queryCountMapHolder.get();
+        final Map<String, QueryCount> map = getQueryCountMapOrEmpty();
         for (QueryCount queryCount : map.values()) {
             totalCount.setSelect(totalCount.getSelect() + queryCount.getSelect());
             totalCount.setInsert(totalCount.getInsert() + queryCount.getInsert());
@@ -45,7 +56,19 @@ public class QueryCountHolder {
     }
 
     public static void put(String dataSourceName, QueryCount count) {
-        queryCountMapHolder.get().put(dataSourceName, count);
+        getOrCreateQueryCountMap().put(dataSourceName, count);
+    }
+
+    /**
+     * Put the {@link QueryCount} if the current thread does not have one for the datasource.
+     *
+     * @param dataSourceName datasource name
+     * @param count          query count
+     * @return existing query count. {@code null} if the given one is put.
+     * @since 1.8
+     */
+    public static QueryCount putIfAbsent(String dataSourceName, QueryCount count) {
+        return getOrCreateQueryCountMap().putIfAbsent(dataSourceName, count);
     }
 
     public static List<String> getDataSourceNamesAsList() {
@@ -53,10 +76,36 @@ public class QueryCountHolder {
     }
 
     public static Set<String> getDataSourceNames() {
-        return queryCountMapHolder.get().keySet();
+        return getQueryCountMapOrEmpty().keySet();
     }
 
+    /**
+     * Clear the query counts of the current thread.
+     *
+     * The counts are detached from the current thread rather than emptied, so that worker threads still running with
+     * a propagated {@link QueryCountContext} do not count into the next counts of this thread.
+     */
     public static void clear() {
-        queryCountMapHolder.get().clear();
+        queryCountMapHolder.remove();
+    }
+
+    // for QueryCountContext
+    static ConcurrentMap<String, QueryCount> getQueryCountMap() {
+        return getOrCreateQueryCountMap();
+    }
+
+    /**
+     * @return query counts of the current thread. {@code null} if the thread does not have one.
+     */
+    static ConcurrentMap<String, QueryCount> peekQueryCountMap() {
+        return queryCountMapHolder.get();
+    }
+
+    static void setQueryCountMap(ConcurrentMap<String, QueryCount> queryCountMap) {
+        if (queryCountMap == null) {
+            queryCountMapHolder.remove();
+        } else {
+            queryCountMapHolder.set(queryCountMap);
+        }
     }
 }
@@ -0,0 +1,166 @@
+package net.ttddyy.dsproxy;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Hold {@link QueryCount} by datasource name for an explicit unit of work such as a request.
+ *
+ * <p>Unlike {@link QueryCountHolder} which allocates a map for each thread, a scope allocates its map once and can be
+ * shared by the threads that work on the same unit of work. A thread only keeps a reference to the bound scope while
+ * it is bound.
+ *
+ * <pre>
+ * {@code
+ * QueryCountScope scope = QueryCountScope.open();  // create and bind to current thread
+ * try {
+ *     ...
+ * } finally {
+ *     scope.close();
+ * }
+ * scope.get("myDataSource").getSelect();
+ *
+ * // in other thread working on the same unit of work
+ * QueryCountScope.Binding binding = scope.bind();
+ * try {
+ *     ...
+ * } finally {
+ *     binding.close();
+ * }
+ * }
+ * </pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.listener.ScopedQueryCountHolder
+ * @since 1.8
+ */
+public class QueryCountScope implements Closeable {
+
+    private static final ThreadLocal<QueryCountScope> currentScope = new ThreadLocal<QueryCountScope>();
+
+    /**
+     * Binding of a scope to a thread.
+     *
+     * Closing the binding restores the scope that was bound before. It needs to be closed by the same thread.
+     */
+    public static class Binding implements Closeable {
+
+        private final QueryCountScope previous;
+        private boolean closed;
+
+        private Binding(QueryCountScope previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (this.previous == null) {
+                currentScope.remove();
+            } else {
+                currentScope.set(this.previous);
+            }
+        }
+    }
+
+    // most of units of work access a few datasources from a few threads
+    private final ConcurrentMap<String, QueryCount> queryCountMap = new ConcurrentHashMap<String, QueryCount>(4, 0.75f, 1);
+    private Binding openBinding;
+
+    /**
+     * Create a new scope and bind it to the current thread.
+     *
+     * {@link #close()} needs to be called on the same thread.
+     *
+     * @return new scope
+     */
+    public static QueryCountScope open() {
+        QueryCountScope scope = new QueryCountScope();
+        scope.openBinding = scope.bind();
+        return scope;
+    }
+
+    /**
+     * @return scope bound to the current thread. {@code null} if no scope is bound.
+     */
+    public static QueryCountScope current() {
+        return currentScope.get();
+    }
+
+    /**
+     * Bind this scope to the current thread.
+     *
+     * @return binding to restore the previous scope
+     */
+    public Binding bind() {
+        Binding binding = new Binding(currentScope.get());
+        currentScope.set(this);
+        return binding;
+    }
+
+    /**
+     * Unbind the scope from the thread that has opened it by {@link #open()}.
+     *
+     * Query counts are still available after closing the scope.
+     */
+    @Override
+    public void close() {
+        if (this.openBinding != null) {
+            this.openBinding.close();
+            this.openBinding = null;
+        }
+    }
+
+    public QueryCount get(String dataSourceName) {
+        return this.queryCountMap.get(dataSourceName);
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @return query count for the datasource. Created if not exist.
+     */
+    public QueryCount getOrCreate(String dataSourceName) {
+        QueryCount queryCount = this.queryCountMap.get(dataSourceName);
+        if (queryCount == null) {
+            this.queryCountMap.putIfAbsent(dataSourceName, new QueryCount());
+            queryCount = this.queryCountMap.get(dataSourceName);
+        }
+        return queryCount;
+    }
+
+    public QueryCount getGrandTotal() {
+        final QueryCount totalCount = new QueryCount();
+        for (QueryCount queryCount : this.queryCountMap.values()) {
+            totalCount.setSelect(totalCount.getSelect() + queryCount.getSelect());
+            totalCount.setInsert(totalCount.getInsert() + queryCount.getInsert());
+            totalCount.setUpdate(totalCount.getUpdate() + queryCount.getUpdate());
+            totalCount.setDelete(totalCount.getDelete() + queryCount.getDelete());
+            totalCount.setOther(totalCount.getOther() + queryCount.getOther());
+            totalCount.setTotal(totalCount.getTotal() + queryCount.getTotal());
+            totalCount.setSuccess(totalCount.getSuccess() + queryCount.getSuccess());
+            totalCount.setFailure(totalCount.getFailure() + queryCount.getFailure());
+            totalCount.setTime(totalCount.getTime() + queryCount.getTime());
+        }
+        return totalCount;
+    }
+
+    public List<String> getDataSourceNamesAsList() {
+        return new ArrayList<String>(getDataSourceNames());
+    }
+
+    public Set<String> getDataSourceNames() {
+        return this.queryCountMap.keySet();
+    }
+
+    public void clear() {
+        this.queryCountMap.clear();
+    }
+
+}
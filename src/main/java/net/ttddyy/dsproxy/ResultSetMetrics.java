@@ -0,0 +1,72 @@
+package net.ttddyy.dsproxy;
+
+/**
+ * Contains how a {@link java.sql.ResultSet} returned by a query execution has been consumed.
+ *
+ * Time values are measured by {@link net.ttddyy.dsproxy.proxy.Stopwatch} in use (milliseconds by default), starting
+ * when the {@link java.sql.ResultSet} is returned to the application.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.listener.ResultSetMetricsListener
+ * @since 1.8
+ */
+public class ResultSetMetrics {
+
+    private long rowCount;
+    private long timeToFirstRow = -1;
+    private long openDuration;
+    private boolean allRowsRead;
+
+    /**
+     * Number of {@link java.sql.ResultSet#next()} calls that returned {@code true}.
+     *
+     * @return number of rows read by the application
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * Elapsed time until the first {@link java.sql.ResultSet#next()} returned {@code true}.
+     *
+     * @return time to first row. {@code -1} if no row is read.
+     */
+    public long getTimeToFirstRow() {
+        return timeToFirstRow;
+    }
+
+    public void setTimeToFirstRow(long timeToFirstRow) {
+        this.timeToFirstRow = timeToFirstRow;
+    }
+
+    /**
+     * Elapsed time until the {@link java.sql.ResultSet} is closed.
+     *
+     * @return duration of the {@link java.sql.ResultSet} being open
+     */
+    public long getOpenDuration() {
+        return openDuration;
+    }
+
+    public void setOpenDuration(long openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Whether {@link java.sql.ResultSet#next()} has returned {@code false}.
+     *
+     * @return {@code true} when the application has read all rows
+     */
+    public boolean isAllRowsRead() {
+        return allRowsRead;
+    }
+
+    public void setAllRowsRead(boolean allRowsRead) {
+        this.allRowsRead = allRowsRead;
+    }
+
+}
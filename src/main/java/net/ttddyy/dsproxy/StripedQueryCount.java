@@ -0,0 +1,288 @@
+package net.ttddyy.dsproxy;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link QueryCount} implementation that spreads updates over multiple cells to reduce contention.
+ *
+ * <p>Each thread updates the cells of the stripe chosen by its thread id, and read operations sum up all stripes.
+ * All counters of one stripe are laid out next to each other and padded from the next stripe; therefore, one query
+ * execution touches the cache lines owned by one stripe only.
+ * This is a simplified version of {@code java.util.concurrent.atomic.LongAdder} which is not available in java6.
+ *
+ * <p>Read operations are not atomic snapshot. While other threads are updating the counts, returned values may not
+ * reflect the concurrent updates. Also, setter methods are expected to be called when no other thread is updating the
+ * value.
+ *
+ * <p>Reduction of contention under many concurrent threads has not been measured. With a single processor, updates are
+ * slower than {@link QueryCount}. Measure with your workload before replacing {@link QueryCount}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.listener.StripedSingleQueryCountHolder
+ * @since 1.8
+ */
+public class StripedQueryCount extends QueryCount {
+
+    private static final int SELECT = 0;
+    private static final int INSERT = 1;
+    private static final int UPDATE = 2;
+    private static final int DELETE = 3;
+    private static final int OTHER = 4;
+    private static final int STATEMENT = 5;
+    private static final int PREPARED = 6;
+    private static final int CALLABLE = 7;
+    private static final int TOTAL = 8;
+    private static final int SUCCESS = 9;
+    private static final int FAILURE = 10;
+    private static final int TIME = 11;
+
+    // 12 counters + 12 padding. Padding needs to be larger than a cache line(64 bytes) to avoid false sharing between
+    // stripes regardless of the alignment of the array.
+    private static final int STRIPE_SIZE = 24;
+
+    private static final int MAX_STRIPES = 64;
+
+    private static int defaultNumOfStripes() {
+        int numOfProcessors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < numOfProcessors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Create an instance with number of stripes based on available processors.
+     */
+    public StripedQueryCount() {
+        this(defaultNumOfStripes());
+    }
+
+    /**
+     * @param numOfStripes number of stripes. Rounded up to the power of two.
+     */
+    public StripedQueryCount(int numOfStripes) {
+        int stripes = 1;
+        while (stripes < numOfStripes) {
+            stripes <<= 1;
+        }
+        this.mask = stripes - 1;
+        this.cells = new AtomicLongArray(stripes * STRIPE_SIZE);
+    }
+
+    private int index(int counter) {
+        // thread ids are sequential. Threads created together (e.g. in a thread pool) fall into different stripes.
+        int stripe = (int) Thread.currentThread().getId() & this.mask;
+        return stripe * STRIPE_SIZE + counter;
+    }
+
+    private void add(int counter, long delta) {
+        this.cells.getAndAdd(index(counter), delta);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int stripe = 0; stripe <= this.mask; stripe++) {
+            sum += this.cells.get(stripe * STRIPE_SIZE + counter);
+        }
+        return sum;
+    }
+
+    private void reset(int counter, long value) {
+        for (int stripe = 1; stripe <= this.mask; stripe++) {
+            this.cells.set(stripe * STRIPE_SIZE + counter, 0);
+        }
+        this.cells.set(counter, value);  // keep the value on first stripe
+    }
+
+    /**
+     * @return number of stripes
+     */
+    public int getNumOfStripes() {
+        return this.mask + 1;
+    }
+
+    @Override
+    public void incrementSelect() {
+        add(SELECT, 1);
+    }
+
+    @Override
+    public void incrementInsert() {
+        add(INSERT, 1);
+    }
+
+    @Override
+    public void incrementUpdate() {
+        add(UPDATE, 1);
+    }
+
+    @Override
+    public void incrementDelete() {
+        add(DELETE, 1);
+    }
+
+    @Override
+    public void incrementOther() {
+        add(OTHER, 1);
+    }
+
+    @Override
+    public void incrementStatement() {
+        add(STATEMENT, 1);
+    }
+
+    @Override
+    public void incrementPrepared() {
+        add(PREPARED, 1);
+    }
+
+    @Override
+    public void incrementCallable() {
+        add(CALLABLE, 1);
+    }
+
+    @Override
+    public void incrementTotal() {
+        add(TOTAL, 1);
+    }
+
+    @Override
+    public void incrementSuccess() {
+        add(SUCCESS, 1);
+    }
+
+    @Override
+    public void incrementFailure() {
+        add(FAILURE, 1);
+    }
+
+    @Override
+    public void incrementTime(long delta) {
+        add(TIME, delta);
+    }
+
+    @Override
+    public long getSelect() {
+        return sum(SELECT);
+    }
+
+    @Override
+    public void setSelect(long select) {
+        reset(SELECT, select);
+    }
+
+    @Override
+    public long getInsert() {
+        return sum(INSERT);
+    }
+
+    @Override
+    public void setInsert(long insert) {
+        reset(INSERT, insert);
+    }
+
+    @Override
+    public long getUpdate() {
+        return sum(UPDATE);
+    }
+
+    @Override
+    public void setUpdate(long update) {
+        reset(UPDATE, update);
+    }
+
+    @Override
+    public long getDelete() {
+        return sum(DELETE);
+    }
+
+    @Override
+    public void setDelete(long delete) {
+        reset(DELETE, delete);
+    }
+
+    @Override
+    public long getOther() {
+        return sum(OTHER);
+    }
+
+    @Override
+    public void setOther(long other) {
+        reset(OTHER, other);
+    }
+
+    @Override
+    public long getStatement() {
+        return sum(STATEMENT);
+    }
+
+    @Override
+    public void setStatement(long statement) {
+        reset(STATEMENT, statement);
+    }
+
+    @Override
+    public long getPrepared() {
+        return sum(PREPARED);
+    }
+
+    @Override
+    public void setPrepared(long prepared) {
+        reset(PREPARED, prepared);
+    }
+
+    @Override
+    public long getCallable() {
+        return sum(CALLABLE);
+    }
+
+    @Override
+    public void setCallable(long callable) {
+        reset(CALLABLE, callable);
+    }
+
+    @Override
+    public long getTotal() {
+        return sum(TOTAL);
+    }
+
+    @Override
+    public void setTotal(long total) {
+        reset(TOTAL, total);
+    }
+
+    @Override
+    public long getSuccess() {
+        return sum(SUCCESS);
+    }
+
+    @Override
+    public void setSuccess(long success) {
+        reset(SUCCESS, success);
+    }
+
+    @Override
+    public long getFailure() {
+        return sum(FAILURE);
+    }
+
+    @Override
+    public void setFailure(long failure) {
+        reset(FAILURE, failure);
+    }
+
+    @Override
+    public long getTime() {
+        return sum(TIME);
+    }
+
+    @Override
+    public void setTime(long time) {
+        reset(TIME, time);
+    }
+
+}
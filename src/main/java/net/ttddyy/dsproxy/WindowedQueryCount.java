@@ -0,0 +1,348 @@
+package net.ttddyy.dsproxy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link QueryCount} implementation that only keeps counts within a rolling time window.
+ *
+ * <p>The window consists of a fixed ring of buckets (e.g. 60 buckets of 1 second). Increments go to the bucket for the
+ * current time, and getter methods return the sum of the buckets within the window. When time has passed, the oldest
+ * bucket is replaced by a new one with compare-and-set; no lock is used for rotation.
+ *
+ * <p>Setter methods discard all counts of the target counter in the window, and set the value to the current bucket.
+ *
+ * <p>Until a full window has passed since the first access, rates are computed over the elapsed buckets instead of the
+ * whole window.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.listener.WindowedQueryCountHolder
+ * @since 1.8
+ */
+public class WindowedQueryCount extends QueryCount {
+
+    /**
+     * Counters kept in {@link WindowedQueryCount}.
+     */
+    public enum Counter {
+        SELECT, INSERT, UPDATE, DELETE, OTHER, STATEMENT, PREPARED, CALLABLE, TOTAL, SUCCESS, FAILURE, TIME
+    }
+
+    private static final int NUM_OF_COUNTERS = Counter.values().length;
+
+    private static class Bucket {
+        private final long bucketNumber;
+        private final AtomicLongArray counts = new AtomicLongArray(NUM_OF_COUNTERS);
+
+        private Bucket(long bucketNumber) {
+            this.bucketNumber = bucketNumber;
+        }
+    }
+
+    private final int numOfBuckets;
+    private final long bucketDurationInMillis;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final AtomicLong firstBucketNumber = new AtomicLong(-1);
+
+    /**
+     * Create a window of 60 buckets of 1 second.
+     */
+    public WindowedQueryCount() {
+        this(60, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param numOfBuckets   number of buckets in the window
+     * @param bucketDuration time duration of each bucket
+     * @param timeUnit       time unit for bucket duration
+     */
+    public WindowedQueryCount(int numOfBuckets, long bucketDuration, TimeUnit timeUnit) {
+        if (numOfBuckets < 1) {
+            throw new IllegalArgumentException("numOfBuckets must be positive");
+        }
+        long durationInMillis = timeUnit.toMillis(bucketDuration);
+        if (durationInMillis < 1) {
+            throw new IllegalArgumentException("bucket duration must be at least 1 millisecond");
+        }
+        this.numOfBuckets = numOfBuckets;
+        this.bucketDurationInMillis = durationInMillis;
+        this.buckets = new AtomicReferenceArray<Bucket>(numOfBuckets);
+    }
+
+    /**
+     * Returns current time in milliseconds.
+     *
+     * @return current time
+     */
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private long currentBucketNumber() {
+        long bucketNumber = currentTimeMillis() / this.bucketDurationInMillis;
+        if (this.firstBucketNumber.get() < 0) {
+            this.firstBucketNumber.compareAndSet(-1, bucketNumber);
+        }
+        return bucketNumber;
+    }
+
+    private Bucket currentBucket() {
+        long bucketNumber = currentBucketNumber();
+        int index = (int) (bucketNumber % this.numOfBuckets);
+        while (true) {
+            Bucket bucket = this.buckets.get(index);
+            if (bucket != null && bucket.bucketNumber >= bucketNumber) {
+                return bucket;
+            }
+            // bucket is empty or expired. replace with new one. when CAS fails, other thread has replaced it.
+            Bucket newBucket = new Bucket(bucketNumber);
+            if (this.buckets.compareAndSet(index, bucket, newBucket)) {
+                return newBucket;
+            }
+        }
+    }
+
+    private void add(Counter counter, long delta) {
+        currentBucket().counts.getAndAdd(counter.ordinal(), delta);
+    }
+
+    /**
+     * Sum of the counter within the current window.
+     *
+     * @param counter counter type
+     * @return total of the counter in the window
+     */
+    public long getWindowTotal(Counter counter) {
+        long currentBucketNumber = currentBucketNumber();
+        long oldestBucketNumber = currentBucketNumber - this.numOfBuckets;
+        long sum = 0;
+        for (int i = 0; i < this.numOfBuckets; i++) {
+            Bucket bucket = this.buckets.get(i);
+            if (bucket != null && bucket.bucketNumber > oldestBucketNumber && bucket.bucketNumber <= currentBucketNumber) {
+                sum += bucket.counts.get(counter.ordinal());
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Average rate per second of the counter within the current window.
+     *
+     * @param counter counter type
+     * @return rate per second
+     */
+    public double getRatePerSecond(Counter counter) {
+        return getWindowTotal(counter) * 1000.0 / getElapsedWindowDurationInMillis();
+    }
+
+    /**
+     * Duration of the window that has elapsed since the first access, up to the full window duration.
+     *
+     * @return elapsed duration of the window in milliseconds
+     */
+    public long getElapsedWindowDurationInMillis() {
+        long elapsedBuckets = currentBucketNumber() - this.firstBucketNumber.get() + 1;
+        return Math.min(elapsedBuckets, this.numOfBuckets) * this.bucketDurationInMillis;
+    }
+
+    /**
+     * @return duration of the window in milliseconds
+     */
+    public long getWindowDurationInMillis() {
+        return this.numOfBuckets * this.bucketDurationInMillis;
+    }
+
+    private void reset(Counter counter, long value) {
+        Bucket current = currentBucket();
+        for (int i = 0; i < this.numOfBuckets; i++) {
+            Bucket bucket = this.buckets.get(i);
+            if (bucket != null) {
+                bucket.counts.set(counter.ordinal(), 0);
+            }
+        }
+        current.counts.set(counter.ordinal(), value);
+    }
+
+    @Override
+    public void incrementSelect() {
+        add(Counter.SELECT, 1);
+    }
+
+    @Override
+    public void incrementInsert() {
+        add(Counter.INSERT, 1);
+    }
+
+    @Override
+    public void incrementUpdate() {
+        add(Counter.UPDATE, 1);
+    }
+
+    @Override
+    public void incrementDelete() {
+        add(Counter.DELETE, 1);
+    }
+
+    @Override
+    public void incrementOther() {
+        add(Counter.OTHER, 1);
+    }
+
+    @Override
+    public void incrementStatement() {
+        add(Counter.STATEMENT, 1);
+    }
+
+    @Override
+    public void incrementPrepared() {
+        add(Counter.PREPARED, 1);
+    }
+
+    @Override
+    public void incrementCallable() {
+        add(Counter.CALLABLE, 1);
+    }
+
+    @Override
+    public void incrementTotal() {
+        add(Counter.TOTAL, 1);
+    }
+
+    @Override
+    public void incrementSuccess() {
+        add(Counter.SUCCESS, 1);
+    }
+
+    @Override
+    public void incrementFailure() {
+        add(Counter.FAILURE, 1);
+    }
+
+    @Override
+    public void incrementTime(long delta) {
+        add(Counter.TIME, delta);
+    }
+
+    @Override
+    public long getSelect() {
+        return getWindowTotal(Counter.SELECT);
+    }
+
+    @Override
+    public void setSelect(long select) {
+        reset(Counter.SELECT, select);
+    }
+
+    @Override
+    public long getInsert() {
+        return getWindowTotal(Counter.INSERT);
+    }
+
+    @Override
+    public void setInsert(long insert) {
+        reset(Counter.INSERT, insert);
+    }
+
+    @Override
+    public long getUpdate() {
+        return getWindowTotal(Counter.UPDATE);
+    }
+
+    @Override
+    public void setUpdate(long update) {
+        reset(Counter.UPDATE, update);
+    }
+
+    @Override
+    public long getDelete() {
+        return getWindowTotal(Counter.DELETE);
+    }
+
+    @Override
+    public void setDelete(long delete) {
+        reset(Counter.DELETE, delete);
+    }
+
+    @Override
+    public long getOther() {
+        return getWindowTotal(Counter.OTHER);
+    }
+
+    @Override
+    public void setOther(long other) {
+        reset(Counter.OTHER, other);
+    }
+
+    @Override
+    public long getStatement() {
+        return getWindowTotal(Counter.STATEMENT);
+    }
+
+    @Override
+    public void setStatement(long statement) {
+        reset(Counter.STATEMENT, statement);
+    }
+
+    @Override
+    public long getPrepared() {
+        return getWindowTotal(Counter.PREPARED);
+    }
+
+    @Override
+    public void setPrepared(long prepared) {
+        reset(Counter.PREPARED, prepared);
+    }
+
+    @Override
+    public long getCallable() {
+        return getWindowTotal(Counter.CALLABLE);
+    }
+
+    @Override
+    public void setCallable(long callable) {
+        reset(Counter.CALLABLE, callable);
+    }
+
+    @Override
+    public long getTotal() {
+        return getWindowTotal(Counter.TOTAL);
+    }
+
+    @Override
+    public void setTotal(long total) {
+        reset(Counter.TOTAL, total);
+    }
+
+    @Override
+    public long getSuccess() {
+        return getWindowTotal(Counter.SUCCESS);
+    }
+
+    @Override
+    public void setSuccess(long success) {
+        reset(Counter.SUCCESS, success);
+    }
+
+    @Override
+    public long getFailure() {
+        return getWindowTotal(Counter.FAILURE);
+    }
+
+    @Override
+    public void setFailure(long failure) {
+        reset(Counter.FAILURE, failure);
+    }
+
+    @Override
+    public long getTime() {
+        return getWindowTotal(Counter.TIME);
+    }
+
+    @Override
+    public void setTime(long time) {
+        reset(Counter.TIME, time);
+    }
+
+}
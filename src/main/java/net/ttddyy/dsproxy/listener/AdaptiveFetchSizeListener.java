@@ -0,0 +1,118 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.ResultSetMetrics;
+import net.ttddyy.dsproxy.proxy.FetchSizeProvider;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remember typical number of rows read per query, and provide fetch size for the next execution of the same query.
+ *
+ * <p>Number of rows is observed by {@link net.ttddyy.dsproxy.proxy.ResultSetMetricsProxyLogic}, and kept as moving
+ * average per query string. Fetch size is the average number of rows plus one(to avoid an extra round trip to find
+ * the end of rows), bounded by min and max fetch size.
+ *
+ * <p>Number of remembered queries is bounded by {@link #setMaxQueries(int)}. When the limit is reached, new queries are
+ * not remembered.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.support.ProxyDataSourceBuilder#adaptiveFetchSize(int, int)
+ * @since 1.8
+ */
+public class AdaptiveFetchSizeListener extends NoOpQueryExecutionListener implements ResultSetMetricsListener, FetchSizeProvider {
+
+    public static final int DEFAULT_MAX_QUERIES = 1000;
+
+    private final int minFetchSize;
+    private final int maxFetchSize;
+    private int maxQueries = DEFAULT_MAX_QUERIES;
+
+    // average is kept as double bits
+    private ConcurrentMap<String, AtomicLong> averageRows = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * @param minFetchSize lower bound of fetch size
+     * @param maxFetchSize upper bound of fetch size
+     */
+    public AdaptiveFetchSizeListener(int minFetchSize, int maxFetchSize) {
+        if (minFetchSize < 1 || maxFetchSize < minFetchSize) {
+            throw new IllegalArgumentException("fetch size must satisfy 1 <= minFetchSize <= maxFetchSize");
+        }
+        this.minFetchSize = minFetchSize;
+        this.maxFetchSize = maxFetchSize;
+    }
+
+    @Override
+    public void afterResultSetClose(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, ResultSetMetrics metrics) {
+        if (queryInfoList.size() != 1) {
+            return;
+        }
+        String query = queryInfoList.get(0).getQuery();
+        long rows = metrics.getRowCount();
+
+        AtomicLong average = this.averageRows.get(query);
+        if (average == null) {
+            if (this.averageRows.size() >= this.maxQueries) {
+                return;
+            }
+            average = this.averageRows.putIfAbsent(query, new AtomicLong(Double.doubleToLongBits(rows)));
+            if (average == null) {
+                return;  // first observation
+            }
+        }
+
+        // exponential moving average with weight 1/4 to the latest value
+        while (true) {
+            long current = average.get();
+            double next = (Double.longBitsToDouble(current) * 3 + rows) / 4;
+            if (average.compareAndSet(current, Double.doubleToLongBits(next))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Fetch size for the given query.
+     *
+     * @param query query
+     * @return fetch size. {@code null} when the query has not been observed.
+     */
+    @Override
+    public Integer getFetchSize(String query) {
+        AtomicLong average = this.averageRows.get(query);
+        if (average == null) {
+            return null;
+        }
+        long fetchSize = Math.round(Double.longBitsToDouble(average.get())) + 1;
+        return (int) Math.max(this.minFetchSize, Math.min(this.maxFetchSize, fetchSize));
+    }
+
+    public void clear() {
+        this.averageRows.clear();
+    }
+
+    public int getMinFetchSize() {
+        return minFetchSize;
+    }
+
+    public int getMaxFetchSize() {
+        return maxFetchSize;
+    }
+
+    public int getMaxQueries() {
+        return maxQueries;
+    }
+
+    /**
+     * @param maxQueries max number of queries to remember
+     */
+    public void setMaxQueries(int maxQueries) {
+        this.maxQueries = maxQueries;
+    }
+
+}
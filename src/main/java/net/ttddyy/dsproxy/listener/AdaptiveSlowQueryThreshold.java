@@ -0,0 +1,296 @@
+package net.ttddyy.dsproxy.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Slow query threshold derived from the recent latency distribution of each query fingerprint.
+ *
+ * <p>Threshold of a fingerprint is {@code multiplier * percentile} of its recent execution times, bounded by the min
+ * and max thresholds. Until a fingerprint has {@code minSamples} executions, the default threshold of
+ * {@link SlowQueryListener} is used.
+ *
+ * <p>Execution times are kept in a fixed size log-scale histogram per fingerprint (4 buckets per power of two, from
+ * 1 microsecond up to about 4.5 minutes). Every {@code decayInterval} samples, counts are halved so that the
+ * distribution follows recent executions. Number of tracked fingerprints is capped by {@code maxFingerprints}; when a
+ * new fingerprint exceeds it, the least recently recorded tenth of fingerprints is evicted. Queries of untracked
+ * fingerprints use the default threshold.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see SlowQueryListener#setAdaptiveThreshold(AdaptiveSlowQueryThreshold)
+ * @see QueryUtils#getFingerprint(String)
+ * @since 1.8
+ */
+public class AdaptiveSlowQueryThreshold {
+
+    private static final int MIN_EXPONENT = 10;  // 2^10 nanos ~= 1 micro sec
+    private static final int MAX_EXPONENT = 38;  // 2^38 nanos ~= 4.5 min
+    private static final int SUB_BUCKETS = 4;
+    private static final int NUM_OF_BUCKETS = (MAX_EXPONENT - MIN_EXPONENT) * SUB_BUCKETS + 2;
+
+    /**
+     * Fixed size latency histogram of a fingerprint.
+     */
+    protected static class LatencyTracker {
+        private final long[] counts = new long[NUM_OF_BUCKETS];
+        private long total;
+        private int samplesSinceDecay;
+        private volatile long thresholdInNanos = -1;  // -1 until min samples are recorded
+        private volatile long lastRecordedAt = System.nanoTime();
+    }
+
+    private static final Comparator<Map.Entry<String, LatencyTracker>> LAST_RECORDED_AT_COMPARATOR =
+            new Comparator<Map.Entry<String, LatencyTracker>>() {
+                @Override
+                public int compare(Map.Entry<String, LatencyTracker> left, Map.Entry<String, LatencyTracker> right) {
+                    long leftTime = left.getValue().lastRecordedAt;
+                    long rightTime = right.getValue().lastRecordedAt;
+                    // nano time may overflow
+                    return leftTime - rightTime < 0 ? -1 : (leftTime == rightTime ? 0 : 1);
+                }
+            };
+
+    private final ConcurrentMap<String, LatencyTracker> trackers = new ConcurrentHashMap<String, LatencyTracker>();
+    private final AtomicInteger numOfTrackers = new AtomicInteger();
+    private final Object evictionLock = new Object();
+
+    private double multiplier = 3.0;
+    private double percentile = 99.0;
+    private long minThresholdInNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private long maxThresholdInNanos = TimeUnit.MINUTES.toNanos(1);
+    private int minSamples = 100;
+    private int decayInterval = 1000;
+    private int maxFingerprints = 1000;
+
+    /**
+     * Get the threshold for the fingerprint.
+     *
+     * @param fingerprint             query fingerprint
+     * @param defaultThresholdInNanos threshold to use when the fingerprint does not have enough samples
+     * @return threshold in nanoseconds
+     */
+    public long getThreshold(String fingerprint, long defaultThresholdInNanos) {
+        LatencyTracker tracker = this.trackers.get(fingerprint);
+        if (tracker == null) {
+            return defaultThresholdInNanos;
+        }
+        long threshold = tracker.thresholdInNanos;
+        return threshold < 0 ? defaultThresholdInNanos : threshold;
+    }
+
+    /**
+     * Record an execution time of the fingerprint.
+     *
+     * @param fingerprint        query fingerprint
+     * @param elapsedTimeInNanos execution time in nanoseconds
+     */
+    public void record(String fingerprint, long elapsedTimeInNanos) {
+        LatencyTracker tracker = getOrCreateTracker(fingerprint);
+        if (tracker == null) {
+            return;  // exceeded max fingerprints
+        }
+
+        int index = getBucketIndex(elapsedTimeInNanos);
+        tracker.lastRecordedAt = System.nanoTime();
+        synchronized (tracker) {
+            tracker.counts[index]++;
+            tracker.total++;
+            if (++tracker.samplesSinceDecay >= this.decayInterval) {
+                tracker.samplesSinceDecay = 0;
+                tracker.total = 0;
+                for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+                    tracker.counts[i] >>= 1;
+                    tracker.total += tracker.counts[i];
+                }
+            }
+            if (tracker.thresholdInNanos >= 0 || tracker.total >= this.minSamples) {
+                tracker.thresholdInNanos = calculateThreshold(tracker);
+            }
+        }
+    }
+
+    protected LatencyTracker getOrCreateTracker(String fingerprint) {
+        LatencyTracker tracker = this.trackers.get(fingerprint);
+        if (tracker != null) {
+            return tracker;
+        }
+        if (this.numOfTrackers.incrementAndGet() > this.maxFingerprints) {
+            this.numOfTrackers.decrementAndGet();
+            evictLeastRecentlyRecorded();
+            if (this.numOfTrackers.incrementAndGet() > this.maxFingerprints) {
+                this.numOfTrackers.decrementAndGet();  // filled by other threads
+                return null;
+            }
+        }
+        LatencyTracker existing = this.trackers.putIfAbsent(fingerprint, new LatencyTracker());
+        if (existing != null) {
+            this.numOfTrackers.decrementAndGet();  // created by other thread
+            return existing;
+        }
+        return this.trackers.get(fingerprint);
+    }
+
+    // evict a tenth of trackers at once, so that the scan is amortized over subsequent new fingerprints
+    private void evictLeastRecentlyRecorded() {
+        synchronized (this.evictionLock) {
+            if (this.numOfTrackers.get() < this.maxFingerprints) {
+                return;  // evicted by other thread
+            }
+            List<Map.Entry<String, LatencyTracker>> entries = new ArrayList<Map.Entry<String, LatencyTracker>>(this.trackers.entrySet());
+            Collections.sort(entries, LAST_RECORDED_AT_COMPARATOR);
+            int numToEvict = Math.min(entries.size(), Math.max(1, this.maxFingerprints / 10));
+            for (int i = 0; i < numToEvict; i++) {
+                Map.Entry<String, LatencyTracker> entry = entries.get(i);
+                if (this.trackers.remove(entry.getKey(), entry.getValue())) {
+                    this.numOfTrackers.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private long calculateThreshold(LatencyTracker tracker) {
+        // number of samples at or below the percentile
+        long rank = (long) Math.ceil(tracker.total * this.percentile / 100.0);
+        long cumulative = 0;
+        int index = NUM_OF_BUCKETS - 1;
+        for (int i = 0; i < NUM_OF_BUCKETS; i++) {
+            cumulative += tracker.counts[i];
+            if (cumulative >= rank) {
+                index = i;
+                break;
+            }
+        }
+        long threshold = (long) (getBucketUpperBound(index) * this.multiplier);
+        return Math.min(Math.max(threshold, this.minThresholdInNanos), this.maxThresholdInNanos);
+    }
+
+    static int getBucketIndex(long nanos) {
+        if (nanos < (1L << MIN_EXPONENT)) {
+            return 0;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent >= MAX_EXPONENT) {
+            return NUM_OF_BUCKETS - 1;
+        }
+        // next 2 bits after the highest bit
+        int subBucket = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket + 1;
+    }
+
+    static long getBucketUpperBound(int index) {
+        if (index == 0) {
+            return 1L << MIN_EXPONENT;
+        }
+        if (index == NUM_OF_BUCKETS - 1) {
+            return 1L << MAX_EXPONENT;  // overflow bucket, capped by max threshold
+        }
+        int exponent = (index - 1) / SUB_BUCKETS + MIN_EXPONENT;
+        int subBucket = (index - 1) % SUB_BUCKETS;
+        return (1L << exponent) + ((subBucket + 1L) << (exponent - 2));
+    }
+
+    /**
+     * @return number of tracked fingerprints
+     */
+    public int getNumOfFingerprints() {
+        return this.numOfTrackers.get();
+    }
+
+    /**
+     * Remove all tracked fingerprints.
+     */
+    public void clear() {
+        for (String fingerprint : this.trackers.keySet()) {
+            if (this.trackers.remove(fingerprint) != null) {
+                this.numOfTrackers.decrementAndGet();
+            }
+        }
+    }
+
+    public double getMultiplier() {
+        return multiplier;
+    }
+
+    /**
+     * @param multiplier multiplier applied to the percentile. (default is 3.0)
+     */
+    public void setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @param percentile percentile of recent execution times, e.g. {@code 99.0}. (default is 99.0)
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * @param minThreshold min threshold. (default is 10 milliseconds)
+     * @param timeUnit     time unit
+     */
+    public void setMinThreshold(long minThreshold, TimeUnit timeUnit) {
+        this.minThresholdInNanos = timeUnit.toNanos(minThreshold);
+    }
+
+    public long getMinThresholdInNanos() {
+        return minThresholdInNanos;
+    }
+
+    /**
+     * @param maxThreshold max threshold. (default is 1 minute)
+     * @param timeUnit     time unit
+     */
+    public void setMaxThreshold(long maxThreshold, TimeUnit timeUnit) {
+        this.maxThresholdInNanos = timeUnit.toNanos(maxThreshold);
+    }
+
+    public long getMaxThresholdInNanos() {
+        return maxThresholdInNanos;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * @param minSamples number of executions required to derive the threshold of a fingerprint. (default is 100)
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public int getDecayInterval() {
+        return decayInterval;
+    }
+
+    /**
+     * @param decayInterval number of executions to halve the recorded counts of a fingerprint. (default is 1000)
+     */
+    public void setDecayInterval(int decayInterval) {
+        this.decayInterval = decayInterval;
+    }
+
+    public int getMaxFingerprints() {
+        return maxFingerprints;
+    }
+
+    /**
+     * @param maxFingerprints max number of tracked fingerprints. least recently recorded ones are evicted. (default is 1000)
+     */
+    public void setMaxFingerprints(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+    }
+
+}
@@ -0,0 +1,298 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountHolder;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link ThreadQueryCountHolder} that also provides process-wide query counts.
+ *
+ * <p>As well as {@link ThreadQueryCountHolder}, {@link QueryCount} in {@link QueryCountHolder} provides the counts of
+ * the current thread (e.g. per request). In addition, each thread keeps its own cumulative counts per datasource
+ * which are registered to this holder. These counters are mostly updated by the owner thread, so the hot path rarely
+ * contends with other threads. Worker threads attached by {@link net.ttddyy.dsproxy.QueryCountContext} also update the
+ * counters of the thread that created the counts; increments are atomic.
+ *
+ * <p>{@link #getGlobalQueryCount(String)} merges all registered counters on demand. Counters of threads that have
+ * terminated are folded into retired counts at read time; therefore, counts from dead threads are kept while the
+ * registry does not grow with thread churn.
+ *
+ * <p>{@link QueryCountHolder#clear()} only clears the counts of the current thread. Use {@link #clearGlobal()} to
+ * reset the process-wide counts. Counters are never written by the reset; it takes a snapshot of each counter as the
+ * baseline, and subsequent reads subtract it.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class AggregatingThreadQueryCountHolder extends ThreadQueryCountHolder {
+
+    private static class ThreadEntry {
+        private final WeakReference<Thread> thread;
+        private final String dataSourceName;
+        private final QueryCount queryCount = new QueryCount();
+        private final QueryCount baseline = new QueryCount();  // counts at the last clearGlobal(), guarded by holder
+
+        private ThreadEntry(Thread thread, String dataSourceName) {
+            this.thread = new WeakReference<Thread>(thread);
+            this.dataSourceName = dataSourceName;
+        }
+
+        private boolean isAlive() {
+            Thread thread = this.thread.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+
+    /**
+     * {@link QueryCount} that also increments the cumulative counts of the thread.
+     */
+    private static class AggregatingQueryCount extends QueryCount {
+
+        private final QueryCount threadTotal;
+
+        private AggregatingQueryCount(QueryCount threadTotal) {
+            this.threadTotal = threadTotal;
+        }
+
+        @Override
+        public void incrementSelect() {
+            super.incrementSelect();
+            this.threadTotal.incrementSelect();
+        }
+
+        @Override
+        public void incrementInsert() {
+            super.incrementInsert();
+            this.threadTotal.incrementInsert();
+        }
+
+        @Override
+        public void incrementUpdate() {
+            super.incrementUpdate();
+            this.threadTotal.incrementUpdate();
+        }
+
+        @Override
+        public void incrementDelete() {
+            super.incrementDelete();
+            this.threadTotal.incrementDelete();
+        }
+
+        @Override
+        public void incrementOther() {
+            super.incrementOther();
+            this.threadTotal.incrementOther();
+        }
+
+        @Override
+        public void incrementStatement() {
+            super.incrementStatement();
+            this.threadTotal.incrementStatement();
+        }
+
+        @Override
+        public void incrementPrepared() {
+            super.incrementPrepared();
+            this.threadTotal.incrementPrepared();
+        }
+
+        @Override
+        public void incrementCallable() {
+            super.incrementCallable();
+            this.threadTotal.incrementCallable();
+        }
+
+        @Override
+        public void incrementTotal() {
+            super.incrementTotal();
+            this.threadTotal.incrementTotal();
+        }
+
+        @Override
+        public void incrementSuccess() {
+            super.incrementSuccess();
+            this.threadTotal.incrementSuccess();
+        }
+
+        @Override
+        public void incrementFailure() {
+            super.incrementFailure();
+            this.threadTotal.incrementFailure();
+        }
+
+        @Override
+        public void incrementTime(long delta) {
+            super.incrementTime(delta);
+            this.threadTotal.incrementTime(delta);
+        }
+    }
+
+    private final ThreadLocal<Map<String, QueryCount>> threadTotals = new ThreadLocal<Map<String, QueryCount>>() {
+        @Override
+        protected Map<String, QueryCount> initialValue() {
+            return new HashMap<String, QueryCount>();
+        }
+    };
+
+    private final Queue<ThreadEntry> threadEntries = new ConcurrentLinkedQueue<ThreadEntry>();
+
+    // guarded by this
+    private final Map<String, QueryCount> retiredCounts = new HashMap<String, QueryCount>();
+
+    @Override
+    protected QueryCount createQueryCount(String dataSourceName) {
+        return new AggregatingQueryCount(getOrCreateThreadTotal(dataSourceName));
+    }
+
+    private QueryCount getOrCreateThreadTotal(String dataSourceName) {
+        Map<String, QueryCount> map = this.threadTotals.get();
+        QueryCount threadTotal = map.get(dataSourceName);
+        if (threadTotal == null) {
+            ThreadEntry entry = new ThreadEntry(Thread.currentThread(), dataSourceName);
+            this.threadEntries.add(entry);
+            threadTotal = entry.queryCount;
+            map.put(dataSourceName, threadTotal);
+        }
+        return threadTotal;
+    }
+
+    /**
+     * Merge counts of all threads including terminated ones for the given datasource.
+     *
+     * @param dataSourceName datasource name
+     * @return merged query count
+     */
+    public synchronized QueryCount getGlobalQueryCount(String dataSourceName) {
+        retireDeadThreads();
+        QueryCount result = new QueryCount();
+        QueryCount retired = this.retiredCounts.get(dataSourceName);
+        if (retired != null) {
+            add(result, retired);
+        }
+        for (ThreadEntry entry : this.threadEntries) {
+            if (entry.dataSourceName.equals(dataSourceName)) {
+                addSinceBaseline(result, entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merge counts of all threads including terminated ones per datasource.
+     *
+     * @return merged query counts keyed by datasource name
+     */
+    public synchronized Map<String, QueryCount> getGlobalQueryCounts() {
+        retireDeadThreads();
+        Map<String, QueryCount> result = new HashMap<String, QueryCount>();
+        for (Map.Entry<String, QueryCount> entry : this.retiredCounts.entrySet()) {
+            add(getOrCreate(result, entry.getKey()), entry.getValue());
+        }
+        for (ThreadEntry entry : this.threadEntries) {
+            addSinceBaseline(getOrCreate(result, entry.dataSourceName), entry);
+        }
+        return result;
+    }
+
+    /**
+     * Merge counts of all threads and all datasources.
+     *
+     * @return grand total
+     */
+    public QueryCount getGlobalGrandTotal() {
+        QueryCount result = new QueryCount();
+        for (QueryCount queryCount : getGlobalQueryCounts().values()) {
+            add(result, queryCount);
+        }
+        return result;
+    }
+
+    /**
+     * Reset process-wide counts.
+     *
+     * Counts of the current thread in {@link QueryCountHolder} are not cleared.
+     */
+    public synchronized void clearGlobal() {
+        this.retiredCounts.clear();
+        // counters may be incremented concurrently; snapshot them instead of resetting
+        for (ThreadEntry entry : this.threadEntries) {
+            reset(entry.baseline);
+            add(entry.baseline, entry.queryCount);
+        }
+    }
+
+    private void retireDeadThreads() {
+        Iterator<ThreadEntry> iterator = this.threadEntries.iterator();
+        while (iterator.hasNext()) {
+            ThreadEntry entry = iterator.next();
+            if (!entry.isAlive()) {
+                iterator.remove();
+                addSinceBaseline(getOrCreate(this.retiredCounts, entry.dataSourceName), entry);
+            }
+        }
+    }
+
+    private static QueryCount getOrCreate(Map<String, QueryCount> map, String dataSourceName) {
+        QueryCount queryCount = map.get(dataSourceName);
+        if (queryCount == null) {
+            queryCount = new QueryCount();
+            map.put(dataSourceName, queryCount);
+        }
+        return queryCount;
+    }
+
+    private static void add(QueryCount total, QueryCount count) {
+        total.setSelect(total.getSelect() + count.getSelect());
+        total.setInsert(total.getInsert() + count.getInsert());
+        total.setUpdate(total.getUpdate() + count.getUpdate());
+        total.setDelete(total.getDelete() + count.getDelete());
+        total.setOther(total.getOther() + count.getOther());
+        total.setStatement(total.getStatement() + count.getStatement());
+        total.setPrepared(total.getPrepared() + count.getPrepared());
+        total.setCallable(total.getCallable() + count.getCallable());
+        total.setTotal(total.getTotal() + count.getTotal());
+        total.setSuccess(total.getSuccess() + count.getSuccess());
+        total.setFailure(total.getFailure() + count.getFailure());
+        total.setTime(total.getTime() + count.getTime());
+    }
+
+    // counters are monotonic and the baseline is taken earlier; therefore, the difference is never negative
+    private static void addSinceBaseline(QueryCount total, ThreadEntry entry) {
+        add(total, entry.queryCount);
+        QueryCount baseline = entry.baseline;
+        total.setSelect(total.getSelect() - baseline.getSelect());
+        total.setInsert(total.getInsert() - baseline.getInsert());
+        total.setUpdate(total.getUpdate() - baseline.getUpdate());
+        total.setDelete(total.getDelete() - baseline.getDelete());
+        total.setOther(total.getOther() - baseline.getOther());
+        total.setStatement(total.getStatement() - baseline.getStatement());
+        total.setPrepared(total.getPrepared() - baseline.getPrepared());
+        total.setCallable(total.getCallable() - baseline.getCallable());
+        total.setTotal(total.getTotal() - baseline.getTotal());
+        total.setSuccess(total.getSuccess() - baseline.getSuccess());
+        total.setFailure(total.getFailure() - baseline.getFailure());
+        total.setTime(total.getTime() - baseline.getTime());
+    }
+
+    private static void reset(QueryCount count) {
+        count.setSelect(0);
+        count.setInsert(0);
+        count.setUpdate(0);
+        count.setDelete(0);
+        count.setOther(0);
+        count.setStatement(0);
+        count.setPrepared(0);
+        count.setCallable(0);
+        count.setTotal(0);
+        count.setSuccess(0);
+        count.setFailure(0);
+        count.setTime(0);
+    }
+
+}
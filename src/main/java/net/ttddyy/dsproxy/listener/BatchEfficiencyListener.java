@@ -0,0 +1,301 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detect repeated executions of the same INSERT/UPDATE/DELETE on a connection that could have been batched.
+ *
+ * <p>A run of non-batch executions of the same write query on the same connection is tracked while the interval
+ * between executions is within {@link #setWindowInMillis(long)}. The run ends when a different query or a batch is
+ * executed on the connection, the interval exceeds the window, or the connection is closed. When the run has
+ * {@link #setMinRepeats(int)} or more executions, {@link #onUnbatchedWrites(UnbatchedWrites)} is called.
+ * A connection is expected to be used by one thread at a time.
+ *
+ * <p>Runs whose window has expired are ended when other executions happen after the window, even if the connection is
+ * no longer used. Number of tracked runs is bounded by {@link #setMaxRuns(int)}. When the limit is reached, new runs
+ * are not tracked until existing runs end.
+ *
+ * <p>Also, batch sizes of {@code executeBatch} calls are recorded to {@link BucketHistogram} per datasource.
+ *
+ * <p>To end runs as soon as connections are closed, this listener also needs to be registered as
+ * {@link MethodExecutionListener}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class BatchEfficiencyListener implements QueryExecutionListener, MethodExecutionListener {
+
+    /**
+     * Default bucket upper bounds of batch size.
+     */
+    public static final long[] DEFAULT_BATCH_SIZE_UPPER_BOUNDS = new long[]{1, 2, 5, 10, 20, 50, 100, 200, 500, 1000};
+
+    public static final int DEFAULT_MIN_REPEATS = 5;
+    public static final long DEFAULT_WINDOW_IN_MILLIS = 1000;
+    public static final int DEFAULT_MAX_RUNS = 1000;
+
+    /**
+     * Repeated executions of the same write query that were not batched.
+     */
+    public static class UnbatchedWrites {
+        private String dataSourceName;
+        private String connectionId;
+        private String query;
+        private int count;
+        private long totalElapsedTime;
+        private long firstExecutionTimeInMillis;
+        private long lastExecutionTimeInMillis;
+
+        public String getDataSourceName() {
+            return dataSourceName;
+        }
+
+        public String getConnectionId() {
+            return connectionId;
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return number of executions in the run
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of {@link ExecutionInfo#getElapsedTime()} of the executions
+         */
+        public long getTotalElapsedTime() {
+            return totalElapsedTime;
+        }
+
+        public long getFirstExecutionTimeInMillis() {
+            return firstExecutionTimeInMillis;
+        }
+
+        public long getLastExecutionTimeInMillis() {
+            return lastExecutionTimeInMillis;
+        }
+
+        /**
+         * Number of database round trips that could have been saved by sending the executions as a single batch.
+         *
+         * @return potentially saved round trips
+         */
+        public int getPotentialSavedRoundTrips() {
+            return this.count - 1;
+        }
+    }
+
+    private int minRepeats = DEFAULT_MIN_REPEATS;
+    private long windowInMillis = DEFAULT_WINDOW_IN_MILLIS;
+    private long[] batchSizeUpperBounds = DEFAULT_BATCH_SIZE_UPPER_BOUNDS;
+    private int maxRuns = DEFAULT_MAX_RUNS;
+
+    // key is datasource name and connection id
+    private ConcurrentMap<String, UnbatchedWrites> runs = new ConcurrentHashMap<String, UnbatchedWrites>();
+    private ConcurrentMap<String, BucketHistogram> batchSizeHistograms = new ConcurrentHashMap<String, BucketHistogram>();
+
+    private AtomicLong lastExpirationTimeInMillis = new AtomicLong(System.currentTimeMillis());
+    private AtomicLong unbatchedWritesCount = new AtomicLong();
+    private AtomicLong potentialSavedRoundTrips = new AtomicLong();
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String key = getKey(execInfo.getDataSourceName(), execInfo.getConnectionId());
+        long now = System.currentTimeMillis();
+        expireRuns(now);
+
+        if (execInfo.isBatch()) {
+            endRun(key);
+            getOrCreateBatchSizeHistogram(execInfo.getDataSourceName()).record(execInfo.getBatchSize());
+            return;
+        }
+
+        if (!execInfo.isSuccess() || queryInfoList.size() != 1 || !isWrite(queryInfoList.get(0).getQuery())) {
+            endRun(key);
+            return;
+        }
+
+        String query = queryInfoList.get(0).getQuery();
+
+        UnbatchedWrites run = this.runs.get(key);
+        if (run != null && run.query.equals(query) && now - run.lastExecutionTimeInMillis <= this.windowInMillis) {
+            run.count++;
+            run.totalElapsedTime += execInfo.getElapsedTime();
+            run.lastExecutionTimeInMillis = now;
+            return;
+        }
+
+        // start a new run
+        if (run == null && this.runs.size() >= this.maxRuns) {
+            return;
+        }
+        UnbatchedWrites newRun = new UnbatchedWrites();
+        newRun.dataSourceName = execInfo.getDataSourceName();
+        newRun.connectionId = execInfo.getConnectionId();
+        newRun.query = query;
+        newRun.count = 1;
+        newRun.totalElapsedTime = execInfo.getElapsedTime();
+        newRun.firstExecutionTimeInMillis = now;
+        newRun.lastExecutionTimeInMillis = now;
+        report(this.runs.put(key, newRun));
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (executionContext.getTarget() instanceof Connection && "close".equals(executionContext.getMethod().getName())) {
+            ConnectionInfo connectionInfo = executionContext.getConnectionInfo();
+            endRun(getKey(connectionInfo.getDataSourceName(), connectionInfo.getConnectionId()));
+        }
+    }
+
+    private void endRun(String key) {
+        report(this.runs.remove(key));
+    }
+
+    // end runs whose window has expired. performed at most once per window.
+    private void expireRuns(long now) {
+        long lastExpirationTime = this.lastExpirationTimeInMillis.get();
+        if (now - lastExpirationTime <= this.windowInMillis
+                || !this.lastExpirationTimeInMillis.compareAndSet(lastExpirationTime, now)) {
+            return;
+        }
+        for (Map.Entry<String, UnbatchedWrites> entry : this.runs.entrySet()) {
+            UnbatchedWrites run = entry.getValue();
+            if (now - run.lastExecutionTimeInMillis > this.windowInMillis && this.runs.remove(entry.getKey(), run)) {
+                report(run);
+            }
+        }
+    }
+
+    private void report(UnbatchedWrites run) {
+        if (run == null || run.count < this.minRepeats) {
+            return;
+        }
+        this.unbatchedWritesCount.incrementAndGet();
+        this.potentialSavedRoundTrips.addAndGet(run.getPotentialSavedRoundTrips());
+        onUnbatchedWrites(run);
+    }
+
+    /**
+     * Callback method when repeated executions that could have been batched are detected.
+     *
+     * @param unbatchedWrites detected executions
+     */
+    protected void onUnbatchedWrites(UnbatchedWrites unbatchedWrites) {
+    }
+
+    protected boolean isWrite(String query) {
+        QueryType type = QueryUtils.getQueryType(query);
+        return type == QueryType.INSERT || type == QueryType.UPDATE || type == QueryType.DELETE;
+    }
+
+    private static String getKey(String dataSourceName, String connectionId) {
+        return dataSourceName + ":" + connectionId;
+    }
+
+    protected BucketHistogram getOrCreateBatchSizeHistogram(String dataSourceName) {
+        BucketHistogram histogram = this.batchSizeHistograms.get(dataSourceName);
+        if (histogram == null) {
+            this.batchSizeHistograms.putIfAbsent(dataSourceName, new BucketHistogram(this.batchSizeUpperBounds));
+            histogram = this.batchSizeHistograms.get(dataSourceName);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @return histogram of batch sizes. {@code null} if no batch has been executed on the datasource.
+     */
+    public BucketHistogram getBatchSizeHistogram(String dataSourceName) {
+        return this.batchSizeHistograms.get(dataSourceName);
+    }
+
+    public ConcurrentMap<String, BucketHistogram> getBatchSizeHistograms() {
+        return batchSizeHistograms;
+    }
+
+    /**
+     * @return number of detected runs of unbatched writes
+     */
+    public long getUnbatchedWritesCount() {
+        return this.unbatchedWritesCount.get();
+    }
+
+    /**
+     * @return sum of round trips that could have been saved by batching
+     */
+    public long getPotentialSavedRoundTrips() {
+        return this.potentialSavedRoundTrips.get();
+    }
+
+    public void clear() {
+        this.runs.clear();
+        this.batchSizeHistograms.clear();
+        this.unbatchedWritesCount.set(0);
+        this.potentialSavedRoundTrips.set(0);
+    }
+
+    public int getMinRepeats() {
+        return minRepeats;
+    }
+
+    /**
+     * @param minRepeats min number of executions to report
+     */
+    public void setMinRepeats(int minRepeats) {
+        this.minRepeats = minRepeats;
+    }
+
+    public long getWindowInMillis() {
+        return windowInMillis;
+    }
+
+    /**
+     * @param windowInMillis max interval between executions to be considered as a run
+     */
+    public void setWindowInMillis(long windowInMillis) {
+        this.windowInMillis = windowInMillis;
+    }
+
+    public int getMaxRuns() {
+        return maxRuns;
+    }
+
+    /**
+     * @param maxRuns max number of runs to track at the same time
+     */
+    public void setMaxRuns(int maxRuns) {
+        this.maxRuns = maxRuns;
+    }
+
+    /**
+     * @param batchSizeUpperBounds inclusive bucket upper bounds of batch size in ascending order
+     */
+    public void setBatchSizeUpperBounds(long[] batchSizeUpperBounds) {
+        this.batchSizeUpperBounds = batchSizeUpperBounds.clone();
+    }
+
+}
@@ -0,0 +1,87 @@
+package net.ttddyy.dsproxy.listener;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed bucket histogram of long values such as elapsed time or batch size.
+ *
+ * Each bucket is defined by an inclusive upper bound. Values larger than the last upper bound are counted in an
+ * extra overflow bucket. Recording a value does not acquire any lock.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see QueryLatencyHistogramListener
+ * @see BatchEfficiencyListener
+ * @since 1.8
+ */
+public class BucketHistogram {
+
+    private final long[] upperBounds;
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * @param upperBounds inclusive upper bounds of buckets in ascending order
+     */
+    public BucketHistogram(long[] upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i - 1] >= upperBounds[i]) {
+                throw new IllegalArgumentException("upper bounds must be in ascending order");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        this.bucketCounts = new AtomicLongArray(upperBounds.length + 1);  // last one is for overflow
+    }
+
+    public void record(long value) {
+        int index = Arrays.binarySearch(this.upperBounds, value);
+        if (index < 0) {
+            index = -index - 1;  // insertion point is the first bucket whose upper bound is larger than value
+        }
+        this.bucketCounts.getAndIncrement(index);
+        this.count.getAndIncrement();
+        this.sum.getAndAdd(value);
+    }
+
+    /**
+     * @return number of buckets excluding the overflow bucket
+     */
+    public int getNumOfBuckets() {
+        return this.upperBounds.length;
+    }
+
+    /**
+     * @param index bucket index
+     * @return inclusive upper bound of the bucket
+     */
+    public long getUpperBound(int index) {
+        return this.upperBounds[index];
+    }
+
+    /**
+     * Number of recorded values that fell into the bucket.
+     *
+     * @param index bucket index. {@link #getNumOfBuckets()} for the overflow bucket.
+     * @return num of values in the bucket (non cumulative)
+     */
+    public long getBucketCount(int index) {
+        return this.bucketCounts.get(index);
+    }
+
+    /**
+     * @return total number of recorded values
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * @return sum of recorded values
+     */
+    public long getSum() {
+        return this.sum.get();
+    }
+
+}
@@ -0,0 +1,35 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Retrieve the execution plan of a query from the database.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see QueryPlanExplainer
+ * @since 1.8
+ */
+public interface ExplainDialect {
+
+    // HSQLDB does not take parameters for "EXPLAIN PLAN FOR"
+    ExplainDialect HSQLDB = new SimpleExplainDialect("EXPLAIN PLAN FOR ", false);
+    ExplainDialect H2 = new SimpleExplainDialect("EXPLAIN ");
+    ExplainDialect MYSQL = new SimpleExplainDialect("EXPLAIN ");
+    ExplainDialect POSTGRESQL = new SimpleExplainDialect("EXPLAIN ");
+
+    /**
+     * Explain the given query.
+     *
+     * @param connection connection to run explain
+     * @param query      query to explain
+     * @param parameters parameters of the query. Empty for {@link java.sql.Statement}.
+     * @return execution plan
+     * @throws SQLException on failure to explain
+     */
+    String explain(Connection connection, String query, List<ParameterSetOperation> parameters) throws SQLException;
+
+}
@@ -0,0 +1,44 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keep track of number of queries currently executing.
+ *
+ * Only executions whose {@code beforeQuery} has been observed by this listener are counted; therefore, adding this
+ * listener to a datasource while queries are executing does not make the count negative.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class InFlightQueryCountListener implements QueryExecutionListener {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final String customValueKey = getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(this));
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(this.customValueKey, Boolean.TRUE);
+        this.inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        // skip executions that had started before this listener was added
+        if (execInfo.getCustomValue(this.customValueKey, Boolean.class) != null) {
+            this.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of queries currently executing
+     */
+    public int getInFlightQueryCount() {
+        return this.inFlight.get();
+    }
+
+}
@@ -0,0 +1,74 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Record query execution time to {@link BucketHistogram} per datasource.
+ *
+ * Recorded values are {@link ExecutionInfo#getElapsedTime()}; therefore, unit of the bucket bounds needs to match the
+ * unit of {@link net.ttddyy.dsproxy.proxy.Stopwatch} in use (milliseconds by default).
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.support.prometheus.PrometheusMetricsRenderer
+ * @since 1.8
+ */
+public class QueryLatencyHistogramListener implements QueryExecutionListener {
+
+    /**
+     * Default bucket upper bounds in milliseconds.
+     */
+    public static final long[] DEFAULT_UPPER_BOUNDS = new long[]{1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private ConcurrentMap<String, BucketHistogram> histograms = new ConcurrentHashMap<String, BucketHistogram>();
+    private long[] upperBounds = DEFAULT_UPPER_BOUNDS;
+
+    public QueryLatencyHistogramListener() {
+    }
+
+    /**
+     * @param upperBounds inclusive bucket upper bounds in ascending order
+     */
+    public QueryLatencyHistogramListener(long[] upperBounds) {
+        this.upperBounds = upperBounds.clone();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        getOrCreateHistogram(execInfo.getDataSourceName()).record(execInfo.getElapsedTime());
+    }
+
+    protected BucketHistogram getOrCreateHistogram(String dataSourceName) {
+        BucketHistogram histogram = this.histograms.get(dataSourceName);
+        if (histogram == null) {
+            this.histograms.putIfAbsent(dataSourceName, new BucketHistogram(this.upperBounds));
+            histogram = this.histograms.get(dataSourceName);
+        }
+        return histogram;
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @return histogram for the datasource. {@code null} if no query has been executed on the datasource.
+     */
+    public BucketHistogram getHistogram(String dataSourceName) {
+        return this.histograms.get(dataSourceName);
+    }
+
+    public ConcurrentMap<String, BucketHistogram> getHistograms() {
+        return histograms;
+    }
+
+    public void clear() {
+        this.histograms.clear();
+    }
+
+}
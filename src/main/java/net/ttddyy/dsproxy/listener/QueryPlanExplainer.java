@@ -0,0 +1,313 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieve execution plans of queries asynchronously on a separate connection.
+ *
+ * <p>Plans are cached per query fingerprint (see {@link QueryUtils#getFingerprint(String)}) with time-to-live, so that
+ * the same slow query is explained once per time-to-live. Failures are cached as well.
+ *
+ * <p>Only select, insert, update and delete queries are explained with the first parameter set.
+ * Callable statements, and queries with parameters that cannot be set again (e.g. streams or parameters reduced by
+ * {@link net.ttddyy.dsproxy.proxy.ParameterCaptureMode}) are not explained.
+ *
+ * <p>The given {@link DataSource} should be the actual datasource, not the proxy, so that explain queries are not
+ * observed by listeners.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ExplainDialect
+ * @see net.ttddyy.dsproxy.listener.logging.AbstractSlowQueryLoggingListener#setQueryPlanExplainer(QueryPlanExplainer)
+ * @since 1.8
+ */
+public class QueryPlanExplainer {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    /**
+     * Callback to receive a plan.
+     */
+    public interface Callback {
+        /**
+         * @param plan execution plan. {@code null} if the plan is not available.
+         */
+        void onPlan(String plan);
+    }
+
+    private static class CachedPlan {
+        private final String plan;
+        private final long expiresAt;
+
+        private CachedPlan(String plan, long expiresAt) {
+            this.plan = plan;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * LRU map of cached plans.
+     */
+    private static class PlanCache extends LinkedHashMap<String, CachedPlan> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        private PlanCache(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedPlan> eldest) {
+            return size() > this.maxEntries;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final ExplainDialect explainDialect;
+    private final Map<String, CachedPlan> cache;
+    private final ThreadPoolExecutor executor;
+
+    private volatile long timeToLiveInNanos = TimeUnit.MINUTES.toNanos(10);
+
+    public QueryPlanExplainer(DataSource dataSource, ExplainDialect explainDialect) {
+        this(dataSource, explainDialect, 1000, 100);
+    }
+
+    /**
+     * @param dataSource     datasource to run explain
+     * @param explainDialect explain dialect
+     * @param maxEntries     max number of cached plans
+     * @param maxPending     max number of pending explain requests. When exceeded, callback receives {@code null}.
+     */
+    public QueryPlanExplainer(DataSource dataSource, ExplainDialect explainDialect, int maxEntries, int maxPending) {
+        this.dataSource = dataSource;
+        this.explainDialect = explainDialect;
+        this.cache = new PlanCache(maxEntries);
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(maxPending), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = Executors.defaultThreadFactory().newThread(r);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Get plans for the given queries from the cache.
+     *
+     * @param execInfo      execution info
+     * @param queryInfoList queries
+     * @return plans. {@code null} if any of the queries has not been explained or the cached plan has expired.
+     */
+    public String getCachedPlan(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        if (!isExplainable(execInfo)) {
+            return null;
+        }
+        List<String> plans = new ArrayList<String>();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (getParameters(queryInfo) == null) {
+                continue;
+            }
+            CachedPlan cachedPlan = getCachedPlan(QueryUtils.getFingerprint(queryInfo.getQuery()));
+            if (cachedPlan == null) {
+                return null;
+            }
+            plans.add(cachedPlan.plan);
+        }
+        return join(plans);
+    }
+
+    /**
+     * Retrieve plans for the given queries.
+     *
+     * <p>Callback is called on a separate thread, or on the caller thread when plans are cached or the query is not
+     * explainable.
+     *
+     * @param execInfo      execution info
+     * @param queryInfoList queries
+     * @param callback      callback to receive plans
+     */
+    public void explain(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, final Callback callback) {
+        if (!isExplainable(execInfo)) {
+            callback.onPlan(null);
+            return;
+        }
+        String cachedPlan = getCachedPlan(execInfo, queryInfoList);
+        if (cachedPlan != null) {
+            callback.onPlan(cachedPlan);
+            return;
+        }
+
+        // copy to avoid reference to the execution
+        final List<String> queries = new ArrayList<String>();
+        final List<List<ParameterSetOperation>> parametersList = new ArrayList<List<ParameterSetOperation>>();
+        for (QueryInfo queryInfo : queryInfoList) {
+            List<ParameterSetOperation> parameters = getParameters(queryInfo);
+            if (parameters != null) {
+                queries.add(queryInfo.getQuery());
+                parametersList.add(parameters);
+            }
+        }
+        if (queries.isEmpty()) {
+            callback.onPlan(null);
+            return;
+        }
+
+        try {
+            this.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onPlan(explainQueries(queries, parametersList));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            callback.onPlan(null);
+        }
+    }
+
+    private boolean isExplainable(ExecutionInfo execInfo) {
+        return execInfo.getStatementType() != StatementType.CALLABLE;
+    }
+
+    /**
+     * @return parameters to explain the query. {@code null} if the query is not explainable.
+     */
+    private List<ParameterSetOperation> getParameters(QueryInfo queryInfo) {
+        if (QueryUtils.getQueryType(queryInfo.getQuery()) == QueryType.OTHER) {
+            return null;
+        }
+        if (queryInfo.getParametersList().isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ParameterSetOperation> parameters = queryInfo.getParametersList().get(0);
+        for (ParameterSetOperation operation : parameters) {
+            if (operation.isTruncated() || ParameterSetOperation.isRegisterOutParameterOperation(operation)) {
+                return null;
+            }
+            Object[] args = operation.getArgs();
+            if (args.length > 1 && (args[1] instanceof InputStream || args[1] instanceof Reader)) {
+                return null;  // already consumed by the actual statement
+            }
+        }
+        return new ArrayList<ParameterSetOperation>(parameters);
+    }
+
+    private String explainQueries(List<String> queries, List<List<ParameterSetOperation>> parametersList) {
+        List<String> plans = new ArrayList<String>();
+        Connection connection = null;
+        try {
+            for (int i = 0; i < queries.size(); i++) {
+                String fingerprint = QueryUtils.getFingerprint(queries.get(i));
+                CachedPlan cachedPlan = getCachedPlan(fingerprint);
+                if (cachedPlan == null) {
+                    if (connection == null) {
+                        connection = this.dataSource.getConnection();
+                    }
+                    String plan;
+                    try {
+                        plan = this.explainDialect.explain(connection, queries.get(i), parametersList.get(i));
+                    } catch (SQLException e) {
+                        plan = null;
+                    } catch (RuntimeException e) {
+                        plan = null;
+                    }
+                    cachedPlan = new CachedPlan(plan, System.nanoTime() + this.timeToLiveInNanos);
+                    synchronized (this.cache) {
+                        this.cache.put(fingerprint, cachedPlan);
+                    }
+                }
+                plans.add(cachedPlan.plan);
+            }
+        } catch (SQLException e) {
+            return null;  // failed to get connection
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    // ignore
+                }
+            }
+        }
+        return join(plans);
+    }
+
+    private CachedPlan getCachedPlan(String fingerprint) {
+        synchronized (this.cache) {
+            CachedPlan cachedPlan = this.cache.get(fingerprint);
+            if (cachedPlan != null && cachedPlan.expiresAt - System.nanoTime() <= 0) {
+                this.cache.remove(fingerprint);
+                return null;
+            }
+            return cachedPlan;
+        }
+    }
+
+    private static String join(List<String> plans) {
+        StringBuilder sb = new StringBuilder();
+        for (String plan : plans) {
+            if (plan == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(LINE_SEPARATOR);
+            }
+            sb.append(plan);
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /**
+     * @param timeToLive time-to-live of cached plans
+     * @param timeUnit   time unit
+     */
+    public void setTimeToLive(long timeToLive, TimeUnit timeUnit) {
+        this.timeToLiveInNanos = timeUnit.toNanos(timeToLive);
+    }
+
+    /**
+     * Remove all cached plans.
+     */
+    public void clear() {
+        synchronized (this.cache) {
+            this.cache.clear();
+        }
+    }
+
+    /**
+     * Stop the thread for explain.
+     */
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    public ExplainDialect getExplainDialect() {
+        return explainDialect;
+    }
+
+}
@@ -52,4 +52,97 @@ public class QueryUtils {
         return type;
     }
 
+    /**
+     * Returns a fingerprint of the given query.
+     *
+     * <p>Comments are removed, string and numeric literals are replaced by {@code ?}, lists of placeholders such as
+     * {@code in (?, ?, ?)} are collapsed to {@code (?)}, and whitespaces are normalized to a single space. Queries that
+     * only differ in literal values have the same fingerprint.
+     *
+     * @param query a query string
+     * @return fingerprint of the query
+     * @since 1.8
+     */
+    public static String getFingerprint(String query) {
+        if (query == null) {
+            return null;
+        }
+        int length = query.length();
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                // string literal; quote is escaped by doubling
+                i++;
+                while (i < length) {
+                    if (query.charAt(i) == '\'') {
+                        if (i + 1 < length && query.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i++;
+                appendPlaceholder(sb);
+            } else if (c == '"') {
+                // quoted identifier
+                int end = query.indexOf('"', i + 1);
+                end = end < 0 ? length : end + 1;
+                sb.append(query, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < length && query.charAt(i + 1) == '-') {
+                int end = query.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && query.charAt(i + 1) == '*') {
+                int end = query.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+                i++;
+            } else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i < length && (Character.isLetterOrDigit(query.charAt(i)) || query.charAt(i) == '.')) {
+                    i++;
+                }
+                appendPlaceholder(sb);
+            } else if (c == '?') {
+                appendPlaceholder(sb);
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+
+        // trim
+        int end = sb.length();
+        while (end > 0 && sb.charAt(end - 1) == ' ') {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    private static void appendPlaceholder(StringBuilder sb) {
+        // collapse list of placeholders: "(?, ?, ?)" to "(?)"
+        int length = sb.length();
+        if (length >= 3 && sb.charAt(length - 1) == ' ' && sb.charAt(length - 2) == ',' && sb.charAt(length - 3) == '?') {
+            sb.setLength(length - 2);
+            return;
+        }
+        if (length >= 2 && sb.charAt(length - 1) == ',' && sb.charAt(length - 2) == '?') {
+            sb.setLength(length - 1);
+            return;
+        }
+        sb.append('?');
+    }
+
 }
@@ -0,0 +1,28 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.ResultSetMetrics;
+
+import java.util.List;
+
+/**
+ * Callback for {@link QueryExecutionListener} to receive {@link ResultSetMetrics}.
+ *
+ * When {@link net.ttddyy.dsproxy.proxy.ResultSetMetricsProxyLogic} is used, query execution listeners that also
+ * implement this interface are called when the {@link java.sql.ResultSet} is closed.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.support.ProxyDataSourceBuilder#proxyResultSetWithMetrics()
+ * @since 1.8
+ */
+public interface ResultSetMetricsListener {
+
+    /**
+     * @param execInfo      execution info of the query that has returned the {@link java.sql.ResultSet}
+     * @param queryInfoList queries that have returned the {@link java.sql.ResultSet}
+     * @param metrics       consumption metrics of the {@link java.sql.ResultSet}
+     */
+    void afterResultSetClose(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, ResultSetMetrics metrics);
+
+}
@@ -0,0 +1,80 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountScope;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Count queries in the current {@link QueryCountScope}.
+ *
+ * <p>Queries executed outside of any scope are counted in a single shared {@link QueryCount} per datasource.
+ *
+ * <p>By default, the current scope is the one bound to the current thread by {@link QueryCountScope#open()} or
+ * {@link QueryCountScope#bind()}. A {@link ScopeResolver} can be specified to resolve the scope by other means, such as
+ * a request context or {@code java.lang.ScopedValue}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see QueryCountScope
+ * @since 1.8
+ */
+public class ScopedQueryCountHolder implements QueryCountStrategy {
+
+    /**
+     * Resolve the scope of the current query execution.
+     */
+    public interface ScopeResolver {
+        /**
+         * @return current scope. {@code null} if not in any scope.
+         */
+        QueryCountScope getCurrentScope();
+    }
+
+    /**
+     * Resolve the scope bound to the current thread.
+     */
+    public static final ScopeResolver THREAD_BOUND_SCOPE_RESOLVER = new ScopeResolver() {
+        @Override
+        public QueryCountScope getCurrentScope() {
+            return QueryCountScope.current();
+        }
+    };
+
+    private final ScopeResolver scopeResolver;
+    private final ConcurrentMap<String, QueryCount> unscopedQueryCountMap = new ConcurrentHashMap<String, QueryCount>();
+
+    public ScopedQueryCountHolder() {
+        this(THREAD_BOUND_SCOPE_RESOLVER);
+    }
+
+    public ScopedQueryCountHolder(ScopeResolver scopeResolver) {
+        this.scopeResolver = scopeResolver;
+    }
+
+    @Override
+    public QueryCount getOrCreateQueryCount(String dataSourceName) {
+        QueryCountScope scope = this.scopeResolver.getCurrentScope();
+        if (scope != null) {
+            return scope.getOrCreate(dataSourceName);
+        }
+        QueryCount queryCount = this.unscopedQueryCountMap.get(dataSourceName);
+        if (queryCount == null) {
+            this.unscopedQueryCountMap.putIfAbsent(dataSourceName, new QueryCount());
+            queryCount = this.unscopedQueryCountMap.get(dataSourceName);
+        }
+        return queryCount;
+    }
+
+    /**
+     * @return query counts of executions outside of any scope
+     */
+    public ConcurrentMap<String, QueryCount> getUnscopedQueryCountMap() {
+        return unscopedQueryCountMap;
+    }
+
+    public ScopeResolver getScopeResolver() {
+        return scopeResolver;
+    }
+
+}
@@ -0,0 +1,103 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * {@link ExplainDialect} that executes the query with a prefix such as {@code EXPLAIN}.
+ *
+ * <p>Parameters are set to the explain statement by the same parameter set methods, unless the database does not accept
+ * parameters for explain statements. Each row of the result becomes a line of the plan, and columns are separated by
+ * {@code " | "}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class SimpleExplainDialect implements ExplainDialect {
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final String prefix;
+    private final boolean bindParameters;
+
+    public SimpleExplainDialect(String prefix) {
+        this(prefix, true);
+    }
+
+    /**
+     * @param prefix         prefix to make explain statement
+     * @param bindParameters {@code false} if the explain statement does not take parameters
+     */
+    public SimpleExplainDialect(String prefix, boolean bindParameters) {
+        this.prefix = prefix;
+        this.bindParameters = bindParameters;
+    }
+
+    @Override
+    public String explain(Connection connection, String query, List<ParameterSetOperation> parameters) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(this.prefix + query);
+        try {
+            if (this.bindParameters) {
+                for (ParameterSetOperation operation : parameters) {
+                    setParameter(ps, operation);
+                }
+            }
+            ResultSet rs = ps.executeQuery();
+            try {
+                return readPlan(rs);
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+    }
+
+    protected void setParameter(PreparedStatement ps, ParameterSetOperation operation) throws SQLException {
+        try {
+            operation.getMethod().invoke(ps, operation.getArgs());
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getTargetException();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Failed to set parameter for explain", cause);
+        } catch (IllegalAccessException e) {
+            throw new SQLException("Failed to set parameter for explain", e);
+        } catch (IllegalArgumentException e) {
+            throw new SQLException("Failed to set parameter for explain", e);
+        }
+    }
+
+    protected String readPlan(ResultSet rs) throws SQLException {
+        int columnCount = rs.getMetaData().getColumnCount();
+        StringBuilder sb = new StringBuilder();
+        while (rs.next()) {
+            if (sb.length() > 0) {
+                sb.append(LINE_SEPARATOR);
+            }
+            for (int i = 1; i <= columnCount; i++) {
+                if (i > 1) {
+                    sb.append(" | ");
+                }
+                sb.append(rs.getString(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public boolean isBindParameters() {
+        return bindParameters;
+    }
+
+}
@@ -25,7 +25,7 @@ public class SingleQueryCountHolder implements QueryCountStrategy {
     public QueryCount getOrCreateQueryCount(String dataSourceName) {
         QueryCount queryCount = queryCountMap.get(dataSourceName);
         if (queryCount == null) {
-            queryCountMap.putIfAbsent(dataSourceName, new QueryCount());
+            queryCountMap.putIfAbsent(dataSourceName, createQueryCount());
             queryCount = queryCountMap.get(dataSourceName);
         }
         if (this.populateQueryCountHolder) {
@@ -34,6 +34,16 @@ public class SingleQueryCountHolder implements QueryCountStrategy {
         return queryCount;
     }
 
+    /**
+     * Create a new {@link QueryCount} for a datasource.
+     *
+     * @return a new query count
+     * @since 1.8
+     */
+    protected QueryCount createQueryCount() {
+        return new QueryCount();
+    }
+
     public ConcurrentMap<String, QueryCount> getQueryCountMap() {
         return queryCountMap;
     }
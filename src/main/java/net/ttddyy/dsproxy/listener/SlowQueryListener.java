@@ -24,6 +24,9 @@ import java.util.concurrent.TimeUnit;
  * NOTE:
  * {@link ExecutionInfo#elapsedTime} contains the time when callback is triggered which usually is the specified threshold time.
  *
+ * When {@link AdaptiveSlowQueryThreshold} is set, threshold of each query is derived from recent execution times of
+ * the same query fingerprint, and the specified threshold is used until enough executions are recorded.
+ *
  * If you want to log or do something with AFTER execution that has exceeded specified threshold time, use normal
  * logging listener like following:
  * <pre>
@@ -59,6 +62,8 @@ public class SlowQueryListener implements QueryExecutionListener {
         protected List<QueryInfo> queryInfoList;
         protected long startTimeInMills;
         protected Stopwatch stopwatch;
+        protected String fingerprint;
+        protected long startTimeInNanos;
 
         public RunningQueryContext(ExecutionInfo executionInfo, List<QueryInfo> queryInfoList, long nowInMills, Stopwatch stopwatch) {
             this.executionInfo = executionInfo;
@@ -78,10 +83,12 @@ public class SlowQueryListener implements QueryExecutionListener {
             return thread;
         }
     });
-    protected long threshold;
-    protected TimeUnit thresholdTimeUnit;
+    protected volatile long threshold;
+    protected volatile TimeUnit thresholdTimeUnit;
     protected Map<String, RunningQueryContext> inExecution = new ConcurrentHashMap<String, RunningQueryContext>();
     protected StopwatchFactory stopwatchFactory = new SystemStopwatchFactory();
+    protected AdaptiveSlowQueryThreshold adaptiveThreshold;
+    protected boolean recordAdaptiveThreshold = true;
 
     @Override
     public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
@@ -106,11 +113,22 @@ public class SlowQueryListener implements QueryExecutionListener {
                 }
             }
         };
-        this.executor.schedule(check, this.threshold, this.thresholdTimeUnit);
+        String fingerprint = null;
+        AdaptiveSlowQueryThreshold adaptiveThreshold = this.adaptiveThreshold;
+        if (adaptiveThreshold == null) {
+            this.executor.schedule(check, this.threshold, this.thresholdTimeUnit);
+        } else {
+            fingerprint = getFingerprint(queryInfoList);
+            long defaultThreshold = this.thresholdTimeUnit.toNanos(this.threshold);
+            long threshold = fingerprint == null ? defaultThreshold : adaptiveThreshold.getThreshold(fingerprint, defaultThreshold);
+            this.executor.schedule(check, threshold, TimeUnit.NANOSECONDS);
+        }
 
         long now = System.currentTimeMillis();
         Stopwatch stopwatch = this.stopwatchFactory.create().start();
         RunningQueryContext context = new RunningQueryContext(execInfo, queryInfoList, now, stopwatch);
+        context.fingerprint = fingerprint;
+        context.startTimeInNanos = System.nanoTime();
         this.inExecution.put(execInfoKey, context);
 
     }
@@ -118,7 +136,37 @@ public class SlowQueryListener implements QueryExecutionListener {
     @Override
     public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         String executionInfoKey = getExecutionInfoKey(execInfo);
-        this.inExecution.remove(executionInfoKey);
+        RunningQueryContext context = this.inExecution.remove(executionInfoKey);
+
+        AdaptiveSlowQueryThreshold adaptiveThreshold = this.adaptiveThreshold;
+        if (adaptiveThreshold != null && this.recordAdaptiveThreshold && context != null && context.fingerprint != null) {
+            adaptiveThreshold.record(context.fingerprint, System.nanoTime() - context.startTimeInNanos);
+        }
+    }
+
+    /**
+     * Calculate a fingerprint of queries for {@link AdaptiveSlowQueryThreshold}.
+     *
+     * @param queryInfoList queries
+     * @return fingerprint. {@code null} to use the specified threshold.
+     * @since 1.8
+     */
+    protected String getFingerprint(List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) {
+            return null;
+        }
+        if (queryInfoList.size() == 1) {
+            return QueryUtils.getFingerprint(queryInfoList.get(0).getQuery());
+        }
+        // batch statement
+        StringBuilder sb = new StringBuilder();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (sb.length() > 0) {
+                sb.append(";");
+            }
+            sb.append(QueryUtils.getFingerprint(queryInfo.getQuery()));
+        }
+        return sb.toString();
     }
 
 
@@ -191,4 +239,36 @@ public class SlowQueryListener implements QueryExecutionListener {
     public void setStopwatchFactory(StopwatchFactory stopwatchFactory) {
         this.stopwatchFactory = stopwatchFactory;
     }
+
+    /**
+     * Derive thresholds from recent execution times of each query fingerprint.
+     *
+     * @param adaptiveThreshold adaptive threshold. {@code null} to use the specified threshold for all queries.
+     * @since 1.8
+     */
+    public void setAdaptiveThreshold(AdaptiveSlowQueryThreshold adaptiveThreshold) {
+        this.adaptiveThreshold = adaptiveThreshold;
+    }
+
+    public AdaptiveSlowQueryThreshold getAdaptiveThreshold() {
+        return adaptiveThreshold;
+    }
+
+    /**
+     * Whether to record execution times to the {@link AdaptiveSlowQueryThreshold}.
+     *
+     * When multiple listeners share the same adaptive threshold, only one of them should record execution times.
+     * Otherwise, each execution is counted multiple times.
+     *
+     * @param recordAdaptiveThreshold {@code false} to only read thresholds. (default is {@code true})
+     * @since 1.8
+     */
+    public void setRecordAdaptiveThreshold(boolean recordAdaptiveThreshold) {
+        this.recordAdaptiveThreshold = recordAdaptiveThreshold;
+    }
+
+    public boolean isRecordAdaptiveThreshold() {
+        return recordAdaptiveThreshold;
+    }
+
 }
@@ -0,0 +1,42 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.StripedQueryCount;
+
+/**
+ * {@link SingleQueryCountHolder} that uses {@link StripedQueryCount}.
+ *
+ * When many threads are executing queries, all of them increment the same counters in {@link SingleQueryCountHolder}.
+ * This strategy aims to reduce such contention by spreading updates over stripes at the cost of slower read and more
+ * memory.
+ *
+ * This strategy is opt-in. Its scalability with many threads has not been verified by benchmarks, and with a single
+ * processor it is slower than {@link SingleQueryCountHolder}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see StripedQueryCount
+ * @since 1.8
+ */
+public class StripedSingleQueryCountHolder extends SingleQueryCountHolder {
+
+    private int numOfStripes;
+
+    /**
+     * Number of stripes is determined by available processors.
+     */
+    public StripedSingleQueryCountHolder() {
+    }
+
+    /**
+     * @param numOfStripes number of stripes for each {@link StripedQueryCount}
+     */
+    public StripedSingleQueryCountHolder(int numOfStripes) {
+        this.numOfStripes = numOfStripes;
+    }
+
+    @Override
+    protected QueryCount createQueryCount() {
+        return this.numOfStripes > 0 ? new StripedQueryCount(this.numOfStripes) : new StripedQueryCount();
+    }
+
+}
@@ -15,10 +15,25 @@ public class ThreadQueryCountHolder implements QueryCountStrategy {
     public QueryCount getOrCreateQueryCount(String dataSourceName) {
         QueryCount queryCount = QueryCountHolder.get(dataSourceName);
         if (queryCount == null) {
-            queryCount = new QueryCount();
-            QueryCountHolder.put(dataSourceName, queryCount);
+            queryCount = createQueryCount(dataSourceName);
+            // the map may be shared with other threads by QueryCountContext
+            QueryCount existing = QueryCountHolder.putIfAbsent(dataSourceName, queryCount);
+            if (existing != null) {
+                queryCount = existing;
+            }
         }
         return queryCount;
     }
 
+    /**
+     * Create a {@link QueryCount} to put in {@link QueryCountHolder} for the current thread.
+     *
+     * @param dataSourceName datasource name
+     * @return new query count
+     * @since 1.8
+     */
+    protected QueryCount createQueryCount(String dataSourceName) {
+        return new QueryCount();
+    }
+
 }
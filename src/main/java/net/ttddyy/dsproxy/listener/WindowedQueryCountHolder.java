@@ -0,0 +1,72 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.WindowedQueryCount;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SingleQueryCountHolder} that uses {@link WindowedQueryCount}.
+ *
+ * Counts are accumulated from all threads, but only the values within the rolling time window are kept.
+ * Default window is 60 buckets of 1 second.
+ *
+ * <pre>{@code
+ * WindowedQueryCountHolder holder = new WindowedQueryCountHolder();
+ * builder.countQuery(holder);
+ * ...
+ * double qps = holder.getWindowedQueryCount("myDS").getRatePerSecond(WindowedQueryCount.Counter.TOTAL);
+ * }</pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WindowedQueryCount
+ * @since 1.8
+ */
+public class WindowedQueryCountHolder extends SingleQueryCountHolder {
+
+    private int numOfBuckets = 60;
+    private long bucketDuration = 1;
+    private TimeUnit bucketDurationTimeUnit = TimeUnit.SECONDS;
+
+    public WindowedQueryCountHolder() {
+    }
+
+    /**
+     * @param numOfBuckets   number of buckets in the window
+     * @param bucketDuration time duration of each bucket
+     * @param timeUnit       time unit for bucket duration
+     */
+    public WindowedQueryCountHolder(int numOfBuckets, long bucketDuration, TimeUnit timeUnit) {
+        this.numOfBuckets = numOfBuckets;
+        this.bucketDuration = bucketDuration;
+        this.bucketDurationTimeUnit = timeUnit;
+    }
+
+    @Override
+    protected QueryCount createQueryCount() {
+        return new WindowedQueryCount(this.numOfBuckets, this.bucketDuration, this.bucketDurationTimeUnit);
+    }
+
+    /**
+     * Retrieve {@link WindowedQueryCount} for the datasource.
+     *
+     * @param dataSourceName datasource name
+     * @return windowed query count. {@code null} if no query has been executed on the datasource.
+     */
+    public WindowedQueryCount getWindowedQueryCount(String dataSourceName) {
+        return (WindowedQueryCount) getQueryCountMap().get(dataSourceName);
+    }
+
+    public int getNumOfBuckets() {
+        return numOfBuckets;
+    }
+
+    public long getBucketDuration() {
+        return bucketDuration;
+    }
+
+    public TimeUnit getBucketDurationTimeUnit() {
+        return bucketDurationTimeUnit;
+    }
+
+}
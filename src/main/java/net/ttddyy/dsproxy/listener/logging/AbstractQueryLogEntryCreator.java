@@ -1,8 +1,10 @@
 package net.ttddyy.dsproxy.listener.logging;
 
 import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterKeyUtils;
 import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
 
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
@@ -52,16 +54,17 @@ public abstract class AbstractQueryLogEntryCreator implements QueryLogEntryCreat
                 return 1; // left is greater;
             }
 
-            try {
-                int leftInt = Integer.parseInt(left);
-                int rightInt = Integer.parseInt(right);
-                return (leftInt < rightInt) ? -1 : ((leftInt == rightInt) ? 0 : 1);
-            } catch (NumberFormatException e) {
+            Integer leftInt = ParameterKeyUtils.parseIntOrNull(left);
+            Integer rightInt = leftInt == null ? null : ParameterKeyUtils.parseIntOrNull(right);
+            if (leftInt == null || rightInt == null) {
                 return left.compareTo(right);  // use String comparison
             }
+            return (leftInt < rightInt) ? -1 : ((leftInt.equals(rightInt)) ? 0 : 1);
         }
     }
 
+    private static final Comparator<String> PARAMETER_KEY_COMPARATOR = new StringAsIntegerComparator();
+
     protected void chompIfEndWith(StringBuilder sb, char c) {
         final int lastCharIndex = sb.length() - 1;
         if (sb.charAt(lastCharIndex) == c) {
@@ -98,6 +101,93 @@ public abstract class AbstractQueryLogEntryCreator implements QueryLogEntryCreat
         return paramMap;
     }
 
+    /**
+     * Keys of a parameter set sorted for display.
+     *
+     * @since 1.8
+     */
+    protected static class SortedParameterKeys {
+
+        private final String[] keys;  // keys in the order of parameter set operations
+        private final String[] sortedKeys;
+        private final int[] sourceIndexes;  // index of the parameter set operation for each sorted key
+
+        private SortedParameterKeys(String[] keys, String[] sortedKeys, int[] sourceIndexes) {
+            this.keys = keys;
+            this.sortedKeys = sortedKeys;
+            this.sourceIndexes = sourceIndexes;
+        }
+
+        /**
+         * @return distinct keys sorted by {@link StringAsIntegerComparator}
+         */
+        public String[] getSortedKeys() {
+            return this.sortedKeys;
+        }
+    }
+
+    /**
+     * Sort keys of a parameter set.
+     *
+     * When the parameter set has the same keys as the previous one, which is the case for most of batch executions,
+     * the previous one is returned without sorting.
+     *
+     * @param params   list of ParameterSetOperation
+     * @param previous sorted keys of the previous parameter set. can be {@code null}.
+     * @return sorted keys
+     * @since 1.8
+     */
+    protected SortedParameterKeys getSortedParameterKeys(List<ParameterSetOperation> params, SortedParameterKeys previous) {
+        final String[] keys = new String[params.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getParameterKeyToDisplay(params.get(i));
+        }
+        if (previous != null && Arrays.equals(previous.keys, keys)) {
+            return previous;
+        }
+
+        Integer[] indexes = new Integer[keys.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        // stable sort; duplicated keys keep the order of parameter set operations
+        Arrays.sort(indexes, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer left, Integer right) {
+                return PARAMETER_KEY_COMPARATOR.compare(keys[left], keys[right]);
+            }
+        });
+
+        // for duplicated key, the first key is kept with the last value
+        int size = 0;
+        String[] sortedKeys = new String[indexes.length];
+        int[] sourceIndexes = new int[indexes.length];
+        for (Integer index : indexes) {
+            if (size > 0 && PARAMETER_KEY_COMPARATOR.compare(sortedKeys[size - 1], keys[index]) == 0) {
+                sourceIndexes[size - 1] = index;
+            } else {
+                sortedKeys[size] = keys[index];
+                sourceIndexes[size] = index;
+                size++;
+            }
+        }
+        return new SortedParameterKeys(keys, Arrays.copyOf(sortedKeys, size), Arrays.copyOf(sourceIndexes, size));
+    }
+
+    /**
+     * @param params     list of ParameterSetOperation
+     * @param sortedKeys sorted keys of the parameter set
+     * @return values to display in the order of {@link SortedParameterKeys#getSortedKeys()}
+     * @since 1.8
+     */
+    protected String[] getSortedParameterValues(List<ParameterSetOperation> params, SortedParameterKeys sortedKeys) {
+        String[] values = new String[sortedKeys.sourceIndexes.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = getParameterValueToDisplay(params.get(sortedKeys.sourceIndexes[i]));
+        }
+        return values;
+    }
+
     /**
      * @param param parameter set operation
      * @return parameterIndex or parameterName as String
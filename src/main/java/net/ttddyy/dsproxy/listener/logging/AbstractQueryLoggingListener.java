@@ -16,6 +16,7 @@ public abstract class AbstractQueryLoggingListener implements QueryExecutionList
     protected boolean writeDataSourceName = true;
     protected boolean writeConnectionId = true;
     protected LoggingCondition loggingCondition;
+    protected volatile boolean enabled = true;
 
     @Override
     public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
@@ -24,7 +25,7 @@ public abstract class AbstractQueryLoggingListener implements QueryExecutionList
     @Override
     public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         // only perform logging logic when the condition returns true
-        if (this.loggingCondition.getAsBoolean()) {
+        if (this.enabled && this.loggingCondition.getAsBoolean()) {
             final String entry = getEntry(execInfo, queryInfoList);
             writeLog(entry);
         }
@@ -91,4 +92,22 @@ public abstract class AbstractQueryLoggingListener implements QueryExecutionList
     public void setLoggingCondition(LoggingCondition loggingCondition) {
         this.loggingCondition = loggingCondition;
     }
+
+    /**
+     * @return {@code true} when logging is enabled
+     * @since 1.8
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable logging at runtime.
+     *
+     * @param enabled {@code false} to skip logging. Default is {@code true}.
+     * @since 1.8
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
 }
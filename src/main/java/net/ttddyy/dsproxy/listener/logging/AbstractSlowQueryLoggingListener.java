@@ -2,6 +2,7 @@ package net.ttddyy.dsproxy.listener.logging;
 
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryPlanExplainer;
 import net.ttddyy.dsproxy.listener.SlowQueryListener;
 
 import java.util.List;
@@ -20,9 +21,14 @@ public abstract class AbstractSlowQueryLoggingListener extends SlowQueryListener
     protected boolean writeConnectionId = true;
     protected QueryLogEntryCreator queryLogEntryCreator = new DefaultQueryLogEntryCreator();
     protected String prefix;
+    protected volatile boolean enabled = true;
+    protected QueryPlanExplainer queryPlanExplainer;
 
     @Override
     protected void onSlowQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, long startTimeInMills) {
+        if (!this.enabled) {
+            return;
+        }
         String entry = this.queryLogEntryCreator.getLogEntry(execInfo, queryInfoList, this.writeDataSourceName, this.writeConnectionId);
         if (this.prefix != null) {
             StringBuilder sb = new StringBuilder();
@@ -30,7 +36,49 @@ public abstract class AbstractSlowQueryLoggingListener extends SlowQueryListener
             sb.append(entry);
             entry = sb.toString();
         }
-        writeLog(entry);
+
+        if (this.queryPlanExplainer == null) {
+            writeLog(entry);
+            return;
+        }
+
+        // log is written when the plan is retrieved
+        final String entryWithoutPlan = entry;
+        this.queryPlanExplainer.explain(execInfo, queryInfoList, new QueryPlanExplainer.Callback() {
+            @Override
+            public void onPlan(String plan) {
+                writeLog(plan == null ? entryWithoutPlan : appendPlan(entryWithoutPlan, plan));
+            }
+        });
+    }
+
+    /**
+     * Append execution plan to the log entry.
+     *
+     * <p>default: ..., Plan:[...] or "plan":"..." for json entry.
+     *
+     * @param entry log entry
+     * @param plan  execution plan
+     * @return log entry with plan
+     * @since 1.8
+     */
+    protected String appendPlan(String entry, String plan) {
+        StringBuilder sb = new StringBuilder(entry);
+        if (this.queryLogEntryCreator instanceof DefaultJsonQueryLogEntryCreator && entry.endsWith("}")) {
+            sb.deleteCharAt(sb.length() - 1);
+            sb.append(", \"plan\":\"");
+            for (int i = 0; i < plan.length(); i++) {
+                char c = plan.charAt(i);
+                String escaped = AbstractQueryLogEntryCreator.JSON_SPECIAL_CHARS.get(c);
+                sb.append(escaped != null ? escaped : c);
+            }
+            sb.append("\"}");
+        } else {
+            sb.append(", Plan:[");
+            sb.append(plan);
+            sb.append("]");
+        }
+        return sb.toString();
     }
 
     protected abstract void writeLog(String message);
@@ -57,4 +105,42 @@ public abstract class AbstractSlowQueryLoggingListener extends SlowQueryListener
     public void setWriteConnectionId(boolean writeConnectionId) {
         this.writeConnectionId = writeConnectionId;
     }
+
+    /**
+     * Attach execution plans of slow queries to the log entries.
+     *
+     * When the plan is not cached, the log entry is written after the plan is retrieved on a separate thread.
+     *
+     * @param queryPlanExplainer explainer. {@code null} to disable.
+     * @since 1.8
+     */
+    public void setQueryPlanExplainer(QueryPlanExplainer queryPlanExplainer) {
+        this.queryPlanExplainer = queryPlanExplainer;
+    }
+
+    /**
+     * @return explainer. {@code null} if disabled.
+     * @since 1.8
+     */
+    public QueryPlanExplainer getQueryPlanExplainer() {
+        return queryPlanExplainer;
+    }
+
+    /**
+     * @return {@code true} when logging is enabled
+     * @since 1.8
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable logging at runtime.
+     *
+     * @param enabled {@code false} to skip logging. Default is {@code true}.
+     * @since 1.8
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
 }
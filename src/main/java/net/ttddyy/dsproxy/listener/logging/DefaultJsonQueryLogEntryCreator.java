@@ -220,13 +220,17 @@ public class DefaultJsonQueryLogEntryCreator extends AbstractQueryLogEntryCreato
         sb.append("\"params\":[");
         for (QueryInfo queryInfo : queryInfoList) {
 
+            SortedParameterKeys sortedKeys = null;
             for (List<ParameterSetOperation> parameters : queryInfo.getParametersList()) {
-                SortedMap<String, String> paramMap = getParametersToDisplay(parameters);
+                // keys are sorted once for parameter sets with the same keys
+                sortedKeys = getSortedParameterKeys(parameters, sortedKeys);
+                String[] values = getSortedParameterValues(parameters, sortedKeys);
+
                 // parameters per batch
                 if (isPrepared) {
-                    writeParamsForSinglePreparedEntry(sb, paramMap, execInfo, queryInfoList);
+                    writeParamsForSinglePreparedEntry(sb, sortedKeys.getSortedKeys(), values, execInfo, queryInfoList);
                 } else {
-                    writeParamsForSingleCallableEntry(sb, paramMap, execInfo, queryInfoList);
+                    writeParamsForSingleCallableEntry(sb, sortedKeys.getSortedKeys(), values, execInfo, queryInfoList);
                 }
             }
         }
@@ -244,16 +248,36 @@ public class DefaultJsonQueryLogEntryCreator extends AbstractQueryLogEntryCreato
      * @param paramMap      sorted parameters map
      * @param execInfo      execution info
      * @param queryInfoList query info list
+     * @deprecated not called by {@link #writeParamsEntry(StringBuilder, ExecutionInfo, List)} since 1.8.
+     * use {@link #writeParamsForSinglePreparedEntry(StringBuilder, String[], String[], ExecutionInfo, List)}
      */
+    @Deprecated
     protected void writeParamsForSinglePreparedEntry(StringBuilder sb, SortedMap<String, String> paramMap, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String[] keys = paramMap.keySet().toArray(new String[paramMap.size()]);
+        String[] values = paramMap.values().toArray(new String[paramMap.size()]);
+        writeParamsForSinglePreparedEntry(sb, keys, values, execInfo, queryInfoList);
+    }
+
+    /**
+     * Write parameters for single execution as json.
+     *
+     * <p>default: ["foo","100"],
+     *
+     * @param sb            StringBuilder to write
+     * @param keys          sorted parameter keys
+     * @param values        parameter values in the order of keys
+     * @param execInfo      execution info
+     * @param queryInfoList query info list
+     * @since 1.8
+     */
+    protected void writeParamsForSinglePreparedEntry(StringBuilder sb, String[] keys, String[] values, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         sb.append("[");
-        for (Map.Entry<String, String> paramEntry : paramMap.entrySet()) {
-            Object value = paramEntry.getValue();
+        for (String value : values) {
             if (value == null) {
                 sb.append("null");
             } else {
                 sb.append("\"");
-                sb.append(escapeSpecialCharacter(value.toString()));
+                sb.append(escapeSpecialCharacter(value));
                 sb.append("\"");
             }
             sb.append(",");
@@ -271,12 +295,33 @@ public class DefaultJsonQueryLogEntryCreator extends AbstractQueryLogEntryCreato
      * @param paramMap      sorted parameters map
      * @param execInfo      execution info
      * @param queryInfoList query info list
+     * @deprecated not called by {@link #writeParamsEntry(StringBuilder, ExecutionInfo, List)} since 1.8.
+     * use {@link #writeParamsForSingleCallableEntry(StringBuilder, String[], String[], ExecutionInfo, List)}
      */
+    @Deprecated
     protected void writeParamsForSingleCallableEntry(StringBuilder sb, Map<String, String> paramMap, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String[] keys = paramMap.keySet().toArray(new String[paramMap.size()]);
+        String[] values = paramMap.values().toArray(new String[paramMap.size()]);
+        writeParamsForSingleCallableEntry(sb, keys, values, execInfo, queryInfoList);
+    }
+
+    /**
+     * Write parameters for single execution.
+     *
+     * <p>default: {"1"="foo","bar"="100"},
+     *
+     * @param sb            StringBuilder to write
+     * @param keys          sorted parameter keys
+     * @param values        parameter values in the order of keys
+     * @param execInfo      execution info
+     * @param queryInfoList query info list
+     * @since 1.8
+     */
+    protected void writeParamsForSingleCallableEntry(StringBuilder sb, String[] keys, String[] values, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         sb.append("{");
-        for (Map.Entry<String, String> paramEntry : paramMap.entrySet()) {
-            String key = paramEntry.getKey();
-            Object value = paramEntry.getValue();
+        for (int i = 0; i < keys.length; i++) {
+            String key = keys[i];
+            String value = values[i];
             sb.append("\"");
             sb.append(escapeSpecialCharacter(key));
             sb.append("\":");
@@ -284,7 +329,7 @@ public class DefaultJsonQueryLogEntryCreator extends AbstractQueryLogEntryCreato
                 sb.append("null");
             } else {
                 sb.append("\"");
-                sb.append(escapeSpecialCharacter(value.toString()));
+                sb.append(escapeSpecialCharacter(value));
                 sb.append("\"");
             }
             sb.append(",");
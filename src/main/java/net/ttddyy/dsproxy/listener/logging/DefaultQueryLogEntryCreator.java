@@ -6,7 +6,6 @@ import net.ttddyy.dsproxy.StatementType;
 import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
 
 import java.util.List;
-import java.util.Map;
 import java.util.SortedMap;
 
 /**
@@ -262,16 +261,19 @@ public class DefaultQueryLogEntryCreator extends AbstractQueryLogEntryCreator {
         sb.append("Params:[");
 
         for (QueryInfo queryInfo : queryInfoList) {
+            SortedParameterKeys sortedKeys = null;
             for (List<ParameterSetOperation> parameters : queryInfo.getParametersList()) {
-                SortedMap<String, String> paramMap = getParametersToDisplay(parameters);
+                // keys are sorted once for parameter sets with the same keys
+                sortedKeys = getSortedParameterKeys(parameters, sortedKeys);
+                String[] values = getSortedParameterValues(parameters, sortedKeys);
 
                 // parameters per batch.
                 //   for prepared: (val1,val2,...)
                 //   for callable: (key1=val1,key2=val2,...)
                 if (isPrepared) {
-                    writeParamsForSinglePreparedEntry(sb, paramMap, execInfo, queryInfoList);
+                    writeParamsForSinglePreparedEntry(sb, sortedKeys.getSortedKeys(), values, execInfo, queryInfoList);
                 } else {
-                    writeParamsForSingleCallableEntry(sb, paramMap, execInfo, queryInfoList);
+                    writeParamsForSingleCallableEntry(sb, sortedKeys.getSortedKeys(), values, execInfo, queryInfoList);
                 }
 
             }
@@ -291,11 +293,32 @@ public class DefaultQueryLogEntryCreator extends AbstractQueryLogEntryCreator {
      * @param execInfo      execution info
      * @param queryInfoList query info list
      * @since 1.4
+     * @deprecated not called by {@link #writeParamsEntry(StringBuilder, ExecutionInfo, List)} since 1.8.
+     * use {@link #writeParamsForSinglePreparedEntry(StringBuilder, String[], String[], ExecutionInfo, List)}
      */
+    @Deprecated
     protected void writeParamsForSinglePreparedEntry(StringBuilder sb, SortedMap<String, String> paramMap, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String[] keys = paramMap.keySet().toArray(new String[paramMap.size()]);
+        String[] values = paramMap.values().toArray(new String[paramMap.size()]);
+        writeParamsForSinglePreparedEntry(sb, keys, values, execInfo, queryInfoList);
+    }
+
+    /**
+     * Write query parameters for PreparedStatement.
+     *
+     * <p>default: Params:[(foo,100),(bar,101)],
+     *
+     * @param sb            StringBuilder to write
+     * @param keys          sorted parameter keys
+     * @param values        parameter values in the order of keys
+     * @param execInfo      execution info
+     * @param queryInfoList query info list
+     * @since 1.8
+     */
+    protected void writeParamsForSinglePreparedEntry(StringBuilder sb, String[] keys, String[] values, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         sb.append("(");
-        for (Map.Entry<String, String> paramEntry : paramMap.entrySet()) {
-            sb.append(paramEntry.getValue());
+        for (String value : values) {
+            sb.append(value);
             sb.append(",");
         }
         chompIfEndWith(sb, ',');
@@ -312,13 +335,34 @@ public class DefaultQueryLogEntryCreator extends AbstractQueryLogEntryCreator {
      * @param execInfo      execution info
      * @param queryInfoList query info list
      * @since 1.4
+     * @deprecated not called by {@link #writeParamsEntry(StringBuilder, ExecutionInfo, List)} since 1.8.
+     * use {@link #writeParamsForSingleCallableEntry(StringBuilder, String[], String[], ExecutionInfo, List)}
      */
+    @Deprecated
     protected void writeParamsForSingleCallableEntry(StringBuilder sb, SortedMap<String, String> paramMap, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String[] keys = paramMap.keySet().toArray(new String[paramMap.size()]);
+        String[] values = paramMap.values().toArray(new String[paramMap.size()]);
+        writeParamsForSingleCallableEntry(sb, keys, values, execInfo, queryInfoList);
+    }
+
+    /**
+     * Write parameters for single execution.
+     *
+     * <p>default: (1=foo,bar=100),
+     *
+     * @param sb            StringBuilder to write
+     * @param keys          sorted parameter keys
+     * @param values        parameter values in the order of keys
+     * @param execInfo      execution info
+     * @param queryInfoList query info list
+     * @since 1.8
+     */
+    protected void writeParamsForSingleCallableEntry(StringBuilder sb, String[] keys, String[] values, ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
         sb.append("(");
-        for (Map.Entry<String, String> paramEntry : paramMap.entrySet()) {
-            sb.append(paramEntry.getKey());
+        for (int i = 0; i < keys.length; i++) {
+            sb.append(keys[i]);
             sb.append("=");
-            sb.append(paramEntry.getValue());
+            sb.append(values[i]);
             sb.append(",");
         }
         chompIfEndWith(sb, ',');
@@ -2,6 +2,8 @@ package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
 import net.ttddyy.dsproxy.DataSourceProxyException;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
 import javax.sql.rowset.CachedRowSet;
@@ -9,6 +11,7 @@ import javax.sql.rowset.RowSetFactory;
 import javax.sql.rowset.RowSetProvider;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * Factory to create {@link CachedRowSetResultSetProxyLogic}.
@@ -53,4 +56,10 @@ public class CachedRowSetResultSetProxyLogicFactory implements ResultSetProxyLog
         }
     }
 
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        return create(resultSet, connectionInfo, proxyConfig);
+    }
+
 }
@@ -0,0 +1,44 @@
+package net.ttddyy.dsproxy.proxy;
+
+/**
+ * Placeholder of a parameter value that is not retained by {@link ParameterCaptureMode}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ParameterCaptureMode
+ * @since 1.8
+ */
+public class CapturedParameterValue {
+
+    private final Class<?> type;
+    private final long size;
+
+    public CapturedParameterValue(Class<?> type, long size) {
+        this.type = type;
+        this.size = size;
+    }
+
+    /**
+     * @return type of the original value
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Length in bytes for binary values, and length in chars for character values.
+     *
+     * @return size of the original value. {@code -1} if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        if (this.size < 0) {
+            return this.type.getSimpleName();
+        }
+        return this.type.getSimpleName() + "(size=" + this.size + ")";
+    }
+
+}
@@ -0,0 +1,404 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.BitSet;
+
+/**
+ * Stores rows read from {@link java.sql.ResultSet} column by column.
+ *
+ * <p>Columns with integer, bigint, double and boolean type keep their values in primitive arrays. When a value of
+ * other type is stored (e.g. {@code getString()} is called on an integer column), the column falls back to an object
+ * array.
+ *
+ * <p>When {@code spillThreshold} is positive, rows beyond the threshold are written to a temporary file instead of
+ * the heap. Spilled values must be {@link java.io.Serializable}. Spilled rows are read sequentially; random access to
+ * them re-reads the file from the beginning.
+ *
+ * <p>Row index is 0-based. Column index is 1-based, the same as {@link java.sql.ResultSet}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see RepeatableReadResultSetProxyLogic
+ * @since 1.8
+ */
+public class ColumnarRowStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // reset object stream periodically, otherwise it holds references to all written values
+    private static final int SPILL_RESET_INTERVAL = 1000;
+
+    private final Column[] columns;
+    private final int columnCount;
+    private final int spillThreshold;
+    private final File spillDirectory;
+
+    private int rowCount;
+
+    private File spillFile;
+    private ObjectOutputStream spillOutput;
+    private int spilledRowCount;
+    private ObjectInputStream spillInput;
+    private int spillReadIndex = -1;
+    private Object[] spilledRow;
+
+    /**
+     * @param columnTypes    {@link Types} of columns. Index 0 is the first column.
+     * @param spillThreshold num of rows kept on heap. {@code 0} keeps all rows on heap. Column values of the other
+     *                       rows must be {@link java.io.Serializable}.
+     * @param spillDirectory directory for temporary file. {@code null} uses default temporary directory.
+     */
+    public ColumnarRowStore(int[] columnTypes, int spillThreshold, File spillDirectory) {
+        this.columnCount = columnTypes.length;
+        this.columns = new Column[this.columnCount];
+        for (int i = 0; i < this.columnCount; i++) {
+            this.columns[i] = createColumn(columnTypes[i]);
+        }
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory;
+    }
+
+    private static Column createColumn(int columnType) {
+        switch (columnType) {
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                return new IntColumn();
+            case Types.BIGINT:
+                return new LongColumn();
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                return new DoubleColumn();
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return new BooleanColumn();
+            default:
+                return new ObjectColumn();
+        }
+    }
+
+    /**
+     * Append a row.
+     *
+     * @param row column values. Index 0 is ignored and column values start from index 1.
+     * @throws SQLException when failed to write the row to temporary file
+     */
+    public void addRow(Object[] row) throws SQLException {
+        if (this.spillThreshold > 0 && this.rowCount >= this.spillThreshold) {
+            spill(row);
+        } else {
+            for (int i = 0; i < this.columnCount; i++) {
+                Object value = row[i + 1];
+                if (!this.columns[i].add(value)) {
+                    this.columns[i] = ObjectColumn.from(this.columns[i], this.rowCount);
+                    this.columns[i].add(value);
+                }
+            }
+        }
+        this.rowCount++;
+    }
+
+    /**
+     * Retrieve a column value.
+     *
+     * @param rowIndex    0-based row index
+     * @param columnIndex 1-based column index
+     * @return column value
+     * @throws SQLException when failed to read the row from temporary file
+     */
+    public Object getValue(int rowIndex, int columnIndex) throws SQLException {
+        if (columnIndex < 1 || columnIndex > this.columnCount) {
+            throw new SQLException(String.format("Invalid column index %d", columnIndex));
+        }
+        int inMemoryRowCount = this.rowCount - this.spilledRowCount;
+        if (rowIndex < inMemoryRowCount) {
+            return this.columns[columnIndex - 1].get(rowIndex);
+        }
+        return readSpilledRow(rowIndex - inMemoryRowCount)[columnIndex - 1];
+    }
+
+    public int size() {
+        return this.rowCount;
+    }
+
+    /**
+     * @return num of rows written to temporary file
+     */
+    public int getSpilledRowCount() {
+        return this.spilledRowCount;
+    }
+
+    /**
+     * Close and delete temporary file.
+     */
+    public void close() {
+        closeQuietly(this.spillOutput);
+        closeQuietly(this.spillInput);
+        this.spillOutput = null;
+        this.spillInput = null;
+        this.spilledRow = null;
+        if (this.spillFile != null) {
+            this.spillFile.delete();
+            this.spillFile = null;
+        }
+    }
+
+    private void spill(Object[] row) throws SQLException {
+        Object[] values = new Object[this.columnCount];
+        System.arraycopy(row, 1, values, 0, this.columnCount);
+        // check beforehand, a failure in the middle of writing breaks the stream
+        for (int i = 0; i < this.columnCount; i++) {
+            if (values[i] != null && !(values[i] instanceof Serializable)) {
+                throw new SQLException(String.format("Cannot write resultset row to temporary file. " +
+                        "Value of column %d is not serializable: %s", i + 1, values[i].getClass().getName()));
+            }
+        }
+        try {
+            if (this.spillOutput == null) {
+                this.spillFile = File.createTempFile("dsproxy-resultset-", ".tmp", this.spillDirectory);
+                this.spillOutput = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(this.spillFile)));
+            }
+            this.spillOutput.writeObject(values);
+            this.spilledRowCount++;
+            if (this.spilledRowCount % SPILL_RESET_INTERVAL == 0) {
+                this.spillOutput.reset();
+            }
+        } catch (IOException e) {
+            throw new SQLException("Failed to write resultset row to temporary file", e);
+        }
+    }
+
+    private Object[] readSpilledRow(int spillIndex) throws SQLException {
+        if (spillIndex == this.spillReadIndex) {
+            return this.spilledRow;
+        }
+        try {
+            if (this.spillOutput != null) {
+                this.spillOutput.close();
+                this.spillOutput = null;
+            }
+            if (this.spillInput == null || spillIndex < this.spillReadIndex) {
+                closeQuietly(this.spillInput);
+                this.spillInput = new ObjectInputStream(new BufferedInputStream(new FileInputStream(this.spillFile)));
+                this.spillReadIndex = -1;
+            }
+            while (this.spillReadIndex < spillIndex) {
+                this.spilledRow = (Object[]) this.spillInput.readObject();
+                this.spillReadIndex++;
+            }
+            return this.spilledRow;
+        } catch (IOException e) {
+            throw new SQLException("Failed to read resultset row from temporary file", e);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Failed to read resultset row from temporary file", e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static abstract class Column {
+
+        protected int size;
+
+        /**
+         * @return {@code false} when this column cannot hold the value
+         */
+        abstract boolean add(Object value);
+
+        abstract Object get(int row);
+
+        protected int newCapacity(int current) {
+            return current + (current >> 1) + 1;
+        }
+    }
+
+    private static abstract class PrimitiveColumn extends Column {
+
+        protected final BitSet nulls = new BitSet();
+
+        @Override
+        boolean add(Object value) {
+            if (value == null) {
+                ensureCapacity(this.size + 1);
+                this.nulls.set(this.size++);
+                return true;
+            }
+            if (!accept(value)) {
+                return false;
+            }
+            ensureCapacity(this.size + 1);
+            set(this.size++, value);
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return this.nulls.get(row) ? null : doGet(row);
+        }
+
+        abstract boolean accept(Object value);
+
+        abstract void ensureCapacity(int capacity);
+
+        abstract void set(int row, Object value);
+
+        abstract Object doGet(int row);
+    }
+
+    private static class IntColumn extends PrimitiveColumn {
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        @Override
+        boolean accept(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > this.values.length) {
+                int[] newValues = new int[newCapacity(this.values.length)];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+        }
+
+        @Override
+        void set(int row, Object value) {
+            this.values[row] = (Integer) value;
+        }
+
+        @Override
+        Object doGet(int row) {
+            return this.values[row];
+        }
+    }
+
+    private static class LongColumn extends PrimitiveColumn {
+        private long[] values = new long[INITIAL_CAPACITY];
+
+        @Override
+        boolean accept(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > this.values.length) {
+                long[] newValues = new long[newCapacity(this.values.length)];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+        }
+
+        @Override
+        void set(int row, Object value) {
+            this.values[row] = (Long) value;
+        }
+
+        @Override
+        Object doGet(int row) {
+            return this.values[row];
+        }
+    }
+
+    private static class DoubleColumn extends PrimitiveColumn {
+        private double[] values = new double[INITIAL_CAPACITY];
+
+        @Override
+        boolean accept(Object value) {
+            return value instanceof Double;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+            if (capacity > this.values.length) {
+                double[] newValues = new double[newCapacity(this.values.length)];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+        }
+
+        @Override
+        void set(int row, Object value) {
+            this.values[row] = (Double) value;
+        }
+
+        @Override
+        Object doGet(int row) {
+            return this.values[row];
+        }
+    }
+
+    private static class BooleanColumn extends PrimitiveColumn {
+        private final BitSet values = new BitSet();
+
+        @Override
+        boolean accept(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        void ensureCapacity(int capacity) {
+        }
+
+        @Override
+        void set(int row, Object value) {
+            this.values.set(row, (Boolean) value);
+        }
+
+        @Override
+        Object doGet(int row) {
+            return this.values.get(row);
+        }
+    }
+
+    private static class ObjectColumn extends Column {
+        private Object[] values = new Object[INITIAL_CAPACITY];
+
+        static ObjectColumn from(Column column, int size) {
+            ObjectColumn objectColumn = new ObjectColumn();
+            objectColumn.values = new Object[Math.max(INITIAL_CAPACITY, size + 1)];
+            for (int i = 0; i < size; i++) {
+                objectColumn.values[i] = column.get(i);
+            }
+            objectColumn.size = size;
+            return objectColumn;
+        }
+
+        @Override
+        boolean add(Object value) {
+            if (this.size == this.values.length) {
+                Object[] newValues = new Object[newCapacity(this.values.length)];
+                System.arraycopy(this.values, 0, newValues, 0, this.size);
+                this.values = newValues;
+            }
+            this.values[this.size++] = value;
+            return true;
+        }
+
+        @Override
+        Object get(int row) {
+            return this.values[row];
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import java.lang.reflect.Method;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.Collections;
@@ -28,14 +29,30 @@ public class ConnectionProxyLogic {
             new HashSet<String>(Arrays.asList("unwrap", "isWrapperFor"))
     );
 
+    // methods that require deferred updates to be executed beforehand
+    private static final Set<String> METHODS_TO_FLUSH_PENDING_BATCH = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("commit", "rollback", "close", "setAutoCommit", "setSavepoint", "releaseSavepoint"))
+    );
+
     private Connection connection;
     private ConnectionInfo connectionInfo;
     private ProxyConfig proxyConfig;
+    private ConnectionState connectionState;  // null when no feature requires per-connection state
 
     public ConnectionProxyLogic(Connection connection, ConnectionInfo connectionInfo, ProxyConfig proxyConfig) {
         this.connection = connection;
         this.connectionInfo = connectionInfo;
         this.proxyConfig = proxyConfig;
+
+        int cacheSize = proxyConfig.getPreparedStatementCacheSize();
+        boolean isStateRequired = cacheSize > 0 || proxyConfig.getWriteBatchSize() > 0 || proxyConfig.getQueryResultCache() != null;
+        if (isStateRequired && connectionInfo != null) {
+            this.connectionState = new ConnectionState();
+            if (cacheSize > 0) {
+                this.connectionState.setPreparedStatementCache(new PreparedStatementCache(cacheSize, proxyConfig.getPreparedStatementCacheMetrics()));
+            }
+            proxyConfig.registerConnectionState(connectionInfo, this.connectionState);
+        }
     }
 
     public Object invoke(final Object proxyConnection, Method method, Object[] args) throws Throwable {
@@ -47,7 +64,14 @@ public class ConnectionProxyLogic {
         return MethodExecutionListenerUtils.invoke(new MethodExecutionListenerUtils.MethodExecutionCallback() {
             @Override
             public Object execute(Object proxyTarget, Method method, Object[] args) throws Throwable {
-                Object result = performQueryExecutionListener(proxyConnection, method, args);
+                Object result;
+                try {
+                    result = performQueryExecutionListener(proxyConnection, method, args);
+                } finally {
+                    if (isCloseMethod && ConnectionProxyLogic.this.connectionState != null) {
+                        ConnectionProxyLogic.this.proxyConfig.unregisterConnectionState(ConnectionProxyLogic.this.connectionInfo);
+                    }
+                }
                 ConnectionInfo connectionInfo = ConnectionProxyLogic.this.connectionInfo;
                 if (isCommitMethod) {
                     connectionInfo.incrementCommitCount();
@@ -106,12 +130,53 @@ public class ConnectionProxyLogic {
             }
         }
 
-        // Invoke method on original Connection.
+        // execute deferred updates by transparent write batching
+        ConnectionState connectionState = this.connectionState;
+        PendingBatch pendingBatch = connectionState != null ? connectionState.getPendingBatch() : null;
+        if (pendingBatch != null && METHODS_TO_FLUSH_PENDING_BATCH.contains(methodName)) {
+            try {
+                pendingBatch.flush();
+            } catch (SQLException e) {
+                if ("close".equals(methodName)) {
+                    invokeMethod(method, args);  // close the connection even if the batch failed
+                }
+                throw e;
+            }
+        }
+
+        PreparedStatementCache statementCache = connectionState != null ? connectionState.getPreparedStatementCache() : null;
+        if (statementCache != null && "close".equals(methodName)) {
+            try {
+                statementCache.close();  // close all idle statements
+            } catch (SQLException e) {
+                // ignore. closing the connection releases its statements
+            }
+        }
+
+        // Invoke method on original Connection. For "prepareStatement", a cached statement is used if available.
         final Object retVal;
-        try {
-            retVal = method.invoke(this.connection, args);
-        } catch (InvocationTargetException ex) {
-            throw ex.getTargetException();
+        if (statementCache != null && "prepareStatement".equals(methodName) && ObjectArrayUtils.isFirstArgString(args)) {
+            PreparedStatementCache.Key key = new PreparedStatementCache.Key(args);
+            PreparedStatement cached = statementCache.get(key);
+            retVal = cached != null ? cached : invokeMethod(method, args);
+            statementCache.checkOut(key, (PreparedStatement) retVal);
+        } else if (isEndOfTransaction(methodName, args)) {
+            try {
+                retVal = invokeMethod(method, args);
+            } finally {
+                invalidateUncommittedQueries(methodName, args);
+            }
+        } else {
+            retVal = invokeMethod(method, args);
+        }
+
+        // keep track of auto-commit mode to avoid retrieving it from the connection
+        if (connectionState != null) {
+            if ("setAutoCommit".equals(methodName)) {
+                connectionState.setAutoCommit((Boolean) args[0]);
+            } else if ("getAutoCommit".equals(methodName)) {
+                connectionState.setAutoCommit((Boolean) retVal);
+            }
         }
 
         // when it is a call to createStatement, prepareStatement or prepareCall, returns a proxy.
@@ -141,4 +206,35 @@ public class ConnectionProxyLogic {
         return retVal;
     }
 
+    private boolean isEndOfTransaction(String methodName, Object[] args) {
+        if ("setAutoCommit".equals(methodName)) {
+            return Boolean.TRUE.equals(args[0]);
+        }
+        return "commit".equals(methodName) || "rollback".equals(methodName) || "close".equals(methodName);
+    }
+
+    // remove cached query results modified in the transaction, after they become visible or are discarded
+    private void invalidateUncommittedQueries(String methodName, Object[] args) {
+        QueryResultCache queryResultCache = this.proxyConfig.getQueryResultCache();
+        if (queryResultCache == null || this.connectionState == null) {
+            return;
+        }
+        for (String query : this.connectionState.getUncommittedQueries()) {
+            queryResultCache.invalidate(query);
+        }
+        // rollback to savepoint keeps the transaction
+        boolean isRollbackToSavepoint = "rollback".equals(methodName) && args != null && args.length > 0;
+        if (!isRollbackToSavepoint) {
+            this.connectionState.clearUncommittedQueries();
+        }
+    }
+
+    private Object invokeMethod(Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(this.connection, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getTargetException();
+        }
+    }
+
 }
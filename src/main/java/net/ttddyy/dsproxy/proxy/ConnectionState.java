@@ -0,0 +1,86 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * State of an open connection shared by the proxy logic of the connection and its statements.
+ *
+ * <p>Created by {@link ConnectionProxyLogic} when write batching, prepared statement caching or query result caching
+ * is enabled, and registered to {@link ProxyConfig} until the connection is closed.
+ *
+ * <p>A connection is expected to be used by one thread at a time.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+class ConnectionState {
+
+    private Boolean autoCommit;
+    private PendingBatch pendingBatch;
+    private PreparedStatementCache preparedStatementCache;
+    private Set<String> uncommittedQueries;
+
+    /**
+     * Returns auto-commit mode observed by {@link java.sql.Connection#setAutoCommit(boolean)} or
+     * {@link java.sql.Connection#getAutoCommit()} calls on the proxy connection.
+     *
+     * @return auto-commit mode. {@code null} if it has not been observed.
+     */
+    public Boolean getAutoCommit() {
+        return autoCommit;
+    }
+
+    public void setAutoCommit(Boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+
+    /**
+     * Returns deferred update executions on the connection.
+     *
+     * @return pending batch. {@code null} if there is no deferred update.
+     */
+    public PendingBatch getPendingBatch() {
+        return pendingBatch;
+    }
+
+    public void setPendingBatch(PendingBatch pendingBatch) {
+        this.pendingBatch = pendingBatch;
+    }
+
+    /**
+     * @return prepared statement cache. {@code null} if caching is disabled.
+     */
+    public PreparedStatementCache getPreparedStatementCache() {
+        return preparedStatementCache;
+    }
+
+    public void setPreparedStatementCache(PreparedStatementCache preparedStatementCache) {
+        this.preparedStatementCache = preparedStatementCache;
+    }
+
+    /**
+     * Returns modifying queries executed in the current transaction.
+     *
+     * @return uncommitted queries. empty if there is no uncommitted modification.
+     */
+    public Set<String> getUncommittedQueries() {
+        if (this.uncommittedQueries == null) {
+            return Collections.emptySet();
+        }
+        return this.uncommittedQueries;
+    }
+
+    public void addUncommittedQuery(String query) {
+        if (this.uncommittedQueries == null) {
+            this.uncommittedQueries = new LinkedHashSet<String>();
+        }
+        this.uncommittedQueries.add(query);
+    }
+
+    public void clearUncommittedQueries() {
+        this.uncommittedQueries = null;
+    }
+
+}
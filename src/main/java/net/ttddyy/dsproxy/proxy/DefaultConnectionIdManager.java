@@ -3,8 +3,9 @@ package net.ttddyy.dsproxy.proxy;
 import net.ttddyy.dsproxy.ConnectionIdManager;
 
 import java.sql.Connection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -12,6 +13,9 @@ import java.util.concurrent.atomic.AtomicLong;
  *
  * This implementation returns sequentially increasing unique number as connection id.
  *
+ * Open connection ids are kept in a concurrent set; therefore, {@link #getId(Connection)} and
+ * {@link #addClosedId(String)} do not acquire any lock.
+ *
  * @author Tadaya Tsuyukubo
  * @since 1.4.2
  */
@@ -19,27 +23,33 @@ public class DefaultConnectionIdManager implements ConnectionIdManager {
 
     private AtomicLong idCounter = new AtomicLong(0);
 
-    private Set<String> openIds = new HashSet<String>();
+    private Set<String> openIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     @Override
     public String getId(Connection connection) {
         String id = String.valueOf(this.idCounter.incrementAndGet());
-        synchronized (this) {
-            this.openIds.add(id);
-        }
+        this.openIds.add(id);
         return id;
     }
 
     @Override
     public void addClosedId(String closedId) {
-        synchronized (this) {
+        if (closedId != null) {  // concurrent set does not allow null
             this.openIds.remove(closedId);
         }
     }
 
+    /**
+     * Return a read-only, weakly consistent view of open connection ids.
+     *
+     * The view reflects subsequent open/close of connections. Iteration never throws
+     * {@link java.util.ConcurrentModificationException}.
+     *
+     * @return read-only view of open connection ids
+     */
     @Override
     public Set<String> getOpenConnectionIds() {
-        return new HashSet<String>(this.openIds);
+        return Collections.unmodifiableSet(this.openIds);
     }
 
 }
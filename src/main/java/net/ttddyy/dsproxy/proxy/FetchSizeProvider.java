@@ -0,0 +1,24 @@
+package net.ttddyy.dsproxy.proxy;
+
+/**
+ * Provide fetch size to apply by {@link java.sql.Statement#setFetchSize(int)} before query executions.
+ *
+ * <p>Fetch size is applied to {@code executeQuery} and {@code execute} unless the application has called
+ * {@code setFetchSize} on the statement.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getFetchSizeProvider()
+ * @see net.ttddyy.dsproxy.listener.AdaptiveFetchSizeListener
+ * @since 1.8
+ */
+public interface FetchSizeProvider {
+
+    /**
+     * Fetch size for the given query.
+     *
+     * @param query query
+     * @return fetch size. {@code null} to use the default fetch size of the statement.
+     */
+    Integer getFetchSize(String query);
+
+}
@@ -4,14 +4,17 @@ import net.ttddyy.dsproxy.ConnectionIdManager;
 
 import java.sql.Connection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * {@link ConnectionIdManager} implementation that emits connection IDs(sequential number) unique across all
  * datasources in JVM.
  *
+ * Open connection ids are kept in a concurrent set; therefore, {@link #getId(Connection)} and
+ * {@link #addClosedId(String)} do not acquire any lock.
+ *
  * @author Tadaya Tsuyukubo
  * @since 1.6
  */
@@ -19,7 +22,7 @@ public class GlobalConnectionIdManager implements ConnectionIdManager {
 
     private static AtomicLong ID_COUNTER = new AtomicLong(0);
 
-    private Set<String> openIds = Collections.synchronizedSet(new HashSet<String>());
+    private Set<String> openIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     /**
      * Reset internal id counter.
@@ -37,9 +40,16 @@ public class GlobalConnectionIdManager implements ConnectionIdManager {
 
     @Override
     public void addClosedId(String closedId) {
-        this.openIds.remove(closedId);
+        if (closedId != null) {  // concurrent set does not allow null
+            this.openIds.remove(closedId);
+        }
     }
 
+    /**
+     * Return a read-only, weakly consistent view of open connection ids.
+     *
+     * @return read-only view of open connection ids
+     */
     @Override
     public Set<String> getOpenConnectionIds() {
         return Collections.unmodifiableSet(this.openIds);
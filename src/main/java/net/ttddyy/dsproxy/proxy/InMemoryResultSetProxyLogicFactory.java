@@ -0,0 +1,45 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.DataSourceProxyException;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Factory to create {@link CachedRowSetResultSetProxyLogic} backed by {@link InMemoryResultSet}.
+ *
+ * Provides the same repeatable read, scrollable and disconnected {@link ResultSet} proxy as
+ * {@link CachedRowSetResultSetProxyLogicFactory} without depending on {@link javax.sql.rowset.RowSetFactory} and
+ * its default implementation {@code com.sun.rowset.CachedRowSetImpl}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see InMemoryResultSet
+ * @since 1.8
+ */
+public class InMemoryResultSetProxyLogicFactory implements ResultSetProxyLogicFactory {
+
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig) {
+        ResultSet inMemoryResultSet = getInMemoryResultSet(resultSet);
+        return new CachedRowSetResultSetProxyLogic(resultSet, inMemoryResultSet, connectionInfo, proxyConfig);
+    }
+
+    protected ResultSet getInMemoryResultSet(ResultSet resultSet) {
+        try {
+            return new InMemoryResultSet(resultSet);
+        } catch (SQLException e) {
+            throw new DataSourceProxyException("Failed to create InMemoryResultSet", e);
+        }
+    }
+
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        return create(resultSet, connectionInfo, proxyConfig);
+    }
+
+}
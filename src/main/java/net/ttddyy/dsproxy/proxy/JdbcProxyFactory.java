@@ -1,6 +1,8 @@
 package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 import net.ttddyy.dsproxy.proxy.jdk.JdkJdbcProxyFactory;
 
 import javax.sql.DataSource;
@@ -9,6 +11,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.List;
 
 /**
  * Factory interface to return a proxy with InvocationHandler used by datasource-proxy.
@@ -45,6 +48,20 @@ public interface JdbcProxyFactory {
      */
     ResultSet createResultSet(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig);
 
+    /**
+     * Create a proxy for {@link ResultSet} returned by a query execution.
+     *
+     * @param resultSet      result set
+     * @param connectionInfo connection info
+     * @param proxyConfig    proxy config
+     * @param executionInfo  execution info of the query. {@code null} when the query execution is not known.
+     * @param queries        executed queries
+     * @return proxy result set
+     * @since 1.8
+     */
+    ResultSet createResultSet(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                              ExecutionInfo executionInfo, List<QueryInfo> queries);
+
     /**
      * Create a proxy for {@link ResultSet} generated keys.
      *
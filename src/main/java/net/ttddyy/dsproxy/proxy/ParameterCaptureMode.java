@@ -0,0 +1,117 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.SQLXML;
+import java.util.Arrays;
+
+/**
+ * Defines how much of parameter values are kept in {@link ParameterSetOperation} for listeners.
+ *
+ * <p>Parameter values are kept by the statement proxy until the statement is executed, and for batch executions,
+ * values of all batch entries are kept. Reducing captured values bounds the memory retained by the proxy for large
+ * binary or character values. Values passed to the actual statement are not affected.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getParameterCaptureMode()
+ * @see CapturedParameterValue
+ * @since 1.8
+ */
+public enum ParameterCaptureMode {
+
+    /**
+     * Keep original values. (default)
+     */
+    FULL,
+
+    /**
+     * Truncate {@code String} and {@code byte[]} to max length. Streams, readers and LOBs are replaced by
+     * {@link CapturedParameterValue} since they cannot be read without consuming them.
+     */
+    TRUNCATED,
+
+    /**
+     * Replace all values by {@link CapturedParameterValue} which only has type and size of the value.
+     */
+    TYPE_AND_SIZE,
+
+    /**
+     * Do not keep parameters.
+     */
+    NONE;
+
+    /**
+     * Create a parameter set operation to be kept by the proxy.
+     *
+     * @param operation parameter set operation with original arguments
+     * @param maxLength max length of chars or bytes for {@link #TRUNCATED}
+     * @return operation to keep. Same instance if nothing is reduced. {@code null} for {@link #NONE}.
+     */
+    public ParameterSetOperation capture(ParameterSetOperation operation, int maxLength) {
+        if (this == FULL) {
+            return operation;
+        }
+        if (this == NONE) {
+            return null;
+        }
+
+        Object[] args = operation.getArgs();
+        if (args == null || args.length < 2 || args[1] == null
+                || ParameterSetOperation.isSetNullParameterOperation(operation)
+                || ParameterSetOperation.isRegisterOutParameterOperation(operation)) {
+            return operation;
+        }
+
+        // index 1 in arguments is always value
+        Object value = args[1];
+        Object capturedValue;
+        if (this == TRUNCATED) {
+            if (value instanceof String) {
+                String stringValue = (String) value;
+                capturedValue = stringValue.length() > maxLength ? stringValue.substring(0, maxLength) : value;
+            } else if (value instanceof byte[]) {
+                byte[] bytesValue = (byte[]) value;
+                capturedValue = bytesValue.length > maxLength ? Arrays.copyOf(bytesValue, maxLength) : value;
+            } else if (isStreamOrLob(value)) {
+                capturedValue = new CapturedParameterValue(value.getClass(), getSize(operation));
+            } else {
+                capturedValue = value;
+            }
+        } else {
+            capturedValue = new CapturedParameterValue(value.getClass(), getSize(operation));
+        }
+
+        if (capturedValue == value) {
+            return operation;
+        }
+
+        Object[] capturedArgs = args.clone();
+        capturedArgs[1] = capturedValue;
+        ParameterSetOperation captured = new ParameterSetOperation(operation.getMethod(), capturedArgs);
+        captured.setTruncated(true);
+        return captured;
+    }
+
+    private static boolean isStreamOrLob(Object value) {
+        return value instanceof InputStream || value instanceof Reader || value instanceof Blob
+                || value instanceof Clob || value instanceof SQLXML;
+    }
+
+    private static long getSize(ParameterSetOperation operation) {
+        Object[] args = operation.getArgs();
+        Object value = args[1];
+        if (value instanceof String) {
+            return ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        } else if ((value instanceof InputStream || value instanceof Reader) && args.length > 2
+                && args[2] instanceof Number && !"setObject".equals(operation.getMethod().getName())) {
+            // length argument of "setBinaryStream", "setCharacterStream", etc.
+            return ((Number) args[2]).longValue();
+        }
+        return -1;
+    }
+
+}
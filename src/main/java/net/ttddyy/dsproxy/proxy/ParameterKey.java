@@ -14,6 +14,10 @@ public class ParameterKey implements Comparable<ParameterKey> {
     private String name;
     private ParameterKeyType type;
 
+    // numeric-ness of name is resolved once for comparison
+    private boolean intName;
+    private int nameAsInt;
+
     public ParameterKey(int index) {
         this.index = index;
         this.type = ParameterKeyType.BY_INDEX;
@@ -22,6 +26,12 @@ public class ParameterKey implements Comparable<ParameterKey> {
     public ParameterKey(String name) {
         this.name = name;
         this.type = ParameterKeyType.BY_NAME;
+
+        Integer nameAsInt = ParameterKeyUtils.parseIntOrNull(name);
+        if (nameAsInt != null) {
+            this.intName = true;
+            this.nameAsInt = nameAsInt;
+        }
     }
 
     public int getIndex() {
@@ -52,48 +62,21 @@ public class ParameterKey implements Comparable<ParameterKey> {
     public int compareTo(ParameterKey other) {
         // TODO: for null
 
-        if (this.isByIndex()) {
-            if (other.isByIndex()) {
-                return (this.index == other.index) ? 0 : (this.index < other.index ? -1 : 1);
-            } else {
-                if (isIntString(other.name)) {
-                    return compareInt(this.index, Integer.parseInt(other.name));
-                } else {
-                    return -1;  // this(number) first
-                }
-            }
-        } else {
-            if (other.isByIndex()) {
-                if (isIntString(this.name)) {
-                    return compareInt(Integer.parseInt(this.name), other.index);
-                } else {
-                    return 1;  // other(number) first
-                }
-            } else {
-                boolean thisIsIntString = isIntString(this.name);
-                boolean otherIsIntString = isIntString(other.name);
-                boolean bothAreIntString = thisIsIntString && otherIsIntString;
-
-                if (bothAreIntString) {
-                    return compareInt(Integer.parseInt(this.name), Integer.parseInt(other.name));
-                } else if (thisIsIntString || otherIsIntString) {
-                    return thisIsIntString ? -1 : 1;  // number first
-                } else {
-                    return this.name.compareTo(other.name);
-                }
-
-            }
+        // by index and int name are compared as number, and numbers come first
+        boolean thisIsInt = this.isByIndex() || this.intName;
+        boolean otherIsInt = other.isByIndex() || other.intName;
 
+        if (thisIsInt && otherIsInt) {
+            return compareInt(this.getIntValue(), other.getIntValue());
+        } else if (thisIsInt || otherIsInt) {
+            return thisIsInt ? -1 : 1;  // number first
+        } else {
+            return this.name.compareTo(other.name);
         }
     }
 
-    private boolean isIntString(String str) {
-        try {
-            Integer.parseInt(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    private int getIntValue() {
+        return this.isByIndex() ? this.index : this.nameAsInt;
     }
 
     private int compareInt(int left, int right) {
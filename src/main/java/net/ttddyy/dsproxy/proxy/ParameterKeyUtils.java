@@ -37,4 +37,47 @@ public class ParameterKeyUtils {
         return result;
     }
 
+    /**
+     * Parse the given string as decimal int in the same way as {@link Integer#parseInt(String)} without throwing
+     * exception.
+     *
+     * @param str a string to parse
+     * @return parsed value. {@code null} if the string is not an int.
+     * @since 1.8
+     */
+    public static Integer parseIntOrNull(String str) {
+        if (str == null || str.length() == 0) {
+            return null;
+        }
+        int length = str.length();
+        int i = 0;
+        boolean negative = false;
+        char first = str.charAt(0);
+        if (first == '-' || first == '+') {
+            if (length == 1) {
+                return null;
+            }
+            negative = first == '-';
+            i = 1;
+        }
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(str.charAt(i), 10);
+            if (digit < 0) {
+                return null;
+            }
+            result = result * 10 + digit;
+            if (result > (long) Integer.MAX_VALUE + 1) {
+                return null;
+            }
+        }
+        if (negative) {
+            result = -result;
+        }
+        if (result > Integer.MAX_VALUE) {
+            return null;
+        }
+        return (int) result;
+    }
+
 }
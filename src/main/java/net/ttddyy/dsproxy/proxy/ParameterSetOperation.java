@@ -37,6 +37,7 @@ public class ParameterSetOperation {
 
     private Method method;
     private Object[] args;
+    private boolean truncated;
 
     public ParameterSetOperation() {
     }
@@ -62,4 +63,20 @@ public class ParameterSetOperation {
     public void setArgs(Object[] args) {
         this.args = args;
     }
+
+    /**
+     * @return {@code true} when the value in arguments has been reduced by {@link ParameterCaptureMode}
+     * @since 1.8
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @param truncated {@code true} when the value in arguments is not the original value
+     * @since 1.8
+     */
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
 }
@@ -0,0 +1,22 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.sql.SQLException;
+
+/**
+ * Batch of deferred update executions that have not been sent to the database yet.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getWriteBatchSize()
+ * @see ConnectionState#getPendingBatch()
+ * @since 1.8
+ */
+interface PendingBatch {
+
+    /**
+     * Execute the deferred updates as a batch.
+     *
+     * @throws SQLException when batch execution failed
+     */
+    void flush() throws SQLException;
+
+}
@@ -0,0 +1,237 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of {@link PreparedStatement} per connection.
+ *
+ * <p>Statements are keyed by the arguments of {@link java.sql.Connection#prepareStatement(String)} and its variants
+ * (query, resultset type/concurrency/holdability and generated keys). A statement is removed from the cache while it
+ * is used by the application, and returned to the cache when the application closes it.
+ *
+ * <p>Statement settings such as max rows, fetch size and query timeout are recorded when a statement is first given to
+ * the application, and restored when the statement is returned to the cache.
+ *
+ * <p>A connection is expected to be used by one thread at a time.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getPreparedStatementCacheSize()
+ * @since 1.8
+ */
+public class PreparedStatementCache {
+
+    /**
+     * Cache key composed by the arguments of {@code prepareStatement}.
+     */
+    public static class Key {
+        private final Object[] args;
+        private final int hashCode;
+
+        public Key(Object[] args) {
+            this.args = args.clone();
+            this.hashCode = Arrays.deepHashCode(this.args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            return Arrays.deepEquals(this.args, ((Key) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    /**
+     * Settings of a statement that the application may change.
+     */
+    private static class Settings {
+        private final int maxRows;
+        private final int fetchSize;
+        private final int queryTimeout;
+        private final int fetchDirection;
+        private final int maxFieldSize;
+        private final boolean poolable;
+
+        private Settings(PreparedStatement ps) throws SQLException {
+            this.maxRows = ps.getMaxRows();
+            this.fetchSize = ps.getFetchSize();
+            this.queryTimeout = ps.getQueryTimeout();
+            this.fetchDirection = ps.getFetchDirection();
+            this.maxFieldSize = ps.getMaxFieldSize();
+            this.poolable = ps.isPoolable();
+        }
+
+        private void restore(PreparedStatement ps) throws SQLException {
+            if (ps.getMaxRows() != this.maxRows) {
+                ps.setMaxRows(this.maxRows);
+            }
+            if (ps.getFetchSize() != this.fetchSize) {
+                ps.setFetchSize(this.fetchSize);
+            }
+            if (ps.getQueryTimeout() != this.queryTimeout) {
+                ps.setQueryTimeout(this.queryTimeout);
+            }
+            if (ps.getFetchDirection() != this.fetchDirection) {
+                ps.setFetchDirection(this.fetchDirection);
+            }
+            if (ps.getMaxFieldSize() != this.maxFieldSize) {
+                ps.setMaxFieldSize(this.maxFieldSize);
+            }
+            if (ps.isPoolable() != this.poolable) {
+                ps.setPoolable(this.poolable);
+            }
+            // escape processing cannot be retrieved. restore the JDBC default
+            ps.setEscapeProcessing(true);
+        }
+    }
+
+    private final int maxSize;
+    private final PreparedStatementCacheMetrics metrics;
+
+    // idle statements in access order
+    private final Map<Key, PreparedStatement> idleStatements;
+
+    // statements used by application
+    private final Map<PreparedStatement, Key> inUseStatements = new IdentityHashMap<PreparedStatement, Key>();
+
+    // settings of statements when they were prepared
+    private final Map<PreparedStatement, Settings> initialSettings = new IdentityHashMap<PreparedStatement, Settings>();
+
+    public PreparedStatementCache(int maxSize, PreparedStatementCacheMetrics metrics) {
+        this.maxSize = maxSize;
+        this.metrics = metrics;
+        this.idleStatements = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * Retrieve an idle statement for the key.
+     *
+     * @param key cache key
+     * @return cached statement. {@code null} if no idle statement exists.
+     */
+    public PreparedStatement get(Key key) {
+        PreparedStatement ps = this.idleStatements.remove(key);
+        if (ps == null) {
+            this.metrics.incrementMisses();
+        } else {
+            this.metrics.incrementHits();
+        }
+        return ps;
+    }
+
+    /**
+     * Register a statement given to the application.
+     *
+     * When the settings of a newly prepared statement cannot be retrieved, the statement is not managed by this cache.
+     *
+     * @param key cache key
+     * @param ps  actual statement
+     */
+    public void checkOut(Key key, PreparedStatement ps) {
+        if (!this.initialSettings.containsKey(ps)) {
+            try {
+                this.initialSettings.put(ps, new Settings(ps));
+            } catch (SQLException e) {
+                return;  // cannot restore settings on release
+            }
+        }
+        this.inUseStatements.put(ps, key);
+    }
+
+    /**
+     * Return a statement closed by the application to the cache.
+     *
+     * Parameters, batch and current resultset of the statement are cleared and its settings are restored. When the cache
+     * is full, the least recently used statement is closed.
+     *
+     * @param ps actual statement
+     * @return {@code true} if the statement is cached. {@code false} if the statement is not managed by this cache.
+     * @throws SQLException on failure to close statement
+     */
+    public boolean release(PreparedStatement ps) throws SQLException {
+        Key key = this.inUseStatements.remove(ps);
+        if (key == null) {
+            return false;
+        }
+
+        try {
+            ResultSet rs = ps.getResultSet();
+            if (rs != null) {
+                rs.close();
+            }
+            ps.clearParameters();
+            ps.clearBatch();
+            ps.clearWarnings();
+            this.initialSettings.get(ps).restore(ps);
+        } catch (SQLException e) {
+            this.initialSettings.remove(ps);
+            ps.close();  // do not cache the statement in unknown state
+            return true;
+        }
+
+        PreparedStatement existing = this.idleStatements.put(key, ps);
+        if (existing != null) {
+            this.initialSettings.remove(existing);
+            existing.close();  // same statement had been prepared more than once
+        }
+
+        if (this.idleStatements.size() > this.maxSize) {
+            Iterator<PreparedStatement> iterator = this.idleStatements.values().iterator();
+            PreparedStatement eldest = iterator.next();
+            iterator.remove();
+            this.initialSettings.remove(eldest);
+            this.metrics.incrementEvictions();
+            eldest.close();
+        }
+        return true;
+    }
+
+    /**
+     * Close all idle statements.
+     *
+     * @throws SQLException on failure to close statement
+     */
+    public void close() throws SQLException {
+        SQLException exception = null;
+        for (PreparedStatement ps : this.idleStatements.values()) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                exception = e;
+            }
+        }
+        this.idleStatements.clear();
+        this.inUseStatements.clear();
+        this.initialSettings.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @return num of idle statements
+     */
+    public int size() {
+        return this.idleStatements.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+}
@@ -0,0 +1,57 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hit/miss metrics of {@link PreparedStatementCache}, shared by all connections of a datasource.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getPreparedStatementCacheMetrics()
+ * @since 1.8
+ */
+public class PreparedStatementCacheMetrics {
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+    private AtomicLong evictions = new AtomicLong();
+
+    public void incrementHits() {
+        this.hits.incrementAndGet();
+    }
+
+    public void incrementMisses() {
+        this.misses.incrementAndGet();
+    }
+
+    public void incrementEvictions() {
+        this.evictions.incrementAndGet();
+    }
+
+    /**
+     * @return num of {@code prepareStatement} calls that reused a cached statement
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * @return num of {@code prepareStatement} calls that prepared a new statement
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return num of cached statements closed because the cache was full
+     */
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    public void clear() {
+        this.hits.set(0);
+        this.misses.set(0);
+        this.evictions.set(0);
+    }
+
+}
@@ -1,6 +1,7 @@
 package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionIdManager;
+import net.ttddyy.dsproxy.ConnectionInfo;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.listener.ChainListener;
 import net.ttddyy.dsproxy.listener.CompositeMethodListener;
@@ -9,9 +10,12 @@ import net.ttddyy.dsproxy.listener.QueryExecutionListener;
 import net.ttddyy.dsproxy.transform.ParameterTransformer;
 import net.ttddyy.dsproxy.transform.QueryTransformer;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Hold configuration objects for creating a proxy.
@@ -21,6 +25,13 @@ import java.util.List;
  */
 public class ProxyConfig {
 
+    /**
+     * Default max length of chars or bytes for {@link ParameterCaptureMode#TRUNCATED}.
+     *
+     * @since 1.8
+     */
+    public static final int DEFAULT_PARAMETER_CAPTURE_MAX_LENGTH = 1024;
+
     private static class GeneratedKeysConfig {
         private ResultSetProxyLogicFactory proxyLogicFactory; // can be null if generated keys proxy is disabled
         private boolean autoRetrieve;
@@ -40,6 +51,16 @@ public class ProxyConfig {
         private CompositeMethodListener methodListener = new CompositeMethodListener();  // empty default
         private GeneratedKeysConfig generatedKeysConfig = new GeneratedKeysConfig();
         private StopwatchFactory stopwatchFactory = new SystemStopwatchFactory();
+        private FetchSizeProvider fetchSizeProvider;  // can be null if fetch size is not managed
+        private int writeBatchSize;  // 0 if write batching is disabled
+        private boolean strictWriteBatching;
+        private int preparedStatementCacheSize;  // 0 if prepared statement cache is disabled
+        private PreparedStatementCacheMetrics preparedStatementCacheMetrics = new PreparedStatementCacheMetrics();
+        private QueryResultCache queryResultCache;  // can be null if query result cache is disabled
+        private ParameterCaptureMode parameterCaptureMode = ParameterCaptureMode.FULL;
+        private int parameterCaptureMaxLength = DEFAULT_PARAMETER_CAPTURE_MAX_LENGTH;
+        private QueryBulkhead queryBulkhead;  // can be null if concurrency is not limited
+        private QueryTimeoutPolicy queryTimeoutPolicy;  // can be null if query timeout is not applied
 
         public static Builder create() {
             return new Builder();
@@ -56,6 +77,16 @@ public class ProxyConfig {
                     .connectionIdManager(proxyConfig.connectionIdManager)
                     .methodListener(proxyConfig.methodListener)
                     .stopwatchFactory(proxyConfig.stopwatchFactory)
+                    .fetchSizeProvider(proxyConfig.fetchSizeProvider)
+                    .writeBatchSize(proxyConfig.writeBatchSize)
+                    .strictWriteBatching(proxyConfig.strictWriteBatching)
+                    .preparedStatementCacheSize(proxyConfig.preparedStatementCacheSize)
+                    .preparedStatementCacheMetrics(proxyConfig.preparedStatementCacheMetrics)
+                    .queryResultCache(proxyConfig.queryResultCache)
+                    .parameterCaptureMode(proxyConfig.parameterCaptureMode)
+                    .parameterCaptureMaxLength(proxyConfig.parameterCaptureMaxLength)
+                    .queryBulkhead(proxyConfig.queryBulkhead)
+                    .queryTimeoutPolicy(proxyConfig.queryTimeoutPolicy)
                     .generatedKeysProxyLogicFactory(proxyConfig.generatedKeysConfig.proxyLogicFactory)
                     .autoRetrieveGeneratedKeys(proxyConfig.generatedKeysConfig.autoRetrieve)
                     .retrieveGeneratedKeysForBatchStatement(proxyConfig.generatedKeysConfig.retrieveForBatchStatement)
@@ -75,6 +106,16 @@ public class ProxyConfig {
             proxyConfig.connectionIdManager = this.connectionIdManager;
             proxyConfig.methodListener = this.methodListener;
             proxyConfig.stopwatchFactory = this.stopwatchFactory;
+            proxyConfig.fetchSizeProvider = this.fetchSizeProvider;
+            proxyConfig.writeBatchSize = this.writeBatchSize;
+            proxyConfig.strictWriteBatching = this.strictWriteBatching;
+            proxyConfig.preparedStatementCacheSize = this.preparedStatementCacheSize;
+            proxyConfig.preparedStatementCacheMetrics = this.preparedStatementCacheMetrics;
+            proxyConfig.queryResultCache = this.queryResultCache;
+            proxyConfig.parameterCaptureMode = this.parameterCaptureMode;
+            proxyConfig.parameterCaptureMaxLength = this.parameterCaptureMaxLength;
+            proxyConfig.queryBulkhead = this.queryBulkhead;
+            proxyConfig.queryTimeoutPolicy = this.queryTimeoutPolicy;
 
             // generated keys
             proxyConfig.generatedKeysConfig.proxyLogicFactory = this.generatedKeysConfig.proxyLogicFactory;
@@ -167,6 +208,106 @@ public class ProxyConfig {
             this.stopwatchFactory = stopwatchFactory;
             return this;
         }
+
+        /**
+         * @param fetchSizeProvider provider of fetch size per query
+         * @return builder
+         * @since 1.8
+         */
+        public Builder fetchSizeProvider(FetchSizeProvider fetchSizeProvider) {
+            this.fetchSizeProvider = fetchSizeProvider;
+            return this;
+        }
+
+        /**
+         * @param writeBatchSize max number of deferred updates per batch. {@code 0} to disable write batching.
+         * @return builder
+         * @since 1.8
+         */
+        public Builder writeBatchSize(int writeBatchSize) {
+            this.writeBatchSize = writeBatchSize;
+            return this;
+        }
+
+        /**
+         * @param strictWriteBatching {@code true} to flush deferred updates before returning update counts
+         * @return builder
+         * @since 1.8
+         */
+        public Builder strictWriteBatching(boolean strictWriteBatching) {
+            this.strictWriteBatching = strictWriteBatching;
+            return this;
+        }
+
+        /**
+         * @param preparedStatementCacheSize max number of cached statements per connection. {@code 0} to disable.
+         * @return builder
+         * @since 1.8
+         */
+        public Builder preparedStatementCacheSize(int preparedStatementCacheSize) {
+            this.preparedStatementCacheSize = preparedStatementCacheSize;
+            return this;
+        }
+
+        /**
+         * @param preparedStatementCacheMetrics metrics of prepared statement cache
+         * @return builder
+         * @since 1.8
+         */
+        public Builder preparedStatementCacheMetrics(PreparedStatementCacheMetrics preparedStatementCacheMetrics) {
+            this.preparedStatementCacheMetrics = preparedStatementCacheMetrics;
+            return this;
+        }
+
+        /**
+         * @param queryResultCache query result cache
+         * @return builder
+         * @since 1.8
+         */
+        public Builder queryResultCache(QueryResultCache queryResultCache) {
+            this.queryResultCache = queryResultCache;
+            return this;
+        }
+
+        /**
+         * @param parameterCaptureMode how parameter values are kept for listeners
+         * @return builder
+         * @since 1.8
+         */
+        public Builder parameterCaptureMode(ParameterCaptureMode parameterCaptureMode) {
+            this.parameterCaptureMode = parameterCaptureMode;
+            return this;
+        }
+
+        /**
+         * @param parameterCaptureMaxLength max length of chars or bytes for {@link ParameterCaptureMode#TRUNCATED}
+         * @return builder
+         * @since 1.8
+         */
+        public Builder parameterCaptureMaxLength(int parameterCaptureMaxLength) {
+            this.parameterCaptureMaxLength = parameterCaptureMaxLength;
+            return this;
+        }
+
+        /**
+         * @param queryBulkhead limiter of concurrent query executions
+         * @return builder
+         * @since 1.8
+         */
+        public Builder queryBulkhead(QueryBulkhead queryBulkhead) {
+            this.queryBulkhead = queryBulkhead;
+            return this;
+        }
+
+        /**
+         * @param queryTimeoutPolicy policy of query timeout applied before query executions
+         * @return builder
+         * @since 1.8
+         */
+        public Builder queryTimeoutPolicy(QueryTimeoutPolicy queryTimeoutPolicy) {
+            this.queryTimeoutPolicy = queryTimeoutPolicy;
+            return this;
+        }
     }
 
     private String dataSourceName;
@@ -179,6 +320,19 @@ public class ProxyConfig {
     private CompositeMethodListener methodListener;
     private GeneratedKeysConfig generatedKeysConfig = new GeneratedKeysConfig();
     private StopwatchFactory stopwatchFactory;
+    private FetchSizeProvider fetchSizeProvider;
+    private int writeBatchSize;
+    private boolean strictWriteBatching;
+    private int preparedStatementCacheSize;
+    private PreparedStatementCacheMetrics preparedStatementCacheMetrics;
+    private QueryResultCache queryResultCache;
+    private ParameterCaptureMode parameterCaptureMode;
+    private int parameterCaptureMaxLength;
+    private QueryBulkhead queryBulkhead;
+    private QueryTimeoutPolicy queryTimeoutPolicy;
+
+    // state of open connections shared by connection and statement proxies
+    private final ConcurrentMap<ConnectionInfo, ConnectionState> connectionStates = new ConcurrentHashMap<ConnectionInfo, ConnectionState>();
 
     public String getDataSourceName() {
         return dataSourceName;
@@ -303,4 +457,125 @@ public class ProxyConfig {
     public StopwatchFactory getStopwatchFactory() {
         return this.stopwatchFactory;
     }
+
+    /**
+     * Provider of fetch size per query.
+     *
+     * When it is specified, fetch size of the statement is set before executing {@link Statement#executeQuery(String)}
+     * or {@link Statement#execute(String)} unless the application has explicitly set it.
+     *
+     * @return fetch size provider. {@code null} if fetch size is not managed.
+     * @since 1.8
+     */
+    public FetchSizeProvider getFetchSizeProvider() {
+        return fetchSizeProvider;
+    }
+
+    /**
+     * Max number of {@link PreparedStatement#executeUpdate()} executions to convert into a single batch.
+     *
+     * When it is positive and auto-commit is disabled, consecutive {@link PreparedStatement#executeUpdate()} calls on
+     * the same statement are deferred by {@link PreparedStatement#addBatch()}, and executed by
+     * {@link PreparedStatement#executeBatch()} when the batch is full, other statement is executed on the connection,
+     * or the transaction ends.
+     *
+     * @return write batch size. {@code 0} if write batching is disabled.
+     * @since 1.8
+     */
+    public int getWriteBatchSize() {
+        return writeBatchSize;
+    }
+
+    /**
+     * When {@code true}, deferred updates are flushed before returning the update count; therefore, actual update
+     * count is returned. Otherwise, {@link Statement#SUCCESS_NO_INFO} is returned for deferred updates.
+     *
+     * @return {@code true} if strict write batching is enabled
+     * @since 1.8
+     */
+    public boolean isStrictWriteBatching() {
+        return strictWriteBatching;
+    }
+
+    /**
+     * Max number of {@link PreparedStatement} cached per connection.
+     *
+     * @return prepared statement cache size. {@code 0} if prepared statement cache is disabled.
+     * @see PreparedStatementCache
+     * @since 1.8
+     */
+    public int getPreparedStatementCacheSize() {
+        return preparedStatementCacheSize;
+    }
+
+    /**
+     * Hit/miss metrics of prepared statement cache for all connections.
+     *
+     * @return metrics
+     * @since 1.8
+     */
+    public PreparedStatementCacheMetrics getPreparedStatementCacheMetrics() {
+        return preparedStatementCacheMetrics;
+    }
+
+    /**
+     * Cache of {@link Statement#executeQuery(String)} results.
+     *
+     * @return query result cache. {@code null} if query result cache is disabled.
+     * @since 1.8
+     */
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * How parameter values are kept in {@link ParameterSetOperation} for listeners.
+     *
+     * @return parameter capture mode
+     * @since 1.8
+     */
+    public ParameterCaptureMode getParameterCaptureMode() {
+        return parameterCaptureMode;
+    }
+
+    /**
+     * @return max length of chars or bytes for {@link ParameterCaptureMode#TRUNCATED}
+     * @since 1.8
+     */
+    public int getParameterCaptureMaxLength() {
+        return parameterCaptureMaxLength;
+    }
+
+    /**
+     * Limiter of concurrent query executions.
+     *
+     * @return query bulkhead. {@code null} if concurrency is not limited.
+     * @since 1.8
+     */
+    public QueryBulkhead getQueryBulkhead() {
+        return queryBulkhead;
+    }
+
+    /**
+     * Policy of query timeout applied before query executions unless the application specifies one.
+     *
+     * @return query timeout policy. {@code null} if query timeout is not applied.
+     * @since 1.8
+     */
+    public QueryTimeoutPolicy getQueryTimeoutPolicy() {
+        return queryTimeoutPolicy;
+    }
+
+    void registerConnectionState(ConnectionInfo connectionInfo, ConnectionState connectionState) {
+        this.connectionStates.put(connectionInfo, connectionState);
+    }
+
+    void unregisterConnectionState(ConnectionInfo connectionInfo) {
+        this.connectionStates.remove(connectionInfo);
+    }
+
+    ConnectionState getConnectionState(ConnectionInfo connectionInfo) {
+        return connectionInfo == null ? null : this.connectionStates.get(connectionInfo);
+    }
+
 }
@@ -0,0 +1,394 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit the number of concurrent query executions per datasource, and optionally per partition of queries such as
+ * query fingerprint.
+ *
+ * <p>Executions wait for a permit in arrival order up to the max wait time. When a permit is not available in time,
+ * {@link SQLTransientException} is thrown without executing the query. A partition permit is acquired before the
+ * datasource permit; therefore, executions waiting for a busy partition do not hold datasource permits.
+ *
+ * <p>Default partition key is the query fingerprint (see {@link QueryUtils#getFingerprint(String)}). Subclass can
+ * override {@link #getPartitionKey(String, List)} to partition by other means such as tags in query comments.
+ * Number of partitions is capped by {@link #setMaxPartitions(int)}. When a new partition exceeds it, idle partitions
+ * (no active or waiting execution) are evicted in least recently acquired order. If all partitions are in use,
+ * queries of the new partition are only limited per datasource. Metrics of evicted partitions are discarded.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getQueryBulkhead()
+ * @since 1.8
+ */
+public class QueryBulkhead {
+
+    /**
+     * Permits and metrics of a datasource or a partition.
+     */
+    public static class Compartment {
+
+        private final String name;
+        private final int maxConcurrency;
+        private final Semaphore semaphore;
+        private final AtomicLong acquiredCount = new AtomicLong();
+        private final AtomicLong timeoutCount = new AtomicLong();
+        private final AtomicLong totalWaitTime = new AtomicLong();
+        private final AtomicLong maxWaitTime = new AtomicLong();
+        private volatile long lastAcquiredAt = System.nanoTime();
+
+        public Compartment(String name, int maxConcurrency) {
+            this.name = name;
+            this.maxConcurrency = maxConcurrency;
+            this.semaphore = new Semaphore(maxConcurrency, true);
+        }
+
+        private boolean tryAcquire(long timeoutInNanos) throws InterruptedException {
+            long startTime = System.nanoTime();
+            boolean acquired = this.semaphore.tryAcquire(timeoutInNanos, TimeUnit.NANOSECONDS);
+            long now = System.nanoTime();
+            long waitTime = now - startTime;
+            if (acquired) {
+                this.lastAcquiredAt = now;
+                this.acquiredCount.incrementAndGet();
+                this.totalWaitTime.addAndGet(waitTime);
+                long max;
+                while (waitTime > (max = this.maxWaitTime.get())) {
+                    if (this.maxWaitTime.compareAndSet(max, waitTime)) {
+                        break;
+                    }
+                }
+            } else {
+                this.timeoutCount.incrementAndGet();
+            }
+            return acquired;
+        }
+
+        private void release() {
+            this.semaphore.release();
+        }
+
+        // succeeds only when no execution holds or waits for a permit
+        private boolean tryAcquireAll() {
+            return this.semaphore.getQueueLength() == 0 && this.semaphore.tryAcquire(this.maxConcurrency);
+        }
+
+        private void releaseAll() {
+            this.semaphore.release(this.maxConcurrency);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        /**
+         * @return number of executions holding permits
+         */
+        public int getActiveCount() {
+            return this.maxConcurrency - this.semaphore.availablePermits();
+        }
+
+        /**
+         * @return estimated number of executions waiting for permits
+         */
+        public int getQueueDepth() {
+            return this.semaphore.getQueueLength();
+        }
+
+        /**
+         * @return number of acquired permits
+         */
+        public long getAcquiredCount() {
+            return this.acquiredCount.get();
+        }
+
+        /**
+         * @return number of executions that could not acquire permits within the max wait time
+         */
+        public long getTimeoutCount() {
+            return this.timeoutCount.get();
+        }
+
+        /**
+         * @return sum of time spent to acquire permits in nanoseconds
+         */
+        public long getTotalWaitTimeInNanos() {
+            return this.totalWaitTime.get();
+        }
+
+        /**
+         * @return max time spent to acquire a permit in nanoseconds
+         */
+        public long getMaxWaitTimeInNanos() {
+            return this.maxWaitTime.get();
+        }
+    }
+
+    /**
+     * Permits held by a query execution.
+     */
+    public static class Permit {
+
+        private final Compartment dataSourceCompartment;
+        private final Compartment partitionCompartment;
+        private boolean released;
+
+        private Permit(Compartment dataSourceCompartment, Compartment partitionCompartment) {
+            this.dataSourceCompartment = dataSourceCompartment;
+            this.partitionCompartment = partitionCompartment;
+        }
+
+        public void release() {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            this.dataSourceCompartment.release();
+            if (this.partitionCompartment != null) {
+                this.partitionCompartment.release();
+            }
+        }
+    }
+
+    private static final Comparator<Map.Entry<String, Compartment>> LAST_ACQUIRED_AT_COMPARATOR =
+            new Comparator<Map.Entry<String, Compartment>>() {
+                @Override
+                public int compare(Map.Entry<String, Compartment> left, Map.Entry<String, Compartment> right) {
+                    long leftTime = left.getValue().lastAcquiredAt;
+                    long rightTime = right.getValue().lastAcquiredAt;
+                    // nano time may overflow
+                    return leftTime - rightTime < 0 ? -1 : (leftTime == rightTime ? 0 : 1);
+                }
+            };
+
+    private static final String INTERRUPTED_MESSAGE = "Interrupted while waiting for a query execution permit";
+
+    private final int maxConcurrency;
+    private final long maxWaitInNanos;
+    private final ConcurrentMap<String, Compartment> dataSourceCompartments = new ConcurrentHashMap<String, Compartment>();
+    private final ConcurrentMap<String, Compartment> partitionCompartments = new ConcurrentHashMap<String, Compartment>();
+    private final AtomicInteger numOfPartitions = new AtomicInteger();
+    private final Object evictionLock = new Object();
+
+    private int maxConcurrencyPerPartition;  // 0 if not partitioned
+    private int maxPartitions = 1000;
+
+    /**
+     * @param maxConcurrency max number of concurrent query executions per datasource
+     * @param maxWait        max time to wait for a permit
+     * @param timeUnit       time unit of max wait
+     */
+    public QueryBulkhead(int maxConcurrency, long maxWait, TimeUnit timeUnit) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxWaitInNanos = timeUnit.toNanos(maxWait);
+    }
+
+    /**
+     * Acquire permits to execute queries.
+     *
+     * @param dataSourceName datasource name
+     * @param queryInfoList  queries to execute
+     * @return permit to release after the execution
+     * @throws SQLTransientException when permits are not available within the max wait time
+     */
+    public Permit acquire(String dataSourceName, List<QueryInfo> queryInfoList) throws SQLTransientException {
+        long deadline = System.nanoTime() + this.maxWaitInNanos;
+
+        Compartment partitionCompartment = null;
+        if (this.maxConcurrencyPerPartition > 0) {
+            String partitionKey = getPartitionKey(dataSourceName, queryInfoList);
+            if (partitionKey != null) {
+                partitionCompartment = acquirePartitionCompartment(dataSourceName + ":" + partitionKey, deadline);
+            }
+        }
+        Compartment dataSourceCompartment = getOrCreateDataSourceCompartment(dataSourceName);
+
+        boolean acquired = false;
+        try {
+            acquired = dataSourceCompartment.tryAcquire(deadline - System.nanoTime());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException(INTERRUPTED_MESSAGE, e);
+        } finally {
+            if (!acquired && partitionCompartment != null) {
+                partitionCompartment.release();
+            }
+        }
+        if (!acquired) {
+            throw new SQLTransientException(getTimeoutMessage(dataSourceCompartment));
+        }
+        return new Permit(dataSourceCompartment, partitionCompartment);
+    }
+
+    // returns null when the partition cannot be created
+    private Compartment acquirePartitionCompartment(String key, long deadline) throws SQLTransientException {
+        while (true) {
+            Compartment compartment = getOrCreatePartitionCompartment(key);
+            if (compartment == null) {
+                return null;
+            }
+            boolean acquired;
+            try {
+                acquired = compartment.tryAcquire(deadline - System.nanoTime());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientException(INTERRUPTED_MESSAGE, e);
+            }
+            if (!acquired) {
+                throw new SQLTransientException(getTimeoutMessage(compartment));
+            }
+            if (this.partitionCompartments.get(key) == compartment) {
+                return compartment;
+            }
+            compartment.release();  // evicted before acquiring the permit, retry with a new one
+        }
+    }
+
+    private String getTimeoutMessage(Compartment compartment) {
+        return "Could not acquire a query execution permit for '" + compartment.getName() + "' within "
+                + TimeUnit.NANOSECONDS.toMillis(this.maxWaitInNanos) + "ms. (max concurrency="
+                + compartment.getMaxConcurrency() + ")";
+    }
+
+    /**
+     * Determine the partition of queries.
+     *
+     * @param dataSourceName datasource name
+     * @param queryInfoList  queries to execute
+     * @return partition key. {@code null} to only limit per datasource.
+     */
+    protected String getPartitionKey(String dataSourceName, List<QueryInfo> queryInfoList) {
+        if (queryInfoList.size() != 1) {
+            return null;  // batch statement
+        }
+        return QueryUtils.getFingerprint(queryInfoList.get(0).getQuery());
+    }
+
+    protected Compartment getOrCreateDataSourceCompartment(String dataSourceName) {
+        Compartment compartment = this.dataSourceCompartments.get(dataSourceName);
+        if (compartment == null) {
+            this.dataSourceCompartments.putIfAbsent(dataSourceName, new Compartment(dataSourceName, this.maxConcurrency));
+            compartment = this.dataSourceCompartments.get(dataSourceName);
+        }
+        return compartment;
+    }
+
+    protected Compartment getOrCreatePartitionCompartment(String key) {
+        Compartment compartment = this.partitionCompartments.get(key);
+        if (compartment != null) {
+            return compartment;
+        }
+        if (this.numOfPartitions.incrementAndGet() > this.maxPartitions) {
+            this.numOfPartitions.decrementAndGet();
+            evictIdlePartitions();
+            if (this.numOfPartitions.incrementAndGet() > this.maxPartitions) {
+                this.numOfPartitions.decrementAndGet();  // all in use, or filled by other threads
+                return null;
+            }
+        }
+        Compartment existing = this.partitionCompartments.putIfAbsent(key, new Compartment(key, this.maxConcurrencyPerPartition));
+        if (existing != null) {
+            this.numOfPartitions.decrementAndGet();  // created by other thread
+            return existing;
+        }
+        return this.partitionCompartments.get(key);
+    }
+
+    // evict up to a tenth of partitions at once, so that the scan is amortized over subsequent new partitions
+    private void evictIdlePartitions() {
+        synchronized (this.evictionLock) {
+            if (this.numOfPartitions.get() < this.maxPartitions) {
+                return;  // evicted by other thread
+            }
+            List<Map.Entry<String, Compartment>> entries = new ArrayList<Map.Entry<String, Compartment>>(this.partitionCompartments.entrySet());
+            Collections.sort(entries, LAST_ACQUIRED_AT_COMPARATOR);
+            int numToEvict = Math.max(1, this.maxPartitions / 10);
+            for (int i = 0; i < entries.size() && numToEvict > 0; i++) {
+                Map.Entry<String, Compartment> entry = entries.get(i);
+                Compartment compartment = entry.getValue();
+                // holding all permits prevents executions from acquiring the compartment while it is removed
+                if (!compartment.tryAcquireAll()) {
+                    continue;  // in use
+                }
+                try {
+                    if (this.partitionCompartments.remove(entry.getKey(), compartment)) {
+                        this.numOfPartitions.decrementAndGet();
+                        numToEvict--;
+                    }
+                } finally {
+                    compartment.releaseAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @return permits and metrics of the datasource. {@code null} if no query has been executed.
+     */
+    public Compartment getDataSourceCompartment(String dataSourceName) {
+        return this.dataSourceCompartments.get(dataSourceName);
+    }
+
+    /**
+     * @return permits and metrics per datasource
+     */
+    public ConcurrentMap<String, Compartment> getDataSourceCompartments() {
+        return dataSourceCompartments;
+    }
+
+    /**
+     * @return permits and metrics per partition. Keys are "[datasource name]:[partition key]".
+     */
+    public ConcurrentMap<String, Compartment> getPartitionCompartments() {
+        return partitionCompartments;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getMaxWaitInNanos() {
+        return maxWaitInNanos;
+    }
+
+    public int getMaxConcurrencyPerPartition() {
+        return maxConcurrencyPerPartition;
+    }
+
+    /**
+     * @param maxConcurrencyPerPartition max number of concurrent executions per partition. {@code 0} to disable.
+     */
+    public void setMaxConcurrencyPerPartition(int maxConcurrencyPerPartition) {
+        this.maxConcurrencyPerPartition = maxConcurrencyPerPartition;
+    }
+
+    public int getMaxPartitions() {
+        return maxPartitions;
+    }
+
+    /**
+     * @param maxPartitions max number of partitions. idle ones are evicted when exceeded. (default is 1000)
+     */
+    public void setMaxPartitions(int maxPartitions) {
+        this.maxPartitions = maxPartitions;
+    }
+
+}
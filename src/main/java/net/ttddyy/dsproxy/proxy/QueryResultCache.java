@@ -0,0 +1,385 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Read-through cache of {@link java.sql.Statement#executeQuery} results.
+ *
+ * <p>Only queries matching one of the patterns added by {@link #addQueryPattern(String)} are cached. The key is the
+ * query and its parameter values; queries with stream, LOB or other non-value parameters are not cached.
+ * Results are kept as {@link InMemoryResultSet}, and each hit returns its own copy sharing the rows.
+ *
+ * <p>The number of entries is bounded by max size with LRU eviction, and entries expire after the TTL.
+ * When INSERT/UPDATE/DELETE/MERGE is executed on the same datasource, entries referencing the modified table are
+ * removed. Other non-select queries (e.g. DDL, stored procedures) remove all entries. Modifications made outside of
+ * the datasource are not detected; therefore, this cache is intended for mostly-read reference tables.
+ *
+ * <p>A connection that has modified data in the current transaction neither reads nor populates the cache, so that
+ * uncommitted data is not shared. Entries affected by the transaction are removed again when it is committed or
+ * rolled back.
+ *
+ * <p>Table names are resolved by simple parsing of {@code FROM}, {@code JOIN}, {@code INTO} and {@code UPDATE}
+ * clauses, and compared without schema and quotes in lower case. Override {@link #getReferencedTables(String)} and
+ * {@link #getModifiedTable(String)} for custom resolution.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getQueryResultCache()
+ * @since 1.8
+ */
+public class QueryResultCache {
+
+    /**
+     * Cache key composed by query and parameter values.
+     */
+    public static class Key {
+        private final String query;
+        private final Object[] parameters;
+        private final int hashCode;
+        private long modificationCount;  // modifications seen when the key is created. not part of equality
+
+        public Key(String query, Object[] parameters) {
+            this.query = query;
+            this.parameters = parameters;
+            this.hashCode = 31 * query.hashCode() + Arrays.deepHashCode(parameters);
+        }
+
+        public String getQuery() {
+            return query;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return this.query.equals(other.query) && Arrays.deepEquals(this.parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hashCode;
+        }
+    }
+
+    private static class Entry {
+        private final InMemoryResultSet resultSet;
+        private final Set<String> tables;
+        private final long expireAt;
+
+        private Entry(InMemoryResultSet resultSet, Set<String> tables, long expireAt) {
+            this.resultSet = resultSet;
+            this.tables = tables;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final Pattern TOKEN = Pattern.compile("[\\w.$\"`\\[\\]]+|[,()]");
+    private static final Pattern COMMENT = Pattern.compile("--[^\\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+
+    // keywords that terminate a table reference with optional alias
+    private static final Set<String> NON_ALIAS_KEYWORDS = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList("where", "join", "inner", "left", "right", "full", "outer", "cross",
+                    "natural", "on", "using", "group", "order", "having", "union", "intersect", "except", "minus",
+                    "limit", "offset", "fetch", "for", "window", "set", "values"))
+    );
+
+    private final int maxSize;
+    private final long ttlInMillis;
+    private final List<Pattern> queryPatterns = new CopyOnWriteArrayList<Pattern>();
+
+    // guarded by this
+    private final Map<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong modifications = new AtomicLong();
+
+    /**
+     * @param maxSize max number of cached results
+     * @param ttl     time to live of cached results. {@code 0} for no expiration.
+     * @param unit    unit of ttl
+     */
+    public QueryResultCache(int maxSize, long ttl, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.ttlInMillis = unit.toMillis(ttl);
+    }
+
+    /**
+     * Add a regular expression of queries to cache. The whole query needs to match the pattern.
+     *
+     * @param regex query pattern
+     * @return this cache
+     */
+    public QueryResultCache addQueryPattern(String regex) {
+        this.queryPatterns.add(Pattern.compile(regex, Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+        return this;
+    }
+
+    public boolean isCacheable(String query) {
+        for (Pattern pattern : this.queryPatterns) {
+            if (pattern.matcher(query).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create a cache key.
+     *
+     * @param query      query
+     * @param parameters parameter set operations
+     * @return cache key. {@code null} if parameters are not cacheable.
+     */
+    public Key createKey(String query, Collection<ParameterSetOperation> parameters) {
+        List<Object> values = new ArrayList<Object>();
+        for (ParameterSetOperation operation : parameters) {
+            if (operation.isTruncated()) {
+                return null;
+            }
+            values.add(operation.getMethod().getName());
+            for (Object arg : operation.getArgs()) {
+                if (!isCacheableValue(arg)) {
+                    return null;
+                }
+                values.add(arg);
+            }
+        }
+        Key key = new Key(query, values.toArray());
+        key.modificationCount = this.modifications.get();
+        return key;
+    }
+
+    protected boolean isCacheableValue(Object value) {
+        return value == null || value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character || value instanceof java.util.Date || value instanceof byte[];
+    }
+
+    /**
+     * Retrieve cached result.
+     *
+     * @param key cache key
+     * @return a copy of cached result. {@code null} if not cached or expired.
+     */
+    public ResultSet get(Key key) {
+        InMemoryResultSet resultSet = null;
+        synchronized (this) {
+            Entry entry = this.entries.get(key);
+            if (entry != null) {
+                if (this.ttlInMillis > 0 && System.currentTimeMillis() > entry.expireAt) {
+                    this.entries.remove(key);
+                } else {
+                    resultSet = entry.resultSet;
+                }
+            }
+        }
+        if (resultSet == null) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return resultSet.copy();
+    }
+
+    /**
+     * Read all rows from the given {@link ResultSet} and cache them.
+     *
+     * The given {@link ResultSet} is closed.
+     *
+     * @param key       cache key
+     * @param resultSet result of the query
+     * @return a copy of cached result
+     * @throws SQLException on failure to read the result
+     */
+    public ResultSet put(Key key, ResultSet resultSet) throws SQLException {
+        InMemoryResultSet inMemoryResultSet;
+        try {
+            inMemoryResultSet = new InMemoryResultSet(resultSet);
+        } finally {
+            resultSet.close();
+        }
+        Set<String> tables = getReferencedTables(key.getQuery());
+        Entry entry = new Entry(inMemoryResultSet, tables, System.currentTimeMillis() + this.ttlInMillis);
+
+        synchronized (this) {
+            // do not cache the result when modification happened while the query was running
+            if (key.modificationCount == this.modifications.get()) {
+                this.entries.put(key, entry);
+            }
+            if (this.entries.size() > this.maxSize) {
+                Iterator<Entry> iterator = this.entries.values().iterator();
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        return inMemoryResultSet.copy();
+    }
+
+    /**
+     * Remove entries affected by the given query.
+     *
+     * @param query executed query
+     */
+    public void invalidate(String query) {
+        QueryType queryType = QueryUtils.getQueryType(query);
+        if (QueryType.SELECT == queryType) {
+            return;
+        }
+
+        String table = getModifiedTable(query);
+        synchronized (this) {
+            this.modifications.incrementAndGet();
+            if (this.entries.isEmpty()) {
+                return;
+            }
+            if (table == null) {
+                this.invalidations.addAndGet(this.entries.size());
+                this.entries.clear();
+                return;
+            }
+            Iterator<Entry> iterator = this.entries.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().tables.contains(table)) {
+                    iterator.remove();
+                    this.invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve tables referenced by {@code FROM} and {@code JOIN} clauses.
+     *
+     * @param query select query
+     * @return normalized table names
+     */
+    protected Set<String> getReferencedTables(String query) {
+        List<String> tokens = tokenize(query);
+        Set<String> tables = new HashSet<String>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!"from".equals(token) && !"join".equals(token)) {
+                continue;
+            }
+            // table list: "FROM a [AS] x, b y"
+            int index = i + 1;
+            while (index < tokens.size() && isIdentifier(tokens.get(index))) {
+                tables.add(normalizeTableName(tokens.get(index)));
+                index++;
+                if (index < tokens.size() && "as".equals(tokens.get(index))) {
+                    index++;
+                }
+                if (index < tokens.size() && isIdentifier(tokens.get(index)) && !NON_ALIAS_KEYWORDS.contains(tokens.get(index))) {
+                    index++;  // alias
+                }
+                if (!"join".equals(token) && index < tokens.size() && ",".equals(tokens.get(index))) {
+                    index++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Resolve a table modified by INSERT, UPDATE, DELETE or MERGE.
+     *
+     * @param query non-select query
+     * @return normalized table name. {@code null} if it cannot be resolved.
+     */
+    protected String getModifiedTable(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        String keyword = tokens.get(0);
+        String target;
+        if ("insert".equals(keyword) || "merge".equals(keyword)) {
+            target = "into";
+        } else if ("delete".equals(keyword)) {
+            target = "from";
+        } else if ("update".equals(keyword)) {
+            target = "update";
+        } else {
+            return null;
+        }
+        int index = tokens.indexOf(target);
+        if (index < 0 || index + 1 >= tokens.size() || !isIdentifier(tokens.get(index + 1))) {
+            return null;
+        }
+        return normalizeTableName(tokens.get(index + 1));
+    }
+
+    private static List<String> tokenize(String query) {
+        List<String> tokens = new ArrayList<String>();
+        String queryWithoutComment = COMMENT.matcher(query).replaceAll(" ");
+        Matcher matcher = TOKEN.matcher(queryWithoutComment.toLowerCase());
+        while (matcher.find()) {
+            tokens.add(matcher.group());
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifier(String token) {
+        return !",".equals(token) && !"(".equals(token) && !")".equals(token);
+    }
+
+    private static String normalizeTableName(String name) {
+        String table = name.replaceAll("[\"`\\[\\]]", "");
+        int index = table.lastIndexOf('.');
+        return index < 0 ? table : table.substring(index + 1);
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * @return num of entries removed by modifications
+     */
+    public long getInvalidations() {
+        return this.invalidations.get();
+    }
+
+}
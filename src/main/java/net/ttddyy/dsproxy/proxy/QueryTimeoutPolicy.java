@@ -0,0 +1,172 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Determine query timeout to apply by {@link java.sql.Statement#setQueryTimeout(int)} before query executions.
+ *
+ * <p>Timeout is resolved in the following order. The first match is used.
+ * <ol>
+ * <li>query patterns in registration order</li>
+ * <li>query type (select, insert, update, delete, other)</li>
+ * <li>statement type (statement, prepared, callable)</li>
+ * <li>datasource</li>
+ * <li>default timeout</li>
+ * </ol>
+ * For batch statements with multiple queries, the largest timeout among the queries is used.
+ *
+ * <p>Timeout is not applied when the application has called {@code setQueryTimeout} on the statement.
+ * Timeout is in seconds as {@link java.sql.Statement#setQueryTimeout(int)}, and {@code 0} means no limit.
+ *
+ * <pre>
+ * {@code
+ * QueryTimeoutPolicy policy = new QueryTimeoutPolicy(30)
+ *     .forQueryType(QueryType.SELECT, 10)
+ *     .forQueryPattern("(?i).*from report_.*", 300);
+ * }
+ * </pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyConfig#getQueryTimeoutPolicy()
+ * @since 1.8
+ */
+public class QueryTimeoutPolicy {
+
+    private static class PatternTimeout {
+        private final Pattern pattern;
+        private final int timeout;
+
+        private PatternTimeout(Pattern pattern, int timeout) {
+            this.pattern = pattern;
+            this.timeout = timeout;
+        }
+    }
+
+    private final int defaultTimeout;
+    private final Map<String, Integer> dataSourceTimeouts = new HashMap<String, Integer>();
+    private final Map<StatementType, Integer> statementTypeTimeouts = new EnumMap<StatementType, Integer>(StatementType.class);
+    private final Map<QueryType, Integer> queryTypeTimeouts = new EnumMap<QueryType, Integer>(QueryType.class);
+    private final List<PatternTimeout> patternTimeouts = new ArrayList<PatternTimeout>();
+
+    /**
+     * @param defaultTimeout timeout in seconds when no other rule matches. {@code -1} to not apply timeout.
+     */
+    public QueryTimeoutPolicy(int defaultTimeout) {
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @param timeout        timeout in seconds
+     * @return this policy
+     */
+    public QueryTimeoutPolicy forDataSource(String dataSourceName, int timeout) {
+        this.dataSourceTimeouts.put(dataSourceName, timeout);
+        return this;
+    }
+
+    /**
+     * @param statementType statement type
+     * @param timeout       timeout in seconds
+     * @return this policy
+     */
+    public QueryTimeoutPolicy forStatementType(StatementType statementType, int timeout) {
+        this.statementTypeTimeouts.put(statementType, timeout);
+        return this;
+    }
+
+    /**
+     * @param queryType query type
+     * @param timeout   timeout in seconds
+     * @return this policy
+     */
+    public QueryTimeoutPolicy forQueryType(QueryType queryType, int timeout) {
+        this.queryTypeTimeouts.put(queryType, timeout);
+        return this;
+    }
+
+    /**
+     * @param regex   regular expression that matches the entire query
+     * @param timeout timeout in seconds
+     * @return this policy
+     */
+    public QueryTimeoutPolicy forQueryPattern(String regex, int timeout) {
+        this.patternTimeouts.add(new PatternTimeout(Pattern.compile(regex), timeout));
+        return this;
+    }
+
+    /**
+     * Resolve the timeout for the queries.
+     *
+     * @param dataSourceName datasource name
+     * @param statementType  statement type
+     * @param queryInfoList  queries to execute
+     * @return timeout in seconds. {@code -1} to not apply timeout.
+     */
+    public int getQueryTimeout(String dataSourceName, StatementType statementType, List<QueryInfo> queryInfoList) {
+        if (queryInfoList.isEmpty()) {
+            return getQueryTimeout(dataSourceName, statementType, (String) null);
+        }
+        int timeout = getQueryTimeout(dataSourceName, statementType, queryInfoList.get(0).getQuery());
+        for (int i = 1; i < queryInfoList.size(); i++) {
+            timeout = max(timeout, getQueryTimeout(dataSourceName, statementType, queryInfoList.get(i).getQuery()));
+        }
+        return timeout;
+    }
+
+    /**
+     * Resolve the timeout for the query.
+     *
+     * @param dataSourceName datasource name
+     * @param statementType  statement type
+     * @param query          query to execute
+     * @return timeout in seconds. {@code -1} to not apply timeout.
+     */
+    public int getQueryTimeout(String dataSourceName, StatementType statementType, String query) {
+        if (query != null) {
+            for (PatternTimeout patternTimeout : this.patternTimeouts) {
+                if (patternTimeout.pattern.matcher(query).matches()) {
+                    return patternTimeout.timeout;
+                }
+            }
+            if (!this.queryTypeTimeouts.isEmpty()) {
+                Integer timeout = this.queryTypeTimeouts.get(QueryUtils.getQueryType(query));
+                if (timeout != null) {
+                    return timeout;
+                }
+            }
+        }
+        Integer timeout = this.statementTypeTimeouts.get(statementType);
+        if (timeout != null) {
+            return timeout;
+        }
+        timeout = this.dataSourceTimeouts.get(dataSourceName);
+        if (timeout != null) {
+            return timeout;
+        }
+        return this.defaultTimeout;
+    }
+
+    // 0 means no limit
+    private static int max(int timeout1, int timeout2) {
+        if (timeout1 == 0 || timeout2 == 0) {
+            return 0;
+        }
+        return Math.max(timeout1, timeout2);
+    }
+
+    public int getDefaultTimeout() {
+        return defaultTimeout;
+    }
+
+}
@@ -3,9 +3,9 @@ package net.ttddyy.dsproxy.proxy;
 import net.ttddyy.dsproxy.ConnectionInfo;
 import net.ttddyy.dsproxy.listener.MethodExecutionListenerUtils;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Type;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
@@ -16,6 +16,9 @@ import static java.lang.String.format;
 /**
  * Allows {@link java.sql.ResultSet} to be consumed more than once.
  *
+ * <p>Consumed rows are kept in {@link ColumnarRowStore}. Optionally, rows beyond {@code spillThreshold} are written
+ * to a temporary file which is deleted when this resultset is closed.
+ *
  * @author Liam Williams
  * @see net.ttddyy.dsproxy.proxy.jdk.ResultSetInvocationHandler
  * @since 1.4
@@ -43,6 +46,9 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
         private ProxyConfig proxyConfig;
         private Map<String, Integer> columnNameToIndex;
         private int columnCount;
+        private int[] columnTypes;
+        private int spillThreshold;
+        private File spillDirectory;
 
         public static Builder create() {
             return new Builder();
@@ -53,11 +59,23 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
             logic.resultSet = this.resultSet;
             logic.connectionInfo = this.connectionInfo;
             logic.proxyConfig = this.proxyConfig;
-            logic.columnNameToIndex = this.columnNameToIndex;
+            logic.columnNameToIndex = toCaseInsensitiveMap(this.columnNameToIndex);
             logic.columnCount = this.columnCount;
+            int[] columnTypes = this.columnTypes != null ? this.columnTypes : new int[this.columnCount];
+            logic.rowStore = new ColumnarRowStore(columnTypes, this.spillThreshold, this.spillDirectory);
             return logic;
         }
 
+        private static Map<String, Integer> toCaseInsensitiveMap(Map<String, Integer> columnNameToIndex) {
+            if (columnNameToIndex instanceof SortedMap
+                    && ((SortedMap<String, Integer>) columnNameToIndex).comparator() == String.CASE_INSENSITIVE_ORDER) {
+                return columnNameToIndex;
+            }
+            Map<String, Integer> map = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+            map.putAll(columnNameToIndex);
+            return map;
+        }
+
         public Builder resultSet(ResultSet resultSet) {
             this.resultSet = resultSet;
             return this;
@@ -82,6 +100,37 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
             this.columnCount = columnCount;
             return this;
         }
+
+        /**
+         * @param columnTypes {@link java.sql.Types} of columns. Index 0 is the first column.
+         * @return builder
+         * @since 1.8
+         */
+        public Builder columnTypes(int[] columnTypes) {
+            this.columnTypes = columnTypes;
+            return this;
+        }
+
+        /**
+         * @param spillThreshold num of rows to keep on heap. {@code 0} keeps all rows on heap. Column values of the
+         *                       other rows must be {@link java.io.Serializable}.
+         * @return builder
+         * @since 1.8
+         */
+        public Builder spillThreshold(int spillThreshold) {
+            this.spillThreshold = spillThreshold;
+            return this;
+        }
+
+        /**
+         * @param spillDirectory directory for temporary file. {@code null} uses default temporary directory.
+         * @return builder
+         * @since 1.8
+         */
+        public Builder spillDirectory(File spillDirectory) {
+            this.spillDirectory = spillDirectory;
+            return this;
+        }
     }
 
     private Map<String, Integer> columnNameToIndex;
@@ -93,8 +142,8 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
     private int resultPointer;
     private boolean resultSetConsumed;
     private boolean closed;
-    private Object[] currentResult;
-    private final List<Object[]> cachedResults = new ArrayList<Object[]>();
+    private Object[] currentResult;  // row being read from the actual resultset
+    private ColumnarRowStore rowStore;
 
 
     @Override
@@ -134,6 +183,7 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
             return method.invoke(this.resultSet, args);
         } else if (methodName.equals("close")) {
             this.closed = true;
+            this.rowStore.close();
             return method.invoke(this.resultSet, args);
         } else if (methodName.equals("isClosed")) {
             return method.invoke(this.resultSet, args);
@@ -182,6 +232,8 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
             }
             currentResult[i] = resultSet.getObject(i);
         }
+        rowStore.addRow(currentResult);
+        currentResult = null;
     }
 
     private Object handleNextMethodByDelegating(Method method, Object[] args) throws IllegalAccessException, InvocationTargetException {
@@ -189,7 +241,6 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
         if (TRUE.equals(result)) {
             currentResult = new Object[columnCount + 1];
             Arrays.fill(this.currentResult, UNCONSUMED_RESULT_COLUMN);
-            cachedResults.add(currentResult);
         }
         return result;
     }
@@ -197,18 +248,18 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
     private Object handleGetMethodByDelegating(Method method, Object[] args) throws SQLException, IllegalAccessException, InvocationTargetException {
         int columnIndex = determineColumnIndex(args);
         Object result = method.invoke(resultSet, args);
-        currentResult[columnIndex] = result;
+        if (currentResult != null) {
+            currentResult[columnIndex] = result;
+        }
         return result;
     }
 
     private Object handleNextMethodUsingCache() {
-        if (resultPointer < cachedResults.size() - 1) {
+        if (resultPointer < rowStore.size() - 1) {
             resultPointer++;
-            currentResult = cachedResults.get(resultPointer);
             return true;
         } else {
             resultPointer++;
-            currentResult = null;
             return false;
         }
     }
@@ -216,11 +267,11 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
     private Object handleGetMethodUsingCache(Object[] args) throws SQLException {
         if (resultPointer == -1) {
             throw new SQLException("Result set not advanced. Call next before any get method!");
-        } else if (resultPointer < cachedResults.size()) {
+        } else if (resultPointer < rowStore.size()) {
             int columnIndex = determineColumnIndex(args);
-            return currentResult[columnIndex];
+            return rowStore.getValue(resultPointer, columnIndex);
         } else {
-            throw new SQLException(format("Result set exhausted. There were %d result(s) only", cachedResults.size()));
+            throw new SQLException(format("Result set exhausted. There were %d result(s) only", rowStore.size()));
         }
     }
 
@@ -251,6 +302,7 @@ public class RepeatableReadResultSetProxyLogic implements ResultSetProxyLogic {
     }
 
     private Integer columnNameToIndex(String columnName) {
-        return columnNameToIndex.get(columnName.toUpperCase());
+        // case-insensitive map; no need to convert the name
+        return columnNameToIndex.get(columnName);
     }
 }
@@ -2,12 +2,16 @@ package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
 import net.ttddyy.dsproxy.DataSourceProxyException;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 
+import java.io.File;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Factory to create {@link RepeatableReadResultSetProxyLogic}.
@@ -18,30 +22,85 @@ import java.util.Map;
  */
 public class RepeatableReadResultSetProxyLogicFactory implements ResultSetProxyLogicFactory {
 
+    private int spillThreshold;
+    private File spillDirectory;
+
+    public RepeatableReadResultSetProxyLogicFactory() {
+    }
+
+    /**
+     * Column values of rows written to temporary file must be {@link java.io.Serializable}. When such a row has other
+     * values, e.g. driver specific {@link java.sql.Blob}, moving to the row fails with {@link SQLException}.
+     *
+     * @param spillThreshold num of rows to keep on heap per resultset. Rows beyond are written to temporary file.
+     *                       {@code 0} keeps all rows on heap.
+     * @since 1.8
+     */
+    public RepeatableReadResultSetProxyLogicFactory(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
     @Override
     public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig) {
-        Map<String, Integer> columnNameToIndex = columnNameToIndex(resultSet);
+        Map<String, Integer> columnNameToIndex = new TreeMap<String, Integer>(String.CASE_INSENSITIVE_ORDER);
+        int[] columnTypes = readMetaData(resultSet, columnNameToIndex);
         return RepeatableReadResultSetProxyLogic.Builder.create()
                 .resultSet(resultSet)
                 .connectionInfo(connectionInfo)
                 .proxyConfig(proxyConfig)
                 .columnNameToIndex(columnNameToIndex)
-                .columnCount(columnNameToIndex.size())
+                .columnCount(columnTypes.length)
+                .columnTypes(columnTypes)
+                .spillThreshold(this.spillThreshold)
+                .spillDirectory(this.spillDirectory)
                 .build();
     }
 
-    private Map<String, Integer> columnNameToIndex(ResultSet resultSet) {
+    private int[] readMetaData(ResultSet resultSet, Map<String, Integer> columnNameToIndex) {
         try {
             ResultSetMetaData metaData = resultSet.getMetaData();
             int columnCount = metaData.getColumnCount();
-            Map<String, Integer> columnNameToIndex = new HashMap<String, Integer>();
+            int[] columnTypes = new int[columnCount];
             for (int i = 1; i <= columnCount; i++) {
-                columnNameToIndex.put(metaData.getColumnLabel(i).toUpperCase(), i);
+                columnNameToIndex.put(metaData.getColumnLabel(i), i);
+                columnTypes[i - 1] = metaData.getColumnType(i);
             }
-            return columnNameToIndex;
+            return columnTypes;
         } catch (SQLException e) {
             throw new DataSourceProxyException("Failed to obtain resultset metadata", e);
         }
     }
 
+    public int getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @param spillThreshold num of rows to keep on heap per resultset. {@code 0} keeps all rows on heap.
+     *                       Column values of the other rows must be {@link java.io.Serializable}.
+     * @since 1.8
+     * @see #RepeatableReadResultSetProxyLogicFactory(int)
+     */
+    public void setSpillThreshold(int spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory directory for temporary file. {@code null} uses default temporary directory.
+     * @since 1.8
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        return create(resultSet, connectionInfo, proxyConfig);
+    }
+
 }
@@ -0,0 +1,203 @@
+package net.ttddyy.dsproxy.proxy;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Immutable copy of {@link ResultSetMetaData} which does not require the connection after creation.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see InMemoryResultSet
+ * @since 1.8
+ */
+public class ResultSetMetaDataSnapshot implements ResultSetMetaData {
+
+    private static class ColumnMetaData {
+        private boolean autoIncrement;
+        private boolean caseSensitive;
+        private boolean searchable;
+        private boolean currency;
+        private int nullable;
+        private boolean signed;
+        private int columnDisplaySize;
+        private String columnLabel;
+        private String columnName;
+        private String schemaName;
+        private int precision;
+        private int scale;
+        private String tableName;
+        private String catalogName;
+        private int columnType;
+        private String columnTypeName;
+        private String columnClassName;
+    }
+
+    private final ColumnMetaData[] columns;
+
+    public ResultSetMetaDataSnapshot(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        this.columns = new ColumnMetaData[columnCount];
+        for (int i = 1; i <= columnCount; i++) {
+            ColumnMetaData column = new ColumnMetaData();
+            column.autoIncrement = metaData.isAutoIncrement(i);
+            column.caseSensitive = metaData.isCaseSensitive(i);
+            column.searchable = metaData.isSearchable(i);
+            column.currency = metaData.isCurrency(i);
+            column.nullable = metaData.isNullable(i);
+            column.signed = metaData.isSigned(i);
+            column.columnDisplaySize = metaData.getColumnDisplaySize(i);
+            column.columnLabel = metaData.getColumnLabel(i);
+            column.columnName = metaData.getColumnName(i);
+            column.schemaName = metaData.getSchemaName(i);
+            column.precision = metaData.getPrecision(i);
+            column.scale = metaData.getScale(i);
+            column.tableName = metaData.getTableName(i);
+            column.catalogName = metaData.getCatalogName(i);
+            column.columnType = metaData.getColumnType(i);
+            column.columnTypeName = metaData.getColumnTypeName(i);
+            column.columnClassName = metaData.getColumnClassName(i);
+            this.columns[i - 1] = column;
+        }
+    }
+
+    private ColumnMetaData column(int column) throws SQLException {
+        if (column < 1 || column > this.columns.length) {
+            throw new SQLException(String.format("Invalid column index %d", column));
+        }
+        return this.columns[column - 1];
+    }
+
+    /**
+     * @return {@link java.sql.Types} of all columns. Index 0 is the first column.
+     */
+    public int[] getColumnTypes() {
+        int[] columnTypes = new int[this.columns.length];
+        for (int i = 0; i < this.columns.length; i++) {
+            columnTypes[i] = this.columns[i].columnType;
+        }
+        return columnTypes;
+    }
+
+    @Override
+    public int getColumnCount() throws SQLException {
+        return this.columns.length;
+    }
+
+    @Override
+    public boolean isAutoIncrement(int column) throws SQLException {
+        return column(column).autoIncrement;
+    }
+
+    @Override
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return column(column).caseSensitive;
+    }
+
+    @Override
+    public boolean isSearchable(int column) throws SQLException {
+        return column(column).searchable;
+    }
+
+    @Override
+    public boolean isCurrency(int column) throws SQLException {
+        return column(column).currency;
+    }
+
+    @Override
+    public int isNullable(int column) throws SQLException {
+        return column(column).nullable;
+    }
+
+    @Override
+    public boolean isSigned(int column) throws SQLException {
+        return column(column).signed;
+    }
+
+    @Override
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return column(column).columnDisplaySize;
+    }
+
+    @Override
+    public String getColumnLabel(int column) throws SQLException {
+        return column(column).columnLabel;
+    }
+
+    @Override
+    public String getColumnName(int column) throws SQLException {
+        return column(column).columnName;
+    }
+
+    @Override
+    public String getSchemaName(int column) throws SQLException {
+        return column(column).schemaName;
+    }
+
+    @Override
+    public int getPrecision(int column) throws SQLException {
+        return column(column).precision;
+    }
+
+    @Override
+    public int getScale(int column) throws SQLException {
+        return column(column).scale;
+    }
+
+    @Override
+    public String getTableName(int column) throws SQLException {
+        return column(column).tableName;
+    }
+
+    @Override
+    public String getCatalogName(int column) throws SQLException {
+        return column(column).catalogName;
+    }
+
+    @Override
+    public int getColumnType(int column) throws SQLException {
+        return column(column).columnType;
+    }
+
+    @Override
+    public String getColumnTypeName(int column) throws SQLException {
+        return column(column).columnTypeName;
+    }
+
+    @Override
+    public boolean isReadOnly(int column) throws SQLException {
+        column(column);
+        return true;
+    }
+
+    @Override
+    public boolean isWritable(int column) throws SQLException {
+        column(column);
+        return false;
+    }
+
+    @Override
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        column(column);
+        return false;
+    }
+
+    @Override
+    public String getColumnClassName(int column) throws SQLException {
+        return column(column).columnClassName;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException(String.format("%s is not a wrapper for %s", getClass().getName(), iface.getName()));
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+
+}
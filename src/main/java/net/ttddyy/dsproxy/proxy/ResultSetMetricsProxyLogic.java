@@ -0,0 +1,120 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.ResultSetMetrics;
+import net.ttddyy.dsproxy.listener.ChainListener;
+import net.ttddyy.dsproxy.listener.MethodExecutionListenerUtils;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.ResultSetMetricsListener;
+
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.util.List;
+
+/**
+ * Delegate method calls to the actual {@link ResultSet} while recording {@link ResultSetMetrics}.
+ *
+ * Number of rows read, time to first row and open duration are collected, and reported to
+ * {@link ResultSetMetricsListener}s in the query listeners when the {@link ResultSet} is closed.
+ * When the {@link ResultSet} is not closed by the application(e.g. closed by closing its statement), metrics are not
+ * reported.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ResultSetMetricsProxyLogicFactory
+ * @since 1.8
+ */
+public class ResultSetMetricsProxyLogic implements ResultSetProxyLogic {
+
+    private ResultSet resultSet;
+    private ConnectionInfo connectionInfo;
+    private ProxyConfig proxyConfig;
+    private ExecutionInfo executionInfo;
+    private List<QueryInfo> queries;
+
+    private Stopwatch stopwatch;
+    private ResultSetMetrics metrics = new ResultSetMetrics();
+    private boolean reported;
+
+    public ResultSetMetricsProxyLogic(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        this.resultSet = resultSet;
+        this.connectionInfo = connectionInfo;
+        this.proxyConfig = proxyConfig;
+        this.executionInfo = executionInfo;
+        this.queries = queries;
+        this.stopwatch = proxyConfig.getStopwatchFactory().create().start();
+    }
+
+    @Override
+    public Object invoke(Method method, Object[] args) throws Throwable {
+        return MethodExecutionListenerUtils.invoke(new MethodExecutionListenerUtils.MethodExecutionCallback() {
+            @Override
+            public Object execute(Object proxyTarget, Method method, Object[] args) throws Throwable {
+                return performQueryExecutionListener(method, args);
+            }
+        }, this.proxyConfig, this.resultSet, this.connectionInfo, method, args);
+    }
+
+    private Object performQueryExecutionListener(Method method, Object[] args) throws Throwable {
+
+        final String methodName = method.getName();
+
+        // special treat for toString method
+        if ("toString".equals(methodName)) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(this.resultSet.getClass().getSimpleName());
+            sb.append(" [");
+            sb.append(this.resultSet.toString());
+            sb.append("]");
+            return sb.toString(); // differentiate toString message.
+        } else if ("getTarget".equals(methodName)) {
+            // ProxyJdbcObject interface has a method to return original object.
+            return this.resultSet;
+        }
+
+        if ("next".equals(methodName)) {
+            Object result = MethodUtils.proceedExecution(method, this.resultSet, args);
+            if (Boolean.TRUE.equals(result)) {
+                long rowCount = this.metrics.getRowCount() + 1;
+                this.metrics.setRowCount(rowCount);
+                if (rowCount == 1) {
+                    this.metrics.setTimeToFirstRow(this.stopwatch.getElapsedTime());
+                }
+            } else {
+                this.metrics.setAllRowsRead(true);
+            }
+            return result;
+        } else if ("close".equals(methodName)) {
+            Object result = MethodUtils.proceedExecution(method, this.resultSet, args);
+            if (!this.reported) {
+                this.reported = true;
+                this.metrics.setOpenDuration(this.stopwatch.getElapsedTime());
+                report(this.proxyConfig.getQueryListener());
+            }
+            return result;
+        }
+
+        return MethodUtils.proceedExecution(method, this.resultSet, args);
+    }
+
+    private void report(QueryExecutionListener listener) {
+        if (this.executionInfo == null) {
+            return;  // origin of the result set is unknown
+        }
+        if (listener instanceof ResultSetMetricsListener) {
+            ((ResultSetMetricsListener) listener).afterResultSetClose(this.executionInfo, this.queries, this.metrics);
+        }
+        if (listener instanceof ChainListener) {
+            for (QueryExecutionListener child : ((ChainListener) listener).getListeners()) {
+                report(child);
+            }
+        }
+    }
+
+    public ResultSetMetrics getMetrics() {
+        return metrics;
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Factory to create {@link ResultSetMetricsProxyLogic}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class ResultSetMetricsProxyLogicFactory implements ResultSetProxyLogicFactory {
+
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig) {
+        return create(resultSet, connectionInfo, proxyConfig, null, Collections.<QueryInfo>emptyList());
+    }
+
+    /**
+     * Create {@link ResultSetMetricsProxyLogic} with the query execution that has returned the {@link ResultSet}.
+     *
+     * @param resultSet      result set
+     * @param connectionInfo connection info
+     * @param proxyConfig    proxy config
+     * @param executionInfo  execution info of the query
+     * @param queries        executed queries
+     * @return proxy logic
+     */
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        return new ResultSetMetricsProxyLogic(resultSet, connectionInfo, proxyConfig, executionInfo, queries);
+    }
+
+}
@@ -1,8 +1,11 @@
 package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 
 import java.sql.ResultSet;
+import java.util.List;
 
 /**
  * Factory to create {@link ResultSetProxyLogic}.
@@ -15,4 +18,18 @@ public interface ResultSetProxyLogicFactory {
     ResultSetProxyLogicFactory DEFAULT = new SimpleResultSetProxyLogicFactory();
 
     ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig);
+
+    /**
+     * Create {@link ResultSetProxyLogic} for a {@link ResultSet} returned by a query execution.
+     *
+     * @param resultSet      result set
+     * @param connectionInfo connection info
+     * @param proxyConfig    proxy config
+     * @param executionInfo  execution info of the query. {@code null} when the query execution is not known.
+     * @param queries        executed queries
+     * @return proxy logic
+     * @since 1.8
+     */
+    ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                               ExecutionInfo executionInfo, List<QueryInfo> queries);
 }
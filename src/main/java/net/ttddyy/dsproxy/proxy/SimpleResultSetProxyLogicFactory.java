@@ -1,8 +1,11 @@
 package net.ttddyy.dsproxy.proxy;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 
 import java.sql.ResultSet;
+import java.util.List;
 
 /**
  * Factory to create {@link SimpleResultSetProxyLogic}.
@@ -17,4 +20,10 @@ public class SimpleResultSetProxyLogicFactory implements ResultSetProxyLogicFact
         return new SimpleResultSetProxyLogic(resultSet, connectionInfo, proxyConfig);
     }
 
+    @Override
+    public ResultSetProxyLogic create(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                      ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        return create(resultSet, connectionInfo, proxyConfig);
+    }
+
 }
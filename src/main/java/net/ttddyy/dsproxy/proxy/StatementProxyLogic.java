@@ -3,9 +3,11 @@ package net.ttddyy.dsproxy.proxy;
 import net.ttddyy.dsproxy.ConnectionInfo;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
 import net.ttddyy.dsproxy.StatementType;
 import net.ttddyy.dsproxy.listener.MethodExecutionListenerUtils;
 import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryUtils;
 import net.ttddyy.dsproxy.transform.ParameterReplacer;
 import net.ttddyy.dsproxy.transform.ParameterTransformer;
 import net.ttddyy.dsproxy.transform.QueryTransformer;
@@ -20,9 +22,13 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static net.ttddyy.dsproxy.proxy.StatementMethodNames.GET_GENERATED_KEYS_METHOD;
 import static net.ttddyy.dsproxy.proxy.StatementMethodNames.GET_RESULTSET_METHOD;
@@ -36,6 +42,25 @@ import static net.ttddyy.dsproxy.proxy.StatementMethodNames.METHODS_TO_RETURN_RE
  */
 public class StatementProxyLogic {
 
+    private static final Method EXECUTE_BATCH_METHOD;
+
+    // methods that do not require executing deferred updates on the statement
+    private static final Set<String> METHODS_TO_KEEP_PENDING_BATCH;
+
+    static {
+        try {
+            EXECUTE_BATCH_METHOD = Statement.class.getMethod("executeBatch");
+        } catch (NoSuchMethodException e) {
+            throw new RuntimeException(e);
+        }
+
+        Set<String> methodsToKeepPendingBatch = new HashSet<String>(StatementMethodNames.PARAMETER_METHODS);
+        methodsToKeepPendingBatch.addAll(StatementMethodNames.JDBC4_METHODS);
+        methodsToKeepPendingBatch.addAll(Arrays.asList(StatementMethodNames.GET_CONNECTION_METHOD,
+                "getDataSourceName", "toString", "getTarget", "hashCode", "equals"));
+        METHODS_TO_KEEP_PENDING_BATCH = Collections.unmodifiableSet(methodsToKeepPendingBatch);
+    }
+
     /**
      * Builder for {@link StatementProxyLogic}.
      *
@@ -63,6 +88,9 @@ public class StatementProxyLogic {
             logic.proxyConfig = this.proxyConfig;
             logic.statementType = this.statementType;
             logic.generateKey = this.generateKey;
+            if (this.proxyConfig != null) {
+                logic.connectionState = this.proxyConfig.getConnectionState(this.connectionInfo);
+            }
             return logic;
         }
 
@@ -112,9 +140,33 @@ public class StatementProxyLogic {
 
     private Connection proxyConnection;
     private ProxyConfig proxyConfig;
+    private ConnectionState connectionState;  // state shared with the connection proxy. null if not available
     private ResultSet generatedKeys;
     private boolean generateKey;  // set true if auto-generate keys is enabled at "Connection#prepareStatement()"
 
+    // last query execution. used as the origin of the ResultSet returned by "getResultSet()"
+    private ExecutionInfo lastExecInfo;
+    private List<QueryInfo> lastQueries;
+
+    private boolean fetchSizeSpecified;  // set true when application calls "setFetchSize()"
+    private int defaultFetchSize = -1;  // fetch size before adaptive fetch size is applied
+
+    private boolean queryTimeoutSpecified;  // set true when application calls "setQueryTimeout()"
+    private int appliedQueryTimeout = -1;  // query timeout applied by the policy. -1 if not applied
+    private int defaultQueryTimeout = -1;  // query timeout before the policy is applied
+    private Integer policyQueryTimeout;  // resolved query timeout for prepared/callable
+
+    // num of "executeUpdate()" converted to "addBatch()" and not yet executed. used for transparent write batching
+    private int deferredUpdateCount;
+    private boolean returnedToCache;  // set true when the statement is closed and returned to the cache
+
+    private final PendingBatch pendingBatch = new PendingBatch() {
+        @Override
+        public void flush() throws SQLException {
+            flushDeferredUpdates();
+        }
+    };
+
     public Object invoke(Method method, Object[] args) throws Throwable {
 
         return MethodExecutionListenerUtils.invoke(new MethodExecutionListenerUtils.MethodExecutionCallback() {
@@ -130,6 +182,35 @@ public class StatementProxyLogic {
 
         final String methodName = method.getName();
 
+        // the actual statement has been returned to the prepared statement cache
+        if (this.returnedToCache) {
+            if ("isClosed".equals(methodName)) {
+                return true;
+            } else if ("close".equals(methodName)) {
+                return null;
+            }
+            throw new SQLException("Statement is closed");
+        }
+
+        if ("setFetchSize".equals(methodName)) {
+            this.fetchSizeSpecified = true;  // do not override fetch size specified by application
+        } else if ("setQueryTimeout".equals(methodName)) {
+            this.queryTimeoutSpecified = true;  // do not override query timeout specified by application
+        }
+
+        // transparent write batching
+        final boolean isDeferrableUpdate = isDeferrableUpdate(methodName, args);
+        flushPendingBatchIfNecessary(methodName, isDeferrableUpdate);
+
+        // return to the prepared statement cache instead of closing
+        if ("close".equals(methodName) && StatementType.PREPARED == this.statementType && this.connectionState != null) {
+            PreparedStatementCache statementCache = this.connectionState.getPreparedStatementCache();
+            if (statementCache != null && statementCache.release((PreparedStatement) this.statement)) {
+                this.returnedToCache = true;
+                return null;
+            }
+        }
+
         if (!StatementMethodNames.METHODS_TO_INTERCEPT.contains(methodName)) {
             return MethodUtils.proceedExecution(method, statement, args);
         }
@@ -212,7 +293,13 @@ public class StatementProxyLogic {
                         }
 
                         // when same key is specified, old value will be overridden
-                        parameters.put(parameterKey, new ParameterSetOperation(method, args));
+                        ParameterSetOperation operation = new ParameterSetOperation(method, args);
+                        if (isCaptureOnSet()) {
+                            operation = this.proxyConfig.getParameterCaptureMode().capture(operation, this.proxyConfig.getParameterCaptureMaxLength());
+                        }
+                        if (operation != null) {
+                            parameters.put(parameterKey, operation);
+                        }
                     }
 
                 } else if (StatementMethodNames.BATCH_PARAM_METHODS.contains(methodName)) {
@@ -224,8 +311,7 @@ public class StatementProxyLogic {
                         transformParameters(parameterTransformer, ps, true, batchParameters.size());
 
                         // copy values
-                        Map<ParameterKey, ParameterSetOperation> newParams = new LinkedHashMap<ParameterKey, ParameterSetOperation>(parameters);
-                        batchParameters.add(newParams);
+                        batchParameters.add(captureParameters(parameters));
 
                         parameters.clear();
                     } else if ("clearBatch".equals(methodName)) {
@@ -240,6 +326,10 @@ public class StatementProxyLogic {
         }
 
 
+        if (isDeferrableUpdate) {
+            return deferUpdate(methodName);
+        }
+
         // query execution methods
 
         final List<QueryInfo> queries = new ArrayList<QueryInfo>();
@@ -282,7 +372,7 @@ public class StatementProxyLogic {
                 transformParameters(parameterTransformer, ps, false, 0);
 
                 queryInfo = new QueryInfo(this.query);
-                queryInfo.getParametersList().add(new ArrayList<ParameterSetOperation>(parameters.values()));
+                queryInfo.getParametersList().add(new ArrayList<ParameterSetOperation>(captureParameters(parameters).values()));
             }
             queries.add(queryInfo);
         }
@@ -306,14 +396,57 @@ public class StatementProxyLogic {
 
         if (performQueryListener) {
             queryListener.beforeQuery(execInfo, queries);
+            if (this.proxyConfig.isResultSetProxyEnabled()) {
+                this.lastExecInfo = execInfo;
+                this.lastQueries = queries;
+            }
         }
 
-        final Stopwatch stopwatch = this.proxyConfig.getStopwatchFactory().create().start();
+        FetchSizeProvider fetchSizeProvider = this.proxyConfig.getFetchSizeProvider();
+        if (fetchSizeProvider != null && !this.fetchSizeSpecified
+                && ("executeQuery".equals(methodName) || "execute".equals(methodName))) {
+            applyFetchSize(fetchSizeProvider, queries.get(0).getQuery());
+        }
+
+        QueryTimeoutPolicy queryTimeoutPolicy = this.proxyConfig.getQueryTimeoutPolicy();
+        if (queryTimeoutPolicy != null && !this.queryTimeoutSpecified && performQueryListener) {
+            applyQueryTimeout(queryTimeoutPolicy, queries);
+        }
+
+        // read-through query result cache
+        QueryResultCache queryResultCache = this.proxyConfig.getQueryResultCache();
+        QueryResultCache.Key resultCacheKey = null;
+        boolean isInTransaction = false;
+        if (queryResultCache != null && this.connectionState != null && !queries.isEmpty()) {
+            isInTransaction = !isAutoCommit();
+            // uncommitted modifications of this connection must not be shared with other connections
+            boolean hasUncommittedQueries = !this.connectionState.getUncommittedQueries().isEmpty();
+            if ("executeQuery".equals(methodName) && !hasUncommittedQueries) {
+                resultCacheKey = getQueryResultCacheKey(queryResultCache, queries.get(0).getQuery());
+            }
+        }
+
+        Stopwatch stopwatch = null;
+        QueryBulkhead.Permit bulkheadPermit = null;
 
         // Invoke method on original Statement.
         try {
 
-            Object retVal = method.invoke(this.statement, args);
+            Object retVal = null;
+            if (resultCacheKey != null) {
+                retVal = queryResultCache.get(resultCacheKey);
+            }
+            if (retVal == null && performQueryListener) {
+                // waiting for a permit is not a part of elapsed time
+                bulkheadPermit = acquireBulkheadPermit(execInfo, queries);
+            }
+            stopwatch = this.proxyConfig.getStopwatchFactory().create().start();
+            if (retVal == null) {
+                retVal = method.invoke(this.statement, args);
+                if (resultCacheKey != null) {
+                    retVal = queryResultCache.put(resultCacheKey, (ResultSet) retVal);
+                }
+            }
 
             final long elapsedTime = stopwatch.getElapsedTime();
 
@@ -328,7 +461,11 @@ public class StatementProxyLogic {
             if (isCreateGeneratedKeysProxy) {
                 retVal = proxyFactory.createGeneratedKeys((ResultSet) retVal, this.connectionInfo, this.proxyConfig);
             } else if (isCreateResultSetProxy) {
-                retVal = proxyFactory.createResultSet((ResultSet) retVal, this.connectionInfo, this.proxyConfig);
+                if (isGetResultSetMethod && this.lastExecInfo != null) {
+                    retVal = proxyFactory.createResultSet((ResultSet) retVal, this.connectionInfo, this.proxyConfig, this.lastExecInfo, this.lastQueries);
+                } else {
+                    retVal = proxyFactory.createResultSet((ResultSet) retVal, this.connectionInfo, this.proxyConfig, execInfo, queries);
+                }
             }
 
 
@@ -391,6 +528,20 @@ public class StatementProxyLogic {
             throw ex.getTargetException();
         } finally {
 
+            if (bulkheadPermit != null) {
+                bulkheadPermit.release();
+            }
+
+            // remove cached results affected by this execution. in transaction, they are removed again at its end.
+            if (queryResultCache != null) {
+                for (QueryInfo queryInfo : queries) {
+                    queryResultCache.invalidate(queryInfo.getQuery());
+                    if (isInTransaction && QueryType.SELECT != QueryUtils.getQueryType(queryInfo.getQuery())) {
+                        this.connectionState.addUncommittedQuery(queryInfo.getQuery());
+                    }
+                }
+            }
+
             if (performQueryListener) {
                 queryListener.afterQuery(execInfo, queries);
             }
@@ -406,6 +557,198 @@ public class StatementProxyLogic {
     }
 
 
+    private QueryBulkhead.Permit acquireBulkheadPermit(ExecutionInfo execInfo, List<QueryInfo> queries) throws SQLException {
+        QueryBulkhead queryBulkhead = this.proxyConfig.getQueryBulkhead();
+        if (queryBulkhead == null) {
+            return null;
+        }
+        try {
+            return queryBulkhead.acquire(this.connectionInfo.getDataSourceName(), queries);
+        } catch (SQLException ex) {
+            // query is not executed, but listeners see it as a failure
+            execInfo.setElapsedTime(0);
+            execInfo.setThrowable(ex);
+            execInfo.setSuccess(false);
+            throw ex;
+        }
+    }
+
+    private QueryResultCache.Key getQueryResultCacheKey(QueryResultCache queryResultCache, String query) {
+        if (StatementType.CALLABLE == this.statementType || !queryResultCache.isCacheable(query)) {
+            return null;
+        }
+        if (StatementType.STATEMENT == this.statementType) {
+            return queryResultCache.createKey(query, Collections.<ParameterSetOperation>emptyList());
+        }
+        if (isCaptureOnSet() && ParameterCaptureMode.NONE == this.proxyConfig.getParameterCaptureMode()) {
+            return null;  // parameters are not kept
+        }
+        return queryResultCache.createKey(query, this.parameters.values());
+    }
+
+    /**
+     * Parameter transformer needs original values to re-set parameters; in that case, parameters are captured when
+     * they are copied for batch or listeners.
+     */
+    private boolean isCaptureOnSet() {
+        return this.proxyConfig.getParameterTransformer() == ParameterTransformer.DEFAULT;
+    }
+
+    private Map<ParameterKey, ParameterSetOperation> captureParameters(Map<ParameterKey, ParameterSetOperation> parameters) {
+        ParameterCaptureMode captureMode = this.proxyConfig.getParameterCaptureMode();
+        if (isCaptureOnSet() || ParameterCaptureMode.FULL == captureMode) {
+            return new LinkedHashMap<ParameterKey, ParameterSetOperation>(parameters);
+        }
+        Map<ParameterKey, ParameterSetOperation> captured = new LinkedHashMap<ParameterKey, ParameterSetOperation>();
+        for (Map.Entry<ParameterKey, ParameterSetOperation> entry : parameters.entrySet()) {
+            ParameterSetOperation operation = captureMode.capture(entry.getValue(), this.proxyConfig.getParameterCaptureMaxLength());
+            if (operation != null) {
+                captured.put(entry.getKey(), operation);
+            }
+        }
+        return captured;
+    }
+
+    private boolean isDeferrableUpdate(String methodName, Object[] args) throws SQLException {
+        if (this.proxyConfig.getWriteBatchSize() <= 0 || StatementType.PREPARED != this.statementType || this.connectionState == null) {
+            return false;
+        }
+        if (!"executeUpdate".equals(methodName) && !"executeLargeUpdate".equals(methodName)) {
+            return false;
+        }
+        // do not mix with batch built by application, and generated keys are not available for deferred updates
+        boolean hasApplicationBatch = this.deferredUpdateCount == 0 && !this.batchParameters.isEmpty();
+        if ((args != null && args.length > 0) || this.generateKey || hasApplicationBatch) {
+            return false;
+        }
+        return !isAutoCommit();
+    }
+
+    // auto-commit mode tracked by the connection proxy. retrieved from the connection only when it is not known yet.
+    private boolean isAutoCommit() throws SQLException {
+        Boolean autoCommit = this.connectionState.getAutoCommit();
+        if (autoCommit == null) {
+            autoCommit = this.statement.getConnection().getAutoCommit();
+            this.connectionState.setAutoCommit(autoCommit);
+        }
+        return autoCommit;
+    }
+
+    private void flushPendingBatchIfNecessary(String methodName, boolean isDeferrableUpdate) throws SQLException {
+        if (this.connectionState == null) {
+            return;
+        }
+        PendingBatch pendingBatch = this.connectionState.getPendingBatch();
+        if (pendingBatch == null) {
+            return;
+        }
+
+        if (pendingBatch == this.pendingBatch) {
+            // any operation on this statement other than setting parameters requires deferred updates to be executed
+            if (!isDeferrableUpdate && !METHODS_TO_KEEP_PENDING_BATCH.contains(methodName)) {
+                pendingBatch.flush();
+            }
+        } else if (StatementMethodNames.EXEC_METHODS.contains(methodName)) {
+            // executing other statement on the connection
+            pendingBatch.flush();
+        }
+    }
+
+    private Object deferUpdate(String methodName) throws Throwable {
+        PreparedStatement ps = (PreparedStatement) this.statement;
+
+        transformParameters(this.proxyConfig.getParameterTransformer(), ps, true, this.batchParameters.size());
+        ps.addBatch();
+
+        // parameters are kept as well as "executeUpdate()"
+        this.batchParameters.add(captureParameters(this.parameters));
+        this.deferredUpdateCount++;
+        this.connectionState.setPendingBatch(this.pendingBatch);
+
+        // actual update count is not known until the batch is executed
+        int updateCount = Statement.SUCCESS_NO_INFO;
+        if (this.proxyConfig.isStrictWriteBatching()) {
+            updateCount = getStrictUpdateCount(flushDeferredUpdates());
+        } else if (this.deferredUpdateCount >= this.proxyConfig.getWriteBatchSize()) {
+            flushDeferredUpdates();
+        }
+
+        if ("executeLargeUpdate".equals(methodName)) {
+            return (long) updateCount;
+        }
+        return updateCount;
+    }
+
+    private int[] flushDeferredUpdates() throws SQLException {
+        if (this.deferredUpdateCount == 0) {
+            return new int[0];
+        }
+        this.deferredUpdateCount = 0;
+        this.connectionState.setPendingBatch(null);
+
+        try {
+            // perform "executeBatch()" with method and query listeners
+            return (int[]) invoke(EXECUTE_BATCH_METHOD, null);
+        } catch (SQLException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new SQLException("Failed to execute deferred updates", e);
+        }
+    }
+
+    // in strict mode, the batch has only the update that has just been deferred
+    private int getStrictUpdateCount(int[] updateCounts) throws SQLException {
+        int updateCount = updateCounts[0];
+        if (updateCount == Statement.EXECUTE_FAILED) {
+            throw new SQLException("Failed to execute deferred update");
+        }
+        // "SUCCESS_NO_INFO" is returned as is when the driver does not report update counts of batch executions
+        return updateCount;
+    }
+
+    private void applyFetchSize(FetchSizeProvider provider, String query) throws SQLException {
+        Integer fetchSize = provider.getFetchSize(query);
+        if (fetchSize != null) {
+            if (this.defaultFetchSize < 0) {
+                this.defaultFetchSize = this.statement.getFetchSize();
+            }
+            this.statement.setFetchSize(fetchSize);
+        } else if (this.defaultFetchSize >= 0) {
+            // restore for a query that has not been observed
+            this.statement.setFetchSize(this.defaultFetchSize);
+        }
+    }
+
+    private void applyQueryTimeout(QueryTimeoutPolicy policy, List<QueryInfo> queries) throws SQLException {
+        int queryTimeout;
+        if (StatementType.STATEMENT == this.statementType) {
+            queryTimeout = policy.getQueryTimeout(this.connectionInfo.getDataSourceName(), this.statementType, queries);
+        } else {
+            // query of prepared/callable does not change
+            if (this.policyQueryTimeout == null) {
+                this.policyQueryTimeout = policy.getQueryTimeout(this.connectionInfo.getDataSourceName(), this.statementType, queries);
+            }
+            queryTimeout = this.policyQueryTimeout;
+        }
+        if (queryTimeout >= 0) {
+            if (queryTimeout != this.appliedQueryTimeout) {
+                if (this.defaultQueryTimeout < 0) {
+                    this.defaultQueryTimeout = this.statement.getQueryTimeout();
+                }
+                this.statement.setQueryTimeout(queryTimeout);
+                this.appliedQueryTimeout = queryTimeout;
+            }
+        } else if (this.appliedQueryTimeout >= 0) {
+            // restore for a query that the policy does not apply to
+            this.statement.setQueryTimeout(this.defaultQueryTimeout);
+            this.appliedQueryTimeout = -1;
+        }
+    }
+
     private void transformParameters(ParameterTransformer parameterTransformer, PreparedStatement ps, boolean isBatch, int count) throws SQLException, IllegalAccessException, InvocationTargetException {
 
         // transform parameters
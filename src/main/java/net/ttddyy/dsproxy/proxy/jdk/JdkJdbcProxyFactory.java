@@ -1,14 +1,18 @@
 package net.ttddyy.dsproxy.proxy.jdk;
 
 import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
 import net.ttddyy.dsproxy.proxy.JdbcProxyFactory;
 import net.ttddyy.dsproxy.proxy.ProxyConfig;
 import net.ttddyy.dsproxy.proxy.ProxyJdbcObject;
+import net.ttddyy.dsproxy.proxy.ResultSetProxyLogic;
 import net.ttddyy.dsproxy.proxy.ResultSetProxyLogicFactory;
 
 import javax.sql.DataSource;
 import java.lang.reflect.Proxy;
 import java.sql.*;
+import java.util.List;
 
 /**
  * Dynamic Proxy Class(Jdk Proxy) based {@link net.ttddyy.dsproxy.proxy.JdbcProxyFactory} implementation.
@@ -67,6 +71,16 @@ public class JdkJdbcProxyFactory implements JdbcProxyFactory {
                 new ResultSetInvocationHandler(factory, resultSet, connectionInfo, proxyConfig));
     }
 
+    @Override
+    public ResultSet createResultSet(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig,
+                                     ExecutionInfo executionInfo, List<QueryInfo> queries) {
+        ResultSetProxyLogicFactory factory = proxyConfig.getResultSetProxyLogicFactory();
+        ResultSetProxyLogic logic = factory.create(resultSet, connectionInfo, proxyConfig, executionInfo, queries);
+        return (ResultSet) Proxy.newProxyInstance(ProxyJdbcObject.class.getClassLoader(),
+                new Class[]{ProxyJdbcObject.class, ResultSet.class},
+                new ResultSetInvocationHandler(logic));
+    }
+
     @Override
     public ResultSet createGeneratedKeys(ResultSet resultSet, ConnectionInfo connectionInfo, ProxyConfig proxyConfig) {
         ResultSetProxyLogicFactory factory = proxyConfig.getGeneratedKeysProxyLogicFactory();
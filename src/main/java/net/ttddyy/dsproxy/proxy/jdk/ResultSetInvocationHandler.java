@@ -24,6 +24,14 @@ public class ResultSetInvocationHandler implements InvocationHandler {
         this.delegate = factory.create(resultSet, connectionInfo, proxyConfig);
     }
 
+    /**
+     * @param delegate proxy logic
+     * @since 1.8
+     */
+    public ResultSetInvocationHandler(ResultSetProxyLogic delegate) {
+        this.delegate = delegate;
+    }
+
     @Override
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
         return delegate.invoke(method, args);
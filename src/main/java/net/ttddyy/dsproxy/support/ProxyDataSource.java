@@ -7,6 +7,7 @@ import net.ttddyy.dsproxy.listener.MethodExecutionListenerUtils;
 import net.ttddyy.dsproxy.listener.QueryExecutionListener;
 import net.ttddyy.dsproxy.proxy.JdbcProxyFactory;
 import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.proxy.Stopwatch;
 import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
 
 import javax.sql.DataSource;
@@ -17,6 +18,8 @@ import java.lang.reflect.Method;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Logger;
 
 /**
@@ -50,6 +53,7 @@ public class ProxyDataSource implements DataSource, Closeable {
 
     private DataSource dataSource;
     private ProxyConfig proxyConfig = ProxyConfig.Builder.create().build();  // default
+    private List<Closeable> closeables = new CopyOnWriteArrayList<Closeable>();
 
     public ProxyDataSource() {
     }
@@ -69,17 +73,31 @@ public class ProxyDataSource implements DataSource, Closeable {
 
     @Override
     public Connection getConnection() throws SQLException {
+        final Stopwatch stopwatch = startAcquisitionStopwatch();
         final Connection conn = dataSource.getConnection();
-        return getConnectionProxy(conn, GET_CONNECTION_WITH_NO_ARGS, null);
+        return getConnectionProxy(conn, getAcquisitionTime(stopwatch), GET_CONNECTION_WITH_NO_ARGS, null);
     }
 
     @Override
     public Connection getConnection(String username, String password) throws SQLException {
+        final Stopwatch stopwatch = startAcquisitionStopwatch();
         final Connection conn = dataSource.getConnection(username, password);
-        return getConnectionProxy(conn, GET_CONNECTION_WITH_USER_PASS, new Object[]{username, password});
+        return getConnectionProxy(conn, getAcquisitionTime(stopwatch), GET_CONNECTION_WITH_USER_PASS, new Object[]{username, password});
     }
 
-    private Connection getConnectionProxy(final Connection conn, Method method, Object[] args) throws SQLException {
+    // acquisition time is consumed by method listeners. skip measuring when none is registered.
+    private Stopwatch startAcquisitionStopwatch() {
+        if (this.proxyConfig.getMethodListener().getListeners().isEmpty()) {
+            return null;
+        }
+        return this.proxyConfig.getStopwatchFactory().create().start();
+    }
+
+    private long getAcquisitionTime(Stopwatch stopwatch) {
+        return stopwatch == null ? 0 : stopwatch.getElapsedTime();
+    }
+
+    private Connection getConnectionProxy(final Connection conn, long acquisitionTime, Method method, Object[] args) throws SQLException {
         String dataSourceName = this.proxyConfig.getDataSourceName();
         ConnectionIdManager connectionIdManager = this.proxyConfig.getConnectionIdManager();
         final JdbcProxyFactory jdbcProxyFactory = this.proxyConfig.getJdbcProxyFactory();
@@ -89,6 +107,7 @@ public class ProxyDataSource implements DataSource, Closeable {
         final ConnectionInfo connectionInfo = new ConnectionInfo();
         connectionInfo.setConnectionId(connectionId);
         connectionInfo.setDataSourceName(dataSourceName);
+        connectionInfo.setConnectionAcquisitionTime(acquisitionTime);
 
         try {
             return (Connection) MethodExecutionListenerUtils.invoke(new MethodExecutionListenerUtils.MethodExecutionCallback() {
@@ -138,8 +157,42 @@ public class ProxyDataSource implements DataSource, Closeable {
         return dataSource.getParentLogger();  // JDBC4.1 (jdk7+)
     }
 
+    /**
+     * Close registered resources and the actual datasource.
+     *
+     * All of them are closed even if some fail. The first failure is thrown, and the others are added to it as
+     * suppressed exceptions (jdk7+).
+     */
     @Override
     public void close() throws IOException {
+        Exception failure = null;
+        for (Closeable closeable : this.closeables) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                failure = addFailure(failure, ex);
+            } catch (RuntimeException ex) {
+                failure = addFailure(failure, ex);
+            }
+        }
+        this.closeables.clear();
+
+        try {
+            closeDataSource();
+        } catch (IOException ex) {
+            failure = addFailure(failure, ex);
+        } catch (RuntimeException ex) {
+            failure = addFailure(failure, ex);
+        }
+
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+    }
+
+    private void closeDataSource() throws IOException {
         if (dataSource instanceof Closeable) {
             ((Closeable) dataSource).close();
         } else if (isAutoCloseablePresent && dataSource instanceof AutoCloseable) {
@@ -151,6 +204,17 @@ public class ProxyDataSource implements DataSource, Closeable {
         }
     }
 
+    @IgnoreJRERequirement
+    private static Exception addFailure(Exception failure, Exception ex) {
+        if (failure == null) {
+            return ex;
+        }
+        if (isAutoCloseablePresent) {
+            failure.addSuppressed(ex);  // (jdk7+)
+        }
+        return failure;
+    }
+
     /**
      * @deprecated
      */
@@ -164,6 +228,16 @@ public class ProxyDataSource implements DataSource, Closeable {
         this.proxyConfig.getQueryListener().addListener(listener);
     }
 
+    /**
+     * Add a resource to close when this datasource is closed. (e.g. MBean registration)
+     *
+     * @param closeable a resource
+     * @since 1.8
+     */
+    public void addCloseable(Closeable closeable) {
+        this.closeables.add(closeable);
+    }
+
     public void setDataSourceName(String dataSourceName) {
         this.proxyConfig = ProxyConfig.Builder.from(this.proxyConfig)
                 .dataSourceName(dataSourceName)
@@ -1,15 +1,21 @@
 package net.ttddyy.dsproxy.support;
 
 import net.ttddyy.dsproxy.ConnectionIdManager;
+import net.ttddyy.dsproxy.DataSourceProxyException;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.AdaptiveFetchSizeListener;
+import net.ttddyy.dsproxy.listener.AdaptiveSlowQueryThreshold;
 import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
 import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.ExplainDialect;
 import net.ttddyy.dsproxy.listener.MethodExecutionListener;
 import net.ttddyy.dsproxy.listener.NoOpMethodExecutionListener;
 import net.ttddyy.dsproxy.listener.NoOpQueryExecutionListener;
 import net.ttddyy.dsproxy.listener.QueryCountStrategy;
 import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryPlanExplainer;
+import net.ttddyy.dsproxy.listener.SlowQueryListener;
 import net.ttddyy.dsproxy.listener.TracingMethodListener;
 import net.ttddyy.dsproxy.listener.lifecycle.JdbcLifecycleEventExecutionListener;
 import net.ttddyy.dsproxy.listener.lifecycle.JdbcLifecycleEventListener;
@@ -27,13 +33,23 @@ import net.ttddyy.dsproxy.listener.logging.SystemOutQueryLoggingListener;
 import net.ttddyy.dsproxy.listener.logging.SystemOutSlowQueryListener;
 import net.ttddyy.dsproxy.proxy.DefaultConnectionIdManager;
 import net.ttddyy.dsproxy.proxy.JdbcProxyFactory;
+import net.ttddyy.dsproxy.proxy.ParameterCaptureMode;
 import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.proxy.QueryBulkhead;
+import net.ttddyy.dsproxy.proxy.QueryResultCache;
+import net.ttddyy.dsproxy.proxy.QueryTimeoutPolicy;
 import net.ttddyy.dsproxy.proxy.RepeatableReadResultSetProxyLogicFactory;
+import net.ttddyy.dsproxy.proxy.ResultSetMetricsProxyLogicFactory;
 import net.ttddyy.dsproxy.proxy.ResultSetProxyLogicFactory;
+import net.ttddyy.dsproxy.proxy.jdk.JdkJdbcProxyFactory;
+import net.ttddyy.dsproxy.support.jmx.ProxyDataSourceControl;
 import net.ttddyy.dsproxy.transform.ParameterTransformer;
 import net.ttddyy.dsproxy.transform.QueryTransformer;
 
+import javax.management.JMException;
 import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
@@ -147,6 +163,24 @@ public class ProxyDataSourceBuilder {
 
     private List<MethodExecutionListener> methodExecutionListeners = new ArrayList<MethodExecutionListener>();
 
+    private boolean registerMBean;
+
+    private AdaptiveFetchSizeListener adaptiveFetchSizeListener;
+
+    private int writeBatchSize;
+    private boolean strictWriteBatching;
+
+    private int preparedStatementCacheSize;
+
+    private QueryResultCache queryResultCache;
+    private QueryBulkhead queryBulkhead;
+    private QueryTimeoutPolicy queryTimeoutPolicy;
+
+    private ParameterCaptureMode parameterCaptureMode;
+    private ExplainDialect slowQueryExplainDialect;
+    private AdaptiveSlowQueryThreshold slowQueryAdaptiveThreshold;
+    private int parameterCaptureMaxLength = ProxyConfig.DEFAULT_PARAMETER_CAPTURE_MAX_LENGTH;
+
     public static ProxyDataSourceBuilder create() {
         return new ProxyDataSourceBuilder();
     }
@@ -825,6 +859,21 @@ public class ProxyDataSourceBuilder {
         return this;
     }
 
+    /**
+     * Enable resultset proxy that collects {@link net.ttddyy.dsproxy.ResultSetMetrics}.
+     *
+     * Query listeners implementing {@link net.ttddyy.dsproxy.listener.ResultSetMetricsListener} receive the metrics
+     * when the {@link java.sql.ResultSet} is closed.
+     * Equivalent to {@code proxyResultSet(new ResultSetMetricsProxyLogicFactory())}
+     *
+     * @return builder
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder proxyResultSetWithMetrics() {
+        this.resultSetProxyLogicFactory = new ResultSetMetricsProxyLogicFactory();
+        return this;
+    }
+
     /**
      * Add {@link MethodExecutionListener}.
      *
@@ -933,6 +982,215 @@ public class ProxyDataSourceBuilder {
     }
 
 
+    /**
+     * Register {@link ProxyDataSourceControl} MBean to the platform mbean server when datasource is built.
+     *
+     * The MBean is unregistered when the datasource is closed. Building the datasource fails when an MBean with the
+     * same datasource name is already registered.
+     *
+     * @return builder
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder registerMBean() {
+        this.registerMBean = true;
+        return this;
+    }
+
+    /**
+     * Set fetch size of {@link Statement#executeQuery(String)} and {@link Statement#execute(String)} based on the
+     * number of rows read by previous executions of the same query.
+     *
+     * Fetch size explicitly set by application is respected.
+     * Unless resultset proxy is configured, {@link ResultSetMetricsProxyLogicFactory} is used to observe the rows.
+     *
+     * @param minFetchSize lower bound of fetch size
+     * @param maxFetchSize upper bound of fetch size
+     * @return builder
+     * @see AdaptiveFetchSizeListener
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder adaptiveFetchSize(int minFetchSize, int maxFetchSize) {
+        return adaptiveFetchSize(new AdaptiveFetchSizeListener(minFetchSize, maxFetchSize));
+    }
+
+    /**
+     * Set fetch size of {@link Statement#executeQuery(String)} and {@link Statement#execute(String)} based on the given
+     * {@link AdaptiveFetchSizeListener}.
+     *
+     * @param listener adaptive fetch size listener
+     * @return builder
+     * @see #adaptiveFetchSize(int, int)
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder adaptiveFetchSize(AdaptiveFetchSizeListener listener) {
+        this.adaptiveFetchSizeListener = listener;
+        return this;
+    }
+
+    /**
+     * Enable transparent write batching.
+     *
+     * When auto-commit is disabled, consecutive {@link java.sql.PreparedStatement#executeUpdate()} calls on the same
+     * statement are converted to {@link java.sql.PreparedStatement#addBatch()}, and executed as a batch when the batch
+     * is full, other statement is executed on the connection, or commit, rollback or close is called.
+     *
+     * <p><b>Deferred updates return {@link java.sql.Statement#SUCCESS_NO_INFO} ({@code -2}) instead of an update
+     * count</b>, because the update has not been executed yet. Applications that check update counts (e.g. optimistic
+     * locking with a version column) must use strict mode.
+     * Failure of a deferred update is thrown from the operation that executes the batch (e.g. commit).
+     *
+     * @param batchSize max number of updates in a batch
+     * @return builder
+     * @see #writeBatching(int, boolean)
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder writeBatching(int batchSize) {
+        return writeBatching(batchSize, false);
+    }
+
+    /**
+     * Enable transparent write batching.
+     *
+     * <p>In strict mode, each deferred update is executed as a batch before returning; therefore, the update count
+     * reported by the driver for the batch is returned. <b>Drivers that do not report update counts of batch
+     * executions make it {@link java.sql.Statement#SUCCESS_NO_INFO} ({@code -2}).</b>
+     * In non-strict mode, deferred updates return {@link java.sql.Statement#SUCCESS_NO_INFO}.
+     *
+     * @param batchSize max number of updates in a batch
+     * @param strict {@code true} to flush deferred updates before returning actual update count
+     * @return builder
+     * @see #writeBatching(int)
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder writeBatching(int batchSize, boolean strict) {
+        this.writeBatchSize = batchSize;
+        this.strictWriteBatching = strict;
+        return this;
+    }
+
+    /**
+     * Enable LRU cache of {@link java.sql.PreparedStatement} per connection.
+     *
+     * Closing a prepared statement returns it to the cache, and following {@code prepareStatement} with the same
+     * arguments on the same connection reuses it. Cached statements are closed when the connection is closed.
+     * Hit/miss metrics are available from {@link ProxyConfig#getPreparedStatementCacheMetrics()}.
+     *
+     * @param cacheSize max number of cached statements per connection
+     * @return builder
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder cachePreparedStatements(int cacheSize) {
+        this.preparedStatementCacheSize = cacheSize;
+        return this;
+    }
+
+    /**
+     * Serve results of {@code executeQuery} matching the patterns of the given cache from memory.
+     *
+     * Cached results are invalidated when INSERT/UPDATE/DELETE is executed on the referenced tables through this
+     * datasource.
+     *
+     * @param queryResultCache query result cache with query patterns to cache
+     * @return builder
+     * @see QueryResultCache
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder cacheQueryResults(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+        return this;
+    }
+
+    /**
+     * Limit concurrent query executions per datasource, and optionally per query fingerprint.
+     *
+     * When a permit is not available within the max wait time, {@link java.sql.SQLTransientException} is thrown.
+     *
+     * @param queryBulkhead concurrency limiter
+     * @return builder
+     * @see QueryBulkhead
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder limitConcurrency(QueryBulkhead queryBulkhead) {
+        this.queryBulkhead = queryBulkhead;
+        return this;
+    }
+
+    /**
+     * Apply query timeout by the policy before query executions.
+     *
+     * Timeout is not applied to statements that the application has called {@code setQueryTimeout}.
+     *
+     * @param queryTimeoutPolicy query timeout policy
+     * @return builder
+     * @see QueryTimeoutPolicy
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder queryTimeoutPolicy(QueryTimeoutPolicy queryTimeoutPolicy) {
+        this.queryTimeoutPolicy = queryTimeoutPolicy;
+        return this;
+    }
+
+    /**
+     * Reduce parameter values kept by statement proxies for listeners.
+     *
+     * Values passed to the actual statement are not affected.
+     *
+     * @param parameterCaptureMode how parameter values are kept
+     * @return builder
+     * @see #captureParameters(ParameterCaptureMode, int)
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder captureParameters(ParameterCaptureMode parameterCaptureMode) {
+        this.parameterCaptureMode = parameterCaptureMode;
+        return this;
+    }
+
+    /**
+     * Reduce parameter values kept by statement proxies for listeners.
+     *
+     * @param parameterCaptureMode how parameter values are kept
+     * @param maxLength max length of chars or bytes for {@link ParameterCaptureMode#TRUNCATED}
+     * @return builder
+     * @see #captureParameters(ParameterCaptureMode)
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder captureParameters(ParameterCaptureMode parameterCaptureMode, int maxLength) {
+        this.parameterCaptureMode = parameterCaptureMode;
+        this.parameterCaptureMaxLength = maxLength;
+        return this;
+    }
+
+    /**
+     * Attach execution plans to slow query log entries.
+     *
+     * Plans are retrieved asynchronously on a separate connection from the actual datasource, and cached per query
+     * fingerprint.
+     *
+     * @param explainDialect explain dialect for the database
+     * @return builder
+     * @see QueryPlanExplainer
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder explainSlowQueries(ExplainDialect explainDialect) {
+        this.slowQueryExplainDialect = explainDialect;
+        return this;
+    }
+
+    /**
+     * Derive slow query thresholds from recent execution times of each query fingerprint.
+     *
+     * The threshold specified to slow query listeners is used until enough executions are recorded for a fingerprint.
+     *
+     * @param adaptiveThreshold adaptive threshold
+     * @return builder
+     * @see AdaptiveSlowQueryThreshold
+     * @since 1.8
+     */
+    public ProxyDataSourceBuilder adaptiveSlowQueryThreshold(AdaptiveSlowQueryThreshold adaptiveThreshold) {
+        this.slowQueryAdaptiveThreshold = adaptiveThreshold;
+        return this;
+    }
+
     public ProxyDataSource build() {
 
         // Query Logging Listeners
@@ -953,18 +1211,32 @@ public class ProxyDataSourceBuilder {
         }
 
         // slow query logging listeners
+        QueryPlanExplainer queryPlanExplainer = null;
+        if (this.slowQueryExplainDialect != null) {
+            queryPlanExplainer = new QueryPlanExplainer(this.dataSource, this.slowQueryExplainDialect);
+        }
+        List<SlowQueryListener> slowQueryListeners = new ArrayList<SlowQueryListener>();
         if (this.createCommonsSlowQueryListener) {
-            listeners.add(buildCommonsSlowQueryListener());
+            slowQueryListeners.add(buildCommonsSlowQueryListener(queryPlanExplainer));
         }
         if (this.createSlf4jSlowQueryListener) {
-            listeners.add(buildSlf4jSlowQueryListener());
+            slowQueryListeners.add(buildSlf4jSlowQueryListener(queryPlanExplainer));
         }
         if (this.createJulSlowQueryListener) {
-            listeners.add(buildJulSlowQueryListener());
+            slowQueryListeners.add(buildJulSlowQueryListener(queryPlanExplainer));
         }
         if (this.createSysOutSlowQueryListener) {
-            listeners.add(buildSysOutSlowQueryListener());
+            slowQueryListeners.add(buildSysOutSlowQueryListener(queryPlanExplainer));
         }
+        if (this.slowQueryAdaptiveThreshold != null) {
+            for (int i = 0; i < slowQueryListeners.size(); i++) {
+                SlowQueryListener listener = slowQueryListeners.get(i);
+                listener.setAdaptiveThreshold(this.slowQueryAdaptiveThreshold);
+                // listeners share the thresholds, but only the first one records execution times
+                listener.setRecordAdaptiveThreshold(i == 0);
+            }
+        }
+        listeners.addAll(slowQueryListeners);
 
 
         // countQuery listener
@@ -986,6 +1258,11 @@ public class ProxyDataSourceBuilder {
         // explicitly added listeners
         listeners.addAll(this.queryExecutionListeners);
 
+        // adaptive fetch size listener receives resultset metrics
+        if (this.adaptiveFetchSizeListener != null) {
+            listeners.add(this.adaptiveFetchSizeListener);
+        }
+
 
         // build proxy config
         ProxyConfig.Builder proxyConfigBuilder = ProxyConfig.Builder.create();
@@ -1025,8 +1302,53 @@ public class ProxyDataSourceBuilder {
             proxyConfigBuilder.connectionIdManager(new DefaultConnectionIdManager());
         }
 
+        // transparent write batching
+        proxyConfigBuilder.writeBatchSize(this.writeBatchSize);
+        proxyConfigBuilder.strictWriteBatching(this.strictWriteBatching);
+
+        // prepared statement cache
+        proxyConfigBuilder.preparedStatementCacheSize(this.preparedStatementCacheSize);
+
+        // query result cache
+        if (this.queryResultCache != null) {
+            proxyConfigBuilder.queryResultCache(this.queryResultCache);
+        }
+
+        // concurrency limit
+        if (this.queryBulkhead != null) {
+            proxyConfigBuilder.queryBulkhead(this.queryBulkhead);
+        }
+
+        // query timeout
+        if (this.queryTimeoutPolicy != null) {
+            proxyConfigBuilder.queryTimeoutPolicy(this.queryTimeoutPolicy);
+        }
+
+        // parameter capture
+        if (this.parameterCaptureMode != null) {
+            proxyConfigBuilder.parameterCaptureMode(this.parameterCaptureMode);
+        }
+        proxyConfigBuilder.parameterCaptureMaxLength(this.parameterCaptureMaxLength);
+
+        // adaptive fetch size requires resultset proxy to observe the number of rows
+        ResultSetProxyLogicFactory resultSetProxyLogicFactory = this.resultSetProxyLogicFactory;
+        if (this.adaptiveFetchSizeListener != null) {
+            proxyConfigBuilder.fetchSizeProvider(this.adaptiveFetchSizeListener);
+            if (resultSetProxyLogicFactory == null) {
+                resultSetProxyLogicFactory = new ResultSetMetricsProxyLogicFactory();
+            }
+            boolean isJdkProxyFactory = this.jdbcProxyFactory == null || this.jdbcProxyFactory instanceof JdkJdbcProxyFactory;
+            if (!(resultSetProxyLogicFactory instanceof ResultSetMetricsProxyLogicFactory) || !isJdkProxyFactory) {
+                java.util.logging.Logger.getLogger(ProxyDataSourceBuilder.class.getName()).warning(
+                        "Adaptive fetch size has no effect. It requires ResultSetMetricsProxyLogicFactory and JdkJdbcProxyFactory "
+                                + "to observe rows, but " + resultSetProxyLogicFactory.getClass().getName() + " and "
+                                + (isJdkProxyFactory ? JdkJdbcProxyFactory.class : this.jdbcProxyFactory.getClass()).getName()
+                                + " are configured.");
+            }
+        }
+
         // this can be null if creation of resultset proxy is disabled
-        proxyConfigBuilder.resultSetProxyLogicFactory(this.resultSetProxyLogicFactory);
+        proxyConfigBuilder.resultSetProxyLogicFactory(resultSetProxyLogicFactory);
 
         // generated keys
         proxyConfigBuilder.autoRetrieveGeneratedKeys(this.autoRetrieveGeneratedKeys);
@@ -1049,6 +1371,29 @@ public class ProxyDataSourceBuilder {
         ProxyConfig proxyConfig = proxyConfigBuilder.build();
         proxyDataSource.setProxyConfig(proxyConfig);
 
+        if (this.registerMBean) {
+            try {
+                ProxyDataSourceControl control = new ProxyDataSourceControl(proxyDataSource);
+                control.register(ManagementFactory.getPlatformMBeanServer());
+                proxyDataSource.addCloseable(control);  // unregister on close
+            } catch (JMException e) {
+                if (queryPlanExplainer != null) {
+                    queryPlanExplainer.shutdown();
+                }
+                throw new DataSourceProxyException("Failed to register MBean for " + proxyDataSource.getDataSourceName(), e);
+            }
+        }
+
+        if (queryPlanExplainer != null) {
+            final QueryPlanExplainer explainer = queryPlanExplainer;
+            proxyDataSource.addCloseable(new Closeable() {
+                @Override
+                public void close() {
+                    explainer.shutdown();  // stop the thread for explain on close
+                }
+            });
+        }
+
         return proxyDataSource;
     }
 
@@ -1069,7 +1414,7 @@ public class ProxyDataSourceBuilder {
         return listener;
     }
 
-    private CommonsSlowQueryListener buildCommonsSlowQueryListener() {
+    private CommonsSlowQueryListener buildCommonsSlowQueryListener(QueryPlanExplainer queryPlanExplainer) {
         CommonsSlowQueryListener listener = new CommonsSlowQueryListener(this.slowQueryThreshold, this.slowQueryTimeUnit);
         if (this.commonsSlowQueryLogLevel != null) {
             listener.setLogLevel(this.commonsSlowQueryLogLevel);
@@ -1083,6 +1428,9 @@ public class ProxyDataSourceBuilder {
         if (this.multiline) {
             listener.setQueryLogEntryCreator(buildMultilineQueryLogEntryCreator());
         }
+        if (queryPlanExplainer != null) {
+            listener.setQueryPlanExplainer(queryPlanExplainer);
+        }
         return listener;
     }
 
@@ -1103,7 +1451,7 @@ public class ProxyDataSourceBuilder {
         return listener;
     }
 
-    private SLF4JSlowQueryListener buildSlf4jSlowQueryListener() {
+    private SLF4JSlowQueryListener buildSlf4jSlowQueryListener(QueryPlanExplainer queryPlanExplainer) {
         SLF4JSlowQueryListener listener = new SLF4JSlowQueryListener(this.slowQueryThreshold, this.slowQueryTimeUnit);
         if (this.slf4jSlowQueryLogLevel != null) {
             listener.setLogLevel(this.slf4jSlowQueryLogLevel);
@@ -1117,6 +1465,9 @@ public class ProxyDataSourceBuilder {
         if (this.multiline) {
             listener.setQueryLogEntryCreator(buildMultilineQueryLogEntryCreator());
         }
+        if (queryPlanExplainer != null) {
+            listener.setQueryPlanExplainer(queryPlanExplainer);
+        }
         return listener;
     }
 
@@ -1137,7 +1488,7 @@ public class ProxyDataSourceBuilder {
         return listener;
     }
 
-    private JULSlowQueryListener buildJulSlowQueryListener() {
+    private JULSlowQueryListener buildJulSlowQueryListener(QueryPlanExplainer queryPlanExplainer) {
         JULSlowQueryListener listener = new JULSlowQueryListener(this.slowQueryThreshold, this.slowQueryTimeUnit);
         if (this.julSlowQueryLogLevel != null) {
             listener.setLogLevel(this.julSlowQueryLogLevel);
@@ -1151,6 +1502,9 @@ public class ProxyDataSourceBuilder {
         if (this.multiline) {
             listener.setQueryLogEntryCreator(buildMultilineQueryLogEntryCreator());
         }
+        if (queryPlanExplainer != null) {
+            listener.setQueryPlanExplainer(queryPlanExplainer);
+        }
         return listener;
     }
 
@@ -1165,7 +1519,7 @@ public class ProxyDataSourceBuilder {
         return listener;
     }
 
-    private SystemOutSlowQueryListener buildSysOutSlowQueryListener() {
+    private SystemOutSlowQueryListener buildSysOutSlowQueryListener(QueryPlanExplainer queryPlanExplainer) {
         SystemOutSlowQueryListener listener = new SystemOutSlowQueryListener(this.slowQueryThreshold, this.slowQueryTimeUnit);
         if (this.jsonFormat) {
             listener.setQueryLogEntryCreator(new DefaultJsonQueryLogEntryCreator());
@@ -1173,6 +1527,9 @@ public class ProxyDataSourceBuilder {
         if (this.multiline) {
             listener.setQueryLogEntryCreator(buildMultilineQueryLogEntryCreator());
         }
+        if (queryPlanExplainer != null) {
+            listener.setQueryPlanExplainer(queryPlanExplainer);
+        }
         return listener;
     }
 
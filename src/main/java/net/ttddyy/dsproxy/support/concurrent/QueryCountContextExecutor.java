@@ -0,0 +1,34 @@
+package net.ttddyy.dsproxy.support.concurrent;
+
+import net.ttddyy.dsproxy.QueryCountContext;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} that runs tasks with the query count context of the submitting thread.
+ *
+ * <p>Queries executed by the tasks are counted in the query counts of the submitting thread (e.g. request).
+ * This executor can also be passed to {@code CompletableFuture#supplyAsync(Supplier, Executor)} and etc.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see QueryCountContext
+ * @since 1.8
+ */
+public class QueryCountContextExecutor implements Executor {
+
+    private final Executor delegate;
+
+    public QueryCountContextExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        this.delegate.execute(QueryCountContext.wrap(command));
+    }
+
+    public Executor getDelegate() {
+        return delegate;
+    }
+
+}
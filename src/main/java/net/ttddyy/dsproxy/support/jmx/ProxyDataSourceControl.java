@@ -0,0 +1,351 @@
+package net.ttddyy.dsproxy.support.jmx;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
+import net.ttddyy.dsproxy.listener.InFlightQueryCountListener;
+import net.ttddyy.dsproxy.listener.QueryCountStrategy;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.SingleQueryCountHolder;
+import net.ttddyy.dsproxy.listener.SlowQueryListener;
+import net.ttddyy.dsproxy.listener.logging.AbstractQueryLoggingListener;
+import net.ttddyy.dsproxy.listener.logging.AbstractSlowQueryLoggingListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+
+import javax.management.JMException;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMX MBean to inspect and control a {@link ProxyDataSource} at runtime.
+ *
+ * <p>Query counts are available when {@link DataSourceQueryCountListener} with {@link SingleQueryCountHolder}
+ * (or its subclasses) is registered. Thread local based strategies are not accessible from JMX threads; therefore,
+ * counts are reported as {@code 0}.
+ *
+ * <p>When {@link InFlightQueryCountListener} is not registered on the datasource, it is added at construction.
+ *
+ * <p>Registration fails with {@link javax.management.InstanceAlreadyExistsException} when an MBean with the same
+ * object name is already registered; datasource names need to be unique. The object name of a datasource without name
+ * is derived from its identity. Closing the control unregisters only this control.
+ *
+ * <pre>{@code
+ * ProxyDataSourceControl control = new ProxyDataSourceControl(proxyDataSource);
+ * control.register(ManagementFactory.getPlatformMBeanServer());
+ * ...
+ * control.close();  // unregister
+ * }</pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see net.ttddyy.dsproxy.support.ProxyDataSourceBuilder#registerMBean()
+ * @since 1.8
+ */
+public class ProxyDataSourceControl implements ProxyDataSourceControlMBean, MBeanRegistration, Closeable {
+
+    public static final String DOMAIN = "net.ttddyy.dsproxy";
+
+    /**
+     * Create and register {@link ProxyDataSourceControl} to the {@link MBeanServer}.
+     *
+     * @param mBeanServer     mbean server
+     * @param proxyDataSource proxy datasource
+     * @return registered object name
+     * @throws JMException when failed to register
+     */
+    public static ObjectName register(MBeanServer mBeanServer, ProxyDataSource proxyDataSource) throws JMException {
+        ProxyDataSourceControl control = new ProxyDataSourceControl(proxyDataSource);
+        control.register(mBeanServer);
+        return control.getObjectName();
+    }
+
+    /**
+     * @param dataSourceName datasource name
+     * @return object name for the datasource
+     * @throws JMException when datasource name cannot be used for object name
+     */
+    public static ObjectName createObjectName(String dataSourceName) throws JMException {
+        String name = dataSourceName != null ? dataSourceName : "";
+        return new ObjectName(DOMAIN + ":type=ProxyDataSource,name=" + ObjectName.quote(name));
+    }
+
+    /**
+     * @param proxyDataSource proxy datasource
+     * @return object name for the datasource. When datasource has no name, its identity is used for the name.
+     * @throws JMException when datasource name cannot be used for object name
+     */
+    public static ObjectName createObjectName(ProxyDataSource proxyDataSource) throws JMException {
+        String dataSourceName = proxyDataSource.getDataSourceName();
+        if (dataSourceName == null || dataSourceName.isEmpty()) {
+            dataSourceName = "ProxyDataSource@" + Integer.toHexString(System.identityHashCode(proxyDataSource));
+        }
+        return createObjectName(dataSourceName);
+    }
+
+    private ProxyDataSource proxyDataSource;
+    private InFlightQueryCountListener inFlightQueryCountListener;
+
+    // set while registered
+    private volatile MBeanServer mBeanServer;
+    private volatile ObjectName objectName;
+
+    public ProxyDataSourceControl(ProxyDataSource proxyDataSource) {
+        this.proxyDataSource = proxyDataSource;
+
+        for (QueryExecutionListener listener : getListeners()) {
+            if (listener instanceof InFlightQueryCountListener) {
+                this.inFlightQueryCountListener = (InFlightQueryCountListener) listener;
+                break;
+            }
+        }
+        if (this.inFlightQueryCountListener == null) {
+            this.inFlightQueryCountListener = new InFlightQueryCountListener();
+            proxyDataSource.addListener(this.inFlightQueryCountListener);
+        }
+    }
+
+    /**
+     * Register this control to the {@link MBeanServer}.
+     *
+     * @param mBeanServer mbean server
+     * @throws javax.management.InstanceAlreadyExistsException when an MBean with the same object name is registered
+     * @throws JMException                                     when failed to register
+     */
+    public void register(MBeanServer mBeanServer) throws JMException {
+        mBeanServer.registerMBean(this, createObjectName(this.proxyDataSource));
+    }
+
+    /**
+     * Unregister this control from the {@link MBeanServer}.
+     *
+     * Does nothing when this control is not registered.
+     */
+    @Override
+    public void close() {
+        MBeanServer server = this.mBeanServer;
+        ObjectName name = this.objectName;
+        if (server == null || name == null) {
+            return;
+        }
+        try {
+            server.unregisterMBean(name);
+        } catch (JMException e) {
+            // already unregistered
+        }
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) {
+        this.mBeanServer = server;
+        this.objectName = name;
+        return name;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+        if (!registrationDone) {
+            postDeregister();
+        }
+    }
+
+    @Override
+    public void preDeregister() {
+    }
+
+    @Override
+    public void postDeregister() {
+        this.mBeanServer = null;
+        this.objectName = null;
+    }
+
+    /**
+     * @return registered object name. {@code null} if not registered.
+     */
+    public ObjectName getObjectName() {
+        return this.objectName;
+    }
+
+    private List<QueryExecutionListener> getListeners() {
+        return this.proxyDataSource.getProxyConfig().getQueryListener().getListeners();
+    }
+
+    private SingleQueryCountHolder getQueryCountHolder() {
+        for (QueryExecutionListener listener : getListeners()) {
+            if (listener instanceof DataSourceQueryCountListener) {
+                QueryCountStrategy strategy = ((DataSourceQueryCountListener) listener).getQueryCountStrategy();
+                if (strategy instanceof SingleQueryCountHolder) {
+                    return (SingleQueryCountHolder) strategy;
+                }
+            }
+        }
+        return null;
+    }
+
+    private QueryCount getQueryCount() {
+        SingleQueryCountHolder holder = getQueryCountHolder();
+        QueryCount queryCount = holder != null ? holder.getQueryCountMap().get(getDataSourceName()) : null;
+        return queryCount != null ? queryCount : new QueryCount();
+    }
+
+    private List<SlowQueryListener> getSlowQueryListeners() {
+        List<SlowQueryListener> result = new ArrayList<SlowQueryListener>();
+        for (QueryExecutionListener listener : getListeners()) {
+            if (listener instanceof SlowQueryListener) {
+                result.add((SlowQueryListener) listener);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getDataSourceName() {
+        return this.proxyDataSource.getDataSourceName();
+    }
+
+    @Override
+    public long getSelectCount() {
+        return getQueryCount().getSelect();
+    }
+
+    @Override
+    public long getInsertCount() {
+        return getQueryCount().getInsert();
+    }
+
+    @Override
+    public long getUpdateCount() {
+        return getQueryCount().getUpdate();
+    }
+
+    @Override
+    public long getDeleteCount() {
+        return getQueryCount().getDelete();
+    }
+
+    @Override
+    public long getOtherCount() {
+        return getQueryCount().getOther();
+    }
+
+    @Override
+    public long getStatementCount() {
+        return getQueryCount().getStatement();
+    }
+
+    @Override
+    public long getPreparedCount() {
+        return getQueryCount().getPrepared();
+    }
+
+    @Override
+    public long getCallableCount() {
+        return getQueryCount().getCallable();
+    }
+
+    @Override
+    public long getTotalCount() {
+        return getQueryCount().getTotal();
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return getQueryCount().getSuccess();
+    }
+
+    @Override
+    public long getFailureCount() {
+        return getQueryCount().getFailure();
+    }
+
+    @Override
+    public long getTotalTime() {
+        return getQueryCount().getTime();
+    }
+
+    @Override
+    public String[] getOpenConnectionIds() {
+        Set<String> openIds = this.proxyDataSource.getConnectionIdManager().getOpenConnectionIds();
+        return openIds.toArray(new String[0]);
+    }
+
+    @Override
+    public int getOpenConnectionCount() {
+        return this.proxyDataSource.getConnectionIdManager().getOpenConnectionIds().size();
+    }
+
+    @Override
+    public int getInFlightQueryCount() {
+        return this.inFlightQueryCountListener.getInFlightQueryCount();
+    }
+
+    @Override
+    public long getSlowQueryThreshold() {
+        List<SlowQueryListener> listeners = getSlowQueryListeners();
+        return listeners.isEmpty() ? -1 : listeners.get(0).getThreshold();
+    }
+
+    @Override
+    public String getSlowQueryThresholdTimeUnit() {
+        List<SlowQueryListener> listeners = getSlowQueryListeners();
+        if (listeners.isEmpty() || listeners.get(0).getThresholdTimeUnit() == null) {
+            return null;
+        }
+        return listeners.get(0).getThresholdTimeUnit().name();
+    }
+
+    @Override
+    public void changeSlowQueryThreshold(long threshold, String timeUnit) {
+        TimeUnit unit = TimeUnit.valueOf(timeUnit.toUpperCase());
+        for (SlowQueryListener listener : getSlowQueryListeners()) {
+            listener.setThresholdTimeUnit(unit);
+            listener.setThreshold(threshold);
+        }
+    }
+
+    @Override
+    public boolean isLoggingEnabled() {
+        for (QueryExecutionListener listener : getListeners()) {
+            if (listener instanceof AbstractQueryLoggingListener && ((AbstractQueryLoggingListener) listener).isEnabled()) {
+                return true;
+            }
+            if (listener instanceof AbstractSlowQueryLoggingListener && ((AbstractSlowQueryLoggingListener) listener).isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setLoggingEnabled(boolean enabled) {
+        for (QueryExecutionListener listener : getListeners()) {
+            if (listener instanceof AbstractQueryLoggingListener) {
+                ((AbstractQueryLoggingListener) listener).setEnabled(enabled);
+            } else if (listener instanceof AbstractSlowQueryLoggingListener) {
+                ((AbstractSlowQueryLoggingListener) listener).setEnabled(enabled);
+            }
+        }
+    }
+
+    @Override
+    public void enableLogging() {
+        setLoggingEnabled(true);
+    }
+
+    @Override
+    public void disableLogging() {
+        setLoggingEnabled(false);
+    }
+
+    @Override
+    public void resetQueryCount() {
+        SingleQueryCountHolder holder = getQueryCountHolder();
+        if (holder != null) {
+            holder.getQueryCountMap().remove(getDataSourceName());
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package net.ttddyy.dsproxy.support.jmx;
+
+/**
+ * JMX management interface for {@link net.ttddyy.dsproxy.support.ProxyDataSource}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see ProxyDataSourceControl
+ * @since 1.8
+ */
+public interface ProxyDataSourceControlMBean {
+
+    String getDataSourceName();
+
+    long getSelectCount();
+
+    long getInsertCount();
+
+    long getUpdateCount();
+
+    long getDeleteCount();
+
+    long getOtherCount();
+
+    long getStatementCount();
+
+    long getPreparedCount();
+
+    long getCallableCount();
+
+    long getTotalCount();
+
+    long getSuccessCount();
+
+    long getFailureCount();
+
+    long getTotalTime();
+
+    String[] getOpenConnectionIds();
+
+    int getOpenConnectionCount();
+
+    int getInFlightQueryCount();
+
+    /**
+     * @return threshold of the first slow query listener. {@code -1} if no slow query listener is registered.
+     */
+    long getSlowQueryThreshold();
+
+    /**
+     * @return threshold time unit of the first slow query listener. {@code null} if no slow query listener is registered.
+     */
+    String getSlowQueryThresholdTimeUnit();
+
+    /**
+     * Change threshold of all slow query listeners.
+     *
+     * @param threshold threshold
+     * @param timeUnit  name of {@link java.util.concurrent.TimeUnit}
+     */
+    void changeSlowQueryThreshold(long threshold, String timeUnit);
+
+    boolean isLoggingEnabled();
+
+    void setLoggingEnabled(boolean enabled);
+
+    void enableLogging();
+
+    void disableLogging();
+
+    void resetQueryCount();
+
+}
@@ -0,0 +1,267 @@
+package net.ttddyy.dsproxy.support.micrometer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import net.ttddyy.dsproxy.ConnectionIdManager;
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.DataSourceProxyException;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryUtils;
+import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Record query execution and connection acquisition to Micrometer {@link MeterRegistry}.
+ *
+ * <p>Registered meters:
+ * <ul>
+ * <li>{@code dsproxy.query}: timer tagged with {@code datasource}, {@code statement}, {@code query} and
+ * {@code success}
+ * <li>{@code dsproxy.connection.acquire}: timer tagged with {@code datasource}. Recorded value is
+ * {@link ConnectionInfo#getConnectionAcquisitionTime()}
+ * <li>{@code dsproxy.connections.open}: gauge of open connections from {@link ConnectionIdManager}, tagged with
+ * {@code datasource}
+ * </ul>
+ *
+ * <p>{@link Timer} instances are created once per tag combination and cached in this listener; therefore, query
+ * executions do not build meter ids. For a batch execution with mixed query types, {@code query} tag becomes
+ * {@code other}.
+ *
+ * <p>This class needs to be registered as both {@link QueryExecutionListener} and {@link MethodExecutionListener}.
+ * Connection metrics are only recorded when it is registered as {@link MethodExecutionListener}.
+ * <pre>{@code
+ * MicrometerMetricsListener listener = new MicrometerMetricsListener(meterRegistry);
+ * builder.listener(listener).methodListener(listener);
+ * }</pre>
+ *
+ * Elapsed times reported by {@link net.ttddyy.dsproxy.proxy.Stopwatch} are converted with {@link #setTimeUnit(TimeUnit)}
+ * (milliseconds by default).
+ *
+ * <p>Histogram buckets are configured on the timers created by this listener; the given registry is not reconfigured.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+@IgnoreJRERequirement
+public class MicrometerMetricsListener implements QueryExecutionListener, MethodExecutionListener {
+
+    public static final String QUERY_METER_NAME = "dsproxy.query";
+    public static final String CONNECTION_ACQUIRE_METER_NAME = "dsproxy.connection.acquire";
+    public static final String OPEN_CONNECTIONS_METER_NAME = "dsproxy.connections.open";
+
+    private static final int NUM_OF_QUERY_TIMERS = StatementType.values().length * QueryType.values().length * 2;
+
+    private static final ToDoubleFunction<ConnectionIdManager> OPEN_CONNECTIONS = new ToDoubleFunction<ConnectionIdManager>() {
+        @Override
+        public double applyAsDouble(ConnectionIdManager value) {
+            return value.getOpenConnectionIds().size();
+        }
+    };
+
+    // "Timer.builder()" is a static interface method which cannot be called in java6 source level
+    private static final Method TIMER_BUILDER_METHOD;
+
+    static {
+        try {
+            TIMER_BUILDER_METHOD = Timer.class.getMethod("builder", String.class);
+        } catch (NoSuchMethodException e) {
+            throw new DataSourceProxyException("Failed to find Timer#builder method", e);
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final boolean publishHistogram;
+    private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    private ConcurrentMap<String, AtomicReferenceArray<Timer>> queryTimers = new ConcurrentHashMap<String, AtomicReferenceArray<Timer>>();
+    private ConcurrentMap<String, Timer> connectionTimers = new ConcurrentHashMap<String, Timer>();
+    private ConcurrentMap<String, ConnectionIdManager> connectionIdManagers = new ConcurrentHashMap<String, ConnectionIdManager>();
+
+    /**
+     * Create a listener that publishes histogram buckets for timers.
+     *
+     * @param registry meter registry
+     */
+    public MicrometerMetricsListener(MeterRegistry registry) {
+        this(registry, true);
+    }
+
+    /**
+     * @param registry         meter registry
+     * @param publishHistogram publish histogram buckets for timers
+     */
+    public MicrometerMetricsListener(MeterRegistry registry, boolean publishHistogram) {
+        this.registry = registry;
+        this.publishHistogram = publishHistogram;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        String dataSourceName = nullToEmpty(execInfo.getDataSourceName());
+        StatementType statementType = execInfo.getStatementType();
+        QueryType queryType = getQueryType(queryInfoList);
+        boolean success = execInfo.isSuccess();
+
+        getOrCreateQueryTimer(dataSourceName, statementType, queryType, success)
+                .record(execInfo.getElapsedTime(), this.timeUnit);
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (!(executionContext.getTarget() instanceof DataSource)
+                || !"getConnection".equals(executionContext.getMethod().getName())
+                || executionContext.getThrown() != null) {
+            return;
+        }
+
+        ConnectionInfo connectionInfo = executionContext.getConnectionInfo();
+        String dataSourceName = nullToEmpty(connectionInfo.getDataSourceName());
+
+        getOrCreateConnectionTimer(dataSourceName).record(connectionInfo.getConnectionAcquisitionTime(), this.timeUnit);
+
+        ProxyConfig proxyConfig = executionContext.getProxyConfig();
+        if (!this.connectionIdManagers.containsKey(dataSourceName)) {
+            addConnectionIdManager(dataSourceName, proxyConfig.getConnectionIdManager());
+        }
+    }
+
+    /**
+     * Register a gauge for open connections of the given {@link ProxyDataSource}.
+     *
+     * Gauge is also registered when a connection is retrieved from the datasource.
+     *
+     * @param proxyDataSource datasource
+     */
+    public void addDataSource(ProxyDataSource proxyDataSource) {
+        addConnectionIdManager(nullToEmpty(proxyDataSource.getDataSourceName()), proxyDataSource.getConnectionIdManager());
+    }
+
+    /**
+     * Register a gauge for open connections.
+     *
+     * @param dataSourceName      datasource name
+     * @param connectionIdManager connection id manager of the datasource
+     */
+    public void addConnectionIdManager(String dataSourceName, ConnectionIdManager connectionIdManager) {
+        if (this.connectionIdManagers.putIfAbsent(dataSourceName, connectionIdManager) == null) {
+            this.registry.gauge(OPEN_CONNECTIONS_METER_NAME, Tags.of("datasource", dataSourceName),
+                    connectionIdManager, OPEN_CONNECTIONS);
+        }
+    }
+
+    protected Timer getOrCreateQueryTimer(String dataSourceName, StatementType statementType, QueryType queryType, boolean success) {
+        AtomicReferenceArray<Timer> timers = this.queryTimers.get(dataSourceName);
+        if (timers == null) {
+            this.queryTimers.putIfAbsent(dataSourceName, new AtomicReferenceArray<Timer>(NUM_OF_QUERY_TIMERS));
+            timers = this.queryTimers.get(dataSourceName);
+        }
+
+        int index = (statementType.ordinal() * QueryType.values().length + queryType.ordinal()) * 2 + (success ? 0 : 1);
+        Timer timer = timers.get(index);
+        if (timer == null) {
+            // registry returns the same timer for the same id
+            timer = registerTimer(QUERY_METER_NAME, Tags.of(
+                    "datasource", dataSourceName,
+                    "statement", statementType.name().toLowerCase(Locale.ENGLISH),
+                    "query", queryType.name().toLowerCase(Locale.ENGLISH),
+                    "success", String.valueOf(success)));
+            timers.set(index, timer);
+        }
+        return timer;
+    }
+
+    protected Timer getOrCreateConnectionTimer(String dataSourceName) {
+        Timer timer = this.connectionTimers.get(dataSourceName);
+        if (timer == null) {
+            timer = registerTimer(CONNECTION_ACQUIRE_METER_NAME, Tags.of("datasource", dataSourceName));
+            this.connectionTimers.putIfAbsent(dataSourceName, timer);
+        }
+        return timer;
+    }
+
+    /**
+     * Register a timer, or retrieve the existing one with the same name and tags.
+     *
+     * @param name meter name
+     * @param tags meter tags
+     * @return timer
+     */
+    protected Timer registerTimer(String name, Tags tags) {
+        if (!this.publishHistogram) {
+            return this.registry.timer(name, tags);
+        }
+        Timer.Builder builder;
+        try {
+            builder = (Timer.Builder) TIMER_BUILDER_METHOD.invoke(null, name);
+        } catch (Exception e) {
+            throw new DataSourceProxyException("Failed to create timer builder for " + name, e);
+        }
+        return builder.tags(tags).publishPercentileHistogram().register(this.registry);
+    }
+
+    private QueryType getQueryType(List<QueryInfo> queryInfoList) {
+        QueryType result = null;
+        for (QueryInfo queryInfo : queryInfoList) {
+            QueryType queryType = QueryUtils.getQueryType(queryInfo.getQuery());
+            if (result == null) {
+                result = queryType;
+            } else if (result != queryType) {
+                return QueryType.OTHER;
+            }
+        }
+        return result == null ? QueryType.OTHER : result;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    public boolean isPublishHistogram() {
+        return publishHistogram;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * Set the time unit of elapsed time reported by {@link net.ttddyy.dsproxy.proxy.Stopwatch}.
+     *
+     * @param timeUnit time unit. Use {@link TimeUnit#NANOSECONDS} with
+     *                 {@link net.ttddyy.dsproxy.proxy.NanoTimeStopwatchFactory}.
+     */
+    public void setTimeUnit(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+}
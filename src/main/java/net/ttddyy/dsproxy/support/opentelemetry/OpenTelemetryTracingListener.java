@@ -0,0 +1,283 @@
+package net.ttddyy.dsproxy.support.opentelemetry;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create OpenTelemetry spans for query executions.
+ *
+ * <p>A span is started on {@link #beforeQuery(ExecutionInfo, List)} as a child of the current context, and ended on
+ * {@link #afterQuery(ExecutionInfo, List)}. Attributes:
+ * <ul>
+ * <li>{@code db.system}: see {@link #setDbSystem(String)}
+ * <li>{@code db.statement}: executed queries separated by new line. See {@link #setCaptureStatement(boolean)}
+ * <li>{@code dsproxy.datasource}, {@code dsproxy.connection_id}, {@code dsproxy.statement_type}
+ * <li>{@code dsproxy.batch_size}: for batch executions
+ * <li>{@code dsproxy.rows_affected}: when result of the execution is update count(s)
+ * </ul>
+ * Attributes are populated only when the span is recording(sampled). When the query fails, the exception is recorded
+ * and the status is set to error.
+ *
+ * <p>When this class is also registered as {@link MethodExecutionListener}, it can create spans for connection
+ * acquisition({@link #setConnectionSpanEnabled(boolean)}) and for {@link Connection#commit()} and
+ * {@link Connection#rollback()}({@link #setTransactionSpanEnabled(boolean)}).
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+@IgnoreJRERequirement
+public class OpenTelemetryTracingListener implements QueryExecutionListener, MethodExecutionListener {
+
+    private static final String SPAN_KEY = OpenTelemetryTracingListener.class.getName() + ".span";
+
+    private final Tracer tracer;
+    private String dbSystem = "other_sql";
+    private boolean captureStatement = true;
+    private boolean connectionSpanEnabled;
+    private boolean transactionSpanEnabled;
+    private TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+
+    /**
+     * @param tracer tracer to create spans. e.g. {@code openTelemetry.getTracer("datasource-proxy")}
+     */
+    public OpenTelemetryTracingListener(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Span span = this.tracer.spanBuilder(getSpanName(execInfo, queryInfoList))
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+
+        if (span.isRecording()) {
+            span.setAttribute("db.system", this.dbSystem);
+            if (this.captureStatement) {
+                span.setAttribute("db.statement", getStatement(queryInfoList));
+            }
+            span.setAttribute("dsproxy.datasource", execInfo.getDataSourceName());
+            span.setAttribute("dsproxy.connection_id", execInfo.getConnectionId());
+            if (execInfo.getStatementType() != null) {
+                span.setAttribute("dsproxy.statement_type", execInfo.getStatementType().name());
+            }
+            if (execInfo.isBatch()) {
+                span.setAttribute("dsproxy.batch_size", execInfo.getBatchSize());
+            }
+        }
+
+        execInfo.addCustomValue(SPAN_KEY, span);
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Span span = execInfo.getCustomValue(SPAN_KEY, Span.class);
+        if (span == null) {
+            return;
+        }
+
+        if (span.isRecording()) {
+            Throwable throwable = execInfo.getThrowable();
+            if (throwable != null) {
+                span.recordException(throwable);
+                span.setStatus(StatusCode.ERROR);
+            } else {
+                long rowsAffected = getRowsAffected(execInfo.getResult());
+                if (rowsAffected >= 0) {
+                    span.setAttribute("dsproxy.rows_affected", rowsAffected);
+                }
+            }
+        }
+        span.end();
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+        if (!this.transactionSpanEnabled || !isTransactionMethod(executionContext)) {
+            return;
+        }
+
+        Span span = this.tracer.spanBuilder(executionContext.getMethod().getName())
+                .setSpanKind(SpanKind.CLIENT)
+                .startSpan();
+        if (span.isRecording()) {
+            populateConnectionAttributes(span, executionContext.getConnectionInfo());
+        }
+        executionContext.addCustomValue(SPAN_KEY, span);
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (this.transactionSpanEnabled && isTransactionMethod(executionContext)) {
+            Span span = executionContext.getCustomValue(SPAN_KEY, Span.class);
+            if (span != null) {
+                endSpan(span, executionContext.getThrown());
+            }
+        } else if (this.connectionSpanEnabled && isGetConnectionMethod(executionContext)) {
+            // actual connection acquisition has happened before the method listener is called.
+            // create the span retrospectively from the measured time.
+            ConnectionInfo connectionInfo = executionContext.getConnectionInfo();
+            long durationInNanos = this.timeUnit.toNanos(connectionInfo.getConnectionAcquisitionTime() + executionContext.getElapsedTime());
+            long endInNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+
+            Span span = this.tracer.spanBuilder("getConnection")
+                    .setSpanKind(SpanKind.CLIENT)
+                    .setStartTimestamp(endInNanos - durationInNanos, TimeUnit.NANOSECONDS)
+                    .startSpan();
+            if (span.isRecording()) {
+                populateConnectionAttributes(span, connectionInfo);
+            }
+            if (executionContext.getThrown() != null) {
+                span.recordException(executionContext.getThrown());
+                span.setStatus(StatusCode.ERROR);
+            }
+            span.end(endInNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns span name for query execution.
+     *
+     * @param execInfo      execution info
+     * @param queryInfoList queries
+     * @return span name
+     */
+    protected String getSpanName(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        return execInfo.isBatch() ? "batch query" : "query";
+    }
+
+    private void populateConnectionAttributes(Span span, ConnectionInfo connectionInfo) {
+        span.setAttribute("db.system", this.dbSystem);
+        if (connectionInfo != null) {
+            span.setAttribute("dsproxy.datasource", connectionInfo.getDataSourceName());
+            span.setAttribute("dsproxy.connection_id", connectionInfo.getConnectionId());
+        }
+    }
+
+    private void endSpan(Span span, Throwable thrown) {
+        if (thrown != null) {
+            span.recordException(thrown);
+            span.setStatus(StatusCode.ERROR);
+        }
+        span.end();
+    }
+
+    private boolean isTransactionMethod(MethodExecutionContext executionContext) {
+        Method method = executionContext.getMethod();
+        String methodName = method.getName();
+        return Connection.class.isAssignableFrom(method.getDeclaringClass())
+                && ("commit".equals(methodName) || "rollback".equals(methodName));
+    }
+
+    private boolean isGetConnectionMethod(MethodExecutionContext executionContext) {
+        return executionContext.getTarget() instanceof DataSource
+                && "getConnection".equals(executionContext.getMethod().getName());
+    }
+
+    private String getStatement(List<QueryInfo> queryInfoList) {
+        if (queryInfoList.size() == 1) {
+            return queryInfoList.get(0).getQuery();
+        }
+        StringBuilder sb = new StringBuilder();
+        for (QueryInfo queryInfo : queryInfoList) {
+            if (sb.length() > 0) {
+                sb.append("\n");
+            }
+            sb.append(queryInfo.getQuery());
+        }
+        return sb.toString();
+    }
+
+    private long getRowsAffected(Object result) {
+        if (result instanceof Integer || result instanceof Long) {
+            return ((Number) result).longValue();
+        } else if (result instanceof int[]) {
+            long sum = 0;
+            for (int count : (int[]) result) {
+                if (count > 0) {
+                    sum += count;
+                }
+            }
+            return sum;
+        }
+        return -1;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public String getDbSystem() {
+        return dbSystem;
+    }
+
+    /**
+     * @param dbSystem value for {@code db.system} attribute. e.g. {@code "postgresql"}, {@code "mysql"}
+     */
+    public void setDbSystem(String dbSystem) {
+        this.dbSystem = dbSystem;
+    }
+
+    public boolean isCaptureStatement() {
+        return captureStatement;
+    }
+
+    /**
+     * @param captureStatement {@code false} not to populate {@code db.statement} attribute. Default is {@code true}.
+     */
+    public void setCaptureStatement(boolean captureStatement) {
+        this.captureStatement = captureStatement;
+    }
+
+    public boolean isConnectionSpanEnabled() {
+        return connectionSpanEnabled;
+    }
+
+    /**
+     * @param connectionSpanEnabled create spans for {@link DataSource#getConnection()}. Default is {@code false}.
+     */
+    public void setConnectionSpanEnabled(boolean connectionSpanEnabled) {
+        this.connectionSpanEnabled = connectionSpanEnabled;
+    }
+
+    public boolean isTransactionSpanEnabled() {
+        return transactionSpanEnabled;
+    }
+
+    /**
+     * @param transactionSpanEnabled create spans for {@link Connection#commit()} and {@link Connection#rollback()}.
+     *                               Default is {@code false}.
+     */
+    public void setTransactionSpanEnabled(boolean transactionSpanEnabled) {
+        this.transactionSpanEnabled = transactionSpanEnabled;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    /**
+     * Set the time unit of elapsed time reported by {@link net.ttddyy.dsproxy.proxy.Stopwatch}. It is used to compute
+     * the start time of connection spans.
+     *
+     * @param timeUnit time unit. Default is milliseconds.
+     */
+    public void setTimeUnit(TimeUnit timeUnit) {
+        this.timeUnit = timeUnit;
+    }
+
+}
@@ -0,0 +1,54 @@
+package net.ttddyy.dsproxy.support.prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * {@link HttpHandler} to expose query metrics in Prometheus text exposition format without servlet container.
+ *
+ * <pre>{@code
+ * HttpServer server = HttpServer.create(new InetSocketAddress(9090), 0);
+ * server.createContext("/metrics", new PrometheusMetricsHttpHandler(renderer));
+ * server.start();
+ * }</pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see PrometheusMetricsRenderer
+ * @since 1.8
+ */
+@IgnoreJRERequirement
+public class PrometheusMetricsHttpHandler implements HttpHandler {
+
+    private PrometheusMetricsRenderer renderer;
+
+    public PrometheusMetricsHttpHandler(PrometheusMetricsRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);  // method not allowed, no body
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", PrometheusMetricsRenderer.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, 0);  // chunked
+            Writer writer = new OutputStreamWriter(exchange.getResponseBody(), "UTF-8");
+            this.renderer.render(writer);
+            writer.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    public PrometheusMetricsRenderer getRenderer() {
+        return renderer;
+    }
+
+}
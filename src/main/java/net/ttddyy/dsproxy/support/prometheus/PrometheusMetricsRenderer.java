@@ -0,0 +1,280 @@
+package net.ttddyy.dsproxy.support.prometheus;
+
+import net.ttddyy.dsproxy.ConnectionIdManager;
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.listener.BucketHistogram;
+import net.ttddyy.dsproxy.listener.QueryLatencyHistogramListener;
+import net.ttddyy.dsproxy.listener.SingleQueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render query metrics in Prometheus text exposition format.
+ *
+ * <p>Following metrics are written when corresponding source is set:
+ * <ul>
+ * <li>{@link SingleQueryCountHolder}: {@link QueryCount} values as counters
+ * <li>{@link ConnectionIdManager}: num of open connections as gauge
+ * <li>{@link QueryLatencyHistogramListener}: query execution time as histogram
+ * </ul>
+ *
+ * <p>Time values are written in seconds following Prometheus conventions. They are converted from
+ * {@link #setElapsedTimeUnit(TimeUnit) elapsed time unit} which needs to match the unit of
+ * {@link net.ttddyy.dsproxy.proxy.Stopwatch} in use (milliseconds by default).
+ *
+ * <p>Output is built in a buffer which is reused across scrapes, and written to the output from the buffer without
+ * copying it to a string. Renderings are serialized by a lock.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see PrometheusMetricsServlet
+ * @see PrometheusMetricsHttpHandler
+ * @since 1.8
+ */
+public class PrometheusMetricsRenderer {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+    private static final int WRITE_CHUNK_SIZE = 1024;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private SingleQueryCountHolder queryCountHolder;
+    private QueryLatencyHistogramListener latencyHistogramListener;
+    private Map<String, ConnectionIdManager> connectionIdManagers = new ConcurrentHashMap<String, ConnectionIdManager>();
+    private TimeUnit elapsedTimeUnit = TimeUnit.MILLISECONDS;
+
+    // reused for every rendering
+    private final StringBuilder buffer = new StringBuilder(INITIAL_BUFFER_SIZE);
+    private final char[] chunk = new char[WRITE_CHUNK_SIZE];
+
+    /**
+     * Write metrics to the writer.
+     *
+     * @param writer output
+     * @throws IOException when failed to write
+     */
+    public void render(Writer writer) throws IOException {
+        synchronized (this.buffer) {
+            StringBuilder sb = this.buffer;
+            sb.setLength(0);
+
+            if (this.queryCountHolder != null) {
+                appendQueryCounts(sb, this.queryCountHolder.getQueryCountMap());
+            }
+            if (!this.connectionIdManagers.isEmpty()) {
+                appendOpenConnections(sb);
+            }
+            if (this.latencyHistogramListener != null) {
+                appendHistograms(sb, this.latencyHistogramListener.getHistograms());
+            }
+
+            // write in chunks; "Writer#append(CharSequence)" copies the buffer to a string
+            int length = sb.length();
+            for (int start = 0; start < length; start += WRITE_CHUNK_SIZE) {
+                int end = Math.min(start + WRITE_CHUNK_SIZE, length);
+                sb.getChars(start, end, this.chunk, 0);
+                writer.write(this.chunk, 0, end - start);
+            }
+        }
+        writer.flush();
+    }
+
+    private void appendQueryCounts(StringBuilder sb, Map<String, QueryCount> queryCounts) {
+        appendHeader(sb, "dsproxy_query_total", "Number of query executions.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            appendSample(sb, "dsproxy_query_total", entry.getKey(), null, null, entry.getValue().getTotal());
+        }
+        appendHeader(sb, "dsproxy_query_success_total", "Number of successful query executions.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            appendSample(sb, "dsproxy_query_success_total", entry.getKey(), null, null, entry.getValue().getSuccess());
+        }
+        appendHeader(sb, "dsproxy_query_failure_total", "Number of failed query executions.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            appendSample(sb, "dsproxy_query_failure_total", entry.getKey(), null, null, entry.getValue().getFailure());
+        }
+        appendHeader(sb, "dsproxy_query_time_seconds_total", "Accumulated query execution time in seconds.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            appendName(sb, "dsproxy_query_time_seconds_total", entry.getKey());
+            appendSecondsValue(sb, entry.getValue().getTime());
+        }
+
+        String name = "dsproxy_query_type_total";
+        appendHeader(sb, name, "Number of queries by query type.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            String dataSourceName = entry.getKey();
+            QueryCount count = entry.getValue();
+            appendSample(sb, name, dataSourceName, "type", "select", count.getSelect());
+            appendSample(sb, name, dataSourceName, "type", "insert", count.getInsert());
+            appendSample(sb, name, dataSourceName, "type", "update", count.getUpdate());
+            appendSample(sb, name, dataSourceName, "type", "delete", count.getDelete());
+            appendSample(sb, name, dataSourceName, "type", "other", count.getOther());
+        }
+
+        name = "dsproxy_statement_type_total";
+        appendHeader(sb, name, "Number of query executions by statement type.", "counter");
+        for (Map.Entry<String, QueryCount> entry : queryCounts.entrySet()) {
+            String dataSourceName = entry.getKey();
+            QueryCount count = entry.getValue();
+            appendSample(sb, name, dataSourceName, "type", "statement", count.getStatement());
+            appendSample(sb, name, dataSourceName, "type", "prepared", count.getPrepared());
+            appendSample(sb, name, dataSourceName, "type", "callable", count.getCallable());
+        }
+    }
+
+    private void appendOpenConnections(StringBuilder sb) {
+        appendHeader(sb, "dsproxy_open_connections", "Number of open connections.", "gauge");
+        for (Map.Entry<String, ConnectionIdManager> entry : this.connectionIdManagers.entrySet()) {
+            int openConnections = entry.getValue().getOpenConnectionIds().size();
+            appendSample(sb, "dsproxy_open_connections", entry.getKey(), null, null, openConnections);
+        }
+    }
+
+    private void appendHistograms(StringBuilder sb, Map<String, BucketHistogram> histograms) {
+        appendHeader(sb, "dsproxy_query_duration_seconds", "Query execution time in seconds.", "histogram");
+        for (Map.Entry<String, BucketHistogram> entry : histograms.entrySet()) {
+            String dataSourceName = entry.getKey();
+            BucketHistogram histogram = entry.getValue();
+
+            long cumulative = 0;
+            int numOfBuckets = histogram.getNumOfBuckets();
+            for (int i = 0; i < numOfBuckets; i++) {
+                cumulative += histogram.getBucketCount(i);
+                appendName(sb, "dsproxy_query_duration_seconds_bucket", dataSourceName);
+                sb.append(",le=\"");
+                appendSeconds(sb, histogram.getUpperBound(i));
+                sb.append('"');
+                appendValue(sb, cumulative);
+            }
+            cumulative += histogram.getBucketCount(numOfBuckets);
+            appendName(sb, "dsproxy_query_duration_seconds_bucket", dataSourceName);
+            sb.append(",le=\"+Inf\"");
+            appendValue(sb, cumulative);
+
+            appendName(sb, "dsproxy_query_duration_seconds_sum", dataSourceName);
+            appendSecondsValue(sb, histogram.getSum());
+            appendSample(sb, "dsproxy_query_duration_seconds_count", dataSourceName, null, null, histogram.getCount());
+        }
+    }
+
+    private void appendHeader(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void appendSample(StringBuilder sb, String name, String dataSourceName, String labelName, String labelValue, long value) {
+        appendName(sb, name, dataSourceName);
+        if (labelName != null) {
+            sb.append(',').append(labelName).append("=\"");
+            appendEscaped(sb, labelValue);
+            sb.append('"');
+        }
+        appendValue(sb, value);
+    }
+
+    private void appendName(StringBuilder sb, String name, String dataSourceName) {
+        sb.append(name).append("{datasource=\"");
+        appendEscaped(sb, dataSourceName);
+        sb.append('"');
+    }
+
+    private void appendValue(StringBuilder sb, long value) {
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private void appendSecondsValue(StringBuilder sb, long elapsedTime) {
+        sb.append("} ");
+        appendSeconds(sb, elapsedTime);
+        sb.append('\n');
+    }
+
+    // write seconds in decimal notation. "append(double)" may use scientific notation (e.g. "1.0E-4").
+    private void appendSeconds(StringBuilder sb, long elapsedTime) {
+        long nanos = this.elapsedTimeUnit.toNanos(elapsedTime);
+        if (nanos < 0) {
+            sb.append('-');
+            nanos = -nanos;
+        }
+        sb.append(nanos / NANOS_PER_SECOND).append('.');
+        long fraction = nanos % NANOS_PER_SECOND;
+        if (fraction == 0) {
+            sb.append('0');
+            return;
+        }
+        for (long divisor = NANOS_PER_SECOND / 10; fraction > 0; divisor /= 10) {
+            sb.append((char) ('0' + fraction / divisor));
+            fraction %= divisor;
+        }
+    }
+
+    private void appendEscaped(StringBuilder sb, String labelValue) {
+        if (labelValue == null) {
+            return;
+        }
+        for (int i = 0; i < labelValue.length(); i++) {
+            char c = labelValue.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '"') {
+                sb.append("\\\"");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Register connection id manager of the {@link ProxyDataSource} to expose number of open connections.
+     *
+     * @param proxyDataSource a proxy datasource
+     */
+    public void addDataSource(ProxyDataSource proxyDataSource) {
+        addConnectionIdManager(proxyDataSource.getDataSourceName(), proxyDataSource.getConnectionIdManager());
+    }
+
+    /**
+     * @param dataSourceName      datasource name
+     * @param connectionIdManager connection id manager for the datasource
+     */
+    public void addConnectionIdManager(String dataSourceName, ConnectionIdManager connectionIdManager) {
+        this.connectionIdManagers.put(dataSourceName, connectionIdManager);
+    }
+
+    public Map<String, ConnectionIdManager> getConnectionIdManagers() {
+        return connectionIdManagers;
+    }
+
+    public SingleQueryCountHolder getQueryCountHolder() {
+        return queryCountHolder;
+    }
+
+    public void setQueryCountHolder(SingleQueryCountHolder queryCountHolder) {
+        this.queryCountHolder = queryCountHolder;
+    }
+
+    public QueryLatencyHistogramListener getLatencyHistogramListener() {
+        return latencyHistogramListener;
+    }
+
+    public void setLatencyHistogramListener(QueryLatencyHistogramListener latencyHistogramListener) {
+        this.latencyHistogramListener = latencyHistogramListener;
+    }
+
+    public TimeUnit getElapsedTimeUnit() {
+        return elapsedTimeUnit;
+    }
+
+    /**
+     * @param elapsedTimeUnit unit of query execution time to convert to seconds (default is milliseconds)
+     */
+    public void setElapsedTimeUnit(TimeUnit elapsedTimeUnit) {
+        this.elapsedTimeUnit = elapsedTimeUnit;
+    }
+
+}
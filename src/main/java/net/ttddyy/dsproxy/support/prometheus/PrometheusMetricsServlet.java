@@ -0,0 +1,73 @@
+package net.ttddyy.dsproxy.support.prometheus;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Servlet to expose query metrics in Prometheus text exposition format.
+ *
+ * <p>{@link PrometheusMetricsRenderer} can be given to the constructor when the servlet is registered programmatically.
+ * Otherwise, it is retrieved from servlet context attribute named {@link #RENDERER_ATTRIBUTE}.
+ *
+ * <pre>
+ * {@code
+ *   <servlet>
+ *     <servlet-name>metrics</servlet-name>
+ *     <servlet-class>net.ttddyy.dsproxy.support.prometheus.PrometheusMetricsServlet</servlet-class>
+ *   </servlet>
+ *   <servlet-mapping>
+ *     <servlet-name>metrics</servlet-name>
+ *     <url-pattern>/metrics</url-pattern>
+ *   </servlet-mapping>
+ * }
+ * </pre>
+ *
+ * @author Tadaya Tsuyukubo
+ * @see PrometheusMetricsRenderer
+ * @since 1.8
+ */
+public class PrometheusMetricsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String RENDERER_ATTRIBUTE = PrometheusMetricsRenderer.class.getName();
+
+    private PrometheusMetricsRenderer renderer;
+
+    public PrometheusMetricsServlet() {
+    }
+
+    public PrometheusMetricsServlet(PrometheusMetricsRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void init() throws ServletException {
+        if (this.renderer == null) {
+            Object attribute = getServletContext().getAttribute(RENDERER_ATTRIBUTE);
+            if (!(attribute instanceof PrometheusMetricsRenderer)) {
+                throw new ServletException("PrometheusMetricsRenderer is not found in servlet context attribute \"" + RENDERER_ATTRIBUTE + "\"");
+            }
+            this.renderer = (PrometheusMetricsRenderer) attribute;
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(PrometheusMetricsRenderer.CONTENT_TYPE);
+        this.renderer.render(response.getWriter());
+    }
+
+    public PrometheusMetricsRenderer getRenderer() {
+        return renderer;
+    }
+
+    public void setRenderer(PrometheusMetricsRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+}
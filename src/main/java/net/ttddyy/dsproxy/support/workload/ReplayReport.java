@@ -0,0 +1,106 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link WorkloadReplayer#replay(java.io.InputStream)}.
+ *
+ * <p>Latency is measured per recorded query event; a batch is counted as one query.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class ReplayReport {
+
+    private final int connectionCount;
+    private final long queryCount;
+    private final long failureCount;
+    private final long transactionCount;
+    private final long elapsedTimeInNanos;
+    private final long[] sortedLatenciesInNanos;
+
+    public ReplayReport(int connectionCount, long queryCount, long failureCount, long transactionCount,
+                        long elapsedTimeInNanos, long[] latenciesInNanos) {
+        this.connectionCount = connectionCount;
+        this.queryCount = queryCount;
+        this.failureCount = failureCount;
+        this.transactionCount = transactionCount;
+        this.elapsedTimeInNanos = elapsedTimeInNanos;
+        this.sortedLatenciesInNanos = latenciesInNanos.clone();
+        Arrays.sort(this.sortedLatenciesInNanos);
+    }
+
+    /**
+     * @return num of replayed connections
+     */
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return num of executed query events including failures
+     */
+    public long getQueryCount() {
+        return queryCount;
+    }
+
+    /**
+     * @return num of query events and transaction operations that threw an exception
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return num of executed commit and rollback
+     */
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    public long getElapsedTime(TimeUnit unit) {
+        return unit.convert(this.elapsedTimeInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return queries per second
+     */
+    public double getThroughput() {
+        if (this.elapsedTimeInNanos == 0) {
+            return 0;
+        }
+        return this.queryCount * (double) TimeUnit.SECONDS.toNanos(1) / this.elapsedTimeInNanos;
+    }
+
+    /**
+     * Get query latency at the given percentile (nearest-rank).
+     *
+     * @param percentile percentile between 0 and 100. e.g. {@code 99} for p99
+     * @param unit       time unit of returned value
+     * @return latency. {@code 0} when no query has been executed.
+     */
+    public long getLatencyPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100: " + percentile);
+        }
+        int size = this.sortedLatenciesInNanos.length;
+        if (size == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * size);
+        long latency = this.sortedLatenciesInNanos[Math.max(rank, 1) - 1];
+        return unit.convert(latency, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("connections=%d, queries=%d, failures=%d, transactions=%d, elapsed=%dms, " +
+                        "throughput=%.1f/s, latency(us) p50=%d p90=%d p99=%d max=%d",
+                this.connectionCount, this.queryCount, this.failureCount, this.transactionCount,
+                getElapsedTime(TimeUnit.MILLISECONDS), getThroughput(),
+                getLatencyPercentile(50, TimeUnit.MICROSECONDS), getLatencyPercentile(90, TimeUnit.MICROSECONDS),
+                getLatencyPercentile(99, TimeUnit.MICROSECONDS), getLatencyPercentile(100, TimeUnit.MICROSECONDS));
+    }
+
+}
@@ -0,0 +1,118 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.StatementType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An event in a recorded workload.
+ *
+ * <p>For {@link Type#QUERY}, {@link #getQueries()} and {@link #getParameterSets()} follow the same structure as
+ * {@link net.ttddyy.dsproxy.QueryInfo}: a batch of {@link java.sql.Statement} has multiple queries without
+ * parameters, and a batch of {@link java.sql.PreparedStatement} has one query with multiple parameter sets.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WorkloadRecordingListener
+ * @see WorkloadReplayer
+ * @since 1.8
+ */
+public class WorkloadEvent {
+
+    public enum Type {
+        QUERY, COMMIT, ROLLBACK, SET_AUTO_COMMIT, CLOSE
+    }
+
+    private Type type;
+    private String connectionKey;
+    private long timestampInMicros;
+
+    // for QUERY
+    private StatementType statementType;
+    private boolean batch;
+    private List<String> queries = new ArrayList<String>();
+    private List<List<WorkloadParameter>> parameterSets = new ArrayList<List<WorkloadParameter>>();
+
+    // for SET_AUTO_COMMIT
+    private boolean autoCommit;
+
+    public WorkloadEvent() {
+    }
+
+    public WorkloadEvent(Type type, String connectionKey, long timestampInMicros) {
+        this.type = type;
+        this.connectionKey = connectionKey;
+        this.timestampInMicros = timestampInMicros;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    /**
+     * @return datasource name and connection id
+     */
+    public String getConnectionKey() {
+        return connectionKey;
+    }
+
+    public void setConnectionKey(String connectionKey) {
+        this.connectionKey = connectionKey;
+    }
+
+    /**
+     * @return time since the recording has started in microseconds
+     */
+    public long getTimestampInMicros() {
+        return timestampInMicros;
+    }
+
+    public void setTimestampInMicros(long timestampInMicros) {
+        this.timestampInMicros = timestampInMicros;
+    }
+
+    public StatementType getStatementType() {
+        return statementType;
+    }
+
+    public void setStatementType(StatementType statementType) {
+        this.statementType = statementType;
+    }
+
+    public boolean isBatch() {
+        return batch;
+    }
+
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    public void setQueries(List<String> queries) {
+        this.queries = queries;
+    }
+
+    public List<List<WorkloadParameter>> getParameterSets() {
+        return parameterSets;
+    }
+
+    public void setParameterSets(List<List<WorkloadParameter>> parameterSets) {
+        this.parameterSets = parameterSets;
+    }
+
+    public boolean isAutoCommit() {
+        return autoCommit;
+    }
+
+    public void setAutoCommit(boolean autoCommit) {
+        this.autoCommit = autoCommit;
+    }
+
+}
@@ -0,0 +1,190 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.proxy.CapturedParameterValue;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A recorded statement parameter.
+ *
+ * <p>The key is either {@link Integer} parameter index or {@link String} parameter name.
+ * Values other than string, number, boolean, date/time and byte array (e.g. streams and LOBs), and values reduced by
+ * {@link net.ttddyy.dsproxy.proxy.ParameterCaptureMode}, cannot be recorded. They are replayed as {@code NULL} of the
+ * SQL type derived from the setter method or the value class; if the SQL type cannot be derived, the parameter is not
+ * recorded at all and {@link #from(ParameterSetOperation)} returns {@code null}.
+ *
+ * @author Tadaya Tsuyukubo
+ * @since 1.8
+ */
+public class WorkloadParameter {
+
+    public enum Kind {
+        /**
+         * {@code setXxx} methods.
+         */
+        VALUE,
+        /**
+         * {@code setNull} method, or a value that cannot be recorded.
+         */
+        NULL,
+        /**
+         * {@code registerOutParameter} method.
+         */
+        OUT
+    }
+
+    // SQL types of values set by setter methods for values that cannot be recorded
+    private static final Map<String, Integer> SQL_TYPES_BY_SETTER = new HashMap<String, Integer>();
+
+    static {
+        SQL_TYPES_BY_SETTER.put("setBoolean", Types.BOOLEAN);
+        SQL_TYPES_BY_SETTER.put("setByte", Types.TINYINT);
+        SQL_TYPES_BY_SETTER.put("setShort", Types.SMALLINT);
+        SQL_TYPES_BY_SETTER.put("setInt", Types.INTEGER);
+        SQL_TYPES_BY_SETTER.put("setLong", Types.BIGINT);
+        SQL_TYPES_BY_SETTER.put("setFloat", Types.REAL);
+        SQL_TYPES_BY_SETTER.put("setDouble", Types.DOUBLE);
+        SQL_TYPES_BY_SETTER.put("setBigDecimal", Types.DECIMAL);
+        SQL_TYPES_BY_SETTER.put("setDate", Types.DATE);
+        SQL_TYPES_BY_SETTER.put("setTime", Types.TIME);
+        SQL_TYPES_BY_SETTER.put("setTimestamp", Types.TIMESTAMP);
+        SQL_TYPES_BY_SETTER.put("setString", Types.VARCHAR);
+        SQL_TYPES_BY_SETTER.put("setNString", Types.NVARCHAR);
+        SQL_TYPES_BY_SETTER.put("setBytes", Types.VARBINARY);
+        SQL_TYPES_BY_SETTER.put("setAsciiStream", Types.LONGVARCHAR);
+        SQL_TYPES_BY_SETTER.put("setUnicodeStream", Types.LONGVARCHAR);
+        SQL_TYPES_BY_SETTER.put("setCharacterStream", Types.LONGVARCHAR);
+        SQL_TYPES_BY_SETTER.put("setNCharacterStream", Types.LONGNVARCHAR);
+        SQL_TYPES_BY_SETTER.put("setBinaryStream", Types.LONGVARBINARY);
+        SQL_TYPES_BY_SETTER.put("setBlob", Types.BLOB);
+        SQL_TYPES_BY_SETTER.put("setClob", Types.CLOB);
+        SQL_TYPES_BY_SETTER.put("setNClob", Types.NCLOB);
+        SQL_TYPES_BY_SETTER.put("setArray", Types.ARRAY);
+        SQL_TYPES_BY_SETTER.put("setRef", Types.REF);
+        SQL_TYPES_BY_SETTER.put("setRowId", Types.ROWID);
+        SQL_TYPES_BY_SETTER.put("setSQLXML", Types.SQLXML);
+        SQL_TYPES_BY_SETTER.put("setURL", Types.DATALINK);
+    }
+
+    private Object key;
+    private Kind kind;
+    private Object value;
+    private int sqlType;
+
+    public WorkloadParameter(Object key, Kind kind, Object value, int sqlType) {
+        this.key = key;
+        this.kind = kind;
+        this.value = value;
+        this.sqlType = sqlType;
+    }
+
+    /**
+     * Convert a parameter set operation.
+     *
+     * @param operation parameter set operation
+     * @return parameter. {@code null} if the value cannot be recorded and its SQL type is unknown.
+     */
+    public static WorkloadParameter from(ParameterSetOperation operation) {
+        Object[] args = operation.getArgs();
+        Object key = args[0];
+        if (ParameterSetOperation.isRegisterOutParameterOperation(operation)) {
+            return new WorkloadParameter(key, Kind.OUT, null, toSqlType(args[1]));
+        } else if (ParameterSetOperation.isSetNullParameterOperation(operation)) {
+            return new WorkloadParameter(key, Kind.NULL, null, toSqlType(args[1]));
+        }
+        Object value = args.length > 1 && !operation.isTruncated() ? toRecordableValue(args[1]) : null;
+        if (value != null) {
+            return new WorkloadParameter(key, Kind.VALUE, value, Types.OTHER);
+        }
+        Integer sqlType = getUnrecordableValueSqlType(operation);
+        if (sqlType == null) {
+            return null;
+        }
+        return new WorkloadParameter(key, Kind.NULL, null, sqlType);
+    }
+
+    private static Integer getUnrecordableValueSqlType(ParameterSetOperation operation) {
+        String methodName = operation.getMethod().getName();
+        Object[] args = operation.getArgs();
+        if ("setObject".equals(methodName) && args.length > 2 && args[2] instanceof Integer) {
+            return (Integer) args[2];  // target SQL type
+        }
+        Integer sqlType = SQL_TYPES_BY_SETTER.get(methodName);
+        if (sqlType != null || args.length < 2) {
+            return sqlType;
+        }
+
+        Object value = args[1];
+        Class<?> valueType = value instanceof CapturedParameterValue ? ((CapturedParameterValue) value).getType() : value.getClass();
+        if (String.class.equals(valueType)) {
+            return Types.VARCHAR;
+        } else if (byte[].class.equals(valueType)) {
+            return Types.VARBINARY;
+        } else if (NClob.class.isAssignableFrom(valueType)) {
+            return Types.NCLOB;
+        } else if (Blob.class.isAssignableFrom(valueType)) {
+            return Types.BLOB;
+        } else if (Clob.class.isAssignableFrom(valueType)) {
+            return Types.CLOB;
+        } else if (InputStream.class.isAssignableFrom(valueType)) {
+            return Types.LONGVARBINARY;
+        } else if (Reader.class.isAssignableFrom(valueType)) {
+            return Types.LONGVARCHAR;
+        }
+        return null;
+    }
+
+    private static int toSqlType(Object arg) {
+        // "java.sql.SQLType" variant is not recorded
+        return arg instanceof Integer ? (Integer) arg : Types.OTHER;
+    }
+
+    private static Object toRecordableValue(Object value) {
+        if (value instanceof String || value instanceof Boolean || value instanceof Byte || value instanceof Short
+                || value instanceof Integer || value instanceof Long || value instanceof Float
+                || value instanceof Double || value instanceof BigDecimal || value instanceof byte[]
+                || value instanceof Date || value instanceof Time || value instanceof Timestamp) {
+            return value;
+        } else if (value instanceof BigInteger) {
+            return new BigDecimal((BigInteger) value);
+        } else if (value instanceof Character) {
+            return value.toString();
+        } else if (value instanceof java.util.Date) {
+            return new Timestamp(((java.util.Date) value).getTime());
+        }
+        return null;
+    }
+
+    public Object getKey() {
+        return key;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return {@link Types} for {@link Kind#NULL} and {@link Kind#OUT}
+     */
+    public int getSqlType() {
+        return sqlType;
+    }
+
+}
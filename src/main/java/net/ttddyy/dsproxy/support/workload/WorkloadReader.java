@@ -0,0 +1,191 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.StatementType;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static net.ttddyy.dsproxy.support.workload.WorkloadWriter.*;
+
+/**
+ * Reads {@link WorkloadEvent} written by {@link WorkloadWriter}.
+ *
+ * <p>A recording that was not closed properly (e.g. the application has stopped) is read up to the last complete
+ * event.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WorkloadWriter
+ * @since 1.8
+ */
+public class WorkloadReader implements Closeable {
+
+    private static final WorkloadEvent.Type[] EVENT_TYPES = WorkloadEvent.Type.values();
+    private static final StatementType[] STATEMENT_TYPES = StatementType.values();
+    private static final WorkloadParameter.Kind[] KINDS = WorkloadParameter.Kind.values();
+
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<String>();
+
+    public WorkloadReader(InputStream inputStream) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(inputStream)));
+        if (this.in.readInt() != MAGIC) {
+            throw new IOException("Not a workload recording");
+        }
+        int version = this.in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported workload recording version " + version);
+        }
+    }
+
+    /**
+     * Read next event.
+     *
+     * @return event. {@code null} when reached to the end.
+     * @throws IOException on failure to read
+     */
+    public WorkloadEvent read() throws IOException {
+        try {
+            while (true) {
+                int recordType = this.in.read();
+                if (recordType == -1) {
+                    return null;
+                } else if (recordType == RECORD_STRING) {
+                    this.strings.add(readString());
+                } else if (recordType == RECORD_EVENT) {
+                    return readEvent();
+                } else {
+                    throw new IOException("Unknown record type " + recordType);
+                }
+            }
+        } catch (EOFException e) {
+            return null;  // incomplete recording
+        }
+    }
+
+    private WorkloadEvent readEvent() throws IOException {
+        WorkloadEvent event = new WorkloadEvent();
+        event.setType(EVENT_TYPES[this.in.readByte()]);
+        event.setConnectionKey(this.strings.get((int) readVarLong()));
+        event.setTimestampInMicros(readVarLong());
+
+        switch (event.getType()) {
+            case QUERY:
+                int statementType = this.in.readByte();
+                event.setStatementType(statementType < 0 ? null : STATEMENT_TYPES[statementType]);
+                event.setBatch(this.in.readBoolean());
+                int queryCount = (int) readVarLong();
+                for (int i = 0; i < queryCount; i++) {
+                    event.getQueries().add(this.strings.get((int) readVarLong()));
+                }
+                int parameterSetCount = (int) readVarLong();
+                for (int i = 0; i < parameterSetCount; i++) {
+                    int parameterCount = (int) readVarLong();
+                    List<WorkloadParameter> parameters = new ArrayList<WorkloadParameter>(parameterCount);
+                    for (int j = 0; j < parameterCount; j++) {
+                        parameters.add(readParameter());
+                    }
+                    event.getParameterSets().add(parameters);
+                }
+                break;
+            case SET_AUTO_COMMIT:
+                event.setAutoCommit(this.in.readBoolean());
+                break;
+            default:
+                break;
+        }
+        return event;
+    }
+
+    private WorkloadParameter readParameter() throws IOException {
+        Object key;
+        if (this.in.readByte() == KEY_INDEX) {
+            key = (int) readVarLong();
+        } else {
+            key = readString();
+        }
+        WorkloadParameter.Kind kind = KINDS[this.in.readByte()];
+        if (kind == WorkloadParameter.Kind.VALUE) {
+            return new WorkloadParameter(key, kind, readValue(), Types.OTHER);
+        }
+        return new WorkloadParameter(key, kind, null, this.in.readInt());
+    }
+
+    private Object readValue() throws IOException {
+        int valueType = this.in.readByte();
+        switch (valueType) {
+            case VALUE_STRING:
+                return readString();
+            case VALUE_BOOLEAN:
+                return this.in.readBoolean();
+            case VALUE_BYTE:
+                return this.in.readByte();
+            case VALUE_SHORT:
+                return this.in.readShort();
+            case VALUE_INT:
+                return (int) unzigzag(readVarLong());
+            case VALUE_LONG:
+                return unzigzag(readVarLong());
+            case VALUE_FLOAT:
+                return this.in.readFloat();
+            case VALUE_DOUBLE:
+                return this.in.readDouble();
+            case VALUE_BIG_DECIMAL:
+                return new BigDecimal(readString());
+            case VALUE_BYTES:
+                byte[] bytes = new byte[(int) readVarLong()];
+                this.in.readFully(bytes);
+                return bytes;
+            case VALUE_DATE:
+                return new Date(this.in.readLong());
+            case VALUE_TIME:
+                return new Time(this.in.readLong());
+            case VALUE_TIMESTAMP:
+                Timestamp timestamp = new Timestamp(this.in.readLong());
+                timestamp.setNanos(this.in.readInt());
+                return timestamp;
+            default:
+                throw new IOException("Unknown value type " + valueType);
+        }
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[(int) readVarLong()];
+        this.in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = this.in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+
+}
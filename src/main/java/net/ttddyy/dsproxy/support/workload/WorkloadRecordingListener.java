@@ -0,0 +1,180 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.MethodExecutionContext;
+import net.ttddyy.dsproxy.listener.MethodExecutionListener;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Record executed queries and transaction boundaries per connection to replay them with {@link WorkloadReplayer}.
+ *
+ * <p>For each connection, queries with their parameters and batch boundaries, {@code commit}, {@code rollback},
+ * {@code setAutoCommit} and {@code close} are recorded in the order of execution, with the time since the recording
+ * has started. Queries are recorded whether they succeeded or not. Query executions having a parameter that can be
+ * neither recorded nor replayed as {@code NULL} of a known SQL type are skipped; see {@link #getSkippedQueryCount()}.
+ *
+ * <p>To record transaction boundaries, this listener also needs to be registered as {@link MethodExecutionListener}.
+ *
+ * <p>Recording stops at the first write failure; see {@link #getFailure()}. Call {@link #close()} to complete the
+ * recording.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WorkloadReplayer
+ * @since 1.8
+ */
+public class WorkloadRecordingListener implements QueryExecutionListener, MethodExecutionListener, Closeable {
+
+    private static final String START_TIME_KEY = WorkloadRecordingListener.class.getName() + ".startTime";
+
+    private final WorkloadWriter writer;
+    private final long startTimeInNanos = System.nanoTime();
+    private volatile IOException failure;
+    private final AtomicLong skippedQueryCount = new AtomicLong();
+
+    public WorkloadRecordingListener(OutputStream outputStream) throws IOException {
+        this.writer = new WorkloadWriter(outputStream);
+    }
+
+    public WorkloadRecordingListener(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(START_TIME_KEY, System.nanoTime());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Long startTime = execInfo.getCustomValue(START_TIME_KEY, Long.class);
+        String connectionKey = getConnectionKey(execInfo.getDataSourceName(), execInfo.getConnectionId());
+        WorkloadEvent event = new WorkloadEvent(WorkloadEvent.Type.QUERY, connectionKey,
+                toTimestamp(startTime != null ? startTime : System.nanoTime()));
+        event.setStatementType(execInfo.getStatementType());
+        event.setBatch(execInfo.isBatch());
+        for (QueryInfo queryInfo : queryInfoList) {
+            event.getQueries().add(queryInfo.getQuery());
+            for (List<ParameterSetOperation> operations : queryInfo.getParametersList()) {
+                List<WorkloadParameter> parameters = new ArrayList<WorkloadParameter>(operations.size());
+                for (ParameterSetOperation operation : operations) {
+                    WorkloadParameter parameter = WorkloadParameter.from(operation);
+                    if (parameter == null) {
+                        // cannot be replayed without the parameter
+                        this.skippedQueryCount.incrementAndGet();
+                        return;
+                    }
+                    parameters.add(parameter);
+                }
+                event.getParameterSets().add(parameters);
+            }
+        }
+        write(event);
+    }
+
+    @Override
+    public void beforeMethod(MethodExecutionContext executionContext) {
+        // measured here since elapsed time of the context depends on the stopwatch in use
+        if (executionContext.getTarget() instanceof Connection) {
+            executionContext.addCustomValue(START_TIME_KEY, System.nanoTime());
+        }
+    }
+
+    @Override
+    public void afterMethod(MethodExecutionContext executionContext) {
+        if (!(executionContext.getTarget() instanceof Connection)) {
+            return;
+        }
+        String methodName = executionContext.getMethod().getName();
+        WorkloadEvent.Type type;
+        if ("commit".equals(methodName)) {
+            type = WorkloadEvent.Type.COMMIT;
+        } else if ("rollback".equals(methodName) && isEmpty(executionContext.getMethodArgs())) {  // not savepoint
+            type = WorkloadEvent.Type.ROLLBACK;
+        } else if ("setAutoCommit".equals(methodName)) {
+            type = WorkloadEvent.Type.SET_AUTO_COMMIT;
+        } else if ("close".equals(methodName)) {
+            type = WorkloadEvent.Type.CLOSE;
+        } else {
+            return;
+        }
+        if (type != WorkloadEvent.Type.CLOSE && executionContext.getThrown() != null) {
+            return;
+        }
+
+        ConnectionInfo connectionInfo = executionContext.getConnectionInfo();
+        String connectionKey = getConnectionKey(connectionInfo.getDataSourceName(), connectionInfo.getConnectionId());
+        Long startTime = executionContext.getCustomValue(START_TIME_KEY, Long.class);
+        WorkloadEvent event = new WorkloadEvent(type, connectionKey,
+                toTimestamp(startTime != null ? startTime : System.nanoTime()));
+        if (type == WorkloadEvent.Type.SET_AUTO_COMMIT) {
+            event.setAutoCommit((Boolean) executionContext.getMethodArgs()[0]);
+        }
+        write(event);
+    }
+
+    private static boolean isEmpty(Object[] args) {
+        return args == null || args.length == 0;
+    }
+
+    protected String getConnectionKey(String dataSourceName, String connectionId) {
+        return dataSourceName + ":" + connectionId;
+    }
+
+    private long toTimestamp(long timeInNanos) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMicros(timeInNanos - this.startTimeInNanos));
+    }
+
+    private void write(WorkloadEvent event) {
+        if (this.failure != null) {
+            return;
+        }
+        try {
+            this.writer.write(event);
+        } catch (IOException e) {
+            this.failure = e;
+        }
+    }
+
+    /**
+     * Flush recorded events to the underlying stream.
+     *
+     * @throws IOException on failure to write
+     */
+    public void flush() throws IOException {
+        this.writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    /**
+     * @return the exception that stopped the recording. {@code null} if recording is working.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return num of query executions that are not recorded because of parameters
+     */
+    public long getSkippedQueryCount() {
+        return this.skippedQueryCount.get();
+    }
+
+}
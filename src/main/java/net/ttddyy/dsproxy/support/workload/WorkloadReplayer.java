@@ -0,0 +1,364 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.StatementType;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay a workload recorded by {@link WorkloadRecordingListener} against a {@link DataSource}.
+ *
+ * <p>Each recorded connection is replayed on its own connection in the recorded order. Events are scheduled at the
+ * recorded time since the start, divided by the speed multiplier; when the replay is behind the schedule, events are
+ * executed immediately. Up to {@code concurrency} connections are replayed at the same time, in the order of their
+ * first event.
+ *
+ * <p>Results of queries are read to the end. Failures are counted and do not stop the replay.
+ * The whole recording is loaded into memory before replaying.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WorkloadRecordingListener
+ * @see ReplayReport
+ * @since 1.8
+ */
+public class WorkloadReplayer {
+
+    private static final Comparator<WorkloadEvent> EVENT_COMPARATOR = new Comparator<WorkloadEvent>() {
+        @Override
+        public int compare(WorkloadEvent left, WorkloadEvent right) {
+            long l = left.getTimestampInMicros();
+            long r = right.getTimestampInMicros();
+            return l < r ? -1 : (l == r ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<List<WorkloadEvent>> SESSION_COMPARATOR = new Comparator<List<WorkloadEvent>>() {
+        @Override
+        public int compare(List<WorkloadEvent> left, List<WorkloadEvent> right) {
+            return EVENT_COMPARATOR.compare(left.get(0), right.get(0));
+        }
+    };
+
+    private DataSource dataSource;
+    private int concurrency = 10;
+    private double speedMultiplier = 1.0;
+
+    public WorkloadReplayer(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    private static class SessionResult {
+        private long queryCount;
+        private long failureCount;
+        private long transactionCount;
+        private long[] latencies = new long[16];
+
+        private void addLatency(long latency) {
+            if (this.queryCount == this.latencies.length) {
+                long[] newLatencies = new long[this.latencies.length * 2];
+                System.arraycopy(this.latencies, 0, newLatencies, 0, this.latencies.length);
+                this.latencies = newLatencies;
+            }
+            this.latencies[(int) this.queryCount++] = latency;
+        }
+    }
+
+    public ReplayReport replay(File file) throws IOException {
+        InputStream inputStream = new FileInputStream(file);
+        try {
+            return replay(inputStream);
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    public ReplayReport replay(InputStream inputStream) throws IOException {
+        List<List<WorkloadEvent>> sessions = readSessions(inputStream);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, this.concurrency));
+        final long startTime = System.nanoTime();
+        List<Future<SessionResult>> futures = new ArrayList<Future<SessionResult>>();
+        try {
+            for (final List<WorkloadEvent> session : sessions) {
+                futures.add(executorService.submit(new Callable<SessionResult>() {
+                    @Override
+                    public SessionResult call() throws Exception {
+                        return replaySession(session, startTime);
+                    }
+                }));
+            }
+
+            long queryCount = 0;
+            long failureCount = 0;
+            long transactionCount = 0;
+            List<SessionResult> results = new ArrayList<SessionResult>();
+            for (Future<SessionResult> future : futures) {
+                SessionResult result = future.get();
+                results.add(result);
+                queryCount += result.queryCount;
+                failureCount += result.failureCount;
+                transactionCount += result.transactionCount;
+            }
+            long elapsedTime = System.nanoTime() - startTime;
+
+            long[] latencies = new long[(int) queryCount];
+            int position = 0;
+            for (SessionResult result : results) {
+                System.arraycopy(result.latencies, 0, latencies, position, (int) result.queryCount);
+                position += result.queryCount;
+            }
+            return new ReplayReport(sessions.size(), queryCount, failureCount, transactionCount, elapsedTime, latencies);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Replay has been interrupted");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to replay workload", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private List<List<WorkloadEvent>> readSessions(InputStream inputStream) throws IOException {
+        // a connection key can be reused after the connection is closed
+        Map<String, List<WorkloadEvent>> openSessions = new HashMap<String, List<WorkloadEvent>>();
+        List<List<WorkloadEvent>> sessions = new ArrayList<List<WorkloadEvent>>();
+
+        WorkloadReader reader = new WorkloadReader(inputStream);
+        WorkloadEvent event;
+        while ((event = reader.read()) != null) {
+            List<WorkloadEvent> session = openSessions.get(event.getConnectionKey());
+            if (session == null) {
+                session = new ArrayList<WorkloadEvent>();
+                openSessions.put(event.getConnectionKey(), session);
+                sessions.add(session);
+            }
+            session.add(event);
+            if (event.getType() == WorkloadEvent.Type.CLOSE) {
+                openSessions.remove(event.getConnectionKey());
+            }
+        }
+
+        // Events of a connection are recorded in the order of execution. Their timestamps are not used for ordering
+        // since start time of connection methods is derived from elapsed time in milliseconds.
+        Collections.sort(sessions, SESSION_COMPARATOR);  // stable
+        return sessions;
+    }
+
+    private SessionResult replaySession(List<WorkloadEvent> session, long startTime) throws InterruptedException {
+        SessionResult result = new SessionResult();
+        Connection connection = null;
+        try {
+            for (WorkloadEvent event : session) {
+                waitUntilScheduled(event, startTime);
+                if (connection == null) {
+                    if (event.getType() == WorkloadEvent.Type.CLOSE) {
+                        break;
+                    }
+                    try {
+                        connection = this.dataSource.getConnection();
+                    } catch (SQLException e) {
+                        result.failureCount++;
+                        break;
+                    }
+                }
+                switch (event.getType()) {
+                    case QUERY:
+                        long queryStartTime = System.nanoTime();
+                        try {
+                            executeQuery(connection, event);
+                        } catch (SQLException e) {
+                            result.failureCount++;
+                        }
+                        result.addLatency(System.nanoTime() - queryStartTime);
+                        break;
+                    case COMMIT:
+                    case ROLLBACK:
+                        result.transactionCount++;
+                        try {
+                            if (event.getType() == WorkloadEvent.Type.COMMIT) {
+                                connection.commit();
+                            } else {
+                                connection.rollback();
+                            }
+                        } catch (SQLException e) {
+                            result.failureCount++;
+                        }
+                        break;
+                    case SET_AUTO_COMMIT:
+                        try {
+                            connection.setAutoCommit(event.isAutoCommit());
+                        } catch (SQLException e) {
+                            result.failureCount++;
+                        }
+                        break;
+                    case CLOSE:
+                        closeQuietly(connection);
+                        connection = null;
+                        break;
+                }
+            }
+        } finally {
+            closeQuietly(connection);
+        }
+        return result;
+    }
+
+    private void waitUntilScheduled(WorkloadEvent event, long startTime) throws InterruptedException {
+        if (this.speedMultiplier <= 0) {
+            return;
+        }
+        long scheduledTime = startTime + (long) (TimeUnit.MICROSECONDS.toNanos(event.getTimestampInMicros()) / this.speedMultiplier);
+        long waitTime = scheduledTime - System.nanoTime();
+        if (waitTime > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitTime);
+        }
+    }
+
+    protected void executeQuery(Connection connection, WorkloadEvent event) throws SQLException {
+        StatementType statementType = event.getStatementType();
+        if (statementType == null || statementType == StatementType.STATEMENT) {
+            Statement statement = connection.createStatement();
+            try {
+                if (event.isBatch()) {
+                    for (String query : event.getQueries()) {
+                        statement.addBatch(query);
+                    }
+                    statement.executeBatch();
+                } else {
+                    for (String query : event.getQueries()) {
+                        if (statement.execute(query)) {
+                            consume(statement.getResultSet());
+                        }
+                    }
+                }
+            } finally {
+                statement.close();
+            }
+            return;
+        }
+
+        String query = event.getQueries().get(0);
+        PreparedStatement statement = statementType == StatementType.CALLABLE ?
+                connection.prepareCall(query) : connection.prepareStatement(query);
+        try {
+            if (event.isBatch()) {
+                for (List<WorkloadParameter> parameters : event.getParameterSets()) {
+                    setParameters(statement, parameters);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            } else {
+                if (!event.getParameterSets().isEmpty()) {
+                    setParameters(statement, event.getParameterSets().get(0));
+                }
+                if (statement.execute()) {
+                    consume(statement.getResultSet());
+                }
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void setParameters(PreparedStatement statement, List<WorkloadParameter> parameters) throws SQLException {
+        for (WorkloadParameter parameter : parameters) {
+            Object key = parameter.getKey();
+            if (key instanceof Integer) {
+                int index = (Integer) key;
+                switch (parameter.getKind()) {
+                    case VALUE:
+                        statement.setObject(index, parameter.getValue());
+                        break;
+                    case NULL:
+                        statement.setNull(index, parameter.getSqlType());
+                        break;
+                    case OUT:
+                        ((CallableStatement) statement).registerOutParameter(index, parameter.getSqlType());
+                        break;
+                }
+            } else {
+                String name = (String) key;
+                CallableStatement callableStatement = (CallableStatement) statement;
+                switch (parameter.getKind()) {
+                    case VALUE:
+                        callableStatement.setObject(name, parameter.getValue());
+                        break;
+                    case NULL:
+                        callableStatement.setNull(name, parameter.getSqlType());
+                        break;
+                    case OUT:
+                        callableStatement.registerOutParameter(name, parameter.getSqlType());
+                        break;
+                }
+            }
+        }
+    }
+
+    private void consume(ResultSet resultSet) throws SQLException {
+        if (resultSet == null) {
+            return;
+        }
+        try {
+            while (resultSet.next()) {
+                // read all rows
+            }
+        } finally {
+            resultSet.close();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // ignore
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * @param concurrency max num of connections replayed at the same time
+     */
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public double getSpeedMultiplier() {
+        return speedMultiplier;
+    }
+
+    /**
+     * @param speedMultiplier {@code 2.0} replays twice as fast as recorded. {@code 0} replays as fast as possible.
+     */
+    public void setSpeedMultiplier(double speedMultiplier) {
+        this.speedMultiplier = speedMultiplier;
+    }
+
+}
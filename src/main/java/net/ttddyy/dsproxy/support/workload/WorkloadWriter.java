@@ -0,0 +1,209 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.StatementType;
+import org.codehaus.mojo.animal_sniffer.IgnoreJRERequirement;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes {@link WorkloadEvent} in compact binary format.
+ *
+ * <p>The stream is gzip compressed. Queries and connection keys are written once and referenced by id afterwards,
+ * and numbers are written as variable-length integers.
+ *
+ * @author Tadaya Tsuyukubo
+ * @see WorkloadReader
+ * @since 1.8
+ */
+public class WorkloadWriter implements Closeable {
+
+    static final int MAGIC = 0x44535752;  // "DSWR"
+    static final int VERSION = 1;
+
+    static final int RECORD_STRING = 0;
+    static final int RECORD_EVENT = 1;
+
+    static final int VALUE_STRING = 0;
+    static final int VALUE_BOOLEAN = 1;
+    static final int VALUE_BYTE = 2;
+    static final int VALUE_SHORT = 3;
+    static final int VALUE_INT = 4;
+    static final int VALUE_LONG = 5;
+    static final int VALUE_FLOAT = 6;
+    static final int VALUE_DOUBLE = 7;
+    static final int VALUE_BIG_DECIMAL = 8;
+    static final int VALUE_BYTES = 9;
+    static final int VALUE_DATE = 10;
+    static final int VALUE_TIME = 11;
+    static final int VALUE_TIMESTAMP = 12;
+
+    static final int KEY_INDEX = 0;
+    static final int KEY_NAME = 1;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+
+    @IgnoreJRERequirement
+    public WorkloadWriter(OutputStream outputStream) throws IOException {
+        // "syncFlush" requires jdk1.7+
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(outputStream, true)));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    public synchronized void write(WorkloadEvent event) throws IOException {
+        int connectionKeyId = stringId(event.getConnectionKey());
+        int[] queryIds = new int[event.getQueries().size()];
+        for (int i = 0; i < queryIds.length; i++) {
+            queryIds[i] = stringId(event.getQueries().get(i));
+        }
+
+        this.out.writeByte(RECORD_EVENT);
+        this.out.writeByte(event.getType().ordinal());
+        writeVarLong(connectionKeyId);
+        writeVarLong(event.getTimestampInMicros());
+
+        switch (event.getType()) {
+            case QUERY:
+                StatementType statementType = event.getStatementType();
+                this.out.writeByte(statementType == null ? -1 : statementType.ordinal());
+                this.out.writeBoolean(event.isBatch());
+                writeVarLong(queryIds.length);
+                for (int queryId : queryIds) {
+                    writeVarLong(queryId);
+                }
+                writeVarLong(event.getParameterSets().size());
+                for (List<WorkloadParameter> parameters : event.getParameterSets()) {
+                    writeVarLong(parameters.size());
+                    for (WorkloadParameter parameter : parameters) {
+                        writeParameter(parameter);
+                    }
+                }
+                break;
+            case SET_AUTO_COMMIT:
+                this.out.writeBoolean(event.isAutoCommit());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private int stringId(String value) throws IOException {
+        Integer id = this.stringIds.get(value);
+        if (id == null) {
+            id = this.stringIds.size();
+            this.stringIds.put(value, id);
+            this.out.writeByte(RECORD_STRING);
+            writeString(value);
+        }
+        return id;
+    }
+
+    private void writeParameter(WorkloadParameter parameter) throws IOException {
+        Object key = parameter.getKey();
+        if (key instanceof Integer) {
+            this.out.writeByte(KEY_INDEX);
+            writeVarLong((Integer) key);
+        } else {
+            this.out.writeByte(KEY_NAME);
+            writeString(String.valueOf(key));
+        }
+        this.out.writeByte(parameter.getKind().ordinal());
+        if (parameter.getKind() == WorkloadParameter.Kind.VALUE) {
+            writeValue(parameter.getValue());
+        } else {
+            this.out.writeInt(parameter.getSqlType());
+        }
+    }
+
+    private void writeValue(Object value) throws IOException {
+        if (value instanceof String) {
+            this.out.writeByte(VALUE_STRING);
+            writeString((String) value);
+        } else if (value instanceof Boolean) {
+            this.out.writeByte(VALUE_BOOLEAN);
+            this.out.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            this.out.writeByte(VALUE_BYTE);
+            this.out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            this.out.writeByte(VALUE_SHORT);
+            this.out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            this.out.writeByte(VALUE_INT);
+            writeVarLong(zigzag((Integer) value));
+        } else if (value instanceof Long) {
+            this.out.writeByte(VALUE_LONG);
+            writeVarLong(zigzag((Long) value));
+        } else if (value instanceof Float) {
+            this.out.writeByte(VALUE_FLOAT);
+            this.out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            this.out.writeByte(VALUE_DOUBLE);
+            this.out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            this.out.writeByte(VALUE_BIG_DECIMAL);
+            writeString(value.toString());
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            this.out.writeByte(VALUE_BYTES);
+            writeVarLong(bytes.length);
+            this.out.write(bytes);
+        } else if (value instanceof Date) {
+            this.out.writeByte(VALUE_DATE);
+            this.out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            this.out.writeByte(VALUE_TIME);
+            this.out.writeLong(((Time) value).getTime());
+        } else if (value instanceof Timestamp) {
+            this.out.writeByte(VALUE_TIMESTAMP);
+            this.out.writeLong(((Timestamp) value).getTime());
+            this.out.writeInt(((Timestamp) value).getNanos());
+        } else {
+            throw new IllegalArgumentException("Unsupported parameter value type: " + value.getClass().getName());
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        writeVarLong(bytes.length);
+        this.out.write(bytes);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            this.out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        this.out.writeByte((int) value);
+    }
+
+    public synchronized void flush() throws IOException {
+        this.out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.out.close();
+    }
+
+}
@@ -0,0 +1,195 @@
+package net.ttddyy.dsproxy;
+
+import net.ttddyy.dsproxy.proxy.CapturedParameterValue;
+import net.ttddyy.dsproxy.proxy.ParameterCaptureMode;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import net.ttddyy.dsproxy.transform.ParameterReplacer;
+import net.ttddyy.dsproxy.transform.ParameterTransformer;
+import net.ttddyy.dsproxy.transform.TransformInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ParameterCaptureTest {
+
+    private static final String INSERT = "insert into doc ( id, body, data ) values (?, ?, ?)";
+
+    private DataSource actualDataSource;
+    private LastQueryListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.listener = new LastQueryListener();
+
+        Connection conn = this.actualDataSource.getConnection();
+        conn.createStatement().execute("create table doc ( id integer primary key, body varchar(5000), data varbinary(5000) )");
+        conn.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private String selectBody(int id) throws SQLException {
+        Connection conn = this.actualDataSource.getConnection();
+        ResultSet rs = conn.createStatement().executeQuery("select body from doc where id = " + id);
+        rs.next();
+        String body = rs.getString(1);
+        conn.close();
+        return body;
+    }
+
+    private List<List<ParameterSetOperation>> getCapturedParameters() {
+        return this.listener.getAfterQueries().get(0).getParametersList();
+    }
+
+    @Test
+    public void truncated() throws Exception {
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(this.listener)
+                .captureParameters(ParameterCaptureMode.TRUNCATED, 10)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        ps.setInt(1, 1);
+        ps.setString(2, repeat('a', 1000));
+        ps.setBytes(3, new byte[1000]);
+        ps.addBatch();
+        ps.setInt(1, 2);
+        ps.setString(2, "short");
+        ps.setBinaryStream(3, new ByteArrayInputStream(new byte[100]), 100);
+        ps.addBatch();
+        ps.executeBatch();
+        conn.close();
+
+        List<List<ParameterSetOperation>> parameters = getCapturedParameters();
+        assertThat(parameters).hasSize(2);
+
+        assertThat(parameters.get(0).get(0).getArgs()[1]).isEqualTo(1);
+        assertThat(parameters.get(0).get(0).isTruncated()).isFalse();
+        assertThat(parameters.get(0).get(1).getArgs()[1]).isEqualTo(repeat('a', 10));
+        assertThat(parameters.get(0).get(1).isTruncated()).isTrue();
+        assertThat((byte[]) parameters.get(0).get(2).getArgs()[1]).hasSize(10);
+
+        assertThat(parameters.get(1).get(1).getArgs()[1]).isEqualTo("short");
+        assertThat(parameters.get(1).get(1).isTruncated()).isFalse();
+        CapturedParameterValue stream = (CapturedParameterValue) parameters.get(1).get(2).getArgs()[1];
+        assertThat(stream.getType()).isEqualTo(ByteArrayInputStream.class);
+        assertThat(stream.getSize()).isEqualTo(100);
+
+        // actual values are not affected
+        assertThat(selectBody(1)).isEqualTo(repeat('a', 1000));
+    }
+
+    @Test
+    public void typeAndSize() throws Exception {
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(this.listener)
+                .captureParameters(ParameterCaptureMode.TYPE_AND_SIZE)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        ps.setInt(1, 1);
+        ps.setString(2, repeat('a', 1000));
+        ps.setNull(3, Types.VARBINARY);
+        ps.executeUpdate();
+        conn.close();
+
+        List<ParameterSetOperation> parameters = getCapturedParameters().get(0);
+        CapturedParameterValue id = (CapturedParameterValue) parameters.get(0).getArgs()[1];
+        assertThat(id.getType()).isEqualTo(Integer.class);
+        assertThat(id.getSize()).isEqualTo(-1);
+        CapturedParameterValue body = (CapturedParameterValue) parameters.get(1).getArgs()[1];
+        assertThat(body.getType()).isEqualTo(String.class);
+        assertThat(body.getSize()).isEqualTo(1000);
+        assertThat(body.toString()).isEqualTo("String(size=1000)");
+
+        // sql type of setNull is kept
+        assertThat(parameters.get(2).getArgs()[1]).isEqualTo(Types.VARBINARY);
+
+        assertThat(selectBody(1)).isEqualTo(repeat('a', 1000));
+    }
+
+    @Test
+    public void none() throws Exception {
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(this.listener)
+                .captureParameters(ParameterCaptureMode.NONE)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        for (int i = 1; i <= 3; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, "body" + i);
+            ps.setBytes(3, new byte[10]);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        conn.close();
+
+        // batch entries are kept without parameters
+        List<List<ParameterSetOperation>> parameters = getCapturedParameters();
+        assertThat(parameters).hasSize(3);
+        assertThat(parameters.get(0)).isEmpty();
+        assertThat(TestUtils.countTable(this.actualDataSource, "doc")).isEqualTo(3);
+    }
+
+    @Test
+    public void withParameterTransformer() throws Exception {
+        // transformer receives original values
+        ParameterTransformer transformer = new ParameterTransformer() {
+            @Override
+            public void transformParameters(ParameterReplacer replacer, TransformInfo transformInfo) {
+                replacer.setInt(1, 100);
+            }
+        };
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(this.listener)
+                .parameterTransformer(transformer)
+                .captureParameters(ParameterCaptureMode.TRUNCATED, 10)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement(INSERT);
+        ps.setInt(1, 1);
+        ps.setString(2, repeat('a', 1000));
+        ps.setNull(3, Types.VARBINARY);
+        ps.executeUpdate();
+        conn.close();
+
+        List<ParameterSetOperation> parameters = getCapturedParameters().get(0);
+        assertThat(parameters.get(0).getArgs()[1]).isEqualTo(100);
+        assertThat(parameters.get(1).getArgs()[1]).isEqualTo(repeat('a', 10));
+
+        assertThat(selectBody(100)).isEqualTo(repeat('a', 1000));
+    }
+
+}
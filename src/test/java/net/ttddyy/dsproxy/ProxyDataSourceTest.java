@@ -3,12 +3,16 @@ package net.ttddyy.dsproxy;
 import net.ttddyy.dsproxy.listener.CallCheckMethodExecutionListener;
 import net.ttddyy.dsproxy.listener.MethodExecutionContext;
 import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.proxy.StopwatchFactory;
+import net.ttddyy.dsproxy.proxy.SystemStopwatchFactory;
 import net.ttddyy.dsproxy.support.ProxyDataSource;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.sql.CallableStatement;
 import java.sql.Connection;
@@ -17,9 +21,13 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.withSettings;
 
@@ -253,4 +261,44 @@ public class ProxyDataSourceTest {
         verify((AutoCloseable) ds).close();
     }
 
+    @Test
+    public void closeAllCloseablesOnFailure() throws Exception {
+        DataSource ds = mock(DataSource.class, withSettings().extraInterfaces(Closeable.class));
+        ProxyDataSource proxyDS = new ProxyDataSource(ds);
+        Closeable first = mock(Closeable.class);
+        Closeable second = mock(Closeable.class);
+        IOException firstFailure = new IOException("first");
+        IOException secondFailure = new IOException("second");
+        doThrow(firstFailure).when(first).close();
+        doThrow(secondFailure).when(second).close();
+        proxyDS.addCloseable(first);
+        proxyDS.addCloseable(second);
+
+        try {
+            proxyDS.close();
+            fail("close should fail");
+        } catch (IOException e) {
+            assertThat(e).isSameAs(firstFailure);
+            assertThat(e.getSuppressed()).containsExactly(secondFailure);
+        }
+
+        verify(second).close();
+        verify((Closeable) ds).close();
+    }
+
+    @Test
+    public void connectionAcquisitionTimeWithoutMethodListener() throws Exception {
+        StopwatchFactory stopwatchFactory = spy(new SystemStopwatchFactory());
+        ProxyConfig proxyConfig = ProxyConfig.Builder.create()
+                .stopwatchFactory(stopwatchFactory)
+                .build();
+        this.proxyDataSource.setProxyConfig(proxyConfig);
+
+        Connection conn = this.proxyDataSource.getConnection();
+
+        // only for the method execution, not for the connection acquisition
+        verify(stopwatchFactory, times(1)).create();
+        conn.close();
+    }
+
 }
@@ -0,0 +1,127 @@
+package net.ttddyy.dsproxy;
+
+import net.ttddyy.dsproxy.listener.ScopedQueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryCountScopeTest {
+
+    private DataSource actualDataSource;
+    private ScopedQueryCountHolder holder;
+    private DataSource dataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.holder = new ScopedQueryCountHolder();
+        this.dataSource = ProxyDataSourceBuilder.create(this.actualDataSource).name("myDS").countQuery(this.holder).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private void select() throws SQLException {
+        Connection conn = this.dataSource.getConnection();
+        Statement st = conn.createStatement();
+        st.executeQuery("select * from emp");
+        conn.close();
+    }
+
+    @Test
+    public void scope() throws Exception {
+        QueryCountScope scope = QueryCountScope.open();
+        try {
+            assertThat(QueryCountScope.current()).isSameAs(scope);
+            select();
+            select();
+        } finally {
+            scope.close();
+        }
+        assertThat(QueryCountScope.current()).isNull();
+
+        // outside of scope
+        select();
+
+        assertThat(scope.get("myDS").getSelect()).isEqualTo(2);
+        assertThat(scope.getDataSourceNames()).containsOnly("myDS");
+        assertThat(scope.getGrandTotal().getTotal()).isEqualTo(2);
+        assertThat(this.holder.getUnscopedQueryCountMap().get("myDS").getSelect()).isEqualTo(1);
+    }
+
+    @Test
+    public void nested() throws Exception {
+        QueryCountScope outer = QueryCountScope.open();
+        select();
+        QueryCountScope inner = QueryCountScope.open();
+        select();
+        inner.close();
+        assertThat(QueryCountScope.current()).isSameAs(outer);
+        select();
+        outer.close();
+        assertThat(QueryCountScope.current()).isNull();
+
+        assertThat(outer.get("myDS").getSelect()).isEqualTo(2);
+        assertThat(inner.get("myDS").getSelect()).isEqualTo(1);
+    }
+
+    @Test
+    public void bindOnOtherThread() throws Exception {
+        final QueryCountScope scope = new QueryCountScope();
+        final Exception[] failure = new Exception[1];
+        Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                QueryCountScope.Binding binding = scope.bind();
+                try {
+                    select();
+                } catch (Exception e) {
+                    failure[0] = e;
+                } finally {
+                    binding.close();
+                }
+                assertThat(QueryCountScope.current()).isNull();
+            }
+        };
+        Thread thread1 = new Thread(work);
+        Thread thread2 = new Thread(work);
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        assertThat(failure[0]).isNull();
+        assertThat(scope.get("myDS").getSelect()).isEqualTo(2);
+        assertThat(QueryCountScope.current()).isNull();
+    }
+
+    @Test
+    public void scopeResolver() throws Exception {
+        final QueryCountScope scope = new QueryCountScope();
+        ScopedQueryCountHolder holder = new ScopedQueryCountHolder(new ScopedQueryCountHolder.ScopeResolver() {
+            @Override
+            public QueryCountScope getCurrentScope() {
+                return scope;
+            }
+        });
+        this.dataSource = ProxyDataSourceBuilder.create(this.actualDataSource).name("myDS").countQuery(holder).build();
+
+        select();
+        assertThat(scope.get("myDS").getSelect()).isEqualTo(1);
+        assertThat(holder.getUnscopedQueryCountMap()).isEmpty();
+    }
+
+}
@@ -0,0 +1,95 @@
+package net.ttddyy.dsproxy;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class StripedQueryCountTest {
+
+    @Test
+    public void numOfStripes() {
+        assertThat(new StripedQueryCount(1).getNumOfStripes()).isEqualTo(1);
+        assertThat(new StripedQueryCount(3).getNumOfStripes()).isEqualTo(4);
+        assertThat(new StripedQueryCount(8).getNumOfStripes()).isEqualTo(8);
+        assertThat(new StripedQueryCount().getNumOfStripes()).isGreaterThanOrEqualTo(1);
+    }
+
+    @Test
+    public void incrementAndSet() {
+        StripedQueryCount count = new StripedQueryCount(4);
+
+        count.increment(QueryType.SELECT);
+        count.increment(QueryType.INSERT);
+        count.increment(QueryType.UPDATE);
+        count.increment(QueryType.DELETE);
+        count.increment(QueryType.OTHER);
+        count.increment(StatementType.STATEMENT);
+        count.increment(StatementType.PREPARED);
+        count.increment(StatementType.CALLABLE);
+        count.incrementTotal();
+        count.incrementSuccess();
+        count.incrementFailure();
+        count.incrementTime(10);
+        count.incrementTime(5);
+
+        assertThat(count.getSelect()).isEqualTo(1);
+        assertThat(count.getInsert()).isEqualTo(1);
+        assertThat(count.getUpdate()).isEqualTo(1);
+        assertThat(count.getDelete()).isEqualTo(1);
+        assertThat(count.getOther()).isEqualTo(1);
+        assertThat(count.getStatement()).isEqualTo(1);
+        assertThat(count.getPrepared()).isEqualTo(1);
+        assertThat(count.getCallable()).isEqualTo(1);
+        assertThat(count.getTotal()).isEqualTo(1);
+        assertThat(count.getSuccess()).isEqualTo(1);
+        assertThat(count.getFailure()).isEqualTo(1);
+        assertThat(count.getTime()).isEqualTo(15);
+
+        count.setSelect(100);
+        count.setTime(0);
+        assertThat(count.getSelect()).isEqualTo(100);
+        assertThat(count.getTime()).isEqualTo(0);
+    }
+
+    @Test
+    public void concurrentIncrement() throws Exception {
+        final StripedQueryCount count = new StripedQueryCount(8);
+        final int numOfThreads = 32;
+        final int numOfIterations = 10000;
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        for (int i = 0; i < numOfThreads; i++) {
+            executor.submit(() -> {
+                latch.await();
+                for (int j = 0; j < numOfIterations; j++) {
+                    count.incrementTotal();
+                    count.incrementSuccess();
+                    count.incrementTime(2);
+                    count.increment(StatementType.PREPARED);
+                    count.increment(QueryType.SELECT);
+                }
+                return null;
+            });
+        }
+        latch.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        long expected = numOfThreads * numOfIterations;
+        assertThat(count.getTotal()).isEqualTo(expected);
+        assertThat(count.getSuccess()).isEqualTo(expected);
+        assertThat(count.getTime()).isEqualTo(expected * 2);
+        assertThat(count.getPrepared()).isEqualTo(expected);
+        assertThat(count.getSelect()).isEqualTo(expected);
+    }
+
+}
@@ -0,0 +1,120 @@
+package net.ttddyy.dsproxy;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class WindowedQueryCountTest {
+
+    private static class TestWindowedQueryCount extends WindowedQueryCount {
+        private AtomicLong now = new AtomicLong(100000);
+
+        public TestWindowedQueryCount(int numOfBuckets, long bucketDuration, TimeUnit timeUnit) {
+            super(numOfBuckets, bucketDuration, timeUnit);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return this.now.get();
+        }
+
+        void advance(long millis) {
+            this.now.addAndGet(millis);
+        }
+    }
+
+    @Test
+    public void windowTotal() {
+        TestWindowedQueryCount count = new TestWindowedQueryCount(3, 1, TimeUnit.SECONDS);
+
+        count.incrementTotal();
+        count.incrementSelect();
+        count.incrementTime(10);
+        assertThat(count.getTotal()).isEqualTo(1);
+        assertThat(count.getSelect()).isEqualTo(1);
+        assertThat(count.getTime()).isEqualTo(10);
+
+        count.advance(1000);
+        count.incrementTotal();
+        count.incrementTotal();
+        assertThat(count.getTotal()).isEqualTo(3);
+
+        count.advance(1000);
+        count.incrementTotal();
+        assertThat(count.getTotal()).isEqualTo(4);
+
+        // first bucket falls out of the window
+        count.advance(1000);
+        assertThat(count.getTotal()).isEqualTo(3);
+        assertThat(count.getSelect()).isEqualTo(0);
+        assertThat(count.getTime()).isEqualTo(0);
+
+        // reuse the slot of the first bucket
+        count.incrementTotal();
+        assertThat(count.getTotal()).isEqualTo(4);
+
+        // all buckets expired
+        count.advance(10000);
+        assertThat(count.getTotal()).isEqualTo(0);
+    }
+
+    @Test
+    public void ratePerSecond() {
+        TestWindowedQueryCount count = new TestWindowedQueryCount(10, 1, TimeUnit.SECONDS);
+        assertThat(count.getWindowDurationInMillis()).isEqualTo(10000);
+
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 5; j++) {
+                count.incrementTotal();
+            }
+            count.advance(1000);
+        }
+        count.advance(-1);  // stay in the last bucket
+
+        assertThat(count.getWindowTotal(WindowedQueryCount.Counter.TOTAL)).isEqualTo(50);
+        assertThat(count.getRatePerSecond(WindowedQueryCount.Counter.TOTAL)).isCloseTo(5.0, within(0.001));
+        assertThat(count.getRatePerSecond(WindowedQueryCount.Counter.SELECT)).isCloseTo(0.0, within(0.001));
+    }
+
+    @Test
+    public void ratePerSecondDuringWarmUp() {
+        TestWindowedQueryCount count = new TestWindowedQueryCount(10, 1, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 5; i++) {
+            count.incrementTotal();
+        }
+        assertThat(count.getElapsedWindowDurationInMillis()).isEqualTo(1000);
+        assertThat(count.getRatePerSecond(WindowedQueryCount.Counter.TOTAL)).isCloseTo(5.0, within(0.001));
+
+        count.advance(1000);
+        for (int i = 0; i < 5; i++) {
+            count.incrementTotal();
+        }
+        assertThat(count.getElapsedWindowDurationInMillis()).isEqualTo(2000);
+        assertThat(count.getRatePerSecond(WindowedQueryCount.Counter.TOTAL)).isCloseTo(5.0, within(0.001));
+
+        count.advance(20000);
+        assertThat(count.getElapsedWindowDurationInMillis()).isEqualTo(10000);
+    }
+
+    @Test
+    public void set() {
+        TestWindowedQueryCount count = new TestWindowedQueryCount(3, 1, TimeUnit.SECONDS);
+        count.incrementTotal();
+        count.advance(1000);
+        count.incrementTotal();
+
+        count.setTotal(10);
+        assertThat(count.getTotal()).isEqualTo(10);
+        count.setTotal(0);
+        assertThat(count.getTotal()).isEqualTo(0);
+    }
+
+}
@@ -0,0 +1,260 @@
+package net.ttddyy.dsproxy;
+
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class WriteBatchingTest {
+
+    private static class RecordingListener implements QueryExecutionListener {
+
+        private List<ExecutionInfo> executions = new ArrayList<>();
+        private List<List<QueryInfo>> queries = new ArrayList<>();
+
+        @Override
+        public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        }
+
+        @Override
+        public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+            this.executions.add(execInfo);
+            this.queries.add(queryInfoList);
+        }
+    }
+
+    private DataSource actualDataSource;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.listener = new RecordingListener();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private ProxyDataSource buildDataSource(int batchSize, boolean strict) {
+        return ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(this.listener)
+                .writeBatching(batchSize, strict)
+                .build();
+    }
+
+    private int countRows(String condition) throws SQLException {
+        Connection conn = this.actualDataSource.getConnection();
+        ResultSet rs = conn.createStatement().executeQuery("select count(*) from emp where " + condition);
+        rs.next();
+        int count = rs.getInt(1);
+        conn.close();
+        return count;
+    }
+
+    @Test
+    public void flushOnBatchFull() throws Exception {
+        Connection conn = buildDataSource(3, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("insert into emp ( id, name ) values (?, ?)");
+        for (int i = 0; i < 4; i++) {
+            ps.setInt(1, 100 + i);
+            ps.setString(2, "foo");
+            assertThat(ps.executeUpdate()).isEqualTo(Statement.SUCCESS_NO_INFO);
+        }
+
+        // first three are executed as a batch
+        assertThat(this.listener.executions).hasSize(1);
+        ExecutionInfo execInfo = this.listener.executions.get(0);
+        assertThat(execInfo.isBatch()).isTrue();
+        assertThat(execInfo.getBatchSize()).isEqualTo(3);
+        assertThat(this.listener.queries.get(0).get(0).getParametersList()).hasSize(3);
+
+        conn.commit();
+        assertThat(this.listener.executions).hasSize(2);
+        assertThat(this.listener.executions.get(1).getBatchSize()).isEqualTo(1);
+        conn.close();
+
+        assertThat(countRows("name = 'foo'")).isEqualTo(5);
+    }
+
+    @Test
+    public void flushOnOtherStatement() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        ps.setInt(2, 2);  // keeps the first parameter as well as executeUpdate
+        ps.executeUpdate();
+        assertThat(this.listener.executions).isEmpty();
+
+        // deferred updates are visible to the following query
+        ResultSet rs = conn.createStatement().executeQuery("select count(*) from emp where name = 'FOO'");
+        rs.next();
+        assertThat(rs.getInt(1)).isEqualTo(2);
+
+        assertThat(this.listener.executions).hasSize(2);
+        assertThat(this.listener.executions.get(0).getBatchSize()).isEqualTo(2);
+        assertThat(this.listener.executions.get(1).isBatch()).isFalse();
+
+        conn.rollback();
+        conn.close();
+    }
+
+    @Test
+    public void flushOnClose() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        conn.close();
+
+        assertThat(this.listener.executions).hasSize(1);
+        assertThat(this.listener.executions.get(0).isBatch()).isTrue();
+    }
+
+    @Test
+    public void autoCommit() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        assertThat(ps.executeUpdate()).isEqualTo(1);
+        conn.close();
+
+        assertThat(this.listener.executions).hasSize(1);
+        assertThat(this.listener.executions.get(0).isBatch()).isFalse();
+    }
+
+    @Test
+    public void autoCommitChangedOnConnection() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        assertThat(this.listener.executions).isEmpty();
+
+        // flushes deferred updates, and following updates are not deferred
+        conn.setAutoCommit(true);
+        assertThat(this.listener.executions).hasSize(1);
+        ps.setString(1, "BAR");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        assertThat(this.listener.executions).hasSize(2);
+        assertThat(this.listener.executions.get(1).isBatch()).isFalse();
+        conn.close();
+    }
+
+    @Test
+    public void applicationBatch() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+
+        // deferred updates are executed before the batch by application
+        ps.setString(1, "BAR");
+        ps.setInt(2, 2);
+        ps.addBatch();
+        assertThat(this.listener.executions).hasSize(1);
+        assertThat(ps.executeBatch()).containsExactly(1);
+        conn.rollback();
+        conn.close();
+
+        assertThat(this.listener.executions).extracting("batchSize").containsExactly(1, 1);
+        assertThat(this.listener.queries.get(1).get(0).getParametersList().get(0))
+                .extracting("args").extracting(args -> ((Object[]) args)[1]).containsExactly("BAR", 2);
+    }
+
+    @Test
+    public void strict() throws Exception {
+        Connection conn = buildDataSource(10, true).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ?");
+        ps.setString(1, "FOO");
+        assertThat(ps.executeUpdate()).isEqualTo(2);  // actual update count
+        assertThat(this.listener.executions).hasSize(1);
+        assertThat(this.listener.executions.get(0).isBatch()).isTrue();
+        conn.rollback();
+        conn.close();
+    }
+
+    @Test
+    public void methodListenerOnFlush() throws Exception {
+        final List<String> methodNames = new ArrayList<>();
+        ProxyDataSource ds = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .writeBatching(10)
+                .afterMethod(executionContext -> methodNames.add(executionContext.getMethod().getName()))
+                .build();
+        Connection conn = ds.getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        methodNames.clear();
+
+        conn.commit();
+        assertThat(methodNames).containsExactly("executeBatch", "commit");
+        conn.close();
+    }
+
+    @Test
+    public void failureOnCommit() throws Exception {
+        Connection conn = buildDataSource(10, false).getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("insert into emp ( id, name ) values (?, ?)");
+        ps.setInt(1, 1);  // duplicate key
+        ps.setString(2, "foo");
+        assertThat(ps.executeUpdate()).isEqualTo(Statement.SUCCESS_NO_INFO);
+
+        try {
+            conn.commit();
+            fail("batch should fail");
+        } catch (BatchUpdateException e) {
+        }
+        assertThat(this.listener.executions.get(0).isSuccess()).isFalse();
+        conn.close();
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        ProxyDataSource ds = ProxyDataSourceBuilder.create(this.actualDataSource).listener(this.listener).build();
+        Connection conn = ds.getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("update emp set name = 'FOO' where id = 1");
+        ps.executeUpdate();
+        assertThat(this.listener.executions).hasSize(1);
+        assertThat(this.listener.executions.get(0).isBatch()).isFalse();
+        conn.rollback();
+        conn.close();
+    }
+
+}
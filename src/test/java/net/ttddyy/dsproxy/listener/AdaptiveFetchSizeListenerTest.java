@@ -0,0 +1,140 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.ResultSetMetrics;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class AdaptiveFetchSizeListenerTest {
+
+    private DataSource actualDataSource;
+
+    @After
+    public void tearDown() throws Exception {
+        if (this.actualDataSource != null) {
+            TestUtils.shutdown(this.actualDataSource);
+        }
+    }
+
+    private void observe(AdaptiveFetchSizeListener listener, String query, long rows) {
+        ResultSetMetrics metrics = new ResultSetMetrics();
+        metrics.setRowCount(rows);
+        List<QueryInfo> queries = Collections.singletonList(new QueryInfo(query));
+        listener.afterResultSetClose(new ExecutionInfo(), queries, metrics);
+    }
+
+    @Test
+    public void getFetchSize() {
+        AdaptiveFetchSizeListener listener = new AdaptiveFetchSizeListener(10, 100);
+        assertThat(listener.getFetchSize("select 1")).isNull();
+
+        observe(listener, "select 1", 40);
+        assertThat(listener.getFetchSize("select 1")).isEqualTo(41);
+
+        // moving average
+        observe(listener, "select 1", 80);
+        assertThat(listener.getFetchSize("select 1")).isEqualTo(51);
+
+        // bounded
+        observe(listener, "select 2", 1);
+        assertThat(listener.getFetchSize("select 2")).isEqualTo(10);
+        observe(listener, "select 3", 1000);
+        assertThat(listener.getFetchSize("select 3")).isEqualTo(100);
+
+        listener.clear();
+        assertThat(listener.getFetchSize("select 1")).isNull();
+    }
+
+    @Test
+    public void movingAverageWithSmallDifferences() {
+        AdaptiveFetchSizeListener listener = new AdaptiveFetchSizeListener(1, 1000);
+
+        // small increases accumulate
+        observe(listener, "select 1", 0);
+        observe(listener, "select 1", 1);
+        observe(listener, "select 1", 1);
+        observe(listener, "select 1", 1);
+        assertThat(listener.getFetchSize("select 1")).isEqualTo(2);
+
+        observe(listener, "select 2", 100);
+        for (int i = 0; i < 10; i++) {
+            observe(listener, "select 2", 103);
+        }
+        assertThat(listener.getFetchSize("select 2")).isEqualTo(104);
+    }
+
+    @Test
+    public void maxQueries() {
+        AdaptiveFetchSizeListener listener = new AdaptiveFetchSizeListener(1, 100);
+        listener.setMaxQueries(1);
+
+        observe(listener, "select 1", 10);
+        observe(listener, "select 2", 10);
+        assertThat(listener.getFetchSize("select 1")).isEqualTo(11);
+        assertThat(listener.getFetchSize("select 2")).isNull();
+    }
+
+    @Test
+    public void invalidBounds() {
+        assertThatThrownBy(() -> new AdaptiveFetchSizeListener(0, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveFetchSizeListener(10, 5)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void applyFetchSize() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        ProxyDataSource proxyDataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .adaptiveFetchSize(10, 100)
+                .build();
+
+        Connection conn = proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        int defaultFetchSize = stmt.getFetchSize();
+
+        // first execution is only observed
+        ResultSet rs = stmt.executeQuery("select * from emp");
+        while (rs.next()) {
+        }
+        rs.close();
+        assertThat(stmt.getFetchSize()).isEqualTo(defaultFetchSize);
+
+        stmt.executeQuery("select * from emp").close();
+        assertThat(stmt.getFetchSize()).isEqualTo(10);
+
+        // restored for a query that has not been observed
+        stmt.executeQuery("select * from emp where id = 1").close();
+        assertThat(stmt.getFetchSize()).isEqualTo(defaultFetchSize);
+
+        // execute returning a result set
+        Statement executeStmt = conn.createStatement();
+        assertThat(executeStmt.execute("select * from emp")).isTrue();
+        executeStmt.getResultSet().close();
+        assertThat(executeStmt.getFetchSize()).isEqualTo(10);
+
+        // explicitly specified fetch size is not overridden
+        Statement another = conn.createStatement();
+        another.setFetchSize(3);
+        another.executeQuery("select * from emp").close();
+        assertThat(another.getFetchSize()).isEqualTo(3);
+
+        conn.close();
+    }
+
+}
@@ -0,0 +1,111 @@
+package net.ttddyy.dsproxy.listener;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class AdaptiveSlowQueryThresholdTest {
+
+    private static final long DEFAULT = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void bucket() {
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(0)).isEqualTo(0);
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(1023)).isEqualTo(0);
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(1024)).isEqualTo(1);
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(1279)).isEqualTo(1);
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(1280)).isEqualTo(2);
+        assertThat(AdaptiveSlowQueryThreshold.getBucketIndex(Long.MAX_VALUE)).isEqualTo(113);
+
+        // value is within the bucket
+        long[] values = {1024, 5000, TimeUnit.MILLISECONDS.toNanos(3), TimeUnit.SECONDS.toNanos(10)};
+        for (long value : values) {
+            int index = AdaptiveSlowQueryThreshold.getBucketIndex(value);
+            assertThat(value).isLessThan(AdaptiveSlowQueryThreshold.getBucketUpperBound(index));
+            assertThat(value).isGreaterThanOrEqualTo(AdaptiveSlowQueryThreshold.getBucketUpperBound(index - 1));
+        }
+    }
+
+    @Test
+    public void threshold() {
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        adaptiveThreshold.setMinSamples(10);
+        adaptiveThreshold.setMultiplier(2.0);
+        adaptiveThreshold.setMinThreshold(1, TimeUnit.MILLISECONDS);
+
+        // default until min samples
+        for (int i = 0; i < 9; i++) {
+            adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        assertThat(adaptiveThreshold.getThreshold("foo", DEFAULT)).isEqualTo(DEFAULT);
+        assertThat(adaptiveThreshold.getThreshold("bar", DEFAULT)).isEqualTo(DEFAULT);
+
+        // 2 * p99 (10ms), within bucket precision
+        adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(10));
+        long threshold = adaptiveThreshold.getThreshold("foo", DEFAULT);
+        assertThat(threshold).isBetween(TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.MILLISECONDS.toNanos(25));
+    }
+
+    @Test
+    public void minAndMax() {
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        adaptiveThreshold.setMinSamples(1);
+        adaptiveThreshold.setMinThreshold(50, TimeUnit.MILLISECONDS);
+        adaptiveThreshold.setMaxThreshold(5, TimeUnit.SECONDS);
+
+        adaptiveThreshold.record("fast", TimeUnit.MICROSECONDS.toNanos(100));
+        adaptiveThreshold.record("slow", TimeUnit.SECONDS.toNanos(10));
+
+        assertThat(adaptiveThreshold.getThreshold("fast", DEFAULT)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(adaptiveThreshold.getThreshold("slow", DEFAULT)).isEqualTo(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void decay() {
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        adaptiveThreshold.setMinSamples(10);
+        adaptiveThreshold.setDecayInterval(100);
+        adaptiveThreshold.setMultiplier(1.0);
+        adaptiveThreshold.setMinThreshold(0, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < 100; i++) {
+            adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertThat(adaptiveThreshold.getThreshold("foo", DEFAULT)).isGreaterThan(TimeUnit.MILLISECONDS.toNanos(100));
+
+        // recent executions become faster
+        for (int i = 0; i < 1000; i++) {
+            adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertThat(adaptiveThreshold.getThreshold("foo", DEFAULT)).isLessThan(TimeUnit.MILLISECONDS.toNanos(2));
+    }
+
+    @Test
+    public void maxFingerprints() {
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        adaptiveThreshold.setMinSamples(1);
+        adaptiveThreshold.setMaxFingerprints(2);
+
+        adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(100));
+        adaptiveThreshold.record("bar", TimeUnit.MILLISECONDS.toNanos(100));
+        adaptiveThreshold.record("foo", TimeUnit.MILLISECONDS.toNanos(100));
+        adaptiveThreshold.record("baz", TimeUnit.MILLISECONDS.toNanos(100));
+
+        // least recently recorded one is evicted
+        assertThat(adaptiveThreshold.getNumOfFingerprints()).isEqualTo(2);
+        assertThat(adaptiveThreshold.getThreshold("foo", DEFAULT)).isNotEqualTo(DEFAULT);
+        assertThat(adaptiveThreshold.getThreshold("bar", DEFAULT)).isEqualTo(DEFAULT);
+        assertThat(adaptiveThreshold.getThreshold("baz", DEFAULT)).isNotEqualTo(DEFAULT);
+
+        adaptiveThreshold.clear();
+        assertThat(adaptiveThreshold.getNumOfFingerprints()).isEqualTo(0);
+        adaptiveThreshold.record("baz", TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(adaptiveThreshold.getThreshold("baz", DEFAULT)).isNotEqualTo(DEFAULT);
+    }
+
+}
@@ -0,0 +1,125 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.QueryType;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class AggregatingThreadQueryCountHolderTest {
+
+    @After
+    public void tearDown() {
+        QueryCountHolder.clear();
+    }
+
+    @Test
+    public void globalQueryCount() throws Exception {
+        AggregatingThreadQueryCountHolder holder = new AggregatingThreadQueryCountHolder();
+
+        QueryCount queryCount = holder.getOrCreateQueryCount("testDS");
+        queryCount.incrementSuccess();
+        queryCount.increment(QueryType.SELECT);
+        queryCount.incrementTime(10);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    holder.getOrCreateQueryCount("testDS").incrementFailure();
+                }
+                holder.getOrCreateQueryCount("otherDS").incrementSuccess();
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // per thread view
+        assertThat(QueryCountHolder.get("testDS")).isSameAs(queryCount);
+        assertThat(queryCount.getSuccess()).isEqualTo(1);
+        assertThat(queryCount.getFailure()).isEqualTo(0);
+        assertThat(QueryCountHolder.get("otherDS")).isNull();
+
+        // global view including terminated threads
+        QueryCount global = holder.getGlobalQueryCount("testDS");
+        assertThat(global.getSuccess()).isEqualTo(1);
+        assertThat(global.getFailure()).isEqualTo(500);
+        assertThat(global.getSelect()).isEqualTo(1);
+        assertThat(global.getTime()).isEqualTo(10);
+
+        Map<String, QueryCount> counts = holder.getGlobalQueryCounts();
+        assertThat(counts).containsOnlyKeys("testDS", "otherDS");
+        assertThat(counts.get("otherDS").getSuccess()).isEqualTo(5);
+
+        QueryCount grandTotal = holder.getGlobalGrandTotal();
+        assertThat(grandTotal.getSuccess()).isEqualTo(6);
+        assertThat(grandTotal.getFailure()).isEqualTo(500);
+
+        // retired counts are kept on subsequent reads
+        assertThat(holder.getGlobalQueryCount("testDS").getFailure()).isEqualTo(500);
+    }
+
+    @Test
+    public void clear() {
+        AggregatingThreadQueryCountHolder holder = new AggregatingThreadQueryCountHolder();
+        holder.getOrCreateQueryCount("testDS").incrementSuccess();
+
+        // clearing per-thread counts does not affect global counts
+        QueryCountHolder.clear();
+        holder.getOrCreateQueryCount("testDS").incrementSuccess();
+
+        assertThat(QueryCountHolder.get("testDS").getSuccess()).isEqualTo(1);
+        assertThat(holder.getGlobalQueryCount("testDS").getSuccess()).isEqualTo(2);
+
+        holder.clearGlobal();
+        assertThat(holder.getGlobalQueryCount("testDS").getSuccess()).isEqualTo(0);
+        assertThat(QueryCountHolder.get("testDS").getSuccess()).isEqualTo(1);
+
+        holder.getOrCreateQueryCount("testDS").incrementSuccess();
+        assertThat(holder.getGlobalQueryCount("testDS").getSuccess()).isEqualTo(1);
+    }
+
+    @Test
+    public void clearGlobalWhileOtherThreadCounts() throws Exception {
+        AggregatingThreadQueryCountHolder holder = new AggregatingThreadQueryCountHolder();
+        CountDownLatch counted = new CountDownLatch(1);
+        CountDownLatch cleared = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            QueryCount queryCount = holder.getOrCreateQueryCount("testDS");
+            queryCount.incrementSuccess();
+            counted.countDown();
+            try {
+                cleared.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            queryCount.incrementSuccess();
+            queryCount.incrementSuccess();
+        });
+        thread.start();
+
+        counted.await();
+        holder.clearGlobal();
+        cleared.countDown();
+        thread.join();
+
+        // the counter of the other thread is not written; counts after the clear are kept after the thread retired
+        assertThat(holder.getGlobalQueryCount("testDS").getSuccess()).isEqualTo(2);
+        assertThat(holder.getGlobalQueryCount("testDS").getSuccess()).isEqualTo(2);
+    }
+
+}
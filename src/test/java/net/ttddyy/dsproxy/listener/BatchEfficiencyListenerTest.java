@@ -0,0 +1,191 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class BatchEfficiencyListenerTest {
+
+    private DataSource actualDataSource;
+    private List<BatchEfficiencyListener.UnbatchedWrites> reported;
+    private BatchEfficiencyListener listener;
+    private ProxyDataSource proxyDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.reported = new ArrayList<>();
+        this.listener = new BatchEfficiencyListener() {
+            @Override
+            protected void onUnbatchedWrites(UnbatchedWrites unbatchedWrites) {
+                reported.add(unbatchedWrites);
+            }
+        };
+        this.listener.setMinRepeats(3);
+        this.proxyDataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .listener(this.listener)
+                .methodListener(this.listener)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void unbatchedWrites() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        for (int i = 1; i <= 4; i++) {
+            ps.setString(1, "FOO");
+            ps.setInt(2, i);
+            ps.executeUpdate();
+        }
+        assertThat(this.reported).isEmpty();
+
+        // different query ends the run
+        conn.createStatement().executeQuery("select * from emp").close();
+
+        assertThat(this.reported).hasSize(1);
+        BatchEfficiencyListener.UnbatchedWrites writes = this.reported.get(0);
+        assertThat(writes.getDataSourceName()).isEqualTo("myDS");
+        assertThat(writes.getQuery()).isEqualTo("update emp set name = ? where id = ?");
+        assertThat(writes.getCount()).isEqualTo(4);
+        assertThat(writes.getPotentialSavedRoundTrips()).isEqualTo(3);
+        assertThat(writes.getLastExecutionTimeInMillis()).isGreaterThanOrEqualTo(writes.getFirstExecutionTimeInMillis());
+
+        assertThat(this.listener.getUnbatchedWritesCount()).isEqualTo(1);
+        assertThat(this.listener.getPotentialSavedRoundTrips()).isEqualTo(3);
+
+        conn.close();
+    }
+
+    @Test
+    public void reportOnConnectionClose() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        for (int i = 0; i < 3; i++) {
+            stmt.executeUpdate("insert into emp ( id, name ) values (" + (100 + i) + ", 'foo')");
+        }
+        // not the same query
+        assertThat(this.listener.getUnbatchedWritesCount()).isEqualTo(0);
+        for (int i = 0; i < 3; i++) {
+            stmt.executeUpdate("delete from emp where name = 'foo'");
+        }
+        conn.close();
+
+        assertThat(this.reported).hasSize(1);
+        assertThat(this.reported.get(0).getQuery()).isEqualTo("delete from emp where name = 'foo'");
+    }
+
+    @Test
+    public void belowMinRepeats() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+        stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+        conn.close();
+
+        assertThat(this.reported).isEmpty();
+    }
+
+    @Test
+    public void window() throws Exception {
+        this.listener.setWindowInMillis(-1);  // every execution starts a new run
+
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        for (int i = 0; i < 5; i++) {
+            stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+        }
+        conn.close();
+
+        assertThat(this.reported).isEmpty();
+    }
+
+    @Test
+    public void expireRunsWithoutMethodListener() throws Exception {
+        this.listener.setWindowInMillis(50);
+        ProxyDataSource dataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .listener(this.listener)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        for (int i = 0; i < 3; i++) {
+            stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+        }
+        conn.close();
+        assertThat(this.reported).isEmpty();
+
+        Thread.sleep(100);
+
+        // execution on another connection ends the expired run
+        Connection another = dataSource.getConnection();
+        another.createStatement().executeQuery("select * from emp").close();
+        another.close();
+
+        assertThat(this.reported).hasSize(1);
+        assertThat(this.reported.get(0).getCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void maxRuns() throws Exception {
+        this.listener.setMaxRuns(1);
+
+        Connection conn1 = this.proxyDataSource.getConnection();
+        Connection conn2 = this.proxyDataSource.getConnection();
+        Statement stmt1 = conn1.createStatement();
+        Statement stmt2 = conn2.createStatement();
+        for (int i = 0; i < 3; i++) {
+            stmt1.executeUpdate("update emp set name = 'FOO' where id = 1");
+            stmt2.executeUpdate("update emp set name = 'BAR' where id = 2");
+        }
+        conn1.close();
+        conn2.close();
+
+        assertThat(this.reported).hasSize(1);
+        assertThat(this.reported.get(0).getQuery()).isEqualTo("update emp set name = 'FOO' where id = 1");
+    }
+
+    @Test
+    public void batchSizeHistogram() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        for (int i = 1; i <= 3; i++) {
+            ps.setString(1, "FOO");
+            ps.setInt(2, i);
+            ps.addBatch();
+        }
+        ps.executeBatch();
+        ps.setString(1, "BAR");
+        ps.setInt(2, 1);
+        ps.addBatch();
+        ps.executeBatch();
+        conn.close();
+
+        BucketHistogram histogram = this.listener.getBatchSizeHistogram("myDS");
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.getSum()).isEqualTo(4);
+        assertThat(histogram.getBucketCount(0)).isEqualTo(1);  // <= 1
+        assertThat(histogram.getBucketCount(2)).isEqualTo(1);  // <= 5
+        assertThat(this.reported).isEmpty();
+    }
+
+}
@@ -0,0 +1,167 @@
+package net.ttddyy.dsproxy.listener;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.LastQueryListener;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.listener.logging.InMemorySLF4JLogger;
+import net.ttddyy.dsproxy.listener.logging.SLF4JSlowQueryListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryPlanExplainerTest {
+
+    private static class CountingExplainDialect implements ExplainDialect {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public String explain(Connection connection, String query, List<ParameterSetOperation> parameters) throws SQLException {
+            this.count.incrementAndGet();
+            return ExplainDialect.HSQLDB.explain(connection, query, parameters);
+        }
+    }
+
+    private static class PlanQueue implements QueryPlanExplainer.Callback {
+        private final BlockingQueue<String> plans = new LinkedBlockingQueue<String>();
+
+        @Override
+        public void onPlan(String plan) {
+            this.plans.add(plan == null ? "<none>" : plan);
+        }
+
+        private String take() throws InterruptedException {
+            return this.plans.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private DataSource dataSource;
+    private CountingExplainDialect dialect;
+    private QueryPlanExplainer explainer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dataSource = TestUtils.getDataSourceWithData();
+        this.dialect = new CountingExplainDialect();
+        this.explainer = new QueryPlanExplainer(this.dataSource, this.dialect);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.explainer.shutdown();
+        TestUtils.shutdown(this.dataSource);
+    }
+
+    private ExecutionInfo executionInfo(StatementType statementType) {
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setStatementType(statementType);
+        return executionInfo;
+    }
+
+    @Test
+    public void explainAndCache() throws Exception {
+        ExecutionInfo executionInfo = executionInfo(StatementType.STATEMENT);
+        List<QueryInfo> queries = Collections.singletonList(new QueryInfo("select * from emp where id = 1"));
+        PlanQueue callback = new PlanQueue();
+
+        this.explainer.explain(executionInfo, queries, callback);
+        String plan = callback.take();
+        assertThat(plan).containsIgnoringCase("emp");
+        assertThat(this.dialect.count.get()).isEqualTo(1);
+
+        // same fingerprint is served from cache
+        queries = Collections.singletonList(new QueryInfo("select * from emp where id = 2"));
+        assertThat(this.explainer.getCachedPlan(executionInfo, queries)).isEqualTo(plan);
+        this.explainer.explain(executionInfo, queries, callback);
+        assertThat(callback.take()).isEqualTo(plan);
+        assertThat(this.dialect.count.get()).isEqualTo(1);
+
+        // expired
+        this.explainer.setTimeToLive(0, TimeUnit.SECONDS);
+        this.explainer.clear();
+        this.explainer.explain(executionInfo, queries, callback);
+        assertThat(callback.take()).containsIgnoringCase("emp");
+        assertThat(this.explainer.getCachedPlan(executionInfo, queries)).isNull();
+        assertThat(this.dialect.count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void explainWithParameters() throws Exception {
+        // capture actual parameter set operations
+        LastQueryListener listener = new LastQueryListener();
+        DataSource proxyDataSource = ProxyDataSourceBuilder.create(this.dataSource).listener(listener).build();
+        Connection connection = proxyDataSource.getConnection();
+        PreparedStatement ps = connection.prepareStatement("select * from emp where id = ?");
+        ps.setInt(1, 1);
+        ps.executeQuery();
+        connection.close();
+
+        PlanQueue callback = new PlanQueue();
+        this.explainer.explain(listener.getAfterExecInfo(), listener.getAfterQueries(), callback);
+        assertThat(callback.take()).containsIgnoringCase("emp");
+        assertThat(this.dialect.count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void notExplainable() throws Exception {
+        PlanQueue callback = new PlanQueue();
+
+        // callable
+        this.explainer.explain(executionInfo(StatementType.CALLABLE),
+                Collections.singletonList(new QueryInfo("select * from emp")), callback);
+        assertThat(callback.take()).isEqualTo("<none>");
+
+        // not select/insert/update/delete
+        this.explainer.explain(executionInfo(StatementType.STATEMENT),
+                Collections.singletonList(new QueryInfo("create table foo (id int)")), callback);
+        assertThat(callback.take()).isEqualTo("<none>");
+
+        // failure
+        this.explainer.explain(executionInfo(StatementType.STATEMENT),
+                Collections.singletonList(new QueryInfo("select * from no_such_table")), callback);
+        assertThat(callback.take()).isEqualTo("<none>");
+
+        assertThat(this.dialect.count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void slowQueryLog() throws Exception {
+        SLF4JSlowQueryListener listener = new SLF4JSlowQueryListener(10, TimeUnit.MILLISECONDS);
+        InMemorySLF4JLogger logger = new InMemorySLF4JLogger();
+        listener.setLogger(logger);
+        listener.setQueryPlanExplainer(this.explainer);
+
+        ExecutionInfo executionInfo = executionInfo(StatementType.STATEMENT);
+        List<QueryInfo> queries = Collections.singletonList(new QueryInfo("select * from emp"));
+        listener.beforeQuery(executionInfo, queries);
+        TimeUnit.MILLISECONDS.sleep(100);
+        listener.afterQuery(executionInfo, queries);
+
+        for (int i = 0; i < 50 && logger.getWarnMessages().isEmpty(); i++) {
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        List<String> messages = logger.getWarnMessages();
+        assertThat(messages).hasSize(1);
+        assertThat(messages.get(0)).contains("select * from emp").contains(", Plan:[").containsIgnoringCase("EMP");
+    }
+
+}
@@ -37,4 +37,16 @@ public class QueryUtilsTest {
         assertThat(QueryUtils.getQueryType("DELETE")).isEqualTo(QueryType.DELETE);
         assertThat(QueryUtils.getQueryType("delete")).isEqualTo(QueryType.DELETE);
     }
+
+    @Test
+    public void getFingerprint() {
+        assertThat(QueryUtils.getFingerprint(null)).isNull();
+        assertThat(QueryUtils.getFingerprint("select * from emp where id = 1")).isEqualTo("select * from emp where id = ?");
+        assertThat(QueryUtils.getFingerprint("select * from emp where id = 2")).isEqualTo("select * from emp where id = ?");
+        assertThat(QueryUtils.getFingerprint("select * from emp where name = 'it''s'")).isEqualTo("select * from emp where name = ?");
+        assertThat(QueryUtils.getFingerprint("select *\n  from emp  -- comment\n where id in (1, 2,3)"))
+                .isEqualTo("select * from emp where id in (?)");
+        assertThat(QueryUtils.getFingerprint("select /* hint */ col1, t2.col2 from t2 where x = ? ")).isEqualTo("select col1, t2.col2 from t2 where x = ?");
+        assertThat(QueryUtils.getFingerprint("select \"Col 1\" from emp where v = 1.5e3")).isEqualTo("select \"Col 1\" from emp where v = ?");
+    }
 }
@@ -2,9 +2,12 @@ package net.ttddyy.dsproxy.listener;
 
 import net.ttddyy.dsproxy.QueryCount;
 import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.StripedQueryCount;
+import net.ttddyy.dsproxy.WindowedQueryCount;
 import org.junit.After;
 import org.junit.Test;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -74,4 +77,23 @@ public class SingleQueryCountHolderTest {
         assertThat(holderQueryCountReference.get()).isNull();
 
     }
+
+    @Test
+    public void stripedQueryCount() {
+        SingleQueryCountHolder holder = new StripedSingleQueryCountHolder(4);
+        QueryCount queryCount = holder.getOrCreateQueryCount("testDS");
+        assertThat(queryCount).isInstanceOf(StripedQueryCount.class);
+        assertThat(((StripedQueryCount) queryCount).getNumOfStripes()).isEqualTo(4);
+        assertThat(holder.getOrCreateQueryCount("testDS")).isSameAs(queryCount);
+    }
+
+    @Test
+    public void windowedQueryCount() {
+        WindowedQueryCountHolder holder = new WindowedQueryCountHolder(10, 1, TimeUnit.SECONDS);
+        QueryCount queryCount = holder.getOrCreateQueryCount("testDS");
+        assertThat(queryCount).isInstanceOf(WindowedQueryCount.class);
+        assertThat(holder.getWindowedQueryCount("testDS")).isSameAs(queryCount);
+        assertThat(holder.getWindowedQueryCount("testDS").getWindowDurationInMillis()).isEqualTo(10000);
+        assertThat(holder.getWindowedQueryCount("foo")).isNull();
+    }
 }
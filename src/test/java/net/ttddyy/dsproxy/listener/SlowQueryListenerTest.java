@@ -16,6 +16,7 @@ import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -122,6 +123,51 @@ public class SlowQueryListenerTest {
     }
 
 
+    @Test
+    public void adaptiveThreshold() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        SlowQueryListener listener = new SlowQueryListener() {
+            @Override
+            protected void onSlowQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, long startTimeInMills) {
+                counter.incrementAndGet();
+            }
+        };
+        listener.setThreshold(10);
+        listener.setThresholdTimeUnit(TimeUnit.SECONDS);
+
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        adaptiveThreshold.setMinSamples(5);
+        adaptiveThreshold.setMinThreshold(20, TimeUnit.MILLISECONDS);
+        listener.setAdaptiveThreshold(adaptiveThreshold);
+
+        // fast executions with different literals have the same fingerprint
+        for (int i = 0; i < 5; i++) {
+            ExecutionInfo executionInfo = new ExecutionInfo();
+            List<QueryInfo> queryInfoList = Collections.singletonList(new QueryInfo("select * from emp where id = " + i));
+            listener.beforeQuery(executionInfo, queryInfoList);
+            listener.afterQuery(executionInfo, queryInfoList);
+        }
+        assertThat(adaptiveThreshold.getNumOfFingerprints()).isEqualTo(1);
+        assertThat(adaptiveThreshold.getThreshold("select * from emp where id = ?", -1))
+                .isEqualTo(TimeUnit.MILLISECONDS.toNanos(20));
+
+        // slow for this fingerprint, but fast for the fixed threshold
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        List<QueryInfo> queryInfoList = Collections.singletonList(new QueryInfo("select * from emp where id = 100"));
+        listener.beforeQuery(executionInfo, queryInfoList);
+        TimeUnit.MILLISECONDS.sleep(200);
+        listener.afterQuery(executionInfo, queryInfoList);
+        assertThat(counter.get()).isEqualTo(1);
+
+        // other fingerprint uses the fixed threshold
+        executionInfo = new ExecutionInfo();
+        queryInfoList = Collections.singletonList(new QueryInfo("select * from emp_with_auto_id"));
+        listener.beforeQuery(executionInfo, queryInfoList);
+        TimeUnit.MILLISECONDS.sleep(200);
+        listener.afterQuery(executionInfo, queryInfoList);
+        assertThat(counter.get()).isEqualTo(1);
+    }
+
     /**
      * hsqldb function to sleep 200 msec
      */
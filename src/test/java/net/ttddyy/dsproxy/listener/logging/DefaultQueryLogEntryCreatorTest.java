@@ -5,12 +5,15 @@ import net.ttddyy.dsproxy.ExecutionInfoBuilder;
 import net.ttddyy.dsproxy.QueryInfo;
 import net.ttddyy.dsproxy.QueryInfoBuilder;
 import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
 import org.assertj.core.util.Lists;
 import org.junit.Test;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.SortedMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -345,6 +348,70 @@ public class DefaultQueryLogEntryCreatorTest {
 
     }
 
+    @Test
+    public void getLogEntryParameterOrderWithMixedKeys() throws Exception {
+        ExecutionInfo executionInfo = ExecutionInfoBuilder
+                .create()
+                .statementType(StatementType.CALLABLE)
+                .batch(true)
+                .batchSize(3)
+                .build();
+
+        QueryInfo queryInfo = QueryInfoBuilder.create()
+                .query("select 1")
+                .batchParam(1, "name", "foo")
+                .batchParam(1, "10", "FOO")
+                .batchParam(1, "2", 100)
+                .batchParam(2, "name", "bar")
+                .batchParam(2, "10", "BAR")
+                .batchParam(2, "2", 200)
+                .batchParam(3, "2", 300)  // different keys
+                .batchParam(3, "id", 3)
+                .build();
+
+        DefaultQueryLogEntryCreator creator = new DefaultQueryLogEntryCreator();
+
+        String entry = creator.getLogEntry(executionInfo, Lists.newArrayList(queryInfo), true, true);
+        assertThat(entry).containsOnlyOnce("Params:[(2=100,10=FOO,name=foo),(2=200,10=BAR,name=bar),(2=300,id=3)]");
+    }
+
+    @Test
+    public void getSortedParameterKeys() throws Exception {
+        QueryInfo queryInfo = QueryInfoBuilder.create()
+                .query("select 1")
+                .batchParam(1, "name", "foo")
+                .batchParam(1, "10", "FOO")
+                .batchParam(1, "2", 100)
+                .batchParam(2, "name", "bar")
+                .batchParam(2, "10", "BAR")
+                .batchParam(2, "2", 200)
+                .build();
+
+        DefaultQueryLogEntryCreator creator = new DefaultQueryLogEntryCreator();
+        List<List<ParameterSetOperation>> parametersList = queryInfo.getParametersList();
+        AbstractQueryLogEntryCreator.SortedParameterKeys sortedKeys = creator.getSortedParameterKeys(parametersList.get(0), null);
+        assertThat(sortedKeys.getSortedKeys()).containsExactly("2", "10", "name");
+
+        // same keys are not sorted again
+        assertThat(creator.getSortedParameterKeys(parametersList.get(1), sortedKeys)).isSameAs(sortedKeys);
+        assertThat(creator.getSortedParameterValues(parametersList.get(1), sortedKeys)).containsExactly("200", "BAR", "bar");
+    }
+
+    @Test
+    public void getParametersToDisplay() throws Exception {
+        QueryInfo queryInfo = QueryInfoBuilder.create()
+                .query("select 1")
+                .param("name", "foo")
+                .param("10", "FOO")
+                .param("2", 100)
+                .build();
+
+        SortedMap<String, String> paramMap = new DefaultQueryLogEntryCreator().getParametersToDisplay(queryInfo.getParametersList().get(0));
+        assertThat(paramMap.keySet()).containsExactly("2", "10", "name");
+        paramMap.put("3", "BAZ");  // mutable
+        assertThat(paramMap.keySet()).containsExactly("2", "3", "10", "name");
+    }
+
     @Test
     public void statementType() throws Exception {
         ExecutionInfo executionInfo;
@@ -0,0 +1,121 @@
+package net.ttddyy.dsproxy.proxy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ColumnarRowStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final int[] TYPES = {Types.INTEGER, Types.BIGINT, Types.DOUBLE, Types.BOOLEAN, Types.TIMESTAMP};
+
+    private static Object[] row(Object... values) {
+        Object[] row = new Object[values.length + 1];
+        System.arraycopy(values, 0, row, 1, values.length);
+        return row;
+    }
+
+    @Test
+    public void storeAndRetrieve() throws Exception {
+        Timestamp timestamp = new Timestamp(1000L);
+        ColumnarRowStore store = new ColumnarRowStore(TYPES, 0, null);
+        for (int i = 0; i < 100; i++) {
+            store.addRow(row(i, (long) i * 10, i / 2.0, i % 2 == 0, timestamp));
+        }
+        store.addRow(row(null, null, null, null, null));
+
+        assertThat(store.size()).isEqualTo(101);
+        assertThat(store.getValue(0, 1)).isEqualTo(0);
+        assertThat(store.getValue(99, 1)).isEqualTo(99);
+        assertThat(store.getValue(99, 2)).isEqualTo(990L);
+        assertThat(store.getValue(99, 3)).isEqualTo(49.5);
+        assertThat(store.getValue(98, 4)).isEqualTo(true);
+        assertThat(store.getValue(99, 4)).isEqualTo(false);
+        assertThat(store.getValue(99, 5)).isSameAs(timestamp);
+        for (int i = 1; i <= TYPES.length; i++) {
+            assertThat(store.getValue(100, i)).isNull();
+        }
+    }
+
+    @Test
+    public void fallbackToObject() throws Exception {
+        ColumnarRowStore store = new ColumnarRowStore(new int[]{Types.INTEGER}, 0, null);
+        store.addRow(row(1));
+        store.addRow(row((Object) null));
+        store.addRow(row("3"));  // e.g. getString() on integer column
+        store.addRow(row(4));
+
+        assertThat(store.getValue(0, 1)).isEqualTo(1);
+        assertThat(store.getValue(1, 1)).isNull();
+        assertThat(store.getValue(2, 1)).isEqualTo("3");
+        assertThat(store.getValue(3, 1)).isEqualTo(4);
+    }
+
+    @Test
+    public void invalidColumnIndex() throws Exception {
+        ColumnarRowStore store = new ColumnarRowStore(new int[]{Types.INTEGER}, 0, null);
+        store.addRow(row(1));
+        try {
+            store.getValue(0, 2);
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("Invalid column index 2");
+        }
+    }
+
+    @Test
+    public void spill() throws Exception {
+        File directory = this.temporaryFolder.newFolder();
+        ColumnarRowStore store = new ColumnarRowStore(new int[]{Types.INTEGER, Types.VARCHAR}, 10, directory);
+        for (int i = 0; i < 2500; i++) {
+            store.addRow(row(i, "name-" + i));
+        }
+        assertThat(store.size()).isEqualTo(2500);
+        assertThat(store.getSpilledRowCount()).isEqualTo(2490);
+        assertThat(directory.listFiles()).hasSize(1);
+
+        for (int i = 0; i < 2500; i++) {
+            assertThat(store.getValue(i, 1)).isEqualTo(i);
+            assertThat(store.getValue(i, 2)).isEqualTo("name-" + i);
+        }
+
+        // read again from the beginning
+        assertThat(store.getValue(10, 2)).isEqualTo("name-10");
+        assertThat(store.getValue(2499, 2)).isEqualTo("name-2499");
+        assertThat(store.getValue(11, 2)).isEqualTo("name-11");
+
+        store.close();
+        assertThat(directory.listFiles()).isEmpty();
+    }
+
+    @Test
+    public void spillNonSerializableValue() throws Exception {
+        ColumnarRowStore store = new ColumnarRowStore(new int[]{Types.OTHER}, 1, this.temporaryFolder.newFolder());
+        store.addRow(row(new Object()));
+        try {
+            store.addRow(row(new Object()));
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).contains("column 1").contains("java.lang.Object");
+        }
+
+        // spill file is still usable
+        store.addRow(row("serializable"));
+        assertThat(store.getValue(1, 1)).isEqualTo("serializable");
+        store.close();
+    }
+
+}
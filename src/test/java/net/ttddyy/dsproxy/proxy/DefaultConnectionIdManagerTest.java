@@ -3,6 +3,11 @@ package net.ttddyy.dsproxy.proxy;
 import org.junit.Test;
 
 import java.sql.Connection;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -48,4 +53,44 @@ public class DefaultConnectionIdManagerTest {
         assertThat(idManager.getOpenConnectionIds()).isEmpty();
 
     }
+
+    @Test
+    public void getOpenConnectionIdsIsView() {
+        DefaultConnectionIdManager idManager = new DefaultConnectionIdManager();
+
+        Set<String> openIds = idManager.getOpenConnectionIds();
+        assertThat(openIds).isEmpty();
+
+        String id = idManager.getId(null);
+        assertThat(openIds).containsExactly(id);
+
+        idManager.addClosedId(id);
+        assertThat(openIds).isEmpty();
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final DefaultConnectionIdManager idManager = new DefaultConnectionIdManager();
+        final int numOfThreads = 8;
+        final int numOfIterations = 1000;
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(numOfThreads);
+        for (int i = 0; i < numOfThreads; i++) {
+            executor.submit(() -> {
+                latch.await();
+                for (int j = 0; j < numOfIterations; j++) {
+                    String id = idManager.getId(null);
+                    idManager.addClosedId(id);
+                }
+                return null;
+            });
+        }
+        latch.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(idManager.getOpenConnectionIds()).isEmpty();
+        assertThat(idManager.getId(null)).isEqualTo(String.valueOf(numOfThreads * numOfIterations + 1));
+    }
 }
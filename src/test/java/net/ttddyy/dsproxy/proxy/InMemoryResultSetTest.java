@@ -0,0 +1,223 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class InMemoryResultSetTest {
+
+    private DataSource dataSource;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dataSource = TestUtils.getDataSourceWithData();
+        this.connection = this.dataSource.getConnection();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.connection.close();
+        TestUtils.shutdown(this.dataSource);
+    }
+
+    private InMemoryResultSet query(String sql) throws SQLException {
+        Statement statement = this.connection.createStatement();
+        ResultSet rs = statement.executeQuery(sql);
+        InMemoryResultSet inMemoryResultSet = new InMemoryResultSet(rs);
+        statement.close();  // disconnected from the statement
+        return inMemoryResultSet;
+    }
+
+    @Test
+    public void getters() throws Exception {
+        InMemoryResultSet rs = query("select id, name, null as nothing from emp order by id");
+
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(1);
+        assertThat(rs.getLong("ID")).isEqualTo(1L);
+        assertThat(rs.getString("id")).isEqualTo("1");
+        assertThat(rs.getBigDecimal("Id")).isEqualTo(BigDecimal.ONE);
+        assertThat(rs.getObject(1)).isEqualTo(1);
+        assertThat(rs.getObject(1, Long.class)).isEqualTo(1L);
+        assertThat(rs.getString("name")).isEqualTo("foo");
+        assertThat(rs.wasNull()).isFalse();
+        assertThat(rs.getInt("nothing")).isEqualTo(0);
+        assertThat(rs.wasNull()).isTrue();
+        assertThat(rs.getObject("nothing", Integer.class)).isNull();
+
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt("id")).isEqualTo(2);
+        assertThat(rs.getString(2)).isEqualTo("bar");
+        assertThat(rs.next()).isFalse();
+
+        try {
+            rs.getString(1);
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("No current row");
+        }
+
+        try {
+            rs.getInt("name");
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+        }
+
+        try {
+            rs.findColumn("unknown");
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("Unknown column name 'unknown'");
+        }
+    }
+
+    @Test
+    public void scroll() throws Exception {
+        InMemoryResultSet rs = query("select id from emp order by id");
+
+        assertThat(rs.isBeforeFirst()).isTrue();
+        assertThat(rs.last()).isTrue();
+        assertThat(rs.isLast()).isTrue();
+        assertThat(rs.getRow()).isEqualTo(2);
+        assertThat(rs.previous()).isTrue();
+        assertThat(rs.isFirst()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(1);
+        assertThat(rs.previous()).isFalse();
+        assertThat(rs.isBeforeFirst()).isTrue();
+        assertThat(rs.absolute(-1)).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(2);
+        assertThat(rs.relative(-1)).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(1);
+        assertThat(rs.relative(5)).isFalse();
+        assertThat(rs.isAfterLast()).isTrue();
+        assertThat(rs.getRow()).isEqualTo(0);
+        assertThat(rs.first()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(1);
+        rs.afterLast();
+        assertThat(rs.previous()).isTrue();
+        assertThat(rs.getInt(1)).isEqualTo(2);
+    }
+
+    @Test
+    public void emptyResult() throws Exception {
+        InMemoryResultSet rs = query("select id from emp where id = 0");
+        assertThat(rs.isBeforeFirst()).isFalse();
+        assertThat(rs.next()).isFalse();
+        assertThat(rs.first()).isFalse();
+        assertThat(rs.last()).isFalse();
+    }
+
+    @Test
+    public void metaData() throws Exception {
+        InMemoryResultSet rs = query("select id, name as emp_name from emp");
+        ResultSetMetaData metaData = rs.getMetaData();
+        assertThat(metaData).isInstanceOf(ResultSetMetaDataSnapshot.class);
+        assertThat(metaData.getColumnCount()).isEqualTo(2);
+        assertThat(metaData.getColumnLabel(2)).isEqualToIgnoringCase("emp_name");
+        assertThat(metaData.getColumnName(2)).isEqualToIgnoringCase("name");
+        assertThat(metaData.getColumnType(1)).isEqualTo(Types.INTEGER);
+        assertThat(metaData.getColumnType(2)).isEqualTo(Types.VARCHAR);
+        assertThat(metaData.getTableName(1)).isEqualToIgnoringCase("emp");
+    }
+
+    @Test
+    public void copy() throws Exception {
+        InMemoryResultSet rs = query("select id from emp order by id");
+        assertThat(rs.next()).isTrue();
+        rs.close();
+
+        InMemoryResultSet copy = rs.copy();
+        assertThat(copy.isClosed()).isFalse();
+        assertThat(copy.next()).isTrue();
+        assertThat(copy.getInt(1)).isEqualTo(1);
+    }
+
+    @Test
+    public void mutableValuesAreNotShared() throws Exception {
+        InMemoryResultSet rs = query("select cast(X'0102' as varbinary(2)) as bin, cast(X'0102' as blob) as lob,"
+                + " cast('abc' as clob) as text, timestamp '2020-01-01 00:00:00' as ts from emp where id = 1");
+        InMemoryResultSet copy = rs.copy();
+        assertThat(rs.next()).isTrue();
+        assertThat(copy.next()).isTrue();
+
+        ((byte[]) rs.getObject("bin"))[0] = 9;
+        rs.getBlob("lob").free();
+        rs.getClob("text").free();
+        ((Timestamp) rs.getObject("ts")).setTime(0);
+        rs.getTimestamp("ts").setTime(0);
+
+        assertThat((byte[]) copy.getObject("bin")).containsExactly(1, 2);
+        Blob blob = copy.getBlob("lob");
+        assertThat(blob.getBytes(1, (int) blob.length())).containsExactly(1, 2);
+        Clob clob = copy.getClob("text");
+        assertThat(clob.getSubString(1, (int) clob.length())).isEqualTo("abc");
+        assertThat(copy.getTimestamp("ts")).isEqualTo(Timestamp.valueOf("2020-01-01 00:00:00"));
+    }
+
+    @Test
+    public void close() throws Exception {
+        InMemoryResultSet rs = query("select id from emp");
+        rs.close();
+        assertThat(rs.isClosed()).isTrue();
+        try {
+            rs.next();
+            fail("SQLException should be thrown");
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).isEqualTo("ResultSet is closed");
+        }
+    }
+
+    @Test
+    public void readOnly() throws Exception {
+        InMemoryResultSet rs = query("select id from emp");
+        assertThat(rs.getConcurrency()).isEqualTo(ResultSet.CONCUR_READ_ONLY);
+        assertThat(rs.getType()).isEqualTo(ResultSet.TYPE_SCROLL_INSENSITIVE);
+        rs.next();
+        try {
+            rs.updateInt(1, 10);
+            fail("SQLFeatureNotSupportedException should be thrown");
+        } catch (SQLFeatureNotSupportedException e) {
+        }
+    }
+
+    @Test
+    public void proxyLogicFactory() throws Exception {
+        DataSource proxyDataSource = ProxyDataSourceBuilder.create(this.dataSource)
+                .proxyResultSet(new InMemoryResultSetProxyLogicFactory())
+                .build();
+        Connection conn = proxyDataSource.getConnection();
+        ResultSet rs = conn.createStatement().executeQuery("select id from emp order by id");
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.next()).isTrue();
+        rs.beforeFirst();
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getInt("ID")).isEqualTo(1);
+        assertThat(((ProxyJdbcObject) rs).getTarget()).isNotInstanceOf(InMemoryResultSet.class);
+        rs.close();
+        assertThat(rs.isClosed()).isTrue();
+        conn.close();
+    }
+
+}
@@ -0,0 +1,34 @@
+package net.ttddyy.dsproxy.proxy;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ParameterKeyUtilsTest {
+
+    @Test
+    public void parseIntOrNull() {
+        assertThat(ParameterKeyUtils.parseIntOrNull("0")).isEqualTo(0);
+        assertThat(ParameterKeyUtils.parseIntOrNull("123")).isEqualTo(123);
+        assertThat(ParameterKeyUtils.parseIntOrNull("-123")).isEqualTo(-123);
+        assertThat(ParameterKeyUtils.parseIntOrNull("+123")).isEqualTo(123);
+        assertThat(ParameterKeyUtils.parseIntOrNull("007")).isEqualTo(7);
+        assertThat(ParameterKeyUtils.parseIntOrNull("2147483647")).isEqualTo(Integer.MAX_VALUE);
+        assertThat(ParameterKeyUtils.parseIntOrNull("-2147483648")).isEqualTo(Integer.MIN_VALUE);
+
+        assertThat(ParameterKeyUtils.parseIntOrNull(null)).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("-")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("foo")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("1a")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("1.0")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull(" 1")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("2147483648")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("-2147483649")).isNull();
+        assertThat(ParameterKeyUtils.parseIntOrNull("99999999999999999999999")).isNull();
+    }
+
+}
@@ -0,0 +1,190 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class PreparedStatementCacheTest {
+
+    private DataSource actualDataSource;
+    private ProxyDataSource proxyDataSource;
+    private PreparedStatementCacheMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.proxyDataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .cachePreparedStatements(2)
+                .build();
+        this.metrics = this.proxyDataSource.getProxyConfig().getPreparedStatementCacheMetrics();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private static Object getTarget(PreparedStatement ps) {
+        return ((ProxyJdbcObject) ps).getTarget();
+    }
+
+    @Test
+    public void reuse() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+
+        PreparedStatement ps1 = conn.prepareStatement("select * from emp where id = ?");
+        ps1.setInt(1, 1);
+        ps1.executeQuery();
+        Object actual = getTarget(ps1);
+        ps1.close();
+
+        assertThat(ps1.isClosed()).isTrue();
+
+        PreparedStatement ps2 = conn.prepareStatement("select * from emp where id = ?");
+        assertThat(getTarget(ps2)).isSameAs(actual);
+        assertThat(ps2).isNotSameAs(ps1);
+
+        // parameters are cleared
+        try {
+            ps2.executeQuery();
+            fail("parameter should be cleared");
+        } catch (SQLException e) {
+        }
+        ps2.setInt(1, 2);
+        ResultSet rs = ps2.executeQuery();
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.getString("name")).isEqualTo("bar");
+
+        // closed proxy cannot be used
+        try {
+            ps1.executeQuery();
+            fail("closed statement should not be used");
+        } catch (SQLException e) {
+        }
+
+        assertThat(this.metrics.getMisses()).isEqualTo(1);
+        assertThat(this.metrics.getHits()).isEqualTo(1);
+        conn.close();
+    }
+
+    @Test
+    public void settingsAreRestored() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+
+        PreparedStatement ps1 = conn.prepareStatement("select * from emp");
+        int fetchSize = ps1.getFetchSize();
+        ps1.setMaxRows(1);
+        ps1.setFetchSize(fetchSize + 10);
+        ps1.setQueryTimeout(5);
+        ResultSet rs = ps1.executeQuery();
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.next()).isFalse();
+        ps1.close();
+
+        PreparedStatement ps2 = conn.prepareStatement("select * from emp");
+        assertThat(ps2.getMaxRows()).isEqualTo(0);
+        assertThat(ps2.getFetchSize()).isEqualTo(fetchSize);
+        assertThat(ps2.getQueryTimeout()).isEqualTo(0);
+        rs = ps2.executeQuery();
+        assertThat(rs.next()).isTrue();
+        assertThat(rs.next()).isTrue();
+
+        assertThat(this.metrics.getHits()).isEqualTo(1);
+        conn.close();
+    }
+
+    @Test
+    public void keyIncludesArguments() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        String query = "select * from emp";
+
+        PreparedStatement ps1 = conn.prepareStatement(query);
+        Object actual = getTarget(ps1);
+        ps1.close();
+
+        PreparedStatement ps2 = conn.prepareStatement(query, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        Object actual2 = getTarget(ps2);
+        assertThat(actual2).isNotSameAs(actual);
+        ps2.close();
+
+        PreparedStatement ps3 = conn.prepareStatement(query, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+        assertThat(getTarget(ps3)).isSameAs(actual2);
+
+        assertThat(this.metrics.getMisses()).isEqualTo(2);
+        assertThat(this.metrics.getHits()).isEqualTo(1);
+        conn.close();
+    }
+
+    @Test
+    public void inUseStatementIsNotShared() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        PreparedStatement ps1 = conn.prepareStatement("select * from emp");
+        PreparedStatement ps2 = conn.prepareStatement("select * from emp");
+        assertThat(getTarget(ps2)).isNotSameAs(getTarget(ps1));
+        conn.close();
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+
+        PreparedStatement ps1 = conn.prepareStatement("select * from emp where id = 1");
+        PreparedStatement ps2 = conn.prepareStatement("select * from emp where id = 2");
+        PreparedStatement ps3 = conn.prepareStatement("select * from emp where id = 3");
+        Statement actual1 = (Statement) getTarget(ps1);
+        ps1.close();
+        ps2.close();
+        ps3.close();
+
+        assertThat(this.metrics.getEvictions()).isEqualTo(1);
+        assertThat(actual1.isClosed()).isTrue();
+
+        conn.close();
+    }
+
+    @Test
+    public void closeConnection() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement("select * from emp");
+        Statement actual = (Statement) getTarget(ps);
+        ps.close();
+        assertThat(actual.isClosed()).isFalse();
+
+        conn.close();
+        assertThat(actual.isClosed()).isTrue();
+
+        // cache is per connection
+        conn = this.proxyDataSource.getConnection();
+        ps = conn.prepareStatement("select * from emp");
+        assertThat(getTarget(ps)).isNotSameAs(actual);
+        conn.close();
+    }
+
+    @Test
+    public void disabledByDefault() throws Exception {
+        ProxyDataSource ds = ProxyDataSourceBuilder.create(this.actualDataSource).build();
+        Connection conn = ds.getConnection();
+        PreparedStatement ps = conn.prepareStatement("select * from emp");
+        Statement actual = (Statement) getTarget(ps);
+        ps.close();
+        assertThat(actual.isClosed()).isTrue();
+        conn.close();
+    }
+
+}
@@ -0,0 +1,206 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.LastQueryListener;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryBulkheadTest {
+
+    private static List<QueryInfo> queries(String query) {
+        return Collections.singletonList(new QueryInfo(query));
+    }
+
+    @Test
+    public void limitPerDataSource() throws Exception {
+        QueryBulkhead bulkhead = new QueryBulkhead(2, 10, TimeUnit.MILLISECONDS);
+
+        QueryBulkhead.Permit first = bulkhead.acquire("myDS", queries("select 1"));
+        QueryBulkhead.Permit second = bulkhead.acquire("myDS", queries("select 2"));
+        bulkhead.acquire("otherDS", queries("select 1"));
+
+        try {
+            bulkhead.acquire("myDS", queries("select 3"));
+            fail("should time out");
+        } catch (SQLTransientException e) {
+            assertThat(e.getMessage()).contains("myDS").contains("max concurrency=2");
+        }
+
+        QueryBulkhead.Compartment compartment = bulkhead.getDataSourceCompartment("myDS");
+        assertThat(compartment.getActiveCount()).isEqualTo(2);
+        assertThat(compartment.getAcquiredCount()).isEqualTo(2);
+        assertThat(compartment.getTimeoutCount()).isEqualTo(1);
+        assertThat(compartment.getQueueDepth()).isEqualTo(0);
+
+        first.release();
+        first.release();  // no-op
+        assertThat(compartment.getActiveCount()).isEqualTo(1);
+        bulkhead.acquire("myDS", queries("select 3")).release();
+        second.release();
+        assertThat(compartment.getActiveCount()).isEqualTo(0);
+        assertThat(compartment.getAcquiredCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void limitPerPartition() throws Exception {
+        QueryBulkhead bulkhead = new QueryBulkhead(10, 10, TimeUnit.MILLISECONDS);
+        bulkhead.setMaxConcurrencyPerPartition(1);
+
+        bulkhead.acquire("myDS", queries("select * from emp where id = 1"));
+        try {
+            // same fingerprint
+            bulkhead.acquire("myDS", queries("select * from emp where id = 2"));
+            fail("should time out");
+        } catch (SQLTransientException e) {
+            assertThat(e.getMessage()).contains("myDS:select * from emp where id = ?");
+        }
+        bulkhead.acquire("myDS", queries("select * from emp_with_auto_id"));
+
+        // datasource permit is not held by the timed out execution
+        assertThat(bulkhead.getDataSourceCompartment("myDS").getActiveCount()).isEqualTo(2);
+        assertThat(bulkhead.getPartitionCompartments()).hasSize(2);
+        assertThat(bulkhead.getPartitionCompartments().get("myDS:select * from emp where id = ?").getTimeoutCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictIdlePartitions() throws Exception {
+        QueryBulkhead bulkhead = new QueryBulkhead(10, 10, TimeUnit.MILLISECONDS);
+        bulkhead.setMaxConcurrencyPerPartition(1);
+        bulkhead.setMaxPartitions(2);
+
+        QueryBulkhead.Permit inUse = bulkhead.acquire("myDS", queries("select * from emp"));
+        bulkhead.acquire("myDS", queries("select * from emp_with_auto_id")).release();
+
+        // evicts the idle partition
+        QueryBulkhead.Permit newPartition = bulkhead.acquire("myDS", queries("select * from dept"));
+        assertThat(bulkhead.getPartitionCompartments()).containsOnlyKeys("myDS:select * from emp", "myDS:select * from dept");
+
+        // all partitions are in use, the new one is only limited per datasource
+        bulkhead.acquire("myDS", queries("select * from project"));
+        bulkhead.acquire("myDS", queries("select * from project"));
+        assertThat(bulkhead.getPartitionCompartments()).containsOnlyKeys("myDS:select * from emp", "myDS:select * from dept");
+
+        inUse.release();
+        newPartition.release();
+        bulkhead.acquire("myDS", queries("select * from project"));
+        // least recently acquired one is evicted
+        assertThat(bulkhead.getPartitionCompartments()).containsOnlyKeys("myDS:select * from dept", "myDS:select * from project");
+    }
+
+    @Test
+    public void waitForPermit() throws Exception {
+        final QueryBulkhead bulkhead = new QueryBulkhead(1, 5, TimeUnit.SECONDS);
+        final QueryBulkhead.Permit permit = bulkhead.acquire("myDS", queries("select 1"));
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                permit.release();
+            }
+        });
+        thread.start();
+        bulkhead.acquire("myDS", queries("select 1")).release();
+        thread.join();
+
+        QueryBulkhead.Compartment compartment = bulkhead.getDataSourceCompartment("myDS");
+        assertThat(compartment.getAcquiredCount()).isEqualTo(2);
+        assertThat(compartment.getMaxWaitTimeInNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(compartment.getTotalWaitTimeInNanos()).isGreaterThanOrEqualTo(compartment.getMaxWaitTimeInNanos());
+    }
+
+    @Test
+    public void waitTimeIsNotElapsedTime() throws Exception {
+        DataSource actualDataSource = TestUtils.getDataSourceWithData();
+        try {
+            final QueryBulkhead bulkhead = new QueryBulkhead(1, 5, TimeUnit.SECONDS);
+            LastQueryListener listener = new LastQueryListener();
+            DataSource dataSource = ProxyDataSourceBuilder.create(actualDataSource)
+                    .name("myDS")
+                    .listener(listener)
+                    .limitConcurrency(bulkhead)
+                    .build();
+
+            // held by other execution for a while
+            final QueryBulkhead.Permit permit = bulkhead.acquire("myDS", queries("select 1"));
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(300);
+                    } catch (InterruptedException e) {
+                    }
+                    permit.release();
+                }
+            });
+            thread.start();
+
+            Connection conn = dataSource.getConnection();
+            conn.createStatement().executeQuery("select * from emp");
+            conn.close();
+            thread.join();
+
+            assertThat(bulkhead.getDataSourceCompartment("myDS").getMaxWaitTimeInNanos()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+            assertThat(listener.getAfterExecInfo().getElapsedTime()).isLessThan(200);
+        } finally {
+            TestUtils.shutdown(actualDataSource);
+        }
+    }
+
+    @Test
+    public void statement() throws Exception {
+        DataSource actualDataSource = TestUtils.getDataSourceWithData();
+        try {
+            QueryBulkhead bulkhead = new QueryBulkhead(1, 10, TimeUnit.MILLISECONDS);
+            LastQueryListener listener = new LastQueryListener();
+            DataSource dataSource = ProxyDataSourceBuilder.create(actualDataSource)
+                    .name("myDS")
+                    .listener(listener)
+                    .limitConcurrency(bulkhead)
+                    .build();
+
+            Connection conn = dataSource.getConnection();
+            Statement stmt = conn.createStatement();
+            stmt.executeQuery("select * from emp");
+            assertThat(bulkhead.getDataSourceCompartment("myDS").getAcquiredCount()).isEqualTo(1);
+            assertThat(bulkhead.getDataSourceCompartment("myDS").getActiveCount()).isEqualTo(0);
+
+            // held by other execution
+            QueryBulkhead.Permit permit = bulkhead.acquire("myDS", queries("select 1"));
+            try {
+                stmt.executeUpdate("delete from emp");
+                fail("should time out");
+            } catch (SQLTransientException e) {
+                assertThat(listener.getAfterExecInfo().isSuccess()).isFalse();
+                assertThat(listener.getAfterExecInfo().getThrowable()).isSameAs(e);
+                assertThat(listener.getAfterExecInfo().getElapsedTime()).isEqualTo(0);
+            }
+            permit.release();
+            conn.close();
+
+            assertThat(TestUtils.countTable(actualDataSource, "emp")).isEqualTo(2);
+        } finally {
+            TestUtils.shutdown(actualDataSource);
+        }
+    }
+
+}
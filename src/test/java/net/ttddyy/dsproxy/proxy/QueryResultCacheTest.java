@@ -0,0 +1,190 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryResultCacheTest {
+
+    private DataSource actualDataSource;
+    private QueryResultCache cache;
+    private ProxyDataSource proxyDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.cache = new QueryResultCache(10, 0, TimeUnit.SECONDS).addQueryPattern("select .* from emp\\b.*");
+        this.proxyDataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .cacheQueryResults(this.cache)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private String selectName(Connection conn, int id) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("select name from emp where id = ?");
+        ps.setInt(1, id);
+        ResultSet rs = ps.executeQuery();
+        String name = rs.next() ? rs.getString(1) : null;
+        rs.close();
+        ps.close();
+        return name;
+    }
+
+    private void updateDirectly(String query) throws SQLException {
+        Connection conn = this.actualDataSource.getConnection();
+        conn.createStatement().executeUpdate(query);
+        conn.close();
+    }
+
+    @Test
+    public void readThrough() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        assertThat(selectName(conn, 1)).isEqualTo("foo");
+        assertThat(this.cache.getMisses()).isEqualTo(1);
+
+        // modification outside of the datasource is not visible
+        updateDirectly("update emp set name = 'FOO' where id = 1");
+        assertThat(selectName(conn, 1)).isEqualTo("foo");
+        assertThat(this.cache.getHits()).isEqualTo(1);
+
+        // parameters are part of the key
+        assertThat(selectName(conn, 2)).isEqualTo("bar");
+        assertThat(this.cache.getMisses()).isEqualTo(2);
+        assertThat(this.cache.size()).isEqualTo(2);
+
+        conn.close();
+    }
+
+    @Test
+    public void invalidation() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        assertThat(selectName(conn, 1)).isEqualTo("foo");
+
+        // write to other table does not invalidate
+        conn.createStatement().executeUpdate("insert into emp_with_auto_id ( name ) values ('baz')");
+        assertThat(this.cache.size()).isEqualTo(1);
+
+        conn.createStatement().executeUpdate("update emp set name = 'FOO' where id = 1");
+        assertThat(this.cache.size()).isEqualTo(0);
+        assertThat(this.cache.getInvalidations()).isEqualTo(1);
+        assertThat(selectName(conn, 1)).isEqualTo("FOO");
+
+        conn.close();
+    }
+
+    @Test
+    public void uncommittedModificationIsNotCached() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        conn.setAutoCommit(false);
+        conn.createStatement().executeUpdate("update emp set name = 'FOO' where id = 1");
+
+        assertThat(selectName(conn, 1)).isEqualTo("FOO");
+        assertThat(this.cache.size()).isEqualTo(0);
+        assertThat(this.cache.getHits() + this.cache.getMisses()).isEqualTo(0);
+
+        conn.rollback();
+        assertThat(selectName(conn, 1)).isEqualTo("foo");
+        assertThat(this.cache.size()).isEqualTo(1);
+
+        // read-only transaction uses the cache
+        assertThat(selectName(conn, 1)).isEqualTo("foo");
+        assertThat(this.cache.getHits()).isEqualTo(1);
+
+        conn.createStatement().executeUpdate("update emp set name = 'FOO' where id = 1");
+        assertThat(this.cache.size()).isEqualTo(0);
+        conn.commit();
+        conn.setAutoCommit(true);
+        assertThat(selectName(conn, 1)).isEqualTo("FOO");
+        assertThat(this.cache.size()).isEqualTo(1);
+        conn.close();
+    }
+
+    @Test
+    public void resultIsIndependentCopy() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs1 = stmt.executeQuery("select * from emp order by id");
+        ResultSet rs2 = conn.createStatement().executeQuery("select * from emp order by id");
+
+        assertThat(rs1.next()).isTrue();
+        assertThat(rs1.next()).isTrue();
+        assertThat(rs2.next()).isTrue();
+        assertThat(rs2.getInt("id")).isEqualTo(1);
+        assertThat(this.cache.getHits()).isEqualTo(1);
+        conn.close();
+    }
+
+    @Test
+    public void notMatchingPattern() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        conn.createStatement().executeQuery("select * from emp_with_auto_id").close();
+        assertThat(this.cache.size()).isEqualTo(0);
+        assertThat(this.cache.getMisses()).isEqualTo(0);
+        conn.close();
+    }
+
+    @Test
+    public void maxSize() throws Exception {
+        QueryResultCache cache = new QueryResultCache(1, 0, TimeUnit.SECONDS).addQueryPattern("select .*");
+        ProxyDataSource ds = ProxyDataSourceBuilder.create(this.actualDataSource).cacheQueryResults(cache).build();
+        Connection conn = ds.getConnection();
+        selectName(conn, 1);
+        selectName(conn, 2);
+        assertThat(cache.size()).isEqualTo(1);
+        selectName(conn, 1);
+        assertThat(cache.getHits()).isEqualTo(0);
+        conn.close();
+    }
+
+    @Test
+    public void ttl() throws Exception {
+        QueryResultCache cache = new QueryResultCache(10, 1, TimeUnit.MILLISECONDS).addQueryPattern("select .*");
+        ProxyDataSource ds = ProxyDataSourceBuilder.create(this.actualDataSource).cacheQueryResults(cache).build();
+        Connection conn = ds.getConnection();
+        selectName(conn, 1);
+        Thread.sleep(10);
+        updateDirectly("update emp set name = 'FOO' where id = 1");
+        assertThat(selectName(conn, 1)).isEqualTo("FOO");
+        assertThat(cache.getHits()).isEqualTo(0);
+        conn.close();
+    }
+
+    @Test
+    public void getReferencedTables() {
+        assertThat(this.cache.getReferencedTables("select * from emp")).containsOnly("emp");
+        assertThat(this.cache.getReferencedTables("SELECT * FROM app.Emp e, \"Dept\" AS d WHERE e.id = d.id")).containsOnly("emp", "dept");
+        assertThat(this.cache.getReferencedTables("select * from emp e\n left join dept d on e.id = d.id join foo on 1=1")).containsOnly("emp", "dept", "foo");
+        assertThat(this.cache.getReferencedTables("select * from (select id from emp) x where x.id in (select id from dept)")).containsOnly("emp", "dept");
+        assertThat(this.cache.getReferencedTables("select 1 /* from comment */")).isEmpty();
+    }
+
+    @Test
+    public void getModifiedTable() {
+        assertThat(this.cache.getModifiedTable("insert into emp values (1)")).isEqualTo("emp");
+        assertThat(this.cache.getModifiedTable("UPDATE app.EMP set name = 'a'")).isEqualTo("emp");
+        assertThat(this.cache.getModifiedTable("delete from \"emp\" where id = 1")).isEqualTo("emp");
+        assertThat(this.cache.getModifiedTable("merge into emp using dual on (1=1)")).isEqualTo("emp");
+        assertThat(this.cache.getModifiedTable("truncate table emp")).isNull();
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.ConnectionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.listener.NoOpQueryExecutionListener;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryTimeoutPolicyTest {
+
+    private static final String DS_NAME = "myDS";
+
+    @Test
+    public void getQueryTimeout() {
+        QueryTimeoutPolicy policy = new QueryTimeoutPolicy(30)
+                .forDataSource("otherDS", 20)
+                .forStatementType(StatementType.CALLABLE, 60)
+                .forQueryType(QueryType.SELECT, 10)
+                .forQueryPattern("(?i).*from report_.*", 300);
+
+        assertThat(policy.getQueryTimeout(DS_NAME, StatementType.STATEMENT, "insert into emp values (1)")).isEqualTo(30);
+        assertThat(policy.getQueryTimeout("otherDS", StatementType.STATEMENT, "insert into emp values (1)")).isEqualTo(20);
+        assertThat(policy.getQueryTimeout("otherDS", StatementType.CALLABLE, "{call foo()}")).isEqualTo(60);
+        assertThat(policy.getQueryTimeout(DS_NAME, StatementType.CALLABLE, "select * from emp")).isEqualTo(10);
+        assertThat(policy.getQueryTimeout(DS_NAME, StatementType.PREPARED, "SELECT * FROM report_sales")).isEqualTo(300);
+
+        // batch uses the largest
+        assertThat(policy.getQueryTimeout(DS_NAME, StatementType.STATEMENT,
+                Arrays.asList(new QueryInfo("select * from emp"), new QueryInfo("delete from emp")))).isEqualTo(30);
+
+        // 0 is no limit
+        policy.forQueryType(QueryType.DELETE, 0);
+        assertThat(policy.getQueryTimeout(DS_NAME, StatementType.STATEMENT,
+                Arrays.asList(new QueryInfo("select * from emp"), new QueryInfo("delete from emp")))).isEqualTo(0);
+
+        // not applied
+        assertThat(new QueryTimeoutPolicy(-1).getQueryTimeout(DS_NAME, StatementType.STATEMENT,
+                Collections.singletonList(new QueryInfo("select 1")))).isEqualTo(-1);
+    }
+
+    @Test
+    public void applyToStatement() throws Throwable {
+        QueryTimeoutPolicy policy = new QueryTimeoutPolicy(30).forQueryType(QueryType.SELECT, 10);
+        Statement statement = mock(Statement.class);
+        StatementProxyLogic logic = getProxyLogic(statement, StatementType.STATEMENT, null, policy);
+
+        Method executeQuery = Statement.class.getMethod("executeQuery", String.class);
+        Method executeUpdate = Statement.class.getMethod("executeUpdate", String.class);
+        logic.invoke(executeQuery, new Object[]{"select * from emp"});
+        logic.invoke(executeQuery, new Object[]{"select * from emp where id = 1"});
+        verify(statement, times(1)).setQueryTimeout(10);  // not called for the same timeout
+
+        logic.invoke(executeUpdate, new Object[]{"delete from emp"});
+        verify(statement).setQueryTimeout(30);
+
+        logic.invoke(executeQuery, new Object[]{"select * from emp"});
+        verify(statement, times(2)).setQueryTimeout(10);
+    }
+
+    @Test
+    public void restoreForQueryNotApplied() throws Throwable {
+        QueryTimeoutPolicy policy = new QueryTimeoutPolicy(-1).forQueryType(QueryType.SELECT, 10);
+        Statement statement = mock(Statement.class);
+        when(statement.getQueryTimeout()).thenReturn(5);
+        StatementProxyLogic logic = getProxyLogic(statement, StatementType.STATEMENT, null, policy);
+
+        Method executeQuery = Statement.class.getMethod("executeQuery", String.class);
+        Method executeUpdate = Statement.class.getMethod("executeUpdate", String.class);
+        logic.invoke(executeQuery, new Object[]{"select * from emp"});
+        verify(statement).setQueryTimeout(10);
+
+        // no rule for delete. the timeout before the policy was applied is restored
+        logic.invoke(executeUpdate, new Object[]{"delete from emp"});
+        verify(statement).setQueryTimeout(5);
+
+        logic.invoke(executeUpdate, new Object[]{"delete from emp"});
+        verify(statement, times(1)).setQueryTimeout(5);  // not restored again
+    }
+
+    @Test
+    public void specifiedByApplication() throws Throwable {
+        QueryTimeoutPolicy policy = new QueryTimeoutPolicy(30);
+        Statement statement = mock(Statement.class);
+        StatementProxyLogic logic = getProxyLogic(statement, StatementType.STATEMENT, null, policy);
+
+        logic.invoke(Statement.class.getMethod("setQueryTimeout", int.class), new Object[]{5});
+        logic.invoke(Statement.class.getMethod("executeQuery", String.class), new Object[]{"select * from emp"});
+
+        verify(statement).setQueryTimeout(5);
+        verify(statement, never()).setQueryTimeout(30);
+    }
+
+    @Test
+    public void applyToPreparedStatement() throws Throwable {
+        QueryTimeoutPolicy policy = new QueryTimeoutPolicy(-1).forQueryPattern(".*emp.*", 15);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        StatementProxyLogic logic = getProxyLogic(ps, StatementType.PREPARED, "select * from emp where id = ?", policy);
+
+        Method setInt = PreparedStatement.class.getMethod("setInt", int.class, int.class);
+        Method executeQuery = PreparedStatement.class.getMethod("executeQuery");
+        logic.invoke(setInt, new Object[]{1, 1});
+        logic.invoke(executeQuery, null);
+        logic.invoke(setInt, new Object[]{1, 2});
+        logic.invoke(executeQuery, null);
+
+        verify(ps, times(1)).setQueryTimeout(15);
+
+        // no timeout
+        PreparedStatement other = mock(PreparedStatement.class);
+        logic = getProxyLogic(other, StatementType.PREPARED, "select 1", policy);
+        logic.invoke(executeQuery, null);
+        verify(other, never()).setQueryTimeout(anyInt());
+    }
+
+    private StatementProxyLogic getProxyLogic(Statement statement, StatementType statementType, String query, QueryTimeoutPolicy policy) {
+        ConnectionInfo connectionInfo = new ConnectionInfo();
+        connectionInfo.setDataSourceName(DS_NAME);
+
+        ProxyConfig proxyConfig = ProxyConfig.Builder.create()
+                .queryListener(new NoOpQueryExecutionListener())
+                .queryTimeoutPolicy(policy)
+                .build();
+
+        return StatementProxyLogic.Builder.create()
+                .statement(statement, statementType)
+                .query(query)
+                .connectionInfo(connectionInfo)
+                .proxyConfig(proxyConfig)
+                .build();
+    }
+
+}
@@ -239,6 +239,38 @@ public class RepeatableReadResultSetProxyLogicTest {
         }).isInstanceOf(SQLException.class).hasMessage("Unknown column name 'bad'");
     }
 
+    @Test
+    public void getColumnByLabelIsCaseInsensitive() throws Throwable {
+        ResultSet resultSet = exampleResultSet();
+        RepeatableReadResultSetProxyLogic resultSetProxyLogic = createProxyLogic(resultSet);
+
+        consumeResultSetAndCallBeforeFirst(resultSet, resultSetProxyLogic);
+        invokeNext(resultSetProxyLogic);
+
+        assertThat(invokeGetString(resultSetProxyLogic, "first")).isEqualTo(COLUMN_1_VALUE);
+        assertThat(invokeGetInt(resultSetProxyLogic, "Second")).isEqualTo(COLUMN_2_VALUE);
+        assertThat(invokeGetTimestamp(resultSetProxyLogic, "THIRD")).isEqualTo(COLUMN_3_VALUE);
+    }
+
+    @Test
+    public void spillToFile() throws Throwable {
+        ResultSet resultSet = exampleResultSet();
+        RepeatableReadResultSetProxyLogicFactory factory = new RepeatableReadResultSetProxyLogicFactory(1);
+        RepeatableReadResultSetProxyLogic resultSetProxyLogic = (RepeatableReadResultSetProxyLogic) factory.create(resultSet, new ConnectionInfo(), ProxyConfig.Builder.create().build());
+
+        consumeResultSetAndCallBeforeFirst(resultSet, resultSetProxyLogic);
+
+        assertThat(invokeNext(resultSetProxyLogic)).isTrue();
+        assertThat(invokeGetString(resultSetProxyLogic, 1)).isEqualTo(COLUMN_1_VALUE);
+        assertThat(invokeNext(resultSetProxyLogic)).isTrue();
+        assertThat(invokeGetString(resultSetProxyLogic, 1)).isEqualTo(COLUMN_1_VALUE);
+        assertThat(invokeGetInt(resultSetProxyLogic, COLUMN_2_LABEL)).isEqualTo(COLUMN_2_VALUE);
+        assertThat(invokeGetTimestamp(resultSetProxyLogic, 3)).isEqualTo(COLUMN_3_VALUE);
+        assertThat(invokeNext(resultSetProxyLogic)).isFalse();
+
+        invokeClose(resultSetProxyLogic);
+    }
+
     private RepeatableReadResultSetProxyLogic createProxyLogic(ResultSet resultSet) {
         RepeatableReadResultSetProxyLogicFactory factory = new RepeatableReadResultSetProxyLogicFactory();
         return (RepeatableReadResultSetProxyLogic) factory.create(resultSet, new ConnectionInfo(), ProxyConfig.Builder.create().build());
@@ -0,0 +1,130 @@
+package net.ttddyy.dsproxy.proxy;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.ResultSetMetrics;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.listener.NoOpQueryExecutionListener;
+import net.ttddyy.dsproxy.listener.ResultSetMetricsListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ResultSetMetricsProxyLogicTest {
+
+    private static class MetricsListener extends NoOpQueryExecutionListener implements ResultSetMetricsListener {
+
+        private List<ExecutionInfo> executionInfos = new ArrayList<>();
+        private List<List<QueryInfo>> queries = new ArrayList<>();
+        private List<ResultSetMetrics> metrics = new ArrayList<>();
+
+        @Override
+        public void afterResultSetClose(ExecutionInfo execInfo, List<QueryInfo> queryInfoList, ResultSetMetrics metrics) {
+            this.executionInfos.add(execInfo);
+            this.queries.add(queryInfoList);
+            this.metrics.add(metrics);
+        }
+    }
+
+    private DataSource actualDataSource;
+    private MetricsListener listener;
+    private ProxyDataSource proxyDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.listener = new MetricsListener();
+        this.proxyDataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .listener(this.listener)
+                .proxyResultSetWithMetrics()
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void partialRead() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select * from emp");
+        rs.next();
+        assertThat(this.listener.metrics).isEmpty();
+        rs.close();
+        rs.close();  // reported only once
+        conn.close();
+
+        assertThat(this.listener.metrics).hasSize(1);
+        ResultSetMetrics metrics = this.listener.metrics.get(0);
+        assertThat(metrics.getRowCount()).isEqualTo(1);
+        assertThat(metrics.getTimeToFirstRow()).isGreaterThanOrEqualTo(0);
+        assertThat(metrics.getOpenDuration()).isGreaterThanOrEqualTo(metrics.getTimeToFirstRow());
+        assertThat(metrics.isAllRowsRead()).isFalse();
+
+        assertThat(this.listener.executionInfos.get(0).getDataSourceName()).isEqualTo("myDS");
+        assertThat(this.listener.queries.get(0)).extracting("query").containsExactly("select * from emp");
+    }
+
+    @Test
+    public void fullRead() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select * from emp");
+        int count = 0;
+        while (rs.next()) {
+            count++;
+        }
+        rs.close();
+        conn.close();
+
+        ResultSetMetrics metrics = this.listener.metrics.get(0);
+        assertThat(metrics.getRowCount()).isEqualTo(count);
+        assertThat(metrics.isAllRowsRead()).isTrue();
+    }
+
+    @Test
+    public void noRow() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select * from emp where id = -1");
+        assertThat(rs.next()).isFalse();
+        rs.close();
+        conn.close();
+
+        ResultSetMetrics metrics = this.listener.metrics.get(0);
+        assertThat(metrics.getRowCount()).isEqualTo(0);
+        assertThat(metrics.getTimeToFirstRow()).isEqualTo(-1);
+        assertThat(metrics.isAllRowsRead()).isTrue();
+    }
+
+    @Test
+    public void getResultSet() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.execute("select * from emp");
+        ResultSet rs = stmt.getResultSet();
+        rs.next();
+        rs.close();
+        conn.close();
+
+        // origin is the last query execution
+        assertThat(this.listener.queries.get(0)).extracting("query").containsExactly("select * from emp");
+    }
+
+}
@@ -1,8 +1,10 @@
 package net.ttddyy.dsproxy.support;
 
 import net.ttddyy.dsproxy.ConnectionIdManager;
+import net.ttddyy.dsproxy.DataSourceProxyException;
 import net.ttddyy.dsproxy.ExecutionInfo;
 import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.AdaptiveSlowQueryThreshold;
 import net.ttddyy.dsproxy.listener.ChainListener;
 import net.ttddyy.dsproxy.listener.CompositeMethodListener;
 import net.ttddyy.dsproxy.listener.DataSourceQueryCountListener;
@@ -10,6 +12,7 @@ import net.ttddyy.dsproxy.listener.MethodExecutionContext;
 import net.ttddyy.dsproxy.listener.MethodExecutionListener;
 import net.ttddyy.dsproxy.listener.QueryCountStrategy;
 import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.listener.SlowQueryListener;
 import net.ttddyy.dsproxy.listener.ThreadQueryCountHolder;
 import net.ttddyy.dsproxy.listener.TracingMethodListener;
 import net.ttddyy.dsproxy.listener.lifecycle.JdbcLifecycleEventExecutionListener;
@@ -30,15 +33,22 @@ import net.ttddyy.dsproxy.listener.logging.SystemOutQueryLoggingListener;
 import net.ttddyy.dsproxy.listener.logging.SystemOutSlowQueryListener;
 import net.ttddyy.dsproxy.proxy.JdbcProxyFactory;
 import net.ttddyy.dsproxy.proxy.RepeatableReadResultSetProxyLogicFactory;
+import net.ttddyy.dsproxy.proxy.ResultSetMetricsProxyLogicFactory;
 import net.ttddyy.dsproxy.proxy.ResultSetProxyLogicFactory;
+import net.ttddyy.dsproxy.support.jmx.ProxyDataSourceControl;
 import org.junit.Test;
 
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -243,6 +253,25 @@ public class ProxyDataSourceBuilderTest {
         getAndVerifyListener(ds, SystemOutSlowQueryListener.class);
     }
 
+    @Test
+    public void adaptiveSlowQueryThreshold() {
+        AdaptiveSlowQueryThreshold adaptiveThreshold = new AdaptiveSlowQueryThreshold();
+        ProxyDataSource ds = ProxyDataSourceBuilder.create()
+                .logSlowQueryBySlf4j(10, TimeUnit.SECONDS)
+                .logSlowQueryToSysOut(10, TimeUnit.SECONDS)
+                .adaptiveSlowQueryThreshold(adaptiveThreshold)
+                .build();
+
+        List<QueryExecutionListener> listeners = ((ChainListener) ds.getProxyConfig().getQueryListener()).getListeners();
+        assertThat(listeners).hasSize(2);
+        SlowQueryListener first = (SlowQueryListener) listeners.get(0);
+        SlowQueryListener second = (SlowQueryListener) listeners.get(1);
+        assertThat(first.getAdaptiveThreshold()).isSameAs(adaptiveThreshold);
+        assertThat(second.getAdaptiveThreshold()).isSameAs(adaptiveThreshold);
+        assertThat(first.isRecordAdaptiveThreshold()).as("only one listener records execution times").isTrue();
+        assertThat(second.isRecordAdaptiveThreshold()).isFalse();
+    }
+
     @Test
     public void multiline() {
         ProxyDataSource ds;
@@ -558,6 +587,11 @@ public class ProxyDataSourceBuilderTest {
         assertThat(ds.getProxyConfig().isResultSetProxyEnabled()).isTrue();
         assertThat(ds.getProxyConfig().getResultSetProxyLogicFactory()).isInstanceOf(RepeatableReadResultSetProxyLogicFactory.class);
 
+        // with metrics proxy factory
+        ds = ProxyDataSourceBuilder.create().proxyResultSetWithMetrics().build();
+        assertThat(ds.getProxyConfig().isResultSetProxyEnabled()).isTrue();
+        assertThat(ds.getProxyConfig().getResultSetProxyLogicFactory()).isInstanceOf(ResultSetMetricsProxyLogicFactory.class);
+
     }
 
     @Test
@@ -667,4 +701,25 @@ public class ProxyDataSourceBuilderTest {
         assertThat(ds.getProxyConfig().isRetrieveGeneratedKeysForBatchPreparedOrCallable()).isFalse();
 
     }
+
+    @Test
+    public void registerMBean() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = ProxyDataSourceControl.createObjectName("mbeanDS");
+
+        ProxyDataSource proxyDataSource = ProxyDataSourceBuilder.create().name("mbeanDS").registerMBean().build();
+        assertThat(mBeanServer.isRegistered(objectName)).isTrue();
+
+        // building again with the same name fails
+        try {
+            ProxyDataSourceBuilder.create().name("mbeanDS").registerMBean().build();
+            fail("registration with the same name should fail");
+        } catch (DataSourceProxyException e) {
+            assertThat(e.getCause()).isInstanceOf(InstanceAlreadyExistsException.class);
+        }
+        assertThat(mBeanServer.isRegistered(objectName)).isTrue();
+
+        proxyDataSource.close();
+        assertThat(mBeanServer.isRegistered(objectName)).isFalse();
+    }
 }
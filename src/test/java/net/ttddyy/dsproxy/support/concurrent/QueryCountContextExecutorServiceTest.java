@@ -0,0 +1,157 @@
+package net.ttddyy.dsproxy.support.concurrent;
+
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.QueryCountHolder;
+import net.ttddyy.dsproxy.QueryCountScope;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.listener.ScopedQueryCountHolder;
+import net.ttddyy.dsproxy.listener.ThreadQueryCountHolder;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class QueryCountContextExecutorServiceTest {
+
+    private DataSource actualDataSource;
+    private ExecutorService executorService;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.executorService = Executors.newFixedThreadPool(2);
+        QueryCountHolder.clear();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        this.executorService.shutdownNow();
+        QueryCountHolder.clear();
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    private static void select(DataSource dataSource) throws SQLException {
+        Connection conn = dataSource.getConnection();
+        conn.createStatement().executeQuery("select * from emp");
+        conn.close();
+    }
+
+    @Test
+    public void threadQueryCountHolder() throws Exception {
+        final DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .name("myDS").countQuery(new ThreadQueryCountHolder()).build();
+        ExecutorService executor = new QueryCountContextExecutorService(this.executorService);
+
+        // worker creates the query count for the request
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < 4; i++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    select(dataSource);
+                    return null;
+                }
+            });
+        }
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            future.get();
+        }
+        select(dataSource);
+
+        assertThat(QueryCountHolder.get("myDS").getSelect()).isEqualTo(5);
+
+        // workers do not keep the counts of the request
+        Future<QueryCount> workerCount = this.executorService.submit(new Callable<QueryCount>() {
+            @Override
+            public QueryCount call() throws Exception {
+                return QueryCountHolder.get("myDS");
+            }
+        });
+        assertThat(workerCount.get()).isNull();
+    }
+
+    @Test
+    public void workerCompletedAfterClear() throws Exception {
+        final DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .name("myDS").countQuery(new ThreadQueryCountHolder()).build();
+        ExecutorService executor = new QueryCountContextExecutorService(this.executorService);
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        Future<Void> future = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                latch.await();
+                select(dataSource);
+                return null;
+            }
+        });
+
+        // end of the request
+        QueryCountHolder.clear();
+
+        // next request on the same thread
+        select(dataSource);
+        latch.countDown();
+        future.get();
+
+        assertThat(QueryCountHolder.get("myDS").getSelect()).isEqualTo(1);
+    }
+
+    @Test
+    public void completableFuture() throws Exception {
+        final DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .name("myDS").countQuery(new ThreadQueryCountHolder()).build();
+        QueryCountContextExecutor executor = new QueryCountContextExecutor(this.executorService);
+
+        CompletableFuture.runAsync(() -> {
+            try {
+                select(dataSource);
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }, executor).get(5, TimeUnit.SECONDS);
+
+        assertThat(QueryCountHolder.get("myDS").getSelect()).isEqualTo(1);
+    }
+
+    @Test
+    public void scope() throws Exception {
+        final DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .name("myDS").countQuery(new ScopedQueryCountHolder()).build();
+        ExecutorService executor = new QueryCountContextExecutorService(this.executorService);
+
+        QueryCountScope scope = QueryCountScope.open();
+        try {
+            executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    select(dataSource);
+                    return null;
+                }
+            }).get();
+        } finally {
+            scope.close();
+        }
+
+        assertThat(scope.get("myDS").getSelect()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,162 @@
+package net.ttddyy.dsproxy.support.jmx;
+
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.listener.InFlightQueryCountListener;
+import net.ttddyy.dsproxy.listener.SingleQueryCountHolder;
+import net.ttddyy.dsproxy.listener.SlowQueryListener;
+import net.ttddyy.dsproxy.listener.logging.AbstractQueryLoggingListener;
+import net.ttddyy.dsproxy.listener.logging.SystemOutQueryLoggingListener;
+import net.ttddyy.dsproxy.listener.logging.SystemOutSlowQueryListener;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class ProxyDataSourceControlTest {
+
+    private DataSource actualDataSource;
+    private ProxyDataSource proxyDataSource;
+    private MBeanServer mBeanServer;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.proxyDataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .countQuery(new SingleQueryCountHolder())
+                .logQueryToSysOut()
+                .logSlowQueryToSysOut(1, TimeUnit.MINUTES)
+                .build();
+        this.mBeanServer = MBeanServerFactory.newMBeanServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void attributes() throws Exception {
+        ObjectName objectName = ProxyDataSourceControl.register(this.mBeanServer, this.proxyDataSource);
+        assertThat(objectName.toString()).isEqualTo("net.ttddyy.dsproxy:type=ProxyDataSource,name=\"myDS\"");
+
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.executeQuery("select * from emp");
+        stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+
+        assertThat(this.mBeanServer.getAttribute(objectName, "DataSourceName")).isEqualTo("myDS");
+        assertThat(this.mBeanServer.getAttribute(objectName, "SelectCount")).isEqualTo(1L);
+        assertThat(this.mBeanServer.getAttribute(objectName, "UpdateCount")).isEqualTo(1L);
+        assertThat(this.mBeanServer.getAttribute(objectName, "TotalCount")).isEqualTo(2L);
+        assertThat(this.mBeanServer.getAttribute(objectName, "StatementCount")).isEqualTo(2L);
+        assertThat(this.mBeanServer.getAttribute(objectName, "OpenConnectionCount")).isEqualTo(1);
+        assertThat((String[]) this.mBeanServer.getAttribute(objectName, "OpenConnectionIds")).hasSize(1);
+        assertThat(this.mBeanServer.getAttribute(objectName, "InFlightQueryCount")).isEqualTo(0);
+        assertThat(this.mBeanServer.getAttribute(objectName, "SlowQueryThreshold")).isEqualTo(1L);
+        assertThat(this.mBeanServer.getAttribute(objectName, "SlowQueryThresholdTimeUnit")).isEqualTo("MINUTES");
+
+        conn.close();
+        assertThat(this.mBeanServer.getAttribute(objectName, "OpenConnectionCount")).isEqualTo(0);
+
+        this.mBeanServer.invoke(objectName, "resetQueryCount", null, null);
+        assertThat(this.mBeanServer.getAttribute(objectName, "TotalCount")).isEqualTo(0L);
+    }
+
+    @Test
+    public void operations() throws Exception {
+        ObjectName objectName = ProxyDataSourceControl.register(this.mBeanServer, this.proxyDataSource);
+
+        AbstractQueryLoggingListener loggingListener = null;
+        SlowQueryListener slowQueryListener = null;
+        for (Object listener : this.proxyDataSource.getProxyConfig().getQueryListener().getListeners()) {
+            if (listener instanceof SystemOutQueryLoggingListener) {
+                loggingListener = (AbstractQueryLoggingListener) listener;
+            } else if (listener instanceof SystemOutSlowQueryListener) {
+                slowQueryListener = (SlowQueryListener) listener;
+            }
+        }
+        assertThat(loggingListener).isNotNull();
+        assertThat(slowQueryListener).isNotNull();
+
+        assertThat(this.mBeanServer.getAttribute(objectName, "LoggingEnabled")).isEqualTo(true);
+        this.mBeanServer.invoke(objectName, "disableLogging", null, null);
+        assertThat(loggingListener.isEnabled()).isFalse();
+        assertThat(((SystemOutSlowQueryListener) slowQueryListener).isEnabled()).isFalse();
+        assertThat(this.mBeanServer.getAttribute(objectName, "LoggingEnabled")).isEqualTo(false);
+
+        this.mBeanServer.invoke(objectName, "enableLogging", null, null);
+        assertThat(loggingListener.isEnabled()).isTrue();
+
+        this.mBeanServer.invoke(objectName, "changeSlowQueryThreshold",
+                new Object[]{500L, "milliseconds"}, new String[]{long.class.getName(), String.class.getName()});
+        assertThat(slowQueryListener.getThreshold()).isEqualTo(500L);
+        assertThat(slowQueryListener.getThresholdTimeUnit()).isEqualTo(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void duplicateNameAndClose() throws Exception {
+        ProxyDataSourceControl control = new ProxyDataSourceControl(this.proxyDataSource);
+        control.register(this.mBeanServer);
+        ObjectName objectName = control.getObjectName();
+        assertThat(this.mBeanServer.isRegistered(objectName)).isTrue();
+
+        // same name is rejected
+        ProxyDataSourceControl anotherControl = new ProxyDataSourceControl(this.proxyDataSource);
+        try {
+            anotherControl.register(this.mBeanServer);
+            fail("registration with the same name should fail");
+        } catch (InstanceAlreadyExistsException e) {
+        }
+        assertThat(anotherControl.getObjectName()).isNull();
+        assertThat(control.getObjectName()).isEqualTo(objectName);
+
+        // rejected one does not unregister the registered one
+        anotherControl.close();
+        assertThat(this.mBeanServer.isRegistered(objectName)).isTrue();
+
+        control.close();
+        assertThat(this.mBeanServer.isRegistered(objectName)).isFalse();
+        control.close();  // no-op
+    }
+
+    @Test
+    public void unnamedDataSource() throws Exception {
+        ProxyDataSource unnamed = ProxyDataSourceBuilder.create(this.actualDataSource).build();
+        ObjectName objectName = ProxyDataSourceControl.register(this.mBeanServer, unnamed);
+        assertThat(objectName.getKeyProperty("name")).startsWith("\"ProxyDataSource@");
+    }
+
+    @Test
+    public void inFlightQueryCountOfRunningQueries() throws Exception {
+        InFlightQueryCountListener listener = new InFlightQueryCountListener();
+        ExecutionInfo startedBefore = new ExecutionInfo();
+        ExecutionInfo startedAfter = new ExecutionInfo();
+
+        listener.beforeQuery(startedAfter, Collections.<QueryInfo>emptyList());
+        listener.afterQuery(startedBefore, Collections.<QueryInfo>emptyList());
+        assertThat(listener.getInFlightQueryCount()).isEqualTo(1);
+
+        listener.afterQuery(startedAfter, Collections.<QueryInfo>emptyList());
+        assertThat(listener.getInFlightQueryCount()).isEqualTo(0);
+    }
+
+}
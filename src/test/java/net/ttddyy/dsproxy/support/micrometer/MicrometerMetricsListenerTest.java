@@ -0,0 +1,153 @@
+package net.ttddyy.dsproxy.support.micrometer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.pause.PauseDetector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.ttddyy.dsproxy.QueryType;
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class MicrometerMetricsListenerTest {
+
+    private DataSource actualDataSource;
+    private SimpleMeterRegistry registry;
+    private MicrometerMetricsListener listener;
+    private ProxyDataSource proxyDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.registry = new SimpleMeterRegistry();
+        this.listener = new MicrometerMetricsListener(this.registry);
+        this.proxyDataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .listener(this.listener)
+                .methodListener(this.listener)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void queryTimers() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        stmt.executeQuery("select * from emp");
+        stmt.executeQuery("select * from emp");
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.executeUpdate();
+        try {
+            stmt.executeQuery("select * from non_existing_table");
+            fail("should fail");
+        } catch (SQLException e) {
+        }
+        conn.close();
+
+        Timer select = this.registry.find(MicrometerMetricsListener.QUERY_METER_NAME)
+                .tags("datasource", "myDS", "statement", "statement", "query", "select", "success", "true").timer();
+        assertThat(select).isNotNull();
+        assertThat(select.count()).isEqualTo(2);
+
+        Timer update = this.registry.find(MicrometerMetricsListener.QUERY_METER_NAME)
+                .tags("datasource", "myDS", "statement", "prepared", "query", "update", "success", "true").timer();
+        assertThat(update).isNotNull();
+        assertThat(update.count()).isEqualTo(1);
+
+        Timer failure = this.registry.find(MicrometerMetricsListener.QUERY_METER_NAME)
+                .tags("datasource", "myDS", "success", "false").timer();
+        assertThat(failure).isNotNull();
+        assertThat(failure.count()).isEqualTo(1);
+    }
+
+    @Test
+    public void timerIsCached() {
+        Timer timer = this.listener.getOrCreateQueryTimer("myDS", StatementType.PREPARED, QueryType.INSERT, true);
+        assertThat(this.listener.getOrCreateQueryTimer("myDS", StatementType.PREPARED, QueryType.INSERT, true)).isSameAs(timer);
+        assertThat(this.listener.getOrCreateQueryTimer("myDS", StatementType.PREPARED, QueryType.INSERT, false)).isNotSameAs(timer);
+        assertThat(this.listener.getOrCreateConnectionTimer("myDS")).isSameAs(this.listener.getOrCreateConnectionTimer("myDS"));
+    }
+
+    @Test
+    public void connectionMetrics() throws Exception {
+        Connection conn1 = this.proxyDataSource.getConnection();
+        Connection conn2 = this.proxyDataSource.getConnection();
+
+        Timer acquire = this.registry.find(MicrometerMetricsListener.CONNECTION_ACQUIRE_METER_NAME).tags("datasource", "myDS").timer();
+        assertThat(acquire).isNotNull();
+        assertThat(acquire.count()).isEqualTo(2);
+
+        Gauge gauge = this.registry.find(MicrometerMetricsListener.OPEN_CONNECTIONS_METER_NAME).tags("datasource", "myDS").gauge();
+        assertThat(gauge).isNotNull();
+        assertThat(gauge.value()).isEqualTo(2);
+
+        conn1.close();
+        assertThat(gauge.value()).isEqualTo(1);
+        conn2.close();
+        assertThat(gauge.value()).isEqualTo(0);
+    }
+
+    @Test
+    public void histogram() {
+        Map<String, DistributionStatisticConfig> configs = new HashMap<>();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry() {
+            @Override
+            protected Timer newTimer(Meter.Id id, DistributionStatisticConfig config, PauseDetector pauseDetector) {
+                configs.put(id.getName(), config);
+                return super.newTimer(id, config, pauseDetector);
+            }
+        };
+        MicrometerMetricsListener listener = new MicrometerMetricsListener(registry);
+        listener.getOrCreateQueryTimer("myDS", StatementType.STATEMENT, QueryType.SELECT, true);
+        listener.getOrCreateConnectionTimer("myDS");
+        registry.timer("other");
+
+        assertThat(configs.get(MicrometerMetricsListener.QUERY_METER_NAME).isPercentileHistogram()).isTrue();
+        assertThat(configs.get(MicrometerMetricsListener.CONNECTION_ACQUIRE_METER_NAME).isPercentileHistogram()).isTrue();
+        assertThat(configs.get("other").isPercentileHistogram()).isNotEqualTo(Boolean.TRUE);
+
+        // registry is not reconfigured for meters created by others
+        configs.clear();
+        registry.timer(MicrometerMetricsListener.QUERY_METER_NAME, "datasource", "anotherDS");
+        assertThat(configs.get(MicrometerMetricsListener.QUERY_METER_NAME).isPercentileHistogram()).isNotEqualTo(Boolean.TRUE);
+
+        // without histogram
+        configs.clear();
+        registry = new SimpleMeterRegistry() {
+            @Override
+            protected Timer newTimer(Meter.Id id, DistributionStatisticConfig config, PauseDetector pauseDetector) {
+                configs.put(id.getName(), config);
+                return super.newTimer(id, config, pauseDetector);
+            }
+        };
+        listener = new MicrometerMetricsListener(registry, false);
+        listener.getOrCreateQueryTimer("myDS", StatementType.STATEMENT, QueryType.SELECT, true);
+        assertThat(configs.get(MicrometerMetricsListener.QUERY_METER_NAME).isPercentileHistogram()).isNotEqualTo(Boolean.TRUE);
+    }
+
+}
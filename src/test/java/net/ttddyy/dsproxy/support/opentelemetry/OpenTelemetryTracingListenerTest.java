@@ -0,0 +1,157 @@
+package net.ttddyy.dsproxy.support.opentelemetry;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.testing.junit4.OpenTelemetryRule;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class OpenTelemetryTracingListenerTest {
+
+    @Rule
+    public OpenTelemetryRule otelTesting = OpenTelemetryRule.create();
+
+    private DataSource actualDataSource;
+    private OpenTelemetryTracingListener listener;
+    private ProxyDataSource proxyDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+        this.listener = new OpenTelemetryTracingListener(this.otelTesting.getOpenTelemetry().getTracer("test"));
+        this.listener.setDbSystem("hsqldb");
+        this.proxyDataSource = ProxyDataSourceBuilder.create("myDS", this.actualDataSource)
+                .listener(this.listener)
+                .methodListener(this.listener)
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void querySpan() throws Exception {
+        Span parent = this.otelTesting.getOpenTelemetry().getTracer("test").spanBuilder("parent").startSpan();
+        try (Scope scope = parent.makeCurrent()) {
+            Connection conn = this.proxyDataSource.getConnection();
+            Statement stmt = conn.createStatement();
+            stmt.executeQuery("select * from emp");
+            stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+            conn.close();
+        } finally {
+            parent.end();
+        }
+
+        List<SpanData> spans = this.otelTesting.getSpans();
+        assertThat(spans).extracting(SpanData::getName).containsExactly("query", "query", "parent");
+
+        SpanData select = spans.get(0);
+        assertThat(select.getParentSpanId()).isEqualTo(parent.getSpanContext().getSpanId());
+        assertThat(select.getAttributes().get(AttributeKey.stringKey("db.system"))).isEqualTo("hsqldb");
+        assertThat(select.getAttributes().get(AttributeKey.stringKey("db.statement"))).isEqualTo("select * from emp");
+        assertThat(select.getAttributes().get(AttributeKey.stringKey("dsproxy.datasource"))).isEqualTo("myDS");
+        assertThat(select.getAttributes().get(AttributeKey.stringKey("dsproxy.statement_type"))).isEqualTo("STATEMENT");
+        assertThat(select.getAttributes().get(AttributeKey.longKey("dsproxy.rows_affected"))).isNull();
+
+        SpanData update = spans.get(1);
+        assertThat(update.getAttributes().get(AttributeKey.longKey("dsproxy.rows_affected"))).isEqualTo(1L);
+    }
+
+    @Test
+    public void batchSpan() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement("update emp set name = ? where id = ?");
+        ps.setString(1, "FOO");
+        ps.setInt(2, 1);
+        ps.addBatch();
+        ps.setString(1, "BAR");
+        ps.setInt(2, 2);
+        ps.addBatch();
+        ps.executeBatch();
+        conn.close();
+
+        List<SpanData> spans = this.otelTesting.getSpans();
+        assertThat(spans).hasSize(1);
+        SpanData span = spans.get(0);
+        assertThat(span.getName()).isEqualTo("batch query");
+        assertThat(span.getAttributes().get(AttributeKey.longKey("dsproxy.batch_size"))).isEqualTo(2L);
+        assertThat(span.getAttributes().get(AttributeKey.longKey("dsproxy.rows_affected"))).isEqualTo(2L);
+    }
+
+    @Test
+    public void failure() throws Exception {
+        this.listener.setCaptureStatement(false);
+
+        Connection conn = this.proxyDataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeQuery("select * from non_existing_table");
+            fail("should fail");
+        } catch (SQLException e) {
+        }
+        conn.close();
+
+        List<SpanData> spans = this.otelTesting.getSpans();
+        assertThat(spans).hasSize(1);
+        SpanData span = spans.get(0);
+        assertThat(span.getStatus().getStatusCode()).isEqualTo(StatusCode.ERROR);
+        assertThat(span.getEvents()).extracting("name").containsExactly("exception");
+        assertThat(span.getAttributes().get(AttributeKey.stringKey("db.statement"))).isNull();
+    }
+
+    @Test
+    public void connectionAndTransactionSpans() throws Exception {
+        this.listener.setConnectionSpanEnabled(true);
+        this.listener.setTransactionSpanEnabled(true);
+
+        Connection conn = this.proxyDataSource.getConnection();
+        conn.setAutoCommit(false);
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("update emp set name = 'FOO' where id = 1");
+        conn.commit();
+        stmt.executeUpdate("update emp set name = 'BAR' where id = 1");
+        conn.rollback();
+        conn.close();
+
+        List<SpanData> spans = this.otelTesting.getSpans();
+        assertThat(spans).extracting(SpanData::getName).containsExactly("getConnection", "query", "commit", "query", "rollback");
+
+        SpanData connectionSpan = spans.get(0);
+        assertThat(connectionSpan.getEndEpochNanos()).isGreaterThanOrEqualTo(connectionSpan.getStartEpochNanos());
+        assertThat(connectionSpan.getAttributes().get(AttributeKey.stringKey("dsproxy.datasource"))).isEqualTo("myDS");
+    }
+
+    @Test
+    public void connectionAndTransactionSpansDisabledByDefault() throws Exception {
+        Connection conn = this.proxyDataSource.getConnection();
+        conn.setAutoCommit(false);
+        conn.commit();
+        conn.close();
+
+        assertThat(this.otelTesting.getSpans()).isEmpty();
+    }
+
+}
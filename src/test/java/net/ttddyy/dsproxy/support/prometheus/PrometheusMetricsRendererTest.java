@@ -0,0 +1,149 @@
+package net.ttddyy.dsproxy.support.prometheus;
+
+import com.sun.net.httpserver.HttpServer;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryCount;
+import net.ttddyy.dsproxy.listener.QueryLatencyHistogramListener;
+import net.ttddyy.dsproxy.listener.SingleQueryCountHolder;
+import net.ttddyy.dsproxy.proxy.DefaultConnectionIdManager;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class PrometheusMetricsRendererTest {
+
+    private PrometheusMetricsRenderer createRenderer() {
+        SingleQueryCountHolder queryCountHolder = new SingleQueryCountHolder();
+        queryCountHolder.setPopulateQueryCountHolder(false);
+        QueryCount queryCount = queryCountHolder.getOrCreateQueryCount("my\"ds");
+        queryCount.incrementTotal();
+        queryCount.incrementTotal();
+        queryCount.incrementSuccess();
+        queryCount.incrementFailure();
+        queryCount.incrementSelect();
+        queryCount.incrementPrepared();
+        queryCount.incrementTime(30);
+
+        DefaultConnectionIdManager connectionIdManager = new DefaultConnectionIdManager();
+        connectionIdManager.getId(null);
+        connectionIdManager.getId(null);
+
+        QueryLatencyHistogramListener histogramListener = new QueryLatencyHistogramListener(new long[]{10, 100});
+        for (long elapsed : new long[]{5, 10, 50, 500}) {
+            ExecutionInfo executionInfo = new ExecutionInfo();
+            executionInfo.setDataSourceName("ds");
+            executionInfo.setElapsedTime(elapsed);
+            histogramListener.afterQuery(executionInfo, new ArrayList<>());
+        }
+
+        PrometheusMetricsRenderer renderer = new PrometheusMetricsRenderer();
+        renderer.setQueryCountHolder(queryCountHolder);
+        renderer.addConnectionIdManager("ds", connectionIdManager);
+        renderer.setLatencyHistogramListener(histogramListener);
+        return renderer;
+    }
+
+    @Test
+    public void render() throws Exception {
+        PrometheusMetricsRenderer renderer = createRenderer();
+
+        StringWriter writer = new StringWriter();
+        renderer.render(writer);
+        String output = writer.toString();
+
+        assertThat(output).contains(
+                "# TYPE dsproxy_query_total counter\n",
+                "dsproxy_query_total{datasource=\"my\\\"ds\"} 2\n",
+                "dsproxy_query_success_total{datasource=\"my\\\"ds\"} 1\n",
+                "dsproxy_query_failure_total{datasource=\"my\\\"ds\"} 1\n",
+                "dsproxy_query_time_seconds_total{datasource=\"my\\\"ds\"} 0.03\n",
+                "dsproxy_query_type_total{datasource=\"my\\\"ds\",type=\"select\"} 1\n",
+                "dsproxy_query_type_total{datasource=\"my\\\"ds\",type=\"insert\"} 0\n",
+                "dsproxy_statement_type_total{datasource=\"my\\\"ds\",type=\"prepared\"} 1\n",
+                "# TYPE dsproxy_open_connections gauge\n",
+                "dsproxy_open_connections{datasource=\"ds\"} 2\n",
+                "# TYPE dsproxy_query_duration_seconds histogram\n",
+                "dsproxy_query_duration_seconds_bucket{datasource=\"ds\",le=\"0.01\"} 2\n",
+                "dsproxy_query_duration_seconds_bucket{datasource=\"ds\",le=\"0.1\"} 3\n",
+                "dsproxy_query_duration_seconds_bucket{datasource=\"ds\",le=\"+Inf\"} 4\n",
+                "dsproxy_query_duration_seconds_sum{datasource=\"ds\"} 0.565\n",
+                "dsproxy_query_duration_seconds_count{datasource=\"ds\"} 4\n"
+        );
+
+        // buffer is reused. rendering again produces same output
+        StringWriter anotherWriter = new StringWriter();
+        renderer.render(anotherWriter);
+        assertThat(anotherWriter.toString()).isEqualTo(output);
+    }
+
+    @Test
+    public void renderLargeOutput() throws Exception {
+        SingleQueryCountHolder queryCountHolder = new SingleQueryCountHolder();
+        queryCountHolder.setPopulateQueryCountHolder(false);
+        for (int i = 0; i < 1000; i++) {
+            queryCountHolder.getOrCreateQueryCount("ds" + i).incrementTotal();
+        }
+        PrometheusMetricsRenderer renderer = new PrometheusMetricsRenderer();
+        renderer.setQueryCountHolder(queryCountHolder);
+
+        StringWriter writer = new StringWriter();
+        renderer.render(writer);
+        String output = writer.toString();
+        assertThat(output).contains("dsproxy_query_total{datasource=\"ds0\"} 1\n", "dsproxy_query_total{datasource=\"ds999\"} 1\n");
+        assertThat(output.length()).isGreaterThan(4096 * 2);
+    }
+
+    @Test
+    public void renderSmallBucketBounds() throws Exception {
+        QueryLatencyHistogramListener histogramListener = new QueryLatencyHistogramListener(new long[]{100, 1500000000});
+        ExecutionInfo executionInfo = new ExecutionInfo();
+        executionInfo.setDataSourceName("ds");
+        executionInfo.setElapsedTime(50);
+        histogramListener.afterQuery(executionInfo, new ArrayList<>());
+
+        PrometheusMetricsRenderer renderer = new PrometheusMetricsRenderer();
+        renderer.setLatencyHistogramListener(histogramListener);
+        renderer.setElapsedTimeUnit(TimeUnit.MICROSECONDS);
+
+        StringWriter writer = new StringWriter();
+        renderer.render(writer);
+        assertThat(writer.toString()).contains(
+                "dsproxy_query_duration_seconds_bucket{datasource=\"ds\",le=\"0.0001\"} 1\n",
+                "dsproxy_query_duration_seconds_bucket{datasource=\"ds\",le=\"1500.0\"} 1\n",
+                "dsproxy_query_duration_seconds_sum{datasource=\"ds\"} 0.00005\n");
+    }
+
+    @Test
+    public void httpHandler() throws Exception {
+        PrometheusMetricsRenderer renderer = createRenderer();
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/metrics", new PrometheusMetricsHttpHandler(renderer));
+        server.start();
+        try {
+            URL url = new URL("http://localhost:" + server.getAddress().getPort() + "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).isEqualTo(PrometheusMetricsRenderer.CONTENT_TYPE);
+            try (InputStream in = connection.getInputStream(); Scanner scanner = new Scanner(in, "UTF-8")) {
+                String body = scanner.useDelimiter("\\A").next();
+                assertThat(body).contains("dsproxy_open_connections{datasource=\"ds\"} 2\n");
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+}
@@ -0,0 +1,269 @@
+package net.ttddyy.dsproxy.support.workload;
+
+import net.ttddyy.dsproxy.StatementType;
+import net.ttddyy.dsproxy.TestUtils;
+import net.ttddyy.dsproxy.proxy.NanoTimeStopwatchFactory;
+import net.ttddyy.dsproxy.proxy.ParameterCaptureMode;
+import net.ttddyy.dsproxy.proxy.ProxyConfig;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Tadaya Tsuyukubo
+ */
+public class WorkloadReplayerTest {
+
+    private DataSource actualDataSource;
+
+    @Before
+    public void setUp() throws Exception {
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestUtils.shutdown(this.actualDataSource);
+    }
+
+    @Test
+    public void recordAndReplay() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadRecordingListener listener = new WorkloadRecordingListener(out);
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(listener)
+                .methodListener(listener)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("insert into emp ( id, name ) values (?, ?)");
+        ps.setInt(1, 3);
+        ps.setString(2, "baz");
+        ps.executeUpdate();
+        ps.setInt(1, 4);
+        ps.setNull(2, Types.VARCHAR);
+        ps.addBatch();
+        ps.setInt(1, 5);
+        ps.setString(2, "qux");
+        ps.addBatch();
+        ps.executeBatch();
+        ps.close();
+        conn.commit();
+        conn.close();
+
+        conn = dataSource.getConnection();
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery("select count(*) from emp");
+        rs.next();
+        stmt.executeUpdate("delete from emp where id = 1");
+        stmt.close();
+        conn.close();
+
+        listener.close();
+        assertThat(listener.getFailure()).isNull();
+
+        // replay against a fresh database
+        TestUtils.shutdown(this.actualDataSource);
+        this.actualDataSource = TestUtils.getDataSourceWithData();
+
+        WorkloadReplayer replayer = new WorkloadReplayer(this.actualDataSource);
+        replayer.setSpeedMultiplier(0);
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(report.getConnectionCount()).isEqualTo(2);
+        assertThat(report.getQueryCount()).isEqualTo(4);
+        assertThat(report.getFailureCount()).isEqualTo(0);
+        assertThat(report.getTransactionCount()).isEqualTo(1);
+        assertThat(report.getLatencyPercentile(100, TimeUnit.NANOSECONDS)).isGreaterThan(0);
+
+        assertThat(TestUtils.countTable(this.actualDataSource, "emp")).isEqualTo(4);
+        Connection actual = this.actualDataSource.getConnection();
+        ResultSet names = actual.createStatement().executeQuery("select name from emp where id in (3, 4) order by id");
+        assertThat(names.next()).isTrue();
+        assertThat(names.getString(1)).isEqualTo("baz");
+        assertThat(names.next()).isTrue();
+        assertThat(names.getString(1)).isNull();
+        actual.close();
+    }
+
+    @Test
+    public void unrecordableValues() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadRecordingListener listener = new WorkloadRecordingListener(out);
+        DataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(listener)
+                .captureParameters(ParameterCaptureMode.TRUNCATED, 2)
+                .build();
+
+        Connection conn = dataSource.getConnection();
+        PreparedStatement ps = conn.prepareStatement("insert into emp ( id, name ) values (?, ?)");
+        ps.setInt(1, 3);
+        ps.setString(2, "baz");
+        ps.executeUpdate();
+        ps.setInt(1, 4);
+        ps.setCharacterStream(2, new StringReader("qux"));
+        ps.executeUpdate();
+        ps.close();
+        conn.close();
+        listener.close();
+        assertThat(listener.getSkippedQueryCount()).isEqualTo(0);
+
+        WorkloadReader reader = new WorkloadReader(new ByteArrayInputStream(out.toByteArray()));
+        List<WorkloadParameter> parameters = reader.read().getParameterSets().get(0);
+        assertThat(parameters.get(0).getKind()).isEqualTo(WorkloadParameter.Kind.VALUE);
+        assertThat(parameters.get(1).getKind()).isEqualTo(WorkloadParameter.Kind.NULL);  // truncated
+        assertThat(parameters.get(1).getSqlType()).isEqualTo(Types.VARCHAR);
+
+        parameters = reader.read().getParameterSets().get(0);
+        assertThat(parameters.get(1).getKind()).isEqualTo(WorkloadParameter.Kind.NULL);
+        assertThat(parameters.get(1).getSqlType()).isEqualTo(Types.LONGVARCHAR);
+    }
+
+    @Test
+    public void failuresAreCounted() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadWriter writer = new WorkloadWriter(out);
+        WorkloadEvent event = new WorkloadEvent(WorkloadEvent.Type.QUERY, "ds:1", 0);
+        event.setStatementType(StatementType.STATEMENT);
+        event.getQueries().add("select * from no_such_table");
+        writer.write(event);
+        event = new WorkloadEvent(WorkloadEvent.Type.QUERY, "ds:1", 10);
+        event.setStatementType(StatementType.STATEMENT);
+        event.getQueries().add("select * from emp");
+        writer.write(event);
+        writer.close();
+
+        WorkloadReplayer replayer = new WorkloadReplayer(this.actualDataSource);
+        replayer.setSpeedMultiplier(0);
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(report.getConnectionCount()).isEqualTo(1);
+        assertThat(report.getQueryCount()).isEqualTo(2);
+        assertThat(report.getFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void connectionMethodTimestampDoesNotDependOnStopwatch() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadRecordingListener listener = new WorkloadRecordingListener(out);
+        ProxyDataSource dataSource = ProxyDataSourceBuilder.create(this.actualDataSource)
+                .listener(listener)
+                .methodListener(listener)
+                .build();
+        // elapsed time in nanoseconds
+        dataSource.setProxyConfig(ProxyConfig.Builder.from(dataSource.getProxyConfig())
+                .stopwatchFactory(new NanoTimeStopwatchFactory())
+                .build());
+
+        Connection conn = dataSource.getConnection();
+        conn.setAutoCommit(false);
+        conn.createStatement().executeUpdate("delete from emp where id = 1");
+        Thread.sleep(10);
+        conn.commit();
+        conn.close();
+        listener.close();
+
+        WorkloadReader reader = new WorkloadReader(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(reader.read().getType()).isEqualTo(WorkloadEvent.Type.SET_AUTO_COMMIT);
+        WorkloadEvent query = reader.read();
+        assertThat(query.getType()).isEqualTo(WorkloadEvent.Type.QUERY);
+        WorkloadEvent commit = reader.read();
+        assertThat(commit.getType()).isEqualTo(WorkloadEvent.Type.COMMIT);
+        assertThat(commit.getTimestampInMicros()).isGreaterThanOrEqualTo(query.getTimestampInMicros() + 10000);
+    }
+
+    @Test
+    public void eventsAreReplayedInRecordedOrder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadWriter writer = new WorkloadWriter(out);
+        WorkloadEvent event = new WorkloadEvent(WorkloadEvent.Type.QUERY, "ds:1", 100);
+        event.setStatementType(StatementType.STATEMENT);
+        event.getQueries().add("select * from emp");
+        writer.write(event);
+        // timestamp of connection methods may precede preceding queries
+        writer.write(new WorkloadEvent(WorkloadEvent.Type.CLOSE, "ds:1", 50));
+        writer.close();
+
+        WorkloadReplayer replayer = new WorkloadReplayer(this.actualDataSource);
+        replayer.setSpeedMultiplier(0);
+        ReplayReport report = replayer.replay(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(report.getConnectionCount()).isEqualTo(1);
+        assertThat(report.getQueryCount()).isEqualTo(1);
+        assertThat(report.getFailureCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void readWriteValues() throws Exception {
+        Timestamp timestamp = new Timestamp(1000L);
+        timestamp.setNanos(123456789);
+        List<WorkloadParameter> parameters = Arrays.asList(
+                new WorkloadParameter(1, WorkloadParameter.Kind.VALUE, "foo", Types.OTHER),
+                new WorkloadParameter(2, WorkloadParameter.Kind.VALUE, -100, Types.OTHER),
+                new WorkloadParameter(3, WorkloadParameter.Kind.VALUE, Long.MIN_VALUE, Types.OTHER),
+                new WorkloadParameter(4, WorkloadParameter.Kind.VALUE, new BigDecimal("12.34"), Types.OTHER),
+                new WorkloadParameter(5, WorkloadParameter.Kind.VALUE, new byte[]{1, 2}, Types.OTHER),
+                new WorkloadParameter(6, WorkloadParameter.Kind.VALUE, timestamp, Types.OTHER),
+                new WorkloadParameter("name", WorkloadParameter.Kind.NULL, null, Types.INTEGER),
+                new WorkloadParameter("out", WorkloadParameter.Kind.OUT, null, Types.VARCHAR)
+        );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WorkloadWriter writer = new WorkloadWriter(out);
+        WorkloadEvent event = new WorkloadEvent(WorkloadEvent.Type.QUERY, "ds:1", 300);
+        event.setStatementType(StatementType.CALLABLE);
+        event.getQueries().add("call foo(?, ?, ?, ?, ?, ?, ?, ?)");
+        event.getParameterSets().add(parameters);
+        writer.write(event);
+        event = new WorkloadEvent(WorkloadEvent.Type.SET_AUTO_COMMIT, "ds:1", 500);
+        event.setAutoCommit(true);
+        writer.write(event);
+        // not closed
+        writer.flush();
+
+        WorkloadReader reader = new WorkloadReader(new ByteArrayInputStream(out.toByteArray()));
+        WorkloadEvent read = reader.read();
+        assertThat(read.getType()).isEqualTo(WorkloadEvent.Type.QUERY);
+        assertThat(read.getConnectionKey()).isEqualTo("ds:1");
+        assertThat(read.getTimestampInMicros()).isEqualTo(300);
+        assertThat(read.getStatementType()).isEqualTo(StatementType.CALLABLE);
+        assertThat(read.getQueries()).containsExactly("call foo(?, ?, ?, ?, ?, ?, ?, ?)");
+
+        List<WorkloadParameter> readParameters = read.getParameterSets().get(0);
+        assertThat(readParameters).hasSize(8);
+        for (int i = 0; i < 8; i++) {
+            assertThat(readParameters.get(i).getKey()).isEqualTo(parameters.get(i).getKey());
+            assertThat(readParameters.get(i).getKind()).isEqualTo(parameters.get(i).getKind());
+            assertThat(readParameters.get(i).getValue()).isEqualTo(parameters.get(i).getValue());
+        }
+        assertThat(readParameters.get(6).getSqlType()).isEqualTo(Types.INTEGER);
+        assertThat(readParameters.get(7).getSqlType()).isEqualTo(Types.VARCHAR);
+
+        read = reader.read();
+        assertThat(read.getType()).isEqualTo(WorkloadEvent.Type.SET_AUTO_COMMIT);
+        assertThat(read.isAutoCommit()).isTrue();
+
+        assertThat(reader.read()).isNull();
+    }
+
+}